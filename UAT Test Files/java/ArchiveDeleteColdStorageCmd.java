@@ -1,5 +1,6 @@
 package com.code42.archive.maintenance;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.backup.config.BackupConfig;
 import com.code42.backup.manifest.SoftDeleteCode;
 import com.code42.balance.engine.util.MountContentManager;
@@ -10,7 +11,6 @@ import com.code42.core.archive.IArchiveService;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.exception.InvalidParamException;
@@ -96,7 +96,7 @@ public class ArchiveDeleteColdStorageCmd extends DBCmd<Void> {
 		this.run(new IsOrgManageableCmd(orgSso, C42PermissionApp.Org.UPDATE_BASIC), session);
 
 		// Even an ordinary user will pass this test for their own computers
-		this.run(new IsComputerManageableCmd(fcu.getSourceComputerId(), C42PermissionApp.Computer.ALL), session);
+		this.run(IsManageableCmd.computer(fcu.getSourceComputerId(), C42PermissionApp.Computer.ALL), session);
 	}
 
 	/**
@@ -5,10 +5,10 @@ import java.util.List;
 import com.code42.archive.ArchiveDtoQueryBase.ArchiveDtoQueryBuilder;
 import com.code42.archive.ArchiveDtoQueryBase.OrderBy;
 import com.code42.archive.ArchiveDtoQueryBase.OrderDir;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp.User;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.utils.Pair;
 
@@ -38,7 +38,7 @@ public class ArchiveDtoFindByUserCmd extends DBCmd<Pair<List<ArchiveDto>, Intege
 
 	@Override
 	public Pair<List<ArchiveDto>, Integer> exec(CoreSession session) throws CommandException {
-		this.run(new IsUserManageableCmd(this.userId, User.UPDATE), session);
+		this.run(IsManageableCmd.user(this.userId, User.UPDATE), session);
 
 		final ArchiveDtoQueryBuilder b = new ArchiveDtoQueryBase.ArchiveDtoQueryBuilder().user(this.userId).limit(
 				this.limit).offset(this.offset).exportAll(this.exportAll);
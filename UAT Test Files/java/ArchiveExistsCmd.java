@@ -3,12 +3,12 @@
  */
 package com.code42.archive;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.computer.Computer;
 import com.code42.computer.cpc.FriendComputerUsageFindCpcUsageByGuidCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.social.FriendComputerUsage;
 
@@ -30,7 +30,7 @@ public class ArchiveExistsCmd extends DBCmd<Boolean> {
 	public Boolean exec(CoreSession session) throws CommandException {
 		if (this.computer != null) {
 			long computerId = this.computer.getComputerId();
-			this.runtime.run(new IsComputerManageableCmd(computerId, C42PermissionApp.Computer.READ), session);
+			this.runtime.run(IsManageableCmd.computer(computerId, C42PermissionApp.Computer.READ), session);
 		}
 
 		boolean hasArchive = false;
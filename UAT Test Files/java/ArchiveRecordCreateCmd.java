@@ -0,0 +1,32 @@
+package com.code42.archiverecord;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.DBCmd;
+import com.code42.writebehind.WriteBehindOfferCmd;
+
+/**
+ * Record an archive record without waiting on the insert. Archive records are append-only, so once the surrounding
+ * transaction commits they are handed to the WriteBehindQueue and saved in a later batch (see WriteBehindOfferCmd).
+ */
+public class ArchiveRecordCreateCmd extends DBCmd<Void> {
+
+	private final ArchiveRecord archiveRecord;
+
+	public ArchiveRecordCreateCmd(ArchiveRecord archiveRecord) {
+		this.archiveRecord = archiveRecord;
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+
+		this.db.beginTransaction();
+		try {
+			this.db.afterTransaction(new WriteBehindOfferCmd(this.archiveRecord), session);
+			this.db.commit();
+		} finally {
+			this.db.endTransaction();
+		}
+		return null;
+	}
+}
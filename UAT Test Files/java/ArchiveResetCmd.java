@@ -5,6 +5,7 @@ package com.code42.archive.maintenance;
 
 import com.backup42.common.ComputerType;
 import com.code42.archive.maintenance.IArchiveMaintenanceController;
+import com.code42.auth.IsManageableCmd;
 import com.code42.backup.archive.ArchiveResetRequest;
 import com.code42.computer.Computer;
 import com.code42.computer.ComputerFindByGuidCmd;
@@ -14,7 +15,6 @@ import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.IAuthorizationService;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
 import com.google.inject.Inject;
@@ -47,7 +47,7 @@ public class ArchiveResetCmd extends DBCmd<Void> {
 		this.auth.isAuthorized(session, C42PermissionApp.User.UPDATE);
 
 		ComputerSso computer = this.run(new ComputerSsoFindByGuidCmd(this.sourceGuid), session);
-		this.runtime.run(new IsComputerManageableCmd(computer.getComputerId(), C42PermissionApp.Computer.ALL), session);
+		this.runtime.run(IsManageableCmd.computer(computer.getComputerId(), C42PermissionApp.Computer.ALL), session);
 
 		Computer target = this.runtime.run(new ComputerFindByGuidCmd(this.targetGuid), session);
 		if (target == null || target.getType() != ComputerType.SERVER) {
@@ -1,9 +1,20 @@
 package com.code42.archive;
 
 import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.code42.archive.IArchiveAuthHandler.ArchivePermission;
 import com.code42.backup.BackupServer;
@@ -24,10 +35,17 @@ import com.code42.io.path.FileId;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
 import com.code42.transport.TransportUtil;
+import com.code42.utils.SystemProperties;
 import com.google.inject.Inject;
 
 /**
- * Stream a file out of an archive.
+ * Stream a file out of an archive.<br>
+ * <br>
+ * Files of more than one block are restored through a pipeline: up to RESTORE_READ_AHEAD blocks are fetched and
+ * decrypted ahead while earlier blocks are written, in order, to the output. The blocks are restored by up to
+ * RESTORE_WORKERS commands on the runtime's executor, out of RESTORE_MAX_WORKERS shared by every restore on the server;
+ * when none is free the restoring thread restores the block itself. The file MD5 is computed over the blocks as they
+ * are written and checked just as it is for a serial restore.
  * 
  * @author mscorcio
  */
@@ -35,6 +53,18 @@ public class ArchiveStreamFileCmd extends AbstractCmd<Void> {
 
 	private static Logger log = LoggerFactory.getLogger(ArchiveStreamFileCmd.class);
 
+	static final String RESTORE_PIPELINE_ENABLED = "c42.archive.restore.pipeline.enabled";
+	static final String RESTORE_WORKERS = "c42.archive.restore.workers";
+	static final String RESTORE_READ_AHEAD = "c42.archive.restore.readAhead";
+	static final String RESTORE_MAX_WORKERS = "c42.archive.restore.maxWorkers";
+	static final int DEFAULT_RESTORE_WORKERS = 4;
+	static final int DEFAULT_RESTORE_READ_AHEAD = 8;
+	static final int DEFAULT_RESTORE_MAX_WORKERS = 16;
+
+	/* Shared by every restore on this server, so concurrent restores can't run more than this many block workers */
+	private static final Semaphore workerPermits = new Semaphore(Math.max(1, SystemProperties.getOptionalInt(
+			RESTORE_MAX_WORKERS, DEFAULT_RESTORE_MAX_WORKERS)));
+
 	@Inject
 	private IArchiveService archiveService;
 
@@ -56,8 +86,7 @@ public class ArchiveStreamFileCmd extends AbstractCmd<Void> {
 
 		// TODO: check licensing before allowing download
 
-		RestoreTool restoreTool = new RestoreTool("Restore-" + this.archiveGuid, new BlockRestoreTool(), this.dataKey
-				.getBackupCiphers());
+		RestoreTool restoreTool = this.newRestoreTool();
 
 		RestoreBlockHandler restoreBlockHandler = new RestoreBlockHandler(true, true);
 
@@ -81,21 +110,31 @@ public class ArchiveStreamFileCmd extends AbstractCmd<Void> {
 						this.archiveGuid, this.fileId, versionData);
 			}
 
-			for (long blockNumber : blockList) {
-				BackupData data = backupServer.getBackupData(blockNumber);
-				ByteBuffer restoredData = restoreTool.restoreBackupData(data, restoreBlockHandler, true);
+			MD5Value restoreChecksum;
+			if (blockList.length > 1 && SystemProperties.getOptionalBoolean(RESTORE_PIPELINE_ENABLED, true)) {
 
-				try {
-					assert restoredData.hasArray();
-					this.output.write(restoredData.array(), restoredData.arrayOffset(), restoredData.limit());
-				} catch (EOFException e) {
-					// All this means is that the receiver went away
-					log.info("Client is gone; broken pipe; fileId=" + this.fileId + "; error=" + e.toString());
-					return null;
+				restoreChecksum = this.restorePipelined(backupServer, blockList, session);
+				if (restoreChecksum == null) {
+					return null; // Client is gone
 				}
+			} else {
+
+				for (long blockNumber : blockList) {
+					BackupData data = backupServer.getBackupData(blockNumber);
+					ByteBuffer restoredData = restoreTool.restoreBackupData(data, restoreBlockHandler, true);
+
+					try {
+						assert restoredData.hasArray();
+						this.output.write(restoredData.array(), restoredData.arrayOffset(), restoredData.limit());
+					} catch (EOFException e) {
+						// All this means is that the receiver went away
+						log.info("Client is gone; broken pipe; fileId=" + this.fileId + "; error=" + e.toString());
+						return null;
+					}
+				}
+				restoreChecksum = restoreTool.getFileMd5();
 			}
 
-			MD5Value restoreChecksum = restoreTool.getFileMd5();
 			MD5Value sourceChecksum = versionData.getSourceChecksum();
 			if (!restoreChecksum.equals(sourceChecksum)) {
 				throw new CommandException("File checksum failed; guid={}, fileId={}, expected={}, actual={}",
@@ -108,4 +147,232 @@ public class ArchiveStreamFileCmd extends AbstractCmd<Void> {
 		}
 		return null;
 	}
+
+	private RestoreTool newRestoreTool() {
+		return new RestoreTool("Restore-" + this.archiveGuid, new BlockRestoreTool(), this.dataKey.getBackupCiphers());
+	}
+
+	/**
+	 * Restores the blocks with read-ahead and writes them to the output in order.
+	 * 
+	 * @return the MD5 of everything written, or null if the client went away
+	 */
+	private MD5Value restorePipelined(BackupServer backupServer, long[] blockList, CoreSession session)
+			throws Exception {
+
+		int workers = Math.max(1, SystemProperties.getOptionalInt(RESTORE_WORKERS, DEFAULT_RESTORE_WORKERS));
+		int readAhead = Math.max(workers, SystemProperties.getOptionalInt(RESTORE_READ_AHEAD, DEFAULT_RESTORE_READ_AHEAD));
+
+		RestoreToolPool tools = new RestoreToolPool(readAhead);
+		AtomicInteger running = new AtomicInteger();
+
+		MessageDigest md5 = MessageDigest.getInstance("MD5");
+		BlockWriter writer = new BlockWriter(this.output);
+		LinkedList<RestoreBlockCmd> pending = new LinkedList<RestoreBlockCmd>();
+		try {
+			int next = 0;
+			while (next < blockList.length || !pending.isEmpty()) {
+
+				while (next < blockList.length && pending.size() < readAhead) {
+					RestoreBlockCmd cmd = new RestoreBlockCmd(backupServer, blockList[next++], tools, running);
+					if (running.get() < workers && workerPermits.tryAcquire()) {
+						running.incrementAndGet();
+						cmd.future = this.runtime.runAsync(cmd, session);
+					} else {
+						// Our share of the workers (or every shared one) is busy; restore this block ourselves
+						cmd.restoreHere();
+					}
+					pending.add(cmd);
+				}
+
+				RestoreBlockCmd cmd = pending.removeFirst();
+				ByteBuffer block = cmd.get();
+				try {
+					md5.update(block.duplicate());
+					writer.write(block);
+				} catch (EOFException e) {
+					// All this means is that the receiver went away
+					log.info("Client is gone; broken pipe; fileId=" + this.fileId + "; error=" + e.toString());
+					return null;
+				} finally {
+					tools.give(cmd.tool);
+				}
+			}
+		} finally {
+			for (RestoreBlockCmd cmd : pending) {
+				cmd.cancel();
+			}
+		}
+
+		return new MD5Value(md5.digest());
+	}
+
+	/**
+	 * The RestoreTools of one pipelined restore. A restored block may live in a buffer owned by the tool that restored
+	 * it, so a tool isn't handed back until its block has been written. Tools are only made when none is free, at most
+	 * one per read-ahead slot, so a restore that doesn't get many workers doesn't make many tools either.
+	 */
+	private class RestoreToolPool {
+
+		private final BlockingQueue<RestoreTool> free;
+		private final AtomicInteger created = new AtomicInteger();
+		private final int max;
+
+		RestoreToolPool(int max) {
+			this.free = new ArrayBlockingQueue<RestoreTool>(max);
+			this.max = max;
+		}
+
+		RestoreTool take() throws InterruptedException {
+			RestoreTool tool = this.free.poll();
+			if (tool != null) {
+				return tool;
+			}
+			if (this.created.incrementAndGet() <= this.max) {
+				return ArchiveStreamFileCmd.this.newRestoreTool();
+			}
+			this.created.decrementAndGet();
+			return this.free.take();
+		}
+
+		void give(RestoreTool tool) {
+			if (tool != null) {
+				this.free.add(tool);
+			}
+		}
+	}
+
+	/**
+	 * Fetches and restores one block, either on the runtime's executor holding one of the shared worker permits, or
+	 * right away on the restoring thread. BackupServer makes no promise that getBackupData() can be called
+	 * concurrently, so the fetches of a restore are serialized; only the restoring (decrypting and decompressing) runs
+	 * in parallel.
+	 */
+	private static class RestoreBlockCmd extends AbstractCmd<Void> {
+
+		private static final int NEW = 0;
+		private static final int STARTED = 1;
+		private static final int DONE = 2;
+
+		private final BackupServer backupServer;
+		private final long blockNumber;
+		private final RestoreToolPool tools;
+		private final AtomicInteger running;
+		private final AtomicInteger state = new AtomicInteger(NEW);
+
+		private Future<Void> future;
+		private volatile RestoreTool tool;
+		private volatile ByteBuffer restored;
+		private volatile Exception failure;
+
+		RestoreBlockCmd(BackupServer backupServer, long blockNumber, RestoreToolPool tools, AtomicInteger running) {
+			this.backupServer = backupServer;
+			this.blockNumber = blockNumber;
+			this.tools = tools;
+			this.running = running;
+		}
+
+		@Override
+		public Void exec(CoreSession session) throws CommandException {
+			if (!this.state.compareAndSet(NEW, STARTED)) {
+				return null; // Cancelled before it started; cancel() gave the permit back
+			}
+			try {
+				this.restore();
+			} finally {
+				this.state.set(DONE);
+				this.running.decrementAndGet();
+				workerPermits.release();
+			}
+			return null;
+		}
+
+		void restoreHere() {
+			this.state.set(STARTED);
+			this.restore();
+			this.state.set(DONE);
+		}
+
+		private void restore() {
+			RestoreTool taken = null;
+			try {
+				taken = this.tools.take();
+				BackupData data;
+				synchronized (this.backupServer) {
+					data = this.backupServer.getBackupData(this.blockNumber);
+				}
+				this.restored = taken.restoreBackupData(data, new RestoreBlockHandler(true, true), true);
+				this.tool = taken;
+			} catch (Exception e) {
+				this.tools.give(taken);
+				this.failure = e;
+			}
+		}
+
+		/**
+		 * @return the restored block; the caller gives the tool back once it has been written
+		 */
+		ByteBuffer get() throws Exception {
+			if (this.future != null) {
+				try {
+					this.future.get();
+				} catch (ExecutionException e) {
+					throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+				}
+			}
+			if (this.failure != null) {
+				throw this.failure;
+			}
+			return this.restored;
+		}
+
+		void cancel() {
+			if (this.state.compareAndSet(NEW, DONE) && this.future != null) {
+				// Never ran, so it won't release its permit itself
+				this.running.decrementAndGet();
+				workerPermits.release();
+			}
+			if (this.future != null) {
+				this.future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Writes restored blocks without copying them when it can: straight to the file channel for file output, straight
+	 * from the backing array for heap buffers. Anything else goes through a single transfer array reused for every block.
+	 */
+	private static class BlockWriter {
+
+		private static final int TRANSFER_SIZE = 64 * 1024;
+
+		private final OutputStream output;
+		private final WritableByteChannel channel;
+		private byte[] transfer;
+
+		BlockWriter(OutputStream output) {
+			this.output = output;
+			this.channel = (output instanceof FileOutputStream) ? ((FileOutputStream) output).getChannel() : null;
+		}
+
+		void write(ByteBuffer block) throws IOException {
+			ByteBuffer buf = block.duplicate();
+			if (this.channel != null) {
+				while (buf.hasRemaining()) {
+					this.channel.write(buf);
+				}
+			} else if (buf.hasArray()) {
+				this.output.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+			} else {
+				if (this.transfer == null) {
+					this.transfer = new byte[TRANSFER_SIZE];
+				}
+				while (buf.hasRemaining()) {
+					int n = Math.min(buf.remaining(), this.transfer.length);
+					buf.get(this.transfer, 0, n);
+					this.output.write(this.transfer, 0, n);
+				}
+			}
+		}
+	}
 }
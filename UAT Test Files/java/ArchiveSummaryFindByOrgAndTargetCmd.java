@@ -4,11 +4,11 @@ import org.hibernate.Query;
 import org.hibernate.Session;
 
 import com.code42.archiverecord.ArchiveSummary;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.annotation.CoreNamedQuery;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.FindQuery;
 import com.code42.core.impl.DBCmd;
@@ -26,7 +26,7 @@ public class ArchiveSummaryFindByOrgAndTargetCmd extends DBCmd<ArchiveSummary> {
 	@Override
 	public ArchiveSummary exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.READ), session);
+		this.runtime.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.READ), session);
 		return this.db.find(new ArchiveSummaryFindByOrgAndTargetQuery(this.orgId, this.targetComputerId));
 	}
 
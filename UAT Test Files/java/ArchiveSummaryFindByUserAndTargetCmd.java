@@ -7,11 +7,11 @@ import org.hibernate.Query;
 import org.hibernate.Session;
 
 import com.code42.archiverecord.ArchiveSummary;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.annotation.CoreNamedQuery;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.FindQuery;
 import com.code42.core.impl.DBCmd;
@@ -31,7 +31,7 @@ public class ArchiveSummaryFindByUserAndTargetCmd extends DBCmd<ArchiveSummary>
 
 	@Override
 	public ArchiveSummary exec(CoreSession session) throws CommandException {
-		this.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.READ), session);
+		this.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.READ), session);
 		return this.db.find(new ArchiveSummaryFindByUserAndTargetQuery(this.userId, this.targetComputerId));
 	}
 
@@ -9,11 +9,11 @@ import org.hibernate.Session;
 import org.hibernate.type.StandardBasicTypes;
 
 import com.code42.archiverecord.ArchiveSummary;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.annotation.CoreNamedQuery;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.FindQuery;
 import com.code42.core.impl.DBCmd;
@@ -31,7 +31,7 @@ public class ArchiveSummaryFindByUserAndTargetGuidCmd extends DBCmd<List<Archive
 	@Override
 	public List<ArchiveSummary> exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.READ), session);
+		this.runtime.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.READ), session);
 		return this.db.find(new ArchiveSummaryFindByUserAndTargetGuidQuery(this.userId, this.targetComputerIds));
 	}
 
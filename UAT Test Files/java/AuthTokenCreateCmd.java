@@ -46,6 +46,7 @@ public class AuthTokenCreateCmd extends DBCmd<Pair<String, String>> {
 	/* ============ Dependencies ========== */
 	private SecureRandom random;
 	private IAuthTokenService authToken;
+	private AuthTokenStore store;
 
 	/* ============ Injection points ======== */
 	@Inject
@@ -58,6 +59,11 @@ public class AuthTokenCreateCmd extends DBCmd<Pair<String, String>> {
 		this.authToken = authToken;
 	}
 
+	@Inject
+	public void setStore(AuthTokenStore store) {
+		this.store = store;
+	}
+
 	private final Builder data;
 
 	// transient
@@ -78,7 +84,7 @@ public class AuthTokenCreateCmd extends DBCmd<Pair<String, String>> {
 		AuthToken token = new AuthToken(this.realUserId, this.userId);
 
 		if (partOne != null && oldPartTwo != null) {
-			AuthToken oldToken = this.authToken.get(partOne, oldPartTwo);
+			AuthToken oldToken = this.store.get(partOne, oldPartTwo);
 
 			if (oldToken != null) {
 				token.updateFrom(oldToken);
@@ -96,6 +102,7 @@ public class AuthTokenCreateCmd extends DBCmd<Pair<String, String>> {
 		String partTwo = this.generateId();
 
 		this.authToken.create(partOne, partTwo, token);
+		this.store.created(partOne, partTwo, token);
 		return new Pair(partOne, partTwo);
 	}
 
@@ -3,7 +3,6 @@ package com.code42.auth;
 import java.util.regex.Pattern;
 
 import com.code42.core.CommandException;
-import com.code42.core.auth.IAuthTokenService;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.DBCmd;
 import com.google.inject.Inject;
@@ -22,12 +21,12 @@ public class AuthTokenDeleteCmd extends DBCmd<Void> {
 
 	/* ============ Dependencies ========== */
 
-	private IAuthTokenService authToken;
+	private AuthTokenStore store;
 
 	/* ============ Injection points ======== */
 	@Inject
-	public void setAuthToken(IAuthTokenService authToken) {
-		this.authToken = authToken;
+	public void setStore(AuthTokenStore store) {
+		this.store = store;
 	}
 
 	private final String token;
@@ -53,7 +52,8 @@ public class AuthTokenDeleteCmd extends DBCmd<Void> {
 			throw new IllegalArgumentException("Invalid token provided: " + this.token);
 		}
 
-		this.authToken.delete(this.token);
+		// Deletes it from the space and tells the other nodes
+		this.store.delete(this.token);
 
 		return null;
 	}
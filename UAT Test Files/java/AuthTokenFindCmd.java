@@ -1,23 +1,23 @@
 package com.code42.auth;
 
 import com.code42.core.CommandException;
-import com.code42.core.auth.IAuthTokenService;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.DBCmd;
 import com.google.inject.Inject;
 
 /**
- * Find the AuthToken associated with the given session keys.
+ * Find the AuthToken associated with the given session keys. Tokens already seen on this node are found locally; see
+ * AuthTokenStore.
  */
 public class AuthTokenFindCmd extends DBCmd<AuthToken> {
 
 	/* ============ Dependencies ========== */
-	private IAuthTokenService authToken;
+	private AuthTokenStore store;
 
 	/* ============ Injection points ======== */
 	@Inject
-	public void setAuthToken(IAuthTokenService authToken) {
-		this.authToken = authToken;
+	public void setStore(AuthTokenStore store) {
+		this.store = store;
 	}
 
 	private final String keyPartOne;
@@ -30,7 +30,7 @@ public class AuthTokenFindCmd extends DBCmd<AuthToken> {
 
 	@Override
 	public AuthToken exec(CoreSession session) throws CommandException {
-		return this.authToken.get(this.keyPartOne, this.keyPartTwo);
+		return this.store.get(this.keyPartOne, this.keyPartTwo);
 	}
 
 }
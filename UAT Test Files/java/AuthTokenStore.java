@@ -0,0 +1,493 @@
+package com.code42.auth;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.code42.core.CommandException;
+import com.code42.core.ICoreRuntime;
+import com.code42.core.auth.IAuthTokenService;
+import com.code42.core.auth.IAuthorizationService;
+import com.code42.core.space.ISpaceService;
+import com.code42.core.space.SpaceException;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Node-local copy of the auth tokens in use on this node, in front of the space copy kept by IAuthTokenService. A token
+ * is adopted from the space the first time it is seen here (after a failover, say) and is looked up locally from then
+ * on; every so often a lookup checks the space again, so a token refreshed on another node is noticed.<br>
+ * <br>
+ * A delete (a logout) removes the token from the space and leaves a marker for it (or for the whole cookie) in the
+ * space, with a TTL of twice the token timeout, after which the token would have expired anyway. A node checks the
+ * markers of a token it holds at most every few seconds, when it is used, so a logged out token stops working
+ * everywhere within that time rather than the verify interval. Nothing is read for tokens that aren't being used. A
+ * cookie marker holds the time of the delete and only stops the tokens of the cookie from before it, so logging in
+ * again with the same cookie works.<br>
+ * <br>
+ * Refreshes don't write to the space. A token due an update (see AuthTokenUtils.isUpdateable) is only marked dirty, and
+ * each tick the sweep takes the dirty tokens of every shard and writes them as one batch, without locking or reading
+ * them back first. A write can put back a token another node has just deleted, but its marker keeps every node from
+ * using it, and a newer copy written by another node is noticed on verify.<br>
+ * <br>
+ * The sweep also ages tokens: every shard keeps a hashed timing wheel of tick slots, a token sits in the slot of the
+ * tick it is next due to change state, and a sweep only looks at the slots that have come due since the last one. A
+ * refreshed token isn't moved; it is put back further on when its old slot comes round. Expired tokens, and zombies
+ * past a second timeout, are dropped locally; the space expires its own copy.<br>
+ * <br>
+ * Shards are chosen by the first (cookie) part of the token, so deleting every token of a cookie only looks at one.
+ */
+@Singleton
+public class AuthTokenStore {
+
+	private static final Logger log = LoggerFactory.getLogger(AuthTokenStore.class);
+
+	static final String AUTH_TOKEN_STORE_ENABLED = "c42.auth.token.store.enabled";
+	static final String AUTH_TOKEN_STORE_TICK_MS = "c42.auth.token.store.tick.ms";
+	static final String AUTH_TOKEN_STORE_VERIFY_MS = "c42.auth.token.store.verify.ms";
+	static final String AUTH_TOKEN_STORE_DELETE_CHECK_MS = "c42.auth.token.store.deleteCheck.ms";
+
+	static final long DEFAULT_TICK_MS = 15 * Time.SECOND;
+	static final long DEFAULT_VERIFY_MS = Time.MINUTE;
+	static final long DEFAULT_DELETE_CHECK_MS = 5 * Time.SECOND;
+
+	private static final String SPACE_DELETED_PREFIX = "/auth/token/deleted/";
+
+	private static final int SHARDS = 16;
+	private static final int WHEEL_SLOTS = 512;
+
+	/* ================= Dependencies ================= */
+	private IAuthTokenService spaceTokens;
+	private ISpaceService space;
+	private ICoreRuntime runtime;
+	private IAuthorizationService auth;
+
+	/* ================= DI injection points ================= */
+	@Inject
+	public void setAuthToken(IAuthTokenService spaceTokens) {
+		this.spaceTokens = spaceTokens;
+	}
+
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.space = space;
+	}
+
+	@Inject
+	public void setRuntime(ICoreRuntime runtime) {
+		this.runtime = runtime;
+	}
+
+	@Inject
+	public void setAuth(IAuthorizationService auth) {
+		this.auth = auth;
+	}
+
+	private final Shard[] shards = new Shard[SHARDS];
+	private final AtomicBoolean sweeping = new AtomicBoolean(false);
+	private volatile long nextSweep = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong spaceWrites = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+
+	public AuthTokenStore() {
+		for (int i = 0; i < SHARDS; i++) {
+			this.shards[i] = new Shard();
+		}
+	}
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalBoolean(AUTH_TOKEN_STORE_ENABLED, true);
+	}
+
+	/**
+	 * @return the token, from this node if it is here, otherwise from the space; null if there is no such token
+	 */
+	public AuthToken get(String partOne, String partTwo) {
+		if (!this.isEnabled()) {
+			return this.spaceTokens.get(partOne, partTwo);
+		}
+		this.sweepIfDue();
+
+		String key = key(partOne, partTwo);
+		Shard shard = this.shard(partOne);
+		Entry entry = shard.tokens.get(key);
+		long now = System.currentTimeMillis();
+		if (entry != null) {
+			long deleteCheckMs = SystemProperties.getOptionalLong(AUTH_TOKEN_STORE_DELETE_CHECK_MS,
+					DEFAULT_DELETE_CHECK_MS);
+			if (now - entry.deleteCheckedAt >= deleteCheckMs) {
+				if (this.isDeleted(partOne, key, entry.adoptedAt)) {
+					this.forget(key);
+					return null;
+				}
+				entry.deleteCheckedAt = now;
+			}
+			long verifyMs = SystemProperties.getOptionalLong(AUTH_TOKEN_STORE_VERIFY_MS, DEFAULT_VERIFY_MS);
+			if (now - entry.verifiedAt < verifyMs) {
+				this.hits.incrementAndGet();
+				return entry.token;
+			}
+			return this.verify(shard, entry, now);
+		}
+
+		this.misses.incrementAndGet();
+		AuthToken token = this.spaceTokens.get(partOne, partTwo);
+		if (token == null || this.isDeleted(partOne, key, token.getLastTouched())) {
+			return null;
+		}
+		this.adopt(shard, partOne, partTwo, token, now);
+		return token;
+	}
+
+	/**
+	 * Record a token just created in the space.
+	 */
+	public void created(String partOne, String partTwo, AuthToken token) {
+		if (this.isEnabled()) {
+			this.adopt(this.shard(partOne), partOne, partTwo, token, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Note that the token was used. If it is due an update it is refreshed (if the use was user initiated) and written
+	 * to the space with the next sweep.
+	 */
+	public void touch(String partOne, String partTwo, AuthToken token, boolean userInitiated) {
+		if (!AuthTokenUtils.isUpdateable(token, userInitiated)) {
+			return;
+		}
+		if (userInitiated) {
+			token.refresh();
+		}
+
+		if (!this.isEnabled()) {
+			token.updated();
+			this.spaceTokens.update(partOne, partTwo, token);
+			return;
+		}
+
+		String key = key(partOne, partTwo);
+		Shard shard = this.shard(partOne);
+		Entry entry = shard.tokens.get(key);
+		if (entry == null) {
+			entry = this.adopt(shard, partOne, partTwo, token, System.currentTimeMillis());
+		} else if (entry.token != token) {
+			entry.token.updateFrom(token);
+		}
+		shard.dirty.add(key);
+		this.sweepIfDue();
+	}
+
+	/**
+	 * Delete a token, or all the tokens of a cookie if only the first part is given, from the space and from every
+	 * node; see AuthTokenDeleteCmd.
+	 */
+	public void delete(String token) {
+		if (!this.isEnabled()) {
+			this.spaceTokens.delete(token);
+			return;
+		}
+
+		this.spaceTokens.delete(token);
+		try {
+			long keepMs = 2 * AuthTokenUtils.getAuthTokenTimeoutInterval();
+			this.space.put(SPACE_DELETED_PREFIX + token, Long.valueOf(System.currentTimeMillis()), keepMs,
+					TimeUnit.MILLISECONDS);
+		} catch (SpaceException e) {
+			log.warn("AUTH:: unable to mark token deleted; other nodes notice it within the verify interval", e);
+		}
+		this.forget(token);
+	}
+
+	/**
+	 * Drop a token, or all the tokens of a cookie, from this node only.
+	 */
+	private void forget(String token) {
+		int dash = token.indexOf('-');
+		String partOne = partOne(token);
+		Shard shard = this.shard(partOne);
+		if (dash >= 0) {
+			shard.tokens.remove(token);
+			shard.dirty.remove(token);
+			return;
+		}
+		String prefix = partOne + '-';
+		for (Iterator<String> it = shard.tokens.keySet().iterator(); it.hasNext();) {
+			String key = it.next();
+			if (key.startsWith(prefix)) {
+				it.remove();
+				shard.dirty.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Age the tokens in the slots that have come due and write the dirty tokens to the space. Run by
+	 * AuthTokenStoreSweepCmd; call sweepDone() afterwards.
+	 */
+	void sweep() {
+		long now = System.currentTimeMillis();
+		long tickMs = getTickMs();
+		long currentTick = now / tickMs;
+		long timeout = AuthTokenUtils.getAuthTokenTimeoutInterval();
+
+		int expired = 0;
+		List<Entry> batch = new ArrayList<Entry>();
+		for (Shard shard : this.shards) {
+			for (Entry entry : shard.due(currentTick)) {
+				AuthToken token = entry.token;
+				boolean wasActive = token.isActive();
+				AuthTokenUtils.updateState(token);
+				long dueAt;
+				if (token.isActive()) {
+					dueAt = token.getLastTouched() + timeout;
+				} else if (token.isZombie()) {
+					dueAt = token.getLastTouched() + 2 * timeout;
+				} else {
+					dueAt = 0;
+				}
+
+				if (dueAt > now) {
+					shard.schedule(entry, Math.max(currentTick + 1, dueAt / tickMs));
+					if (wasActive && !token.isActive()) {
+						// Let the other nodes know it has become a zombie
+						shard.dirty.add(entry.key);
+					}
+				} else {
+					shard.tokens.remove(entry.key);
+					shard.dirty.remove(entry.key);
+					expired++;
+				}
+			}
+			this.takeDirty(shard, batch);
+		}
+		int written = this.write(batch);
+
+		this.expirations.addAndGet(expired);
+		this.spaceWrites.addAndGet(written);
+		if (expired > 0 || written > 0) {
+			log.debug("AUTH:: token sweep; expired:{}, written:{}", expired, written);
+		}
+	}
+
+	void sweepDone() {
+		this.nextSweep = System.currentTimeMillis() + getTickMs();
+		this.sweeping.set(false);
+	}
+
+	public int size() {
+		int size = 0;
+		for (Shard shard : this.shards) {
+			size += shard.tokens.size();
+		}
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "AuthTokenStore[size=" + this.size() + ", hits=" + this.hits + ", misses=" + this.misses
+				+ ", spaceWrites=" + this.spaceWrites + ", expirations=" + this.expirations + "]";
+	}
+
+	/**
+	 * Take the shard's dirty tokens for the sweep to write.
+	 */
+	private void takeDirty(Shard shard, List<Entry> batch) {
+		for (Iterator<String> it = shard.dirty.iterator(); it.hasNext();) {
+			String key = it.next();
+			it.remove();
+			Entry entry = shard.tokens.get(key);
+			if (entry != null) {
+				batch.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Write the sweep's batch of dirty tokens to the space. The ones not written when a write fails are marked dirty
+	 * again for the next sweep.
+	 *
+	 * @return the number written
+	 */
+	private int write(List<Entry> batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			Entry entry = batch.get(i);
+			try {
+				entry.token.updated();
+				this.spaceTokens.update(entry.partOne, entry.partTwo, entry.token);
+			} catch (RuntimeException e) {
+				log.warn("AUTH:: unable to write tokens to the space; will retry: " + (batch.size() - i) + " tokens",
+						e);
+				for (Entry retry : batch.subList(i, batch.size())) {
+					this.shard(retry.partOne).dirty.add(retry.key);
+				}
+				return i;
+			}
+		}
+		return batch.size();
+	}
+
+	/**
+	 * @param since when the token was last known to be live; a cookie deleted before then has been logged into again
+	 * @return true if the token, or its whole cookie, has been deleted on any node; false if that can't be told
+	 */
+	private boolean isDeleted(String partOne, String key, long since) {
+		try {
+			if (this.space.getAsType(SPACE_DELETED_PREFIX + key, Long.class) != null) {
+				return true;
+			}
+			Long cookieDeleted = this.space.getAsType(SPACE_DELETED_PREFIX + partOne, Long.class);
+			return cookieDeleted != null && cookieDeleted.longValue() >= since;
+		} catch (SpaceException e) {
+			log.warn("AUTH:: unable to check for token deletes; relying on the verify interval", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Check the local copy against the space: a token that is gone there was deleted or expired elsewhere, and one
+	 * touched more recently there was used on another node.
+	 */
+	private AuthToken verify(Shard shard, Entry entry, long now) {
+		this.misses.incrementAndGet();
+		AuthToken spaceToken = this.spaceTokens.get(entry.partOne, entry.partTwo);
+		if (spaceToken == null) {
+			shard.tokens.remove(entry.key);
+			shard.dirty.remove(entry.key);
+			return null;
+		}
+		if (spaceToken.getLastTouched() > entry.token.getLastTouched()) {
+			entry.token.updateFrom(spaceToken);
+		}
+		entry.verifiedAt = now;
+		return entry.token;
+	}
+
+	private Entry adopt(Shard shard, String partOne, String partTwo, AuthToken token, long now) {
+		Entry entry = new Entry(partOne, partTwo, token, now);
+		Entry existing = shard.tokens.putIfAbsent(entry.key, entry);
+		if (existing != null) {
+			return existing;
+		}
+		long tickMs = getTickMs();
+		shard.schedule(entry, Math.max(now / tickMs + 1, (token.getLastTouched()
+				+ AuthTokenUtils.getAuthTokenTimeoutInterval()) / tickMs));
+		return entry;
+	}
+
+	private void sweepIfDue() {
+		if (System.currentTimeMillis() < this.nextSweep || !this.sweeping.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.runtime.runAsync(new AuthTokenStoreSweepCmd(), this.auth.getSystemSession());
+		} catch (CommandException e) {
+			this.sweepDone();
+			log.warn("AUTH:: unable to start token sweep", e);
+		} catch (RuntimeException e) {
+			this.sweepDone();
+			log.warn("AUTH:: unable to start token sweep", e);
+		}
+	}
+
+	private Shard shard(String partOne) {
+		return this.shards[(partOne.hashCode() & Integer.MAX_VALUE) % SHARDS];
+	}
+
+	private static String partOne(String token) {
+		int dash = token.indexOf('-');
+		return (dash < 0) ? token : token.substring(0, dash);
+	}
+
+	private static String key(String partOne, String partTwo) {
+		return partOne + '-' + partTwo;
+	}
+
+	private static long getTickMs() {
+		return Math.max(1, SystemProperties.getOptionalLong(AUTH_TOKEN_STORE_TICK_MS, DEFAULT_TICK_MS));
+	}
+
+	private static class Entry {
+
+		final String key;
+		final String partOne;
+		final String partTwo;
+		final AuthToken token;
+		final long adoptedAt;
+		volatile long verifiedAt;
+		volatile long deleteCheckedAt;
+		long tick; // guarded by the shard
+
+		Entry(String partOne, String partTwo, AuthToken token, long now) {
+			this.key = key(partOne, partTwo);
+			this.partOne = partOne;
+			this.partTwo = partTwo;
+			this.token = token;
+			this.adoptedAt = now;
+			this.verifiedAt = now;
+			this.deleteCheckedAt = now;
+		}
+	}
+
+	private static class Shard {
+
+		final ConcurrentMap<String, Entry> tokens = new ConcurrentHashMap<String, Entry>();
+		final Set<String> dirty = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		// The timing wheel; guarded by this
+		@SuppressWarnings("unchecked")
+		private final Set<Entry>[] slots = new Set[WHEEL_SLOTS];
+		private long sweptTick = -1;
+
+		synchronized void schedule(Entry entry, long tick) {
+			entry.tick = tick;
+			int slot = (int) (tick % WHEEL_SLOTS);
+			if (this.slots[slot] == null) {
+				this.slots[slot] = new HashSet<Entry>();
+			}
+			this.slots[slot].add(entry);
+		}
+
+		/**
+		 * @return the entries due by the given tick, taken off the wheel; entries that were dropped are skipped
+		 */
+		synchronized List<Entry> due(long currentTick) {
+			List<Entry> rv = new ArrayList<Entry>();
+			long from = (this.sweptTick < 0) ? currentTick : this.sweptTick + 1;
+			// Behind by more than a turn, every slot has to be looked at once
+			from = Math.max(from, currentTick - WHEEL_SLOTS + 1);
+			for (long tick = from; tick <= currentTick; tick++) {
+				Set<Entry> slot = this.slots[(int) (tick % WHEEL_SLOTS)];
+				if (slot == null) {
+					continue;
+				}
+				for (Iterator<Entry> it = slot.iterator(); it.hasNext();) {
+					Entry entry = it.next();
+					if (this.tokens.get(entry.key) != entry) {
+						it.remove();
+					} else if (entry.tick <= currentTick) {
+						it.remove();
+						rv.add(entry);
+					}
+				}
+			}
+			this.sweptTick = currentTick;
+			return rv;
+		}
+	}
+}
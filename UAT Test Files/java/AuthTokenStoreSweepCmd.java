@@ -0,0 +1,26 @@
+package com.code42.auth;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.AbstractCmd;
+import com.google.inject.Inject;
+
+/**
+ * One AuthTokenStore sweep: ages the tokens that have come due and writes the dirty ones to the space. Started by the
+ * store itself once a tick.
+ */
+public class AuthTokenStoreSweepCmd extends AbstractCmd<Void> {
+
+	@Inject
+	private AuthTokenStore store;
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		try {
+			this.store.sweep();
+		} finally {
+			this.store.sweepDone();
+		}
+		return null;
+	}
+}
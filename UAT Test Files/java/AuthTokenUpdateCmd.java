@@ -1,23 +1,23 @@
 package com.code42.auth;
 
 import com.code42.core.CommandException;
-import com.code42.core.auth.IAuthTokenService;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.DBCmd;
 import com.google.inject.Inject;
 
 /**
  * Replace the current contents of the token in the space with this the given values, if and only if an update is due.
+ * The write itself is made by the next AuthTokenStore sweep, together with every other token due one.
  */
 public class AuthTokenUpdateCmd extends DBCmd<Void> {
 
 	/* ============ Dependencies ========== */
-	private IAuthTokenService authToken;
+	private AuthTokenStore store;
 
 	/* ============ Injection points ======== */
 	@Inject
-	public void setAuthToken(IAuthTokenService authToken) {
-		this.authToken = authToken;
+	public void setStore(AuthTokenStore store) {
+		this.store = store;
 	}
 
 	private final String keyPartOne;
@@ -35,17 +35,7 @@ public class AuthTokenUpdateCmd extends DBCmd<Void> {
 
 	@Override
 	public Void exec(CoreSession session) throws CommandException {
-
-		if (AuthTokenUtils.isUpdateable(this.token, this.userInitiated)) {
-
-			this.token.updated();
-			if (this.userInitiated) {
-				this.token.refresh();
-			}
-
-			this.authToken.update(this.keyPartOne, this.keyPartTwo, this.token);
-
-		}
+		this.store.touch(this.keyPartOne, this.keyPartTwo, this.token, this.userInitiated);
 		return null;
 	}
 
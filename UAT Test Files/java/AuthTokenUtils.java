@@ -133,7 +133,7 @@ public class AuthTokenUtils implements Serializable {
 	 * 
 	 * @return
 	 */
-	private static long getAuthTokenTimeoutInterval() {
+	static long getAuthTokenTimeoutInterval() {
 		long now = System.currentTimeMillis();
 		if (now - propertyLastUpdatedTimestamp > propertyRefreshInterval) {
 			updateProps();
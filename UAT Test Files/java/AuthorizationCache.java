@@ -0,0 +1,203 @@
+package com.code42.auth;
+
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.space.ISpaceService;
+import com.code42.util.SpaceInvalidator;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Remembers the answers of the Is*ManageableCmd checks (see IsManageableCmd and IsManageableBulkCmd) keyed by
+ * session, permission and entity, so the same session asking about the same computer, user or org again doesn't
+ * resolve the hierarchy and roles from scratch. Denials are cached too. Answers are never shared between sessions,
+ * not even two of the same user, since a session's authorization (a system session, its authorized orgs) is not only
+ * a matter of who its user is. Sessions are held weakly; the answers of one that has been let go are dropped on the
+ * next get() or put().<br>
+ * <br>
+ * Role changes and user and org moves run AuthorizationCacheInvalidateCmd once they commit. That clears this node's
+ * cache right away and the other nodes' on their next check (see SpaceInvalidator). A decision worked out while an
+ * invalidation happened is not stored (see getVersion()). The TTL bounds how stale an answer can get if that is ever
+ * missed.
+ */
+@Singleton
+public class AuthorizationCache {
+
+	static final String AUTH_CACHE_MAX_SIZE = "c42.authCache.maxSize";
+	static final String AUTH_CACHE_TTL_MS = "c42.authCache.ttl.ms";
+	static final String AUTH_CACHE_GENERATION_CHECK_MS = "c42.authCache.generationCheck.ms";
+
+	static final int DEFAULT_MAX_SIZE = 50000;
+	static final long DEFAULT_TTL_MS = 5 * Time.MINUTE;
+
+	public enum Type {
+		COMPUTER, USER, ORG
+	}
+
+	private final SpaceInvalidator invalidator = new SpaceInvalidator("/auth/cache", AUTH_CACHE_GENERATION_CHECK_MS,
+			new SpaceInvalidator.Listener() {
+
+				public void invalidate(Serializable key) {
+					AuthorizationCache.this.clear();
+				}
+
+				public void invalidateAll() {
+					AuthorizationCache.this.clear();
+				}
+			});
+
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.invalidator.setSpaceService(space);
+	}
+
+	// The keys of sessions that have been collected
+	private final ReferenceQueue<CoreSession> collected = new ReferenceQueue<CoreSession>();
+
+	// Guarded by itself
+	private final Map<DecisionKey, CachedDecision> decisions = new LinkedHashMap<DecisionKey, CachedDecision>(64,
+			0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<DecisionKey, CachedDecision> eldest) {
+			return this.size() > SystemProperties.getOptionalInt(AUTH_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE);
+		}
+	};
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalLong(AUTH_CACHE_TTL_MS, DEFAULT_TTL_MS) > 0;
+	}
+
+	/**
+	 * @return the cached decision, or null if there is none (or it has expired)
+	 */
+	Boolean get(CoreSession session, Type type, IPermission permission, long id) {
+		this.invalidator.check();
+		DecisionKey key = new DecisionKey(session, type, permission, id, null);
+		CachedDecision cached;
+		synchronized (this.decisions) {
+			this.expunge();
+			cached = this.decisions.get(key);
+			if (cached != null && cached.expires < System.currentTimeMillis()) {
+				this.decisions.remove(key);
+				cached = null;
+			}
+		}
+		return (cached != null) ? cached.authorized : null;
+	}
+
+	/**
+	 * @return the version to hand back to put() with a decision worked out from now on
+	 */
+	long getVersion() {
+		return this.invalidator.getVersion();
+	}
+
+	/**
+	 * Cache the decision, unless there has been an invalidation since the given version was read.
+	 */
+	void put(CoreSession session, Type type, IPermission permission, long id, boolean authorized,
+			long decidedAtVersion) {
+		long ttl = SystemProperties.getOptionalLong(AUTH_CACHE_TTL_MS, DEFAULT_TTL_MS);
+		if (ttl <= 0) {
+			return;
+		}
+		synchronized (this.decisions) {
+			this.expunge();
+			if (this.invalidator.isCurrent(decidedAtVersion)) {
+				this.decisions.put(new DecisionKey(session, type, permission, id, this.collected), new CachedDecision(
+						authorized, System.currentTimeMillis() + ttl));
+			}
+		}
+	}
+
+	/**
+	 * Forget every decision, on every node. Run AuthorizationCacheInvalidateCmd after a transaction that changes roles
+	 * or where users and orgs sit in the hierarchy, rather than calling this before it commits.
+	 */
+	public void invalidateAll() {
+		this.clear();
+		this.invalidator.publish(null);
+	}
+
+	/**
+	 * Drop the decisions of sessions that have been collected. Call holding the decisions lock.
+	 */
+	private void expunge() {
+		Reference<? extends CoreSession> ref;
+		while ((ref = this.collected.poll()) != null) {
+			this.decisions.remove(ref);
+		}
+	}
+
+	private void clear() {
+		synchronized (this.decisions) {
+			this.invalidator.changed();
+			this.decisions.clear();
+		}
+	}
+
+	/**
+	 * Compares sessions by identity, and holds them weakly so the cache never keeps one alive. A key whose session has
+	 * been collected only equals itself, which is enough for expunge() to remove it.
+	 */
+	private static class DecisionKey extends WeakReference<CoreSession> {
+
+		private final Type type;
+		private final IPermission permission;
+		private final long id;
+		private final int hash;
+
+		DecisionKey(CoreSession session, Type type, IPermission permission, long id,
+				ReferenceQueue<CoreSession> queue) {
+			super(session, queue);
+			this.type = type;
+			this.permission = permission;
+			this.id = id;
+			int h = System.identityHashCode(session);
+			h = 31 * h + type.hashCode();
+			h = 31 * h + permission.hashCode();
+			this.hash = 31 * h + (int) (id ^ (id >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof DecisionKey)) {
+				return false;
+			}
+			DecisionKey other = (DecisionKey) o;
+			CoreSession session = this.get();
+			return session != null && session == other.get() && this.type == other.type && this.id == other.id
+					&& this.permission.equals(other.permission);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+	private static class CachedDecision {
+
+		private final boolean authorized;
+		private final long expires;
+
+		CachedDecision(boolean authorized, long expires) {
+			this.authorized = authorized;
+			this.expires = expires;
+		}
+	}
+}
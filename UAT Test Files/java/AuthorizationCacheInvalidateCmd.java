@@ -0,0 +1,22 @@
+package com.code42.auth;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.AbstractCmd;
+import com.google.inject.Inject;
+
+/**
+ * Clears the AuthorizationCache on every node. Run this with db.afterTransaction() from anything that changes roles or
+ * moves users and orgs, so no node can cache a decision against the old state after the cache is cleared.
+ */
+public class AuthorizationCacheInvalidateCmd extends AbstractCmd<Void> {
+
+	@Inject
+	private AuthorizationCache cache;
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		this.cache.invalidateAll();
+		return null;
+	}
+}
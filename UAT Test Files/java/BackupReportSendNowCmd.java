@@ -13,11 +13,11 @@ import java.util.List;
 import com.backup42.alerts.BackupReporter;
 import com.backup42.executor.ExecutorServices;
 import com.backup42.scheduler.SchedulerJob.ServerType;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.BuilderException;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.utils.LangUtils;
 import com.code42.utils.option.None;
@@ -44,7 +44,7 @@ public class BackupReportSendNowCmd extends DBCmd<Void> {
 		// are all set to true values, so will either exist or be overridden.
 		int orgId = this.builder.orgId;
 
-		this.runtime.run(new IsOrgManageableCmd(orgId, C42PermissionApp.Org.READ), session);
+		this.runtime.run(IsManageableCmd.org(orgId, C42PermissionApp.Org.READ), session);
 
 		Boolean includeChildOrgs = this.builder.includeChildOrgs.get();
 		Date periodStartDate = this.builder.periodStartDate;
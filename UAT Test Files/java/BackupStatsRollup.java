@@ -0,0 +1,332 @@
+package com.code42.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.code42.core.CommandException;
+import com.code42.core.ICoreRuntime;
+import com.code42.core.auth.IAuthorizationService;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.Pair;
+import com.code42.utils.Stopwatch;
+import com.code42.utils.SystemProperties;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Local rollup of the backup stats model at three levels: user, org and destination (plus the per-computer figures the
+ * user level is built from). Readers get an immutable, versioned Snapshot and never touch the grid.<br>
+ * <br>
+ * The rollup is hierarchical: when a user's stats change only that user, its org and the destination totals are
+ * summed again, and the destination totals are summed from the org level rather than from every user. Changes come in
+ * through userStatsChanged(), either from code that has a user's new model in hand or from BackupStatsRollupRefreshCmd,
+ * which every refresh interval pulls from the space only the models that differ from this node's copy, and looks up
+ * every user's org again. getSnapshot() starts that refresh in the background whenever the snapshot is out of date, so
+ * readers never wait for it.
+ */
+@Singleton
+public class BackupStatsRollup {
+
+	private static final Logger log = LoggerFactory.getLogger(BackupStatsRollup.class);
+
+	static final String STATS_ROLLUP_ENABLED = "c42.statsRollup.enabled";
+	static final String STATS_ROLLUP_REFRESH_MS = "c42.statsRollup.refresh.ms";
+	static final long DEFAULT_REFRESH_MS = 30000;
+
+	/* ================= Dependencies ================= */
+	private ICoreRuntime runtime;
+	private IAuthorizationService auth;
+
+	/* ================= DI injection points ================= */
+	@Inject
+	public void setRuntime(ICoreRuntime runtime) {
+		this.runtime = runtime;
+	}
+
+	@Inject
+	public void setAuth(IAuthorizationService auth) {
+		this.auth = auth;
+	}
+
+	private final AtomicBoolean refreshing = new AtomicBoolean(false);
+	private volatile Snapshot snapshot = null;
+
+	// All guarded by this
+	private final Map<Integer, UserEntry> users = new HashMap<Integer, UserEntry>();
+	private final Map<Integer, Set<Integer>> orgUsers = new HashMap<Integer, Set<Integer>>();
+	private final Map<Integer, Map<Long, AggregateBackupStats>> orgs = Maps.newHashMap();
+	private final Set<Integer> dirtyUsers = new HashSet<Integer>();
+	private final Set<Integer> dirtyOrgs = new HashSet<Integer>();
+	private Map<Long, Long> spaceToDestination = Collections.emptyMap();
+	private long version = 0;
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalBoolean(STATS_ROLLUP_ENABLED, true);
+	}
+
+	/**
+	 * @return the latest snapshot, or null if the rollup is disabled or has not been built yet; starts a background
+	 *         refresh if the snapshot is out of date
+	 */
+	public Snapshot getSnapshot() {
+		if (!this.isEnabled()) {
+			return null;
+		}
+		Snapshot s = this.snapshot;
+		long refreshMs = SystemProperties.getOptionalLong(STATS_ROLLUP_REFRESH_MS, DEFAULT_REFRESH_MS);
+		if (s == null || System.currentTimeMillis() - s.createdAt > refreshMs) {
+			this.refreshAsync();
+		}
+		return s;
+	}
+
+	/**
+	 * @return the latest snapshot if it is no older than twice the refresh interval, otherwise null
+	 */
+	public Snapshot getFreshSnapshot() {
+		Snapshot s = this.getSnapshot();
+		long refreshMs = SystemProperties.getOptionalLong(STATS_ROLLUP_REFRESH_MS, DEFAULT_REFRESH_MS);
+		return (s != null && System.currentTimeMillis() - s.createdAt <= 2 * refreshMs) ? s : null;
+	}
+
+	private void refreshAsync() {
+		if (!this.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.runtime.runAsync(new BackupStatsRollupRefreshCmd(), this.auth.getSystemSession());
+		} catch (CommandException e) {
+			this.refreshing.set(false);
+			log.warn("StatsRollup:: unable to start refresh", e);
+		} catch (RuntimeException e) {
+			this.refreshing.set(false);
+			log.warn("StatsRollup:: unable to start refresh", e);
+		}
+	}
+
+	void refreshDone() {
+		this.refreshing.set(false);
+	}
+
+	/**
+	 * @return the model of each user the rollup already knows about, so a refresh only pulls the ones that changed
+	 */
+	synchronized Map<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> getKnownModels() {
+		Map<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> rv = Maps.newHashMap();
+		for (Map.Entry<Integer, UserEntry> e : this.users.entrySet()) {
+			rv.put(e.getKey(), e.getValue().model);
+		}
+		return rv;
+	}
+
+	/**
+	 * Records a user's new stats model (keyed by computer GUID and space ID); a null or empty model removes the user.
+	 * Takes effect at the next publish().
+	 */
+	public synchronized void userStatsChanged(int userId, int orgId, Map<Pair<Long, Long>, AggregateBackupStats> model) {
+		UserEntry old = this.users.get(userId);
+		if (model == null || model.isEmpty()) {
+			if (old != null) {
+				this.users.remove(userId);
+				this.removeFromOrg(userId, old.orgId);
+				this.dirtyOrgs.add(old.orgId);
+			}
+			this.dirtyUsers.remove(userId);
+			return;
+		}
+		if (old != null && old.orgId == orgId && model.equals(old.model)) {
+			return;
+		}
+
+		if (old != null && old.orgId != orgId) {
+			this.removeFromOrg(userId, old.orgId);
+			this.dirtyOrgs.add(old.orgId);
+		}
+		this.users.put(userId, new UserEntry(orgId, new HashMap<Pair<Long, Long>, AggregateBackupStats>(model)));
+		Set<Integer> members = this.orgUsers.get(orgId);
+		if (members == null) {
+			members = new HashSet<Integer>();
+			this.orgUsers.put(orgId, members);
+		}
+		members.add(userId);
+		this.dirtyUsers.add(userId);
+		this.dirtyOrgs.add(orgId);
+	}
+
+	/**
+	 * Drops the users that are no longer in the model at all.
+	 */
+	synchronized void retainUsers(Set<Integer> userIds) {
+		for (Integer userId : new ArrayList<Integer>(this.users.keySet())) {
+			if (!userIds.contains(userId)) {
+				this.userStatsChanged(userId, 0, null);
+			}
+		}
+	}
+
+	/**
+	 * Sums what has changed since the last publish and makes it visible as a new snapshot.
+	 */
+	synchronized Snapshot publish(Map<Long, Long> spaceToDestination) {
+		Stopwatch sw = new Stopwatch();
+		if (!spaceToDestination.equals(this.spaceToDestination)) {
+			// Spaces moved between destinations; everything has to be summed again
+			this.spaceToDestination = new HashMap<Long, Long>(spaceToDestination);
+			this.dirtyUsers.addAll(this.users.keySet());
+			this.dirtyOrgs.addAll(this.orgUsers.keySet());
+		}
+		int changedUsers = this.dirtyUsers.size();
+		int changedOrgs = this.dirtyOrgs.size();
+
+		// Level 1: users
+		for (Integer userId : this.dirtyUsers) {
+			UserEntry user = this.users.get(userId);
+			user.computers = SpaceBoundModelUtils.createComputerToDestinationModel(user.model, this.spaceToDestination);
+			user.destinations = SpaceBoundModelUtils.sumUserSpaceModel(user.model, this.spaceToDestination);
+		}
+		this.dirtyUsers.clear();
+
+		// Level 2: orgs, from their users
+		for (Integer orgId : this.dirtyOrgs) {
+			Set<Integer> members = this.orgUsers.get(orgId);
+			if (members == null) {
+				this.orgs.remove(orgId);
+				continue;
+			}
+			Map<Long, List<AggregateBackupStats>> byDestination = new HashMap<Long, List<AggregateBackupStats>>();
+			for (Integer userId : members) {
+				group(byDestination, this.users.get(userId).destinations);
+			}
+			this.orgs.put(orgId, sum(byDestination));
+		}
+		this.dirtyOrgs.clear();
+
+		// Level 3: destinations, from the orgs
+		Map<Long, List<AggregateBackupStats>> byDestination = new HashMap<Long, List<AggregateBackupStats>>();
+		for (Map<Long, AggregateBackupStats> org : this.orgs.values()) {
+			group(byDestination, org);
+		}
+
+		Map<Long, Map<Long, AggregateBackupStats>> computers = new HashMap<Long, Map<Long, AggregateBackupStats>>();
+		Map<Integer, Map<Long, AggregateBackupStats>> userLevel = new HashMap<Integer, Map<Long, AggregateBackupStats>>();
+		for (Map.Entry<Integer, UserEntry> e : this.users.entrySet()) {
+			computers.putAll(e.getValue().computers);
+			userLevel.put(e.getKey(), e.getValue().destinations);
+		}
+
+		this.snapshot = new Snapshot(++this.version, computers, userLevel,
+				new HashMap<Integer, Map<Long, AggregateBackupStats>>(this.orgs), sum(byDestination));
+		log.debug("StatsRollup:: published version {}; users changed:{}, orgs changed:{}, took {}", this.version,
+				changedUsers, changedOrgs, sw);
+		return this.snapshot;
+	}
+
+	/** Must be called with this locked */
+	private void removeFromOrg(int userId, int orgId) {
+		Set<Integer> members = this.orgUsers.get(orgId);
+		if (members != null) {
+			members.remove(userId);
+			if (members.isEmpty()) {
+				this.orgUsers.remove(orgId);
+			}
+		}
+	}
+
+	private static void group(Map<Long, List<AggregateBackupStats>> byDestination, Map<Long, AggregateBackupStats> stats) {
+		for (Map.Entry<Long, AggregateBackupStats> e : stats.entrySet()) {
+			List<AggregateBackupStats> list = byDestination.get(e.getKey());
+			if (list == null) {
+				list = new ArrayList<AggregateBackupStats>();
+				byDestination.put(e.getKey(), list);
+			}
+			list.add(e.getValue());
+		}
+	}
+
+	private static Map<Long, AggregateBackupStats> sum(Map<Long, List<AggregateBackupStats>> byDestination) {
+		Map<Long, AggregateBackupStats> rv = new HashMap<Long, AggregateBackupStats>();
+		for (Map.Entry<Long, List<AggregateBackupStats>> e : byDestination.entrySet()) {
+			rv.put(e.getKey(), SpaceBoundModelUtils.sumDestinations(e.getValue()));
+		}
+		return rv;
+	}
+
+	private static class UserEntry {
+
+		final int orgId;
+		final Map<Pair<Long, Long>, AggregateBackupStats> model;
+		Map<Long, Map<Long, AggregateBackupStats>> computers;
+		Map<Long, AggregateBackupStats> destinations;
+
+		UserEntry(int orgId, Map<Pair<Long, Long>, AggregateBackupStats> model) {
+			this.orgId = orgId;
+			this.model = model;
+		}
+	}
+
+	/**
+	 * One published version of the rollup. Every map is keyed by destination GUID at the innermost level.
+	 */
+	public static class Snapshot {
+
+		private final long version;
+		private final long createdAt = System.currentTimeMillis();
+		private final Map<Long, Map<Long, AggregateBackupStats>> computers;
+		private final Map<Integer, Map<Long, AggregateBackupStats>> users;
+		private final Map<Integer, Map<Long, AggregateBackupStats>> orgs;
+		private final Map<Long, AggregateBackupStats> destinations;
+
+		Snapshot(long version, Map<Long, Map<Long, AggregateBackupStats>> computers,
+				Map<Integer, Map<Long, AggregateBackupStats>> users, Map<Integer, Map<Long, AggregateBackupStats>> orgs,
+				Map<Long, AggregateBackupStats> destinations) {
+			this.version = version;
+			this.computers = computers;
+			this.users = users;
+			this.orgs = orgs;
+			this.destinations = destinations;
+		}
+
+		public long getVersion() {
+			return this.version;
+		}
+
+		public long getCreatedAt() {
+			return this.createdAt;
+		}
+
+		/**
+		 * @return the computer's stats by destination, or null if it has none
+		 */
+		public Map<Long, AggregateBackupStats> getComputer(long guid) {
+			return unmodifiable(this.computers.get(guid));
+		}
+
+		public Map<Long, AggregateBackupStats> getUser(int userId) {
+			return unmodifiable(this.users.get(userId));
+		}
+
+		public Map<Long, AggregateBackupStats> getOrg(int orgId) {
+			return unmodifiable(this.orgs.get(orgId));
+		}
+
+		public Map<Long, AggregateBackupStats> getDestinations() {
+			return Collections.unmodifiableMap(this.destinations);
+		}
+
+		public AggregateBackupStats getDestination(long destinationGuid) {
+			return this.destinations.get(destinationGuid);
+		}
+
+		private static Map<Long, AggregateBackupStats> unmodifiable(Map<Long, AggregateBackupStats> map) {
+			return (map != null) ? Collections.unmodifiableMap(map) : null;
+		}
+	}
+}
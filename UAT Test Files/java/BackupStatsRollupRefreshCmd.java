@@ -0,0 +1,144 @@
+package com.code42.stats;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.hierarchy.HierarchyNotFoundException;
+import com.code42.core.hierarchy.IHierarchyService;
+import com.code42.core.impl.AbstractCmd;
+import com.code42.core.relation.IRelationService;
+import com.code42.core.space.CoreSpace;
+import com.code42.core.space.ISpaceService;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.Pair;
+import com.code42.utils.Triple;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+
+/**
+ * Bring the BackupStatsRollup up to date with the user backup stats model in the space, then publish a new snapshot.
+ * The map/reduce is given a hash of each model the rollup already has and only sends back the models that differ, so
+ * an unchanged user costs its ID rather than its model. Every user's org is looked up again each time, so a user who
+ * moved to another org is counted there. Started by the rollup itself when its snapshot is out of date.
+ */
+class BackupStatsRollupRefreshCmd extends AbstractCmd<Void> {
+
+	private static final Logger log = LoggerFactory.getLogger(BackupStatsRollupRefreshCmd.class);
+
+	/* ================= Dependencies ================= */
+	private ISpaceService space;
+	private IRelationService relation;
+	private IHierarchyService hier;
+	private BackupStatsRollup rollup;
+
+	/* ================= DI injection points ================= */
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.space = space;
+	}
+
+	@Inject
+	public void setRelationService(IRelationService relation) {
+		this.relation = relation;
+	}
+
+	@Inject
+	public void setHierarchyService(IHierarchyService hier) {
+		this.hier = hier;
+	}
+
+	@Inject
+	public void setRollup(BackupStatsRollup rollup) {
+		this.rollup = rollup;
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		try {
+			Map<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> known = this.rollup.getKnownModels();
+			HashMap<Integer, Integer> knownHashes = new HashMap<Integer, Integer>();
+			for (Map.Entry<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> e : known.entrySet()) {
+				knownHashes.put(e.getKey(), e.getValue().hashCode());
+			}
+
+			// A null model is one that has not changed
+			Map<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> models = this.space.mapReduce(
+					CoreSpace.USER_BACKUP_STATS_MODEL, new Mapper(knownHashes), new Reducer());
+
+			for (Map.Entry<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> e : models.entrySet()) {
+				Map<Pair<Long, Long>, AggregateBackupStats> model = (e.getValue() != null) ? e.getValue() : known.get(e
+						.getKey());
+				if (model == null) {
+					continue;
+				}
+				Integer orgId = this.findOrgId(model);
+				if (orgId == null) {
+					// None of the user's computers is in the hierarchy any more
+					this.rollup.userStatsChanged(e.getKey(), 0, null);
+					continue;
+				}
+				this.rollup.userStatsChanged(e.getKey(), orgId, model);
+			}
+			this.rollup.retainUsers(models.keySet());
+			this.rollup.publish(this.relation.getSpaceDestinationMappings());
+			return null;
+		} catch (Exception e) {
+			throw new CommandException("Error refreshing backup stats rollup", e);
+		} finally {
+			this.rollup.refreshDone();
+		}
+	}
+
+	/**
+	 * @return the org of the user's computers, or null if none of them is in the hierarchy any more
+	 */
+	private Integer findOrgId(Map<Pair<Long, Long>, AggregateBackupStats> model) {
+		for (Pair<Long, Long> key : model.keySet()) {
+			try {
+				Triple<Integer, Integer, Long> hierarchy = this.hier.getHierarchyByGUID(key.getOne());
+				return hierarchy.getOne();
+			} catch (HierarchyNotFoundException e) {
+				log.debug("StatsRollup:: no hierarchy for guid {}", key.getOne());
+			}
+		}
+		return null;
+	}
+
+	private static class Mapper implements
+			com.code42.core.space.mapreduce.Mapper<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> {
+
+		private static final long serialVersionUID = -5318337310214497312L;
+
+		private final HashMap<Integer, Integer> knownHashes;
+
+		Mapper(HashMap<Integer, Integer> knownHashes) {
+			this.knownHashes = knownHashes;
+		}
+
+		public Map<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> map(Map<Object, Object> locals) {
+			Map<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> rv = Maps.newHashMap();
+			for (Object key : locals.keySet()) {
+				if (key instanceof Integer) {
+					Map model = (Map) locals.get(key);
+					Integer knownHash = this.knownHashes.get(key);
+					boolean unchanged = knownHash != null && knownHash.intValue() == model.hashCode();
+					rv.put((Integer) key, unchanged ? null : model);
+				}
+			}
+			return rv;
+		}
+	}
+
+	private static class Reducer
+			implements
+			com.code42.core.space.mapreduce.Reducer<Integer, Map<Pair<Long, Long>, AggregateBackupStats>, Map<Integer, Map<Pair<Long, Long>, AggregateBackupStats>>> {
+
+		public Map<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> reduce(
+				Map<Integer, Map<Pair<Long, Long>, AggregateBackupStats>> map) {
+			return map;
+		}
+	}
+}
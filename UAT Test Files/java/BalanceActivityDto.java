@@ -26,6 +26,12 @@ public class BalanceActivityDto {
 	private Date startDate;
 	private Date endDate;
 
+	// Progress of the scheduler plan emptying the source mount, if there is one
+	private long planBytesMoved;
+	private long planBytesTotal;
+	private long planBytesPerSec;
+	private long planEtaMs = -1;
+
 	public enum Status {
 		RUNNING, FAILED, COMPLETED
 	}
@@ -138,12 +144,48 @@ public class BalanceActivityDto {
 		this.endDate = endDate;
 	}
 
+	public long getPlanBytesMoved() {
+		return this.planBytesMoved;
+	}
+
+	public void setPlanBytesMoved(long planBytesMoved) {
+		this.planBytesMoved = planBytesMoved;
+	}
+
+	public long getPlanBytesTotal() {
+		return this.planBytesTotal;
+	}
+
+	public void setPlanBytesTotal(long planBytesTotal) {
+		this.planBytesTotal = planBytesTotal;
+	}
+
+	public long getPlanBytesPerSec() {
+		return this.planBytesPerSec;
+	}
+
+	public void setPlanBytesPerSec(long planBytesPerSec) {
+		this.planBytesPerSec = planBytesPerSec;
+	}
+
+	/**
+	 * @return the estimated time until the plan finishes, or -1 if unknown
+	 */
+	public long getPlanEtaMs() {
+		return this.planEtaMs;
+	}
+
+	public void setPlanEtaMs(long planEtaMs) {
+		this.planEtaMs = planEtaMs;
+	}
+
 	@Override
 	public String toString() {
 		return "BalanceActivityDto [guid=" + this.guid + ", archiveBytes=" + this.archiveBytes + ", status=" + this.status
 				+ ", srcMountId=" + this.srcMountId + ", srcMountName=" + this.srcMountName + ", srcNodeId=" + this.srcNodeId
 				+ ", srcNodeName=" + this.srcNodeName + ", tgtMountId=" + this.tgtMountId + ", tgtMountName="
 				+ this.tgtMountName + ", tgtNodeId=" + this.tgtNodeId + ", tgtNodeName=" + this.tgtNodeName + ", startDate="
-				+ this.startDate + ", endDate=" + this.endDate + "]";
+				+ this.startDate + ", endDate=" + this.endDate + ", planBytesMoved=" + this.planBytesMoved + ", planBytesTotal="
+				+ this.planBytesTotal + ", planBytesPerSec=" + this.planBytesPerSec + ", planEtaMs=" + this.planEtaMs + "]";
 	}
 }
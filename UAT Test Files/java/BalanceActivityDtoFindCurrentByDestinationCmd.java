@@ -13,6 +13,8 @@ public class BalanceActivityDtoFindCurrentByDestinationCmd extends DBCmd<List<Ba
 	private final long destinationGuid;
 	@Inject
 	private IBalanceActivityService activityService;
+	@Inject
+	private BalanceScheduler scheduler;
 	private List<CurrentActivityBean> activity = null;
 
 	public BalanceActivityDtoFindCurrentByDestinationCmd(long destinationGuid) {
@@ -38,6 +40,8 @@ public class BalanceActivityDtoFindCurrentByDestinationCmd extends DBCmd<List<Ba
 
 		final List<BalanceActivityDto> dtos = this.run(new BalanceActivityDtoFindByCurrentActivityCmd(this.activity),
 				session);
+		this.scheduler.addPlanProgress(dtos);
+		this.scheduler.resumeOnce();
 		return dtos;
 	}
 }
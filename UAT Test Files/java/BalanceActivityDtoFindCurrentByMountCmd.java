@@ -13,6 +13,8 @@ public class BalanceActivityDtoFindCurrentByMountCmd extends DBCmd<List<BalanceA
 	private final int mountId;
 	@Inject
 	private IBalanceActivityService activityService;
+	@Inject
+	private BalanceScheduler scheduler;
 	private List<CurrentActivityBean> activity = null;
 
 	public BalanceActivityDtoFindCurrentByMountCmd(int mountId) {
@@ -38,6 +40,8 @@ public class BalanceActivityDtoFindCurrentByMountCmd extends DBCmd<List<BalanceA
 
 		final List<BalanceActivityDto> dtos = this.run(new BalanceActivityDtoFindByCurrentActivityCmd(this.activity),
 				session);
+		this.scheduler.addPlanProgress(dtos);
+		this.scheduler.resumeOnce();
 		return dtos;
 	}
 }
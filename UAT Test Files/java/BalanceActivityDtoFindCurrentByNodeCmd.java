@@ -13,6 +13,8 @@ public class BalanceActivityDtoFindCurrentByNodeCmd extends DBCmd<List<BalanceAc
 	private final long nodeGuid;
 	@Inject
 	private IBalanceActivityService activityService;
+	@Inject
+	private BalanceScheduler scheduler;
 	private List<CurrentActivityBean> activity = null;
 
 	public BalanceActivityDtoFindCurrentByNodeCmd(long nodeGuid) {
@@ -38,6 +40,8 @@ public class BalanceActivityDtoFindCurrentByNodeCmd extends DBCmd<List<BalanceAc
 
 		final List<BalanceActivityDto> dtos = this.run(new BalanceActivityDtoFindByCurrentActivityCmd(this.activity),
 				session);
+		this.scheduler.addPlanProgress(dtos);
+		this.scheduler.resumeOnce();
 		return dtos;
 	}
 }
@@ -9,13 +9,19 @@ import com.code42.balance.admin.BalanceCommandCancelCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.DBCmd;
+import com.google.inject.Inject;
 
 /**
- * Cancel any active data balance command.
+ * Cancel any active data balance command. Cancelling by dto also stops any BalanceScheduler plan emptying the source
+ * mount.
  */
 public class BalanceCancelCmd extends DBCmd<Void> {
 
 	private final Set<Integer> dataBalanceCommandIds = new HashSet();
+	private final Set<Integer> srcMountIds = new HashSet();
+
+	@Inject
+	private BalanceScheduler scheduler;
 
 	public BalanceCancelCmd(int dataBalanceCommandId) {
 		super();
@@ -25,6 +31,7 @@ public class BalanceCancelCmd extends DBCmd<Void> {
 	public BalanceCancelCmd(List<BalanceCommandDto> dtos) {
 		for (BalanceCommandDto dto : dtos) {
 			this.dataBalanceCommandIds.add(dto.getDataBalanceCommandId());
+			this.srcMountIds.add(dto.getSrcMountId());
 		}
 	}
 
@@ -33,6 +40,11 @@ public class BalanceCancelCmd extends DBCmd<Void> {
 
 		this.auth.isAuthorized(session, C42PermissionPro.System.SYSTEM_SETTINGS);
 
+		// Stop the plans first so they do not start more moves as their current ones are cancelled
+		for (Integer srcMountId : this.srcMountIds) {
+			this.scheduler.cancel(srcMountId);
+		}
+
 		try {
 			this.db.beginTransaction();
 
@@ -5,15 +5,20 @@ import com.code42.balance.admin.MountEmptyCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.DBCmd;
+import com.google.inject.Inject;
 
 /**
- * Empty one mount to another.
+ * Empty one mount to another. With the BalanceScheduler enabled the archives are moved several at a time in the
+ * background by BalancePlanRunCmd; otherwise the balancer empties the mount one archive at a time.
  */
 public class BalanceMountToMountCmd extends DBCmd<Void> {
 
 	private final int srcMountId;
 	private final int tgtMountId;
 
+	@Inject
+	private BalanceScheduler scheduler;
+
 	public BalanceMountToMountCmd(int srcMountId, int tgtMountId) {
 		super();
 		this.srcMountId = srcMountId;
@@ -25,7 +30,12 @@ public class BalanceMountToMountCmd extends DBCmd<Void> {
 
 		this.auth.isAuthorized(session, C42PermissionPro.System.SYSTEM_SETTINGS);
 
-		this.run(new MountEmptyCmd(this.srcMountId, this.tgtMountId), session);
+		if (this.scheduler.isEnabled()) {
+			this.scheduler.resumeOnce();
+			this.runtime.runAsync(new BalancePlanRunCmd(this.srcMountId, this.tgtMountId), session);
+		} else {
+			this.run(new MountEmptyCmd(this.srcMountId, this.tgtMountId), session);
+		}
 
 		return null;
 	}
@@ -0,0 +1,282 @@
+package com.code42.balance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import com.code42.balance.BalanceSettingsDto.Order;
+
+/**
+ * The archives still to be moved from one mount to another, in the order they will be moved, and how far the plan has
+ * come. A plan is checkpointed to a small properties file after every move so a restarted server picks it up where it
+ * left off; archives that were mid-move at the time are simply moved again.
+ *
+ * @see BalanceScheduler
+ * @see BalancePlanRunCmd
+ */
+public class BalancePlan {
+
+	static final int VERSION = 1;
+
+	private final int srcMountId;
+	private final int tgtMountId;
+	private final Order order;
+
+	// All guarded by this
+	private final LinkedList<Item> pending = new LinkedList<Item>();
+	private final Set<Item> inFlight = new LinkedHashSet<Item>();
+	private long bytesTotal = 0;
+	private long bytesMoved = 0;
+	private int failed = 0;
+
+	// This run only, for the rate
+	private final long startMs = System.currentTimeMillis();
+	private long bytesMovedThisRun = 0;
+
+	private volatile boolean cancelled = false;
+
+	public BalancePlan(int srcMountId, int tgtMountId, Order order, List<Item> items) {
+		this.srcMountId = srcMountId;
+		this.tgtMountId = tgtMountId;
+		this.order = order;
+
+		List<Item> sorted = new ArrayList<Item>(items);
+		Collections.sort(sorted, (order == Order.OLDEST_FIRST) ? OLDEST_FIRST : SMALLEST_FIRST);
+		this.pending.addAll(sorted);
+		for (Item item : sorted) {
+			this.bytesTotal += item.bytes;
+		}
+	}
+
+	public int getSrcMountId() {
+		return this.srcMountId;
+	}
+
+	public int getTgtMountId() {
+		return this.tgtMountId;
+	}
+
+	public Order getOrder() {
+		return this.order;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * @return the next archive to move, or null if there is none
+	 */
+	synchronized Item next() {
+		Item item = this.pending.poll();
+		if (item != null) {
+			this.inFlight.add(item);
+		}
+		return item;
+	}
+
+	synchronized void moved(Item item) {
+		this.inFlight.remove(item);
+		this.bytesMoved += item.bytes;
+		this.bytesMovedThisRun += item.bytes;
+	}
+
+	/**
+	 * The archive is dropped from the plan; it is left for the regular balancer or a later plan.
+	 */
+	synchronized void failed(Item item) {
+		this.inFlight.remove(item);
+		this.bytesTotal -= item.bytes;
+		this.failed++;
+	}
+
+	public synchronized int getRemaining() {
+		return this.pending.size() + this.inFlight.size();
+	}
+
+	public synchronized int getFailed() {
+		return this.failed;
+	}
+
+	public synchronized long getBytesTotal() {
+		return this.bytesTotal;
+	}
+
+	public synchronized long getBytesMoved() {
+		return this.bytesMoved;
+	}
+
+	public synchronized long getBytesPerSec() {
+		long elapsedMs = System.currentTimeMillis() - this.startMs;
+		return (elapsedMs <= 0) ? 0 : this.bytesMovedThisRun * 1000 / elapsedMs;
+	}
+
+	/**
+	 * @return the estimated time to finish at the rate of this run, or -1 until something has been moved
+	 */
+	public synchronized long getEtaMs() {
+		long bytesPerSec = this.getBytesPerSec();
+		if (bytesPerSec <= 0) {
+			return -1;
+		}
+		return Math.max(0, this.bytesTotal - this.bytesMoved) * 1000 / bytesPerSec;
+	}
+
+	/* ========================== Checkpoints ========================== */
+
+	static String getFileName(int srcMountId) {
+		return "plan-" + srcMountId + ".properties";
+	}
+
+	/**
+	 * Writes the plan to dir, replacing the last checkpoint.
+	 */
+	synchronized void write(File dir) throws IOException {
+		Properties props = new Properties();
+		props.setProperty("version", String.valueOf(VERSION));
+		props.setProperty("srcMountId", String.valueOf(this.srcMountId));
+		props.setProperty("tgtMountId", String.valueOf(this.tgtMountId));
+		props.setProperty("order", this.order.name());
+		props.setProperty("bytesTotal", String.valueOf(this.bytesTotal));
+		props.setProperty("bytesMoved", String.valueOf(this.bytesMoved));
+		props.setProperty("failed", String.valueOf(this.failed));
+
+		// In-flight moves go first so they are the first redone
+		List<Item> remaining = new ArrayList<Item>(this.inFlight);
+		remaining.addAll(this.pending);
+		props.setProperty("items", String.valueOf(remaining.size()));
+		for (int i = 0; i < remaining.size(); i++) {
+			Item item = remaining.get(i);
+			props.setProperty("item." + i, item.guid + "," + item.bytes + "," + item.created);
+		}
+
+		dir.mkdirs();
+		File file = new File(dir, getFileName(this.srcMountId));
+		File tmp = new File(dir, file.getName() + ".tmp");
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp));
+		try {
+			props.store(os, "Balance plan");
+		} finally {
+			os.close();
+		}
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				throw new IOException("Unable to move balance plan into place: " + file);
+			}
+		}
+	}
+
+	/**
+	 * @return the checkpointed plan, or null if the file is missing or was written by an incompatible version
+	 */
+	static BalancePlan read(File file) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		Properties props = new Properties();
+		InputStream is = new BufferedInputStream(new FileInputStream(file));
+		try {
+			props.load(is);
+		} finally {
+			is.close();
+		}
+		if (!String.valueOf(VERSION).equals(props.getProperty("version"))) {
+			return null;
+		}
+
+		try {
+			int count = Integer.parseInt(props.getProperty("items"));
+			List<Item> items = new ArrayList<Item>(count);
+			for (int i = 0; i < count; i++) {
+				String[] parts = props.getProperty("item." + i).split(",");
+				items.add(new Item(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+			}
+
+			// Keep the checkpointed order rather than sorting again
+			BalancePlan plan = new BalancePlan(Integer.parseInt(props.getProperty("srcMountId")), Integer.parseInt(props
+					.getProperty("tgtMountId")), Order.valueOf(props.getProperty("order")), Collections.<Item> emptyList());
+			plan.pending.addAll(items);
+			plan.bytesTotal = Long.parseLong(props.getProperty("bytesTotal"));
+			plan.bytesMoved = Long.parseLong(props.getProperty("bytesMoved"));
+			plan.failed = Integer.parseInt(props.getProperty("failed"));
+			return plan;
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt balance plan: " + file, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BalancePlan [srcMountId=" + this.srcMountId + ", tgtMountId=" + this.tgtMountId + ", order=" + this.order
+				+ ", remaining=" + this.getRemaining() + ", bytesMoved=" + this.getBytesMoved() + "/" + this.getBytesTotal()
+				+ ", failed=" + this.getFailed() + ", cancelled=" + this.cancelled + "]";
+	}
+
+	/**
+	 * One archive to move.
+	 */
+	public static class Item {
+
+		final long guid;
+		final long bytes;
+		final long created;
+
+		public Item(long guid, long bytes, long created) {
+			this.guid = guid;
+			this.bytes = bytes;
+			this.created = created;
+		}
+
+		public long getGuid() {
+			return this.guid;
+		}
+
+		public long getBytes() {
+			return this.bytes;
+		}
+
+		@Override
+		public String toString() {
+			return "Item [guid=" + this.guid + ", bytes=" + this.bytes + "]";
+		}
+	}
+
+	private static final Comparator<Item> SMALLEST_FIRST = new Comparator<Item>() {
+
+		public int compare(Item o1, Item o2) {
+			if (o1.bytes != o2.bytes) {
+				return (o1.bytes < o2.bytes) ? -1 : 1;
+			}
+			return (o1.guid < o2.guid) ? -1 : ((o1.guid == o2.guid) ? 0 : 1);
+		}
+	};
+
+	private static final Comparator<Item> OLDEST_FIRST = new Comparator<Item>() {
+
+		public int compare(Item o1, Item o2) {
+			if (o1.created != o2.created) {
+				return (o1.created < o2.created) ? -1 : 1;
+			}
+			return (o1.guid < o2.guid) ? -1 : ((o1.guid == o2.guid) ? 0 : 1);
+		}
+	};
+}
@@ -0,0 +1,46 @@
+package com.code42.balance;
+
+import java.util.List;
+
+import com.backup42.common.perm.C42PermissionPro;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.DBCmd;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.google.inject.Inject;
+
+/**
+ * Restart, in the background, every balance plan that was checkpointed when the server last stopped. Run once per
+ * server start by BalanceScheduler.resumeOnce(); returns the number of plans resumed.
+ */
+public class BalancePlanResumeCmd extends DBCmd<Integer> {
+
+	private static final Logger log = LoggerFactory.getLogger(BalancePlanResumeCmd.class);
+
+	@Inject
+	private BalanceScheduler scheduler;
+
+	@Override
+	public Integer exec(CoreSession session) throws CommandException {
+
+		this.auth.isAuthorized(session, C42PermissionPro.System.SYSTEM_SETTINGS);
+
+		if (!this.scheduler.isEnabled()) {
+			return 0;
+		}
+
+		int resumed = 0;
+		List<Integer> mountIds = this.scheduler.findCheckpointedMounts();
+		for (Integer srcMountId : mountIds) {
+			BalancePlan plan = this.scheduler.readCheckpoint(srcMountId);
+			if (plan == null) {
+				continue;
+			}
+			log.info("Balance:: resuming {}", plan);
+			this.runtime.runAsync(new BalancePlanRunCmd(plan.getSrcMountId(), plan.getTgtMountId()), session);
+			resumed++;
+		}
+		return resumed;
+	}
+}
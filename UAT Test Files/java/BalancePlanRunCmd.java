@@ -0,0 +1,272 @@
+package com.code42.balance;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.hibernate.Session;
+
+import com.backup42.common.perm.C42PermissionPro;
+import com.code42.balance.admin.ArchiveMoveToMountCmd;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.core.impl.DBCmd;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.sql.SQLQuery;
+import com.code42.utils.Pair;
+import com.code42.utils.Stopwatch;
+import com.code42.utils.SystemProperties;
+import com.google.inject.Inject;
+
+/**
+ * Empty one mount to another by moving its archives several at a time, within the I/O budget of both mounts. A plan
+ * that was checkpointed for the source mount (because the server stopped part way through) is resumed rather than
+ * started over.<br>
+ * <br>
+ * ArchiveMoveToMountCmd only queues the move with the balancer, so each move runs as a BalanceMoveCmd that waits for
+ * its balance command to complete. Only then is its slot freed, its bytes counted as moved and the checkpoint advanced;
+ * a move that fails gives its bytes back to the budget of both mounts.
+ *
+ * @see BalanceScheduler
+ */
+public class BalancePlanRunCmd extends DBCmd<Void> {
+
+	private static final Logger log = LoggerFactory.getLogger(BalancePlanRunCmd.class);
+
+	private final int srcMountId;
+	private final int tgtMountId;
+
+	@Inject
+	private BalanceScheduler scheduler;
+
+	public BalancePlanRunCmd(int srcMountId, int tgtMountId) {
+		super();
+		this.srcMountId = srcMountId;
+		this.tgtMountId = tgtMountId;
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+
+		this.auth.isAuthorized(session, C42PermissionPro.System.SYSTEM_SETTINGS);
+
+		final BalanceSettingsDto settings = new BalanceSettingsDto();
+		BalanceScheduler.loadSettings(settings);
+
+		BalancePlan plan = this.scheduler.readCheckpoint(this.srcMountId);
+		if (plan != null && plan.getTgtMountId() != this.tgtMountId) {
+			log.info("Balance:: replacing checkpointed plan {}", plan);
+			plan = null;
+		}
+		if (plan == null) {
+			List<BalancePlan.Item> items = this.db.find(new BalancePlanItemsQuery(this.srcMountId));
+			plan = new BalancePlan(this.srcMountId, this.tgtMountId, settings.getOrder(), items);
+		}
+
+		if (!this.scheduler.start(plan)) {
+			log.info("Balance:: mount {} is already being emptied", this.srcMountId);
+			return null;
+		}
+
+		Stopwatch sw = new Stopwatch();
+		log.info("Balance:: START {} with settings {}", plan, settings);
+		this.scheduler.checkpoint(plan);
+
+		LinkedList<Pair<BalancePlan.Item, Future<?>>> inFlight = new LinkedList<Pair<BalancePlan.Item, Future<?>>>();
+		boolean interrupted = false;
+		try {
+			BalancePlan.Item item;
+			while (!plan.isCancelled() && (item = plan.next()) != null) {
+				while (inFlight.size() >= settings.getMaxConcurrentMoves()) {
+					this.awaitOldest(plan, inFlight);
+				}
+
+				long waitMs = this.scheduler.reserve(this.srcMountId, this.tgtMountId, item.getBytes(), settings
+						.getMountBytesPerSec());
+				if (waitMs > 0) {
+					Thread.sleep(waitMs);
+				}
+
+				Future<?> future = this.runtime.runAsync(new BalanceMoveCmd(item.getGuid(), this.srcMountId,
+						this.tgtMountId), session);
+				inFlight.add(new Pair<BalancePlan.Item, Future<?>>(item, future));
+			}
+			while (!inFlight.isEmpty()) {
+				this.awaitOldest(plan, inFlight);
+			}
+		} catch (InterruptedException e) {
+			// The server is stopping; leave the checkpoint so the plan resumes
+			interrupted = true;
+			Thread.currentThread().interrupt();
+		} finally {
+			for (Pair<BalancePlan.Item, Future<?>> pair : inFlight) {
+				pair.getTwo().cancel(true);
+			}
+			if (!interrupted) {
+				this.scheduler.deleteCheckpoint(plan);
+			}
+			this.scheduler.finish(plan);
+		}
+
+		log.info("Balance:: {} {} in {}", (interrupted ? "INTERRUPTED" : (plan.isCancelled() ? "CANCELLED" : "DONE")),
+				plan, sw);
+		return null;
+	}
+
+	private void awaitOldest(BalancePlan plan, LinkedList<Pair<BalancePlan.Item, Future<?>>> inFlight)
+			throws InterruptedException {
+		Pair<BalancePlan.Item, Future<?>> pair = inFlight.removeFirst();
+		try {
+			pair.getTwo().get();
+			plan.moved(pair.getOne());
+		} catch (ExecutionException e) {
+			log.warn("Balance:: unable to move {} from mount {} to mount {}", pair.getOne(), this.srcMountId,
+					this.tgtMountId, e.getCause());
+			plan.failed(pair.getOne());
+			this.scheduler.release(this.srcMountId, this.tgtMountId, pair.getOne().getBytes());
+		}
+		this.scheduler.checkpoint(plan);
+	}
+
+	/**
+	 * Moves one archive and waits until the balancer has actually moved it, polling its balance command until that is
+	 * no longer active. Fails if the balance command is cancelled.
+	 */
+	private static class BalanceMoveCmd extends DBCmd<Void> {
+
+		private final long guid;
+		private final int srcMountId;
+		private final int tgtMountId;
+
+		public BalanceMoveCmd(long guid, int srcMountId, int tgtMountId) {
+			super();
+			this.guid = guid;
+			this.srcMountId = srcMountId;
+			this.tgtMountId = tgtMountId;
+		}
+
+		@Override
+		public Void exec(CoreSession session) throws CommandException {
+
+			// Only a balance command newer than any earlier move of the same archive is this move's
+			final Object[] before = this.db.find(new BalanceMoveStatusQuery(this.guid, this.srcMountId,
+					this.tgtMountId, null));
+			final Integer afterId = (before != null) ? (Integer) before[0] : null;
+
+			this.run(new ArchiveMoveToMountCmd(this.guid, this.srcMountId, this.tgtMountId), session);
+
+			final long pollMs = Math.max(1, SystemProperties.getOptionalLong(BalanceScheduler.BALANCE_MOVE_POLL_MS,
+					BalanceScheduler.DEFAULT_MOVE_POLL_MS));
+			while (true) {
+				final Object[] row = this.db.find(new BalanceMoveStatusQuery(this.guid, this.srcMountId,
+						this.tgtMountId, afterId));
+				if (row == null) {
+					// Nothing was queued; ArchiveMoveToMountCmd moved the archive itself (or it was already there)
+					return null;
+				}
+				if ((Boolean) row[2]) {
+					throw new CommandException("Balance:: move of {} was cancelled", this.guid);
+				}
+				if (!(Boolean) row[1]) {
+					return null;
+				}
+				try {
+					Thread.sleep(pollMs);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new CommandException("Balance:: interrupted waiting for the move of {}", this.guid);
+				}
+			}
+		}
+	}
+
+	/**
+	 * [data_balance_command_id, active, cancelled] of the newest balance command moving an archive between two mounts,
+	 * optionally only one newer than the given id; null if there is none.
+	 */
+	private static class BalanceMoveStatusQuery extends FindQuery<Object[]> {
+
+		private static final String SQL = ""
+				+ "select dbc.data_balance_command_id, dbc.active, dbc.cancelled                   \n"
+				+ "from t_data_balance_command dbc                                                 \n"
+				+ "where dbc.guid = :guid                                                          \n"
+				+ "  and dbc.mount_point_id = :srcMountId                                          \n"
+				+ "  and dbc.destination_mount_point_id = :tgtMountId                              \n"
+				+ "--afterId  and dbc.data_balance_command_id > :afterId                           \n"
+				+ "order by dbc.data_balance_command_id desc                                       \n"
+				+ "limit 1                                                                         \n";
+
+		private final long guid;
+		private final int srcMountId;
+		private final int tgtMountId;
+		private final Integer afterId;
+
+		public BalanceMoveStatusQuery(long guid, int srcMountId, int tgtMountId, Integer afterId) {
+			super();
+			this.guid = guid;
+			this.srcMountId = srcMountId;
+			this.tgtMountId = tgtMountId;
+			this.afterId = afterId;
+		}
+
+		@Override
+		public Object[] query(Session session) throws DBServiceException {
+
+			final SQLQuery q = new SQLQuery(session, SQL);
+			q.setLong("guid", this.guid);
+			q.setInteger("srcMountId", this.srcMountId);
+			q.setInteger("tgtMountId", this.tgtMountId);
+			if (this.afterId != null) {
+				q.activate("--afterId");
+				q.setInteger("afterId", this.afterId);
+			}
+
+			final List<Object[]> rows = q.list();
+			return rows.isEmpty() ? null : rows.get(0);
+		}
+	}
+
+	/**
+	 * The archives stored on a mount.
+	 */
+	private static class BalancePlanItemsQuery extends FindQuery<List<BalancePlan.Item>> {
+
+		private static final String SQL = ""
+				+ "select c.guid, fcu.archive_bytes, fcu.creation_date                             \n"
+				+ "from t_friend_computer_usage fcu                                                \n"
+				+ "join t_computer c on (c.computer_id = fcu.source_computer_id)                   \n"
+				+ "where fcu.mount_point_id = :mountId                                             \n";
+
+		private final int mountId;
+
+		public BalancePlanItemsQuery(int mountId) {
+			super();
+			this.mountId = mountId;
+		}
+
+		@Override
+		public List<BalancePlan.Item> query(Session session) throws DBServiceException {
+
+			final SQLQuery q = new SQLQuery(session, SQL);
+			q.setInteger("mountId", this.mountId);
+
+			final List<Object[]> rows = q.list();
+
+			final List<BalancePlan.Item> items = new ArrayList(rows.size());
+			for (Object[] row : rows) {
+				final long guid = ((BigInteger) row[0]).longValue();
+				final long bytes = (row[1] != null) ? ((BigInteger) row[1]).longValue() : 0;
+				final long created = (row[2] != null) ? ((Date) row[2]).getTime() : 0;
+				items.add(new BalancePlan.Item(guid, bytes, created));
+			}
+			return items;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package com.code42.balance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.code42.balance.BalanceSettingsDto.Order;
+import com.code42.core.CommandException;
+import com.code42.core.ICoreRuntime;
+import com.code42.core.auth.IAuthorizationService;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Keeps track of the running balance plans (one per source mount) and the I/O budget of every mount they touch.<br>
+ * <br>
+ * A mount's budget is a byte allowance that refills at BalanceSettingsDto.getMountBytesPerSec(). Starting a move takes
+ * the archive's size out of both the source and the target budget, so a large archive can put a mount into debt and the
+ * next move on that mount waits until the debt has been paid off. Over time the bytes moved through a mount stay within
+ * its budget however many plans share it.
+ */
+@Singleton
+public class BalanceScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(BalanceScheduler.class);
+
+	static final String BALANCE_SCHEDULER_ENABLED = "c42.balance.scheduler.enabled";
+	static final String BALANCE_CONCURRENT_MOVES = "c42.balance.concurrentMoves";
+	static final String BALANCE_MOUNT_BYTES_PER_SEC = "c42.balance.mountBytesPerSec";
+	static final String BALANCE_ORDER = "c42.balance.order";
+	static final String BALANCE_CHECKPOINT_DIR = "c42.balance.checkpoint.dir";
+	static final String BALANCE_MOVE_POLL_MS = "c42.balance.movePoll.ms";
+	static final String DEFAULT_CHECKPOINT_DIR = "balance";
+	static final long DEFAULT_MOVE_POLL_MS = 10 * Time.SECOND;
+
+	/* ================= Dependencies ================= */
+	private ICoreRuntime runtime;
+	private IAuthorizationService auth;
+
+	/* ================= DI injection points ================= */
+	@Inject
+	public void setRuntime(ICoreRuntime runtime) {
+		this.runtime = runtime;
+	}
+
+	@Inject
+	public void setAuth(IAuthorizationService auth) {
+		this.auth = auth;
+	}
+
+	/* Resolved once, so the checkpoints are found again whatever the working directory of a later lookup */
+	private final File checkpointDir = new File(SystemProperties.getOptional(BALANCE_CHECKPOINT_DIR,
+			DEFAULT_CHECKPOINT_DIR)).getAbsoluteFile();
+
+	private final AtomicBoolean resumed = new AtomicBoolean(false);
+
+	// All guarded by this
+	private final Map<Integer, BalancePlan> plans = new HashMap<Integer, BalancePlan>();
+	private final Map<Integer, MountBudget> budgets = new HashMap<Integer, MountBudget>();
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalBoolean(BALANCE_SCHEDULER_ENABLED, true);
+	}
+
+	/**
+	 * Fills in the scheduler settings, which are system properties rather than destination columns.
+	 */
+	static void loadSettings(BalanceSettingsDto settings) {
+		settings.setMaxConcurrentMoves(Math.max(1, SystemProperties.getOptionalInt(BALANCE_CONCURRENT_MOVES, settings
+				.getMaxConcurrentMoves())));
+		settings.setMountBytesPerSec(Math.max(0, SystemProperties.getOptionalLong(BALANCE_MOUNT_BYTES_PER_SEC, settings
+				.getMountBytesPerSec())));
+		String order = SystemProperties.getOptional(BALANCE_ORDER, settings.getOrder().name());
+		try {
+			settings.setOrder(Order.valueOf(order.trim().toUpperCase()));
+		} catch (IllegalArgumentException e) {
+			log.warn("Balance:: unknown {} '{}', using {}", BALANCE_ORDER, order, settings.getOrder());
+		}
+	}
+
+	/**
+	 * @return the absolute checkpoint directory; a relative c42.balance.checkpoint.dir is taken from the server's
+	 *         install directory
+	 */
+	File getCheckpointDir() {
+		return this.checkpointDir;
+	}
+
+	/**
+	 * Resumes, in the background and once per server start, the plans that were checkpointed when the server last
+	 * stopped. The balancer has no startup hook of its own, so this is called whenever balancing is started or its
+	 * activity is looked at.
+	 */
+	public void resumeOnce() {
+		if (!this.isEnabled() || !this.resumed.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.runtime.runAsync(new BalancePlanResumeCmd(), this.auth.getSystemSession());
+		} catch (CommandException e) {
+			this.resumed.set(false);
+			log.warn("Balance:: unable to resume checkpointed plans", e);
+		} catch (RuntimeException e) {
+			this.resumed.set(false);
+			log.warn("Balance:: unable to resume checkpointed plans", e);
+		}
+	}
+
+	/**
+	 * @return the checkpointed plan for the source mount, or null if there is no usable one
+	 */
+	BalancePlan readCheckpoint(int srcMountId) {
+		File file = new File(this.getCheckpointDir(), BalancePlan.getFileName(srcMountId));
+		try {
+			return BalancePlan.read(file);
+		} catch (IOException ioe) {
+			log.warn("Balance:: ignoring unreadable plan {}", file, ioe);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the source mounts with a checkpointed plan, i.e. the plans that were running when the server stopped
+	 */
+	public List<Integer> findCheckpointedMounts() {
+		List<Integer> rv = new ArrayList<Integer>();
+		File[] files = this.getCheckpointDir().listFiles();
+		if (files == null) {
+			return rv;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith("plan-") && name.endsWith(".properties")) {
+				try {
+					rv.add(Integer.parseInt(name.substring("plan-".length(), name.length() - ".properties".length())));
+				} catch (NumberFormatException e) {
+					log.warn("Balance:: ignoring {}", file);
+				}
+			}
+		}
+		return rv;
+	}
+
+	void checkpoint(BalancePlan plan) {
+		try {
+			plan.write(this.getCheckpointDir());
+		} catch (IOException ioe) {
+			log.warn("Balance:: unable to checkpoint {}", plan, ioe);
+		}
+	}
+
+	void deleteCheckpoint(BalancePlan plan) {
+		File file = new File(this.getCheckpointDir(), BalancePlan.getFileName(plan.getSrcMountId()));
+		if (file.exists() && !file.delete()) {
+			log.warn("Balance:: unable to delete {}", file);
+		}
+	}
+
+	/**
+	 * @return false if a plan is already running for the same source mount
+	 */
+	synchronized boolean start(BalancePlan plan) {
+		if (this.plans.containsKey(plan.getSrcMountId())) {
+			return false;
+		}
+		this.plans.put(plan.getSrcMountId(), plan);
+		return true;
+	}
+
+	synchronized void finish(BalancePlan plan) {
+		if (this.plans.get(plan.getSrcMountId()) == plan) {
+			this.plans.remove(plan.getSrcMountId());
+		}
+	}
+
+	/**
+	 * Stops the plan emptying the mount once its in-flight moves are done.
+	 *
+	 * @return true if there was a plan to cancel
+	 */
+	public synchronized boolean cancel(int srcMountId) {
+		BalancePlan plan = this.plans.get(srcMountId);
+		if (plan == null) {
+			return false;
+		}
+		plan.cancel();
+		return true;
+	}
+
+	public synchronized BalancePlan getPlan(int srcMountId) {
+		return this.plans.get(srcMountId);
+	}
+
+	/**
+	 * Adds the progress of the plan emptying each activity's source mount, where there is one.
+	 */
+	public void addPlanProgress(List<BalanceActivityDto> dtos) {
+		for (BalanceActivityDto dto : dtos) {
+			BalancePlan plan = this.getPlan(dto.getSrcMountId());
+			if (plan != null) {
+				dto.setPlanBytesMoved(plan.getBytesMoved());
+				dto.setPlanBytesTotal(plan.getBytesTotal());
+				dto.setPlanBytesPerSec(plan.getBytesPerSec());
+				dto.setPlanEtaMs(plan.getEtaMs());
+			}
+		}
+	}
+
+	/**
+	 * Takes a move of the given size out of the budget of both mounts.
+	 *
+	 * @return how long (ms) to wait before starting the move
+	 */
+	long reserve(int srcMountId, int tgtMountId, long bytes, long bytesPerSec) {
+		if (bytesPerSec <= 0) {
+			return 0;
+		}
+		MountBudget src;
+		MountBudget tgt;
+		synchronized (this) {
+			src = this.getBudget(srcMountId);
+			tgt = this.getBudget(tgtMountId);
+		}
+		return Math.max(src.reserve(bytes, bytesPerSec), tgt.reserve(bytes, bytesPerSec));
+	}
+
+	/**
+	 * Gives the bytes of a move that failed back to the budget of both mounts.
+	 */
+	void release(int srcMountId, int tgtMountId, long bytes) {
+		MountBudget src;
+		MountBudget tgt;
+		synchronized (this) {
+			src = this.getBudget(srcMountId);
+			tgt = this.getBudget(tgtMountId);
+		}
+		src.release(bytes);
+		tgt.release(bytes);
+	}
+
+	/** Must be called with this locked */
+	private MountBudget getBudget(int mountId) {
+		MountBudget budget = this.budgets.get(mountId);
+		if (budget == null) {
+			budget = new MountBudget();
+			this.budgets.put(mountId, budget);
+		}
+		return budget;
+	}
+
+	/**
+	 * Byte allowance of one mount. At most one second of budget builds up while the mount is idle.
+	 */
+	private static class MountBudget {
+
+		private long available = 0;
+		private long refilledAt = System.currentTimeMillis();
+
+		synchronized long reserve(long bytes, long bytesPerSec) {
+			long now = System.currentTimeMillis();
+			this.available = Math.min(bytesPerSec, this.available + (now - this.refilledAt) * bytesPerSec / 1000);
+			this.refilledAt = now;
+
+			long waitMs = (this.available >= 0) ? 0 : -this.available * 1000 / bytesPerSec;
+			this.available -= bytes;
+			return waitMs;
+		}
+
+		/* Capped again at the next reserve() */
+		synchronized void release(long bytes) {
+			this.available += bytes;
+		}
+	}
+}
@@ -11,6 +11,18 @@ public class BalanceSettingsDto {
 	private int localCopyPriority = 100;
 	private int remoteCopyPriority = 100;
 
+	// Used by the BalanceScheduler when emptying one mount to another
+	private int maxConcurrentMoves = 2;
+	private long mountBytesPerSec = 0; // 0 is unlimited
+	private Order order = Order.SMALLEST_FIRST;
+
+	/**
+	 * The order archives are moved in when emptying a mount.
+	 */
+	public enum Order {
+		SMALLEST_FIRST, OLDEST_FIRST
+	}
+
 	public boolean isEnabled() {
 		return this.enabled;
 	}
@@ -43,9 +55,40 @@ public class BalanceSettingsDto {
 		this.remoteCopyPriority = remoteCopyPriority;
 	}
 
+	/**
+	 * @return the most archive moves that run at once between one pair of mounts
+	 */
+	public int getMaxConcurrentMoves() {
+		return this.maxConcurrentMoves;
+	}
+
+	public void setMaxConcurrentMoves(int maxConcurrentMoves) {
+		this.maxConcurrentMoves = maxConcurrentMoves;
+	}
+
+	/**
+	 * @return the I/O budget of each mount for balance moves, in bytes per second; 0 is unlimited
+	 */
+	public long getMountBytesPerSec() {
+		return this.mountBytesPerSec;
+	}
+
+	public void setMountBytesPerSec(long mountBytesPerSec) {
+		this.mountBytesPerSec = mountBytesPerSec;
+	}
+
+	public Order getOrder() {
+		return this.order;
+	}
+
+	public void setOrder(Order order) {
+		this.order = order;
+	}
+
 	@Override
 	public String toString() {
 		return "BalanceSettingsDto [enabled=" + this.enabled + ", allowedDiskVariancePerc=" + this.allowedDiskVariancePerc
-				+ ", localCopyPriority=" + this.localCopyPriority + ", remoteCopyPriority=" + this.remoteCopyPriority + "]";
+				+ ", localCopyPriority=" + this.localCopyPriority + ", remoteCopyPriority=" + this.remoteCopyPriority + ", maxConcurrentMoves="
+				+ this.maxConcurrentMoves + ", mountBytesPerSec=" + this.mountBytesPerSec + ", order=" + this.order + "]";
 	}
 }
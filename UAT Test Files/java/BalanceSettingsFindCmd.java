@@ -41,6 +41,7 @@ public class BalanceSettingsFindCmd extends DBCmd<BalanceSettingsDto> {
 		d.setAllowedDiskVariancePerc(this.clusterDestination.getVariance());
 		d.setLocalCopyPriority(this.clusterDestination.getLocalPriority());
 		d.setRemoteCopyPriority(this.clusterDestination.getRemotePriority());
+		BalanceScheduler.loadSettings(d);
 
 		return d;
 	}
@@ -12,6 +12,7 @@ import com.backup42.common.command.CommandResult;
 import com.backup42.common.command.ICliExecutor;
 import com.backup42.common.command.ServiceCommand;
 import com.code42.auth.IPermission;
+import com.code42.auth.IsManageableCmd;
 import com.code42.computer.ComputerDeauthorizeCmd;
 import com.code42.computer.ComputerSso;
 import com.code42.computer.ComputerSsoFindByComputerIdCmd;
@@ -20,7 +21,6 @@ import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.AbstractCmd;
 import com.google.inject.Inject;
 
@@ -117,7 +117,7 @@ public class CliRunCmd extends AbstractCmd<List<CommandResult>> {
 					if (C42PermissionApp.Computer.isComputerPermission(perm)) {
 						cPerm = (C42PermissionApp.Computer) perm;
 					}
-					this.run(new IsComputerManageableCmd(cSso.getComputerId(), cPerm), session);
+					this.run(IsManageableCmd.computer(cSso.getComputerId(), cPerm), session);
 				} catch (UnauthorizedException e) {
 					result.setError(CPErrors.Command.UNAUTHORIZED);
 				}
@@ -5,10 +5,10 @@ import java.util.Set;
 import javax.persistence.Transient;
 
 import com.backup42.history.CpcHistoryLogger;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.user.User;
 import com.code42.user.UserFindByIdQuery;
@@ -51,7 +51,7 @@ public class ComputerActivateCmd extends DBCmd<ComputerActivateCmd.Result> {
 			throw new CommandException("Unable to activate computer, not on master.");
 		}
 
-		this.runtime.run(new IsComputerManageableCmd(this.computerId, C42PermissionApp.Computer.UPDATE), session);
+		this.runtime.run(IsManageableCmd.computer(this.computerId, C42PermissionApp.Computer.UPDATE), session);
 
 		// Validate that the computer's user is active and not blocked
 		this.computer = this.runtime.run(new ComputerFindByIdCmd(this.computerId), session);
@@ -17,6 +17,7 @@ import com.code42.core.server.IServerService;
 import com.code42.core.space.CoreSpace;
 import com.code42.core.space.ISpaceService;
 import com.code42.stats.AggregateBackupStats;
+import com.code42.stats.BackupStatsRollup;
 import com.code42.stats.SpaceBoundModelUtils;
 import com.code42.utils.Pair;
 import com.code42.utils.Triple;
@@ -35,6 +36,7 @@ class ComputerActivityDtoFindCmd extends AbstractCmd<Map<Long, Map<Long, Compute
 	private ICentralService central;
 	private IRelationService relation;
 	private IHierarchyService hier;
+	private BackupStatsRollup rollup;
 
 	@Inject
 	public void setSpaceService(ISpaceService space) {
@@ -61,6 +63,11 @@ class ComputerActivityDtoFindCmd extends AbstractCmd<Map<Long, Map<Long, Compute
 		this.hier = hier;
 	}
 
+	@Inject
+	public void setRollup(BackupStatsRollup rollup) {
+		this.rollup = rollup;
+	}
+
 	private final Set<Long> guids;
 	private final Long targetComputerGuid;
 
@@ -72,6 +79,14 @@ class ComputerActivityDtoFindCmd extends AbstractCmd<Map<Long, Map<Long, Compute
 	@Override
 	public Map<Long, Map<Long, ComputerActivityDto>> exec(CoreSession session) throws CommandException {
 		try {
+			// Prefer the local rollup; only go to the grid when it is not available
+			BackupStatsRollup.Snapshot snapshot = this.rollup.getFreshSnapshot();
+			if (snapshot != null) {
+				Map<Long, Map<Long, ComputerActivityDto>> rv = this.findInSnapshot(snapshot);
+				this.addConnectedStatusFromCentral(rv);
+				return rv;
+			}
+
 			final Set<Integer> userIds = new HashSet<Integer>();
 			for (long guid : this.guids) {
 				Triple<Integer, Integer, Long> hierarchy = this.hier.getHierarchyByGUID(guid);
@@ -91,6 +106,36 @@ class ComputerActivityDtoFindCmd extends AbstractCmd<Map<Long, Map<Long, Compute
 		}
 	}
 
+	/**
+	 * Same result as the Mapper and Reducer, from the rollup snapshot.
+	 */
+	private Map<Long, Map<Long, ComputerActivityDto>> findInSnapshot(BackupStatsRollup.Snapshot snapshot) {
+		Map<Long, Map<Long, ComputerActivityDto>> rv = new HashMap<Long, Map<Long, ComputerActivityDto>>();
+		for (long guid : this.guids) {
+			Map<Long, ComputerActivityDto> activity = new HashMap<Long, ComputerActivityDto>();
+			rv.put(guid, activity);
+
+			Map<Long, AggregateBackupStats> destModel = snapshot.getComputer(guid);
+			if (destModel == null) {
+				continue;
+			}
+			if (this.targetComputerGuid == null) {
+				for (Map.Entry<Long, AggregateBackupStats> e : destModel.entrySet()) {
+					activity.put(e.getKey(), buildItem(e.getValue()));
+				}
+			} else if (this.targetComputerGuid.longValue() == CpcConstants.Computer.ROLLUP_TARGET_GUID) {
+				AggregateBackupStats stats = SpaceBoundModelUtils.sumDestinations(destModel.values());
+				activity.put(CpcConstants.Computer.ROLLUP_TARGET_GUID, buildItem(stats));
+			} else {
+				AggregateBackupStats stats = destModel.get(this.targetComputerGuid);
+				if (stats != null) {
+					activity.put(this.targetComputerGuid, buildItem(stats));
+				}
+			}
+		}
+		return rv;
+	}
+
 	// If could not find activity from stats stored in the space check for connected status in ICentralService
 	private void addConnectedStatusFromCentral(Map<Long, Map<Long, ComputerActivityDto>> activityMap) {
 		long myDestinationGuid = this.server.getMyDestination().getDestinationGuid();
@@ -2,10 +2,10 @@ package com.code42.computer;
 
 import com.backup42.history.CpcHistoryLogger;
 import com.backup42.social.SocialComputerNetworkServices;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 
 public class ComputerBlockCmd extends DBCmd<ComputerBlockCmd.Result> {
@@ -36,7 +36,7 @@ public class ComputerBlockCmd extends DBCmd<ComputerBlockCmd.Result> {
 			throw new CommandException("Unable to unblock computer, not on master.");
 		}
 
-		this.runtime.run(new IsComputerManageableCmd(this.computerId, C42PermissionApp.Computer.UPDATE), session);
+		this.runtime.run(IsManageableCmd.computer(this.computerId, C42PermissionApp.Computer.UPDATE), session);
 
 		if (this.computer == null) {
 			this.computer = this.runtime.run(new ComputerFindByIdCmd(this.computerId), session);
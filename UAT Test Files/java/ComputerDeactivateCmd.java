@@ -5,12 +5,12 @@ import java.util.Set;
 import com.backup42.alerts.AlertInfo;
 import com.backup42.history.CpcHistoryLogger;
 import com.backup42.social.SocialComputerNetworkServices;
+import com.code42.auth.IsManageableCmd;
 import com.code42.backup.alert.AlertStatusEvent;
 import com.code42.backup.stats.alerts.AlertType;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.CoreBridge;
 import com.code42.core.impl.DBCmd;
 import com.google.inject.Inject;
@@ -53,7 +53,7 @@ public class ComputerDeactivateCmd extends DBCmd<ComputerDeactivateCmd.Result> {
 			throw new CommandException("Unable to deactivate computer, not on master.");
 		}
 
-		this.runtime.run(new IsComputerManageableCmd(this.computerId, C42PermissionApp.Computer.UPDATE), session);
+		this.runtime.run(IsManageableCmd.computer(this.computerId, C42PermissionApp.Computer.UPDATE), session);
 
 		/*
 		 * This TX appears to be completely redundant (since SocialComputerNetworkServices manages it's own transactions).
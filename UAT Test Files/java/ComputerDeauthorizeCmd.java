@@ -1,10 +1,10 @@
 package com.code42.computer;
 
 import com.backup42.computer.ComputerServices;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
@@ -30,7 +30,7 @@ public class ComputerDeauthorizeCmd extends DBCmd<ComputerDeauthorizeCmd.Result>
 	@Override
 	public Result exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsComputerManageableCmd(this.computerId, C42PermissionApp.Computer.UPDATE), session);
+		this.runtime.run(IsManageableCmd.computer(this.computerId, C42PermissionApp.Computer.UPDATE), session);
 
 		this.db.beginTransaction();
 		try {
@@ -19,8 +19,13 @@ import com.code42.core.auth.impl.IsSysadminCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.DeleteQuery;
 import com.code42.core.impl.DBCmd;
+import com.code42.hibernate.aftertx.AfterTxRunnable;
+import com.code42.hibernate.aftertx.IAfterTxRunnable.Priority;
 import com.code42.scheduler.ComputerNotification;
+import com.code42.smartsearch.SmartSearchIndexUpdateCmd;
+import com.code42.smartsearch.SmartSearchType;
 import com.code42.user.destination.UserDestinationDeleteByComputerCmd;
+import com.google.inject.Inject;
 
 /**
  * BE VERY CAREFUL!!!
@@ -32,6 +37,9 @@ import com.code42.user.destination.UserDestinationDeleteByComputerCmd;
  */
 public class ComputerDeleteCmd extends DBCmd<Void> {
 
+	@Inject
+	private ComputerSsoSnapshot snapshot;
+
 	private final long computerId;
 	private final boolean safetyChecks;
 
@@ -91,6 +99,16 @@ public class ComputerDeleteCmd extends DBCmd<Void> {
 			}
 
 			this.db.afterTransaction(new ComputerPublishDeleteCmd(computer), session);
+			if (computer != null) {
+				final long guid = computer.getGuid();
+				this.db.afterTransaction(new AfterTxRunnable(Priority.NORMAL) {
+
+					public void run() {
+						ComputerDeleteCmd.this.snapshot.computerDeleted(guid);
+					}
+				});
+			}
+			this.db.afterTransaction(new SmartSearchIndexUpdateCmd(SmartSearchType.COMPUTER, this.computerId), session);
 
 			this.db.commit();
 			return null;
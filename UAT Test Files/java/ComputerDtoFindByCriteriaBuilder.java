@@ -36,6 +36,7 @@ public abstract class ComputerDtoFindByCriteriaBuilder<S, T> extends ComputerDto
 		SORT_KEYS.put(SortKey.lastBackup, "last_activity");
 		SORT_KEYS.put(SortKey.lastCompletedBackup, "last_completed_backup");
 		SORT_KEYS.put(SortKey.lastConnected, "c.last_connected");
+		SORT_KEYS.put(SortKey.computerId, "c.computer_id");
 
 		// Keys that require the FriendComputerUsage table
 		FCU_SORT_KEYS.add(SortKey.selectedBytes);
@@ -65,6 +66,7 @@ public abstract class ComputerDtoFindByCriteriaBuilder<S, T> extends ComputerDto
 	int limit = 100; // maximum number of rows to return; default to 100
 	boolean obeyQueryLimit = false;
 	Boolean exportAll = Boolean.FALSE;
+	Long afterComputerId = null; // keyset cursor used when streaming
 
 	protected boolean fcuJoinRequired = false;
 	private boolean userJoinRequired = false;
@@ -195,6 +197,15 @@ public abstract class ComputerDtoFindByCriteriaBuilder<S, T> extends ComputerDto
 		return (S) this;
 	}
 
+	/**
+	 * Only return computers with an ID greater than this one. Combined with a computerId sort this pages through
+	 * t_computer without the cost of a growing OFFSET.
+	 */
+	public S afterComputerId(Long computerId) {
+		this.afterComputerId = computerId;
+		return (S) this;
+	}
+
 	// ======================================================
 	// Getters
 	// ======================================================
@@ -280,6 +291,10 @@ public abstract class ComputerDtoFindByCriteriaBuilder<S, T> extends ComputerDto
 		return this.exportAll;
 	}
 
+	public Long getAfterComputerId() {
+		return this.afterComputerId;
+	}
+
 	public void validate() throws BuilderException {
 		if (this.sortKey != null) {
 			if (!SORT_KEYS.containsKey(this.sortKey)) {
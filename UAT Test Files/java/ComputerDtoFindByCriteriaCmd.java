@@ -2,32 +2,69 @@ package com.code42.computer;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.backup42.CpcConstants;
+import com.code42.auth.IsManageableCmd;
+import com.code42.computer.ComputerDtoViewUtil.SortKey;
 import com.code42.core.BuilderException;
 import com.code42.core.CommandException;
 import com.code42.core.RequestTooLargeException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.AuthorizedOrgs;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
+import com.code42.util.QueryTelemetry;
 import com.code42.util.SublistIterator;
 import com.code42.utils.LangUtils;
+import com.code42.utils.Pair;
 import com.code42.utils.SystemProperties;
 import com.code42.utils.SystemProperty;
+import com.google.inject.Inject;
 
 /**
- * Finds ComputerDto instances using any one of multiple criteria
+ * Finds ComputerDto instances using any one of multiple criteria.<br>
+ * <br>
+ * When constructed with a Consumer the command streams instead: it pages through the matching computers in the
+ * caller's order, from the caller's offset and up to the caller's limit (0 for all), loads the additional information
+ * for several pages at once and hands each page to the consumer in order. Only a few pages are ever on the heap, so
+ * this is what exports of very large orgs should use. In this mode exec returns an empty list. Exports (exportAll)
+ * without a consumer are streamed too and collected into the list, so the query is paged rather than run whole.
  */
 public class ComputerDtoFindByCriteriaCmd extends ComputerDtoFindByCriteriaBaseCmd<List<ComputerDto>> {
 
 	private static final Logger log = LoggerFactory.getLogger(ComputerDtoFindByCriteriaCmd.class);
 
+	static final String STREAM_PAGE_SIZE = "c42.computerDto.stream.pageSize";
+	static final String STREAM_PARALLELISM = "c42.computerDto.stream.parallelism";
+	static final int DEFAULT_STREAM_PAGE_SIZE = 250;
+	static final int DEFAULT_STREAM_PARALLELISM = 4;
+	static final String STREAM_QUERY_NAME = "ComputerDtoFindByCriteriaCmd.stream";
+
+	/**
+	 * Receives each page of fully loaded computers, in computerId order, while streaming.
+	 */
+	public interface Consumer {
+
+		public void accept(List<ComputerDto> computers) throws CommandException;
+	}
+
+	@Inject
+	private QueryTelemetry telemetry;
+
+	private final Consumer consumer;
+
 	public ComputerDtoFindByCriteriaCmd(Builder data) {
+		this(data, null);
+	}
+
+	public ComputerDtoFindByCriteriaCmd(Builder data, Consumer consumer) {
 		super(data);
+		this.consumer = consumer;
 	}
 
 	@Override
@@ -47,7 +84,7 @@ public class ComputerDtoFindByCriteriaCmd extends ComputerDtoFindByCriteriaBaseC
 			this.data.computerId(sso.getComputerId());
 		}
 		if (this.data.getComputerId() != null) {
-			this.run(new IsComputerManageableCmd(this.data.getComputerId(), C42PermissionApp.Computer.READ), session);
+			this.run(IsManageableCmd.computer(this.data.getComputerId(), C42PermissionApp.Computer.READ), session);
 		}
 
 		// Filter hosted organizations.
@@ -84,8 +121,25 @@ public class ComputerDtoFindByCriteriaCmd extends ComputerDtoFindByCriteriaBaseC
 			}
 		}
 
+		if (this.consumer != null) {
+			this.stream(this.consumer, session);
+			return Collections.emptyList();
+		}
+
+		if (this.data.isExportAll()) {
+			final List<ComputerDto> allComputers = new ArrayList<ComputerDto>();
+			this.stream(new Consumer() {
+
+				public void accept(List<ComputerDto> computers) {
+					allComputers.addAll(computers);
+				}
+			}, session);
+			return allComputers;
+		}
+
 		// Find the computers
-		List<ComputerDto> cList = this.db.find(new ComputerDtoFindByCriteriaQuery(this.data));
+		List<ComputerDto> cList = this.db.find(this.telemetry.timed(new ComputerDtoFindByCriteriaQuery(this.data),
+				this));
 
 		List<ComputerDto> allComputers = new ArrayList<ComputerDto>();
 		SublistIterator<ComputerDto> sublistIterator = new SublistIterator<ComputerDto>(cList, SystemProperties
@@ -104,6 +158,69 @@ public class ComputerDtoFindByCriteriaCmd extends ComputerDtoFindByCriteriaBaseC
 		return allComputers;
 	}
 
+	/**
+	 * Pages through the computers in the caller's order. Sorted by computerId ascending, pages after the first use a
+	 * keyset cursor; any other order pages with OFFSET. Up to STREAM_PARALLELISM pages are being loaded at once; the
+	 * oldest page is handed to the consumer before the next one is queried. The whole stream is recorded in
+	 * QueryTelemetry as STREAM_QUERY_NAME, on top of each page's query.
+	 */
+	private void stream(Consumer target, CoreSession session) throws CommandException {
+		int pageSize = Math.min(SystemProperties.getOptionalInt(STREAM_PAGE_SIZE, DEFAULT_STREAM_PAGE_SIZE),
+				SystemProperties.getMaxQueryInClauseSize());
+		int parallelism = Math.max(1, SystemProperties.getOptionalInt(STREAM_PARALLELISM, DEFAULT_STREAM_PARALLELISM));
+		boolean keyset = this.data.sortKey == SortKey.computerId && this.data.isAscending();
+		int callerOffset = this.data.offset;
+		int callerLimit = this.data.limit;
+		int remaining = (callerLimit > 0) ? callerLimit : Integer.MAX_VALUE;
+
+		LinkedList<Pair<List<ComputerDto>, Future<Void>>> inFlight = new LinkedList<Pair<List<ComputerDto>, Future<Void>>>();
+		int total = 0;
+		long start = System.nanoTime();
+		try {
+			boolean more = remaining > 0;
+			while (more) {
+				int size = Math.min(pageSize, remaining);
+				this.data.limit = size;
+				List<ComputerDto> computers = this.db.find(this.telemetry.timed(new ComputerDtoFindByCriteriaQuery(
+						this.data), this));
+				remaining -= computers.size();
+				more = computers.size() == size && remaining > 0;
+				if (!computers.isEmpty()) {
+					if (keyset) {
+						this.data.afterComputerId = computers.get(computers.size() - 1).getComputerId();
+						this.data.offset = 0;
+					} else {
+						this.data.offset += computers.size();
+					}
+					Future<Void> future = this.runtime.runAsync(new ComputerDtoLoadCmd(computers, this.data), session);
+					inFlight.add(new Pair<List<ComputerDto>, Future<Void>>(computers, future));
+					total += computers.size();
+				}
+
+				while (!inFlight.isEmpty() && (inFlight.size() >= parallelism || !more)) {
+					Pair<List<ComputerDto>, Future<Void>> oldest = inFlight.removeFirst();
+					oldest.getTwo().get();
+					target.accept(oldest.getOne());
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new CommandException("Interrupted while streaming computers", e);
+		} catch (ExecutionException e) {
+			throw new CommandException("Unable to load computers while streaming", e.getCause());
+		} finally {
+			for (Pair<List<ComputerDto>, Future<Void>> pending : inFlight) {
+				pending.getTwo().cancel(true);
+			}
+			this.data.offset = callerOffset;
+			this.data.limit = callerLimit;
+			this.data.afterComputerId = null;
+			if (this.telemetry.isEnabled()) {
+				this.telemetry.record(STREAM_QUERY_NAME, this.getClass().getName(), System.nanoTime() - start, total);
+			}
+		}
+		log.debug("Streamed {} computers in pages of {}", total, pageSize);
+	}
+
 	/**
 	 * Builds the data used by the command to run the query. The superclass is shared with the query.
 	 */
@@ -114,6 +231,14 @@ public class ComputerDtoFindByCriteriaCmd extends ComputerDtoFindByCriteriaBaseC
 			this.validate();
 			return new ComputerDtoFindByCriteriaCmd(this);
 		}
+
+		/**
+		 * Builds a command that streams pages of computers to the consumer instead of returning them.
+		 */
+		public ComputerDtoFindByCriteriaCmd build(Consumer consumer) throws BuilderException {
+			this.validate();
+			return new ComputerDtoFindByCriteriaCmd(this, consumer);
+		}
 	}
 
 }
@@ -1,10 +1,10 @@
 package com.code42.computer;
 
 import com.backup42.common.CPErrors;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.org.OrgSso;
 import com.code42.org.OrgSsoFindByUserIdCmd;
@@ -32,7 +32,7 @@ public class ComputerDtoFindByIdCmd extends DBCmd<ComputerDto> {
 		}
 
 		// Authorize: Make sure the subject is allowed to view/read this computer
-		this.runtime.run(new IsComputerManageableCmd(this.computerId, C42PermissionApp.Computer.READ), session);
+		this.runtime.run(IsManageableCmd.computer(this.computerId, C42PermissionApp.Computer.READ), session);
 
 		UserSso user = this.run(new UserSsoFindByComputerIdCmd(this.computerId), session);
 		OrgSso org = this.run(new OrgSsoFindByUserIdCmd(user.getUserId()), session);
@@ -29,7 +29,8 @@ public class ComputerDtoViewUtil {
 		percentComplete,
 		lastBackup,
 		lastCompletedBackup,
-		lastConnected
+		lastConnected,
+		computerId
 	}
 
 	public enum SortDir {
@@ -83,6 +84,7 @@ public class ComputerDtoViewUtil {
 			+ "--andNotHosted                     AND (o.master_guid IS NULL OR o.discriminator = 'HostedParentOrg')           \n"
 			+ "--andOrgTypes                      AND o.type IN (:orgTypes)                                                    \n"
 			+ "--andComputerGuid                  AND c.guid = :computerGuid                                                   \n"
+			+ "--andAfterComputerId               AND c.computer_id > :afterComputerId                                         \n"
 			+ "--andComputerActive                AND c.active = :active                                                       \n"
 			+ "--andComputerBlocked               AND c.blocked = :blocked                                                     \n"
 			+ "--excludeServers                   AND c.computer_id NOT IN (SELECT computer_id FROM t_server)                  \n"
@@ -169,6 +171,11 @@ public class ComputerDtoViewUtil {
 			query.setLong("computerGuid", data.getComputerGuid());
 		}
 
+		if (data.getAfterComputerId() != null) {
+			query.activate("--andAfterComputerId");
+			query.setLong("afterComputerId", data.getAfterComputerId());
+		}
+
 		// Apply a flexible search like the smart search uses
 		if (data.getSearch() != null) {
 			String searchTerm = SQLUtils.escapeWildcards(data.getSearch().toLowerCase().trim()) + "%";
@@ -2,10 +2,10 @@ package com.code42.computer;
 
 import java.net.URL;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.server.ServerFindWebsiteHostByServerIdCmd;
 import com.code42.server.mount.MountPoint;
@@ -35,7 +35,7 @@ public class ComputerFindBackupServerUrlCmd extends DBCmd<String> {
 			throw new CommandException("Unable to find computer with guid: " + this.srcGuid);
 		}
 
-		this.runtime.run(new IsComputerManageableCmd(c.getComputerId(), C42PermissionApp.Computer.READ), session);
+		this.runtime.run(IsManageableCmd.computer(c.getComputerId(), C42PermissionApp.Computer.READ), session);
 
 		FriendComputerUsage fcu = this.db.find(new FriendComputerUsageFindBySourceGuidAndTargetGuidQuery(this.srcGuid,
 				this.destGuid));
@@ -1,9 +1,9 @@
 package com.code42.computer;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 
 /**
@@ -27,7 +27,7 @@ public class ComputerFindByIdCmd extends DBCmd<Computer> {
 		}
 
 		// Authorize: Make sure the subject is allowed to view/read this computer
-		this.runtime.run(new IsComputerManageableCmd(this.computerId, C42PermissionApp.Computer.READ), session);
+		this.runtime.run(IsManageableCmd.computer(this.computerId, C42PermissionApp.Computer.READ), session);
 
 		return c;
 	}
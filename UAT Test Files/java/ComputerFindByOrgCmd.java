@@ -5,10 +5,10 @@ package com.code42.computer;
 
 import java.util.List;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.impl.DBCmd;
 
 /**
@@ -59,7 +59,7 @@ public class ComputerFindByOrgCmd extends DBCmd<List<Computer>> {
 
 	@Override
 	public List<Computer> exec(CoreSession session) throws CommandException {
-		this.runtime.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.READ), session);
+		this.runtime.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.READ), session);
 
 		// Find the computers and return them
 		ComputerFindByOrgQuery query = new ComputerFindByOrgQuery(this.orgId, this.active, this.blocked, this.offset,
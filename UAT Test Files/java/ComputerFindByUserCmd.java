@@ -5,10 +5,10 @@ package com.code42.computer;
 
 import java.util.List;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.impl.DBCmd;
 
 /**
@@ -39,7 +39,7 @@ public class ComputerFindByUserCmd extends DBCmd<List<Computer>> {
 
 		// A subject can always read it's own computers
 		if (session.getUser().getUserId() != this.userId) {
-			this.runtime.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.READ), session);
+			this.runtime.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.READ), session);
 		}
 
 		// Find the computers and return them
@@ -2,11 +2,11 @@ package com.code42.computer;
 
 import java.net.URL;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.backup.central.ICentralService;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.peer.Peer;
 import com.code42.server.ServerFindWebsiteHostByServerIdCmd;
@@ -33,7 +33,7 @@ public class ComputerFindConnectedServerUrlCmd extends DBCmd<String> {
 			throw new CommandException("Unable to find computer with guid: " + this.srcGuid);
 		}
 
-		this.runtime.run(new IsComputerManageableCmd(c.getComputerId(), C42PermissionApp.Computer.READ), session);
+		this.runtime.run(IsManageableCmd.computer(c.getComputerId(), C42PermissionApp.Computer.READ), session);
 
 		Peer peer = this.centralService.getPeer().getPeer();
 		long superPeerGuid = peer.getSuperPeerForRemotePeer(this.srcGuid);
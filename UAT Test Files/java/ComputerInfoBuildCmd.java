@@ -1,10 +1,10 @@
 package com.code42.computer;
 
 import com.backup42.app.computer.ComputerInfo;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.impl.DBCmd;
 
@@ -21,7 +21,7 @@ public class ComputerInfoBuildCmd extends DBCmd<ComputerInfo> {
 
 	@Override
 	public ComputerInfo exec(CoreSession session) throws CommandException {
-		this.runtime.run(new IsComputerManageableCmd(this.computer.getComputerId(), C42PermissionApp.Computer.READ),
+		this.runtime.run(IsManageableCmd.computer(this.computer.getComputerId(), C42PermissionApp.Computer.READ),
 				session);
 
 		try {
@@ -5,11 +5,11 @@ import java.util.List;
 import org.hibernate.Query;
 import org.hibernate.Session;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.annotation.CoreNamedQuery;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.FindQuery;
 import com.code42.core.impl.DBCmd;
@@ -36,7 +36,7 @@ public class ComputerLicenseFindActiveUnassignedByUserIdCmd extends DBCmd<List<C
 		 * TODO: Permissions for commands generated from the data providers is a fairly ambiguous topic. Checking for
 		 * user-read here seems reasonable but this could be entirely wrong.
 		 */
-		this.runtime.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.READ), session);
+		this.runtime.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.READ), session);
 
 		/*
 		 * This query _shouldn't_ ever result in a checked DBServiceException but do "the right thing" if it does. Runtime
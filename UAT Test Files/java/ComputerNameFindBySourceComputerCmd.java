@@ -10,10 +10,10 @@ import java.util.List;
 import org.hibernate.Query;
 import org.hibernate.Session;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.FindQuery;
 import com.code42.core.impl.DBCmd;
@@ -40,7 +40,7 @@ public class ComputerNameFindBySourceComputerCmd extends DBCmd<List<Pair<Long, S
 	@Override
 	public List<Pair<Long, String>> exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsComputerManageableCmd(this.sourceComputerId, C42PermissionApp.Computer.READ), session);
+		this.runtime.run(IsManageableCmd.computer(this.sourceComputerId, C42PermissionApp.Computer.READ), session);
 
 		// Find the computer names and return them
 		ComputerNameFindBySourceComputerQuery query = new ComputerNameFindBySourceComputerQuery(this.sourceComputerId);
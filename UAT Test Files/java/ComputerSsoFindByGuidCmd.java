@@ -14,6 +14,7 @@ public class ComputerSsoFindByGuidCmd extends DBCmd<ComputerSso> {
 
 	/* ================= Dependencies ================= */
 	private IBusinessObjectsService busobj;
+	private ComputerSsoSnapshot snapshot;
 
 	/* ================= DI injection points ================= */
 	@Inject
@@ -21,6 +22,11 @@ public class ComputerSsoFindByGuidCmd extends DBCmd<ComputerSso> {
 		this.busobj = busobj;
 	}
 
+	@Inject
+	public void setSnapshot(ComputerSsoSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
 	private final long guid;
 
 	public ComputerSsoFindByGuidCmd(long guid) {
@@ -30,10 +36,21 @@ public class ComputerSsoFindByGuidCmd extends DBCmd<ComputerSso> {
 	@Override
 	public ComputerSso exec(CoreSession session) throws CommandException {
 
+		if (this.snapshot.beginLoad()) {
+			// Map the snapshot in before the business-object cache is needed to answer
+			this.runtime.runAsync(new ComputerSsoSnapshotLoadCmd(), this.auth.getSystemSession());
+		}
+
 		try {
 
 			return this.busobj.getComputerByGuid(this.guid);
 		} catch (BusinessObjectsException boe) {
+
+			// The business-object cache may still be warming after a restart; answer from the snapshot if we can
+			ComputerSso sso = this.snapshot.getByGuid(this.guid);
+			if (sso != null) {
+				return sso;
+			}
 			throw new CommandException("Exception while getting org SSO", boe);
 		}
 	}
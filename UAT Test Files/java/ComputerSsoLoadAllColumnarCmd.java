@@ -0,0 +1,141 @@
+package com.code42.computer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.joda.time.DateTime;
+
+import com.backup42.common.ComputerType;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.core.impl.DBCmd;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Same rows as ComputerSsoLoadAllCmd, but streamed straight into a ComputerSsoTable instead of a map of boxed keys and
+ * Option-wrapped SSOs. Use this when warming caches with millions of computers.
+ * 
+ * @see ComputerSsoLoadAllCmd
+ */
+public class ComputerSsoLoadAllColumnarCmd extends DBCmd<ComputerSsoTable> {
+
+	private static final Logger log = LoggerFactory.getLogger(ComputerSsoLoadAllColumnarCmd.class);
+
+	private final int windowSize;
+	private final DateTime since;
+	private final Set<Integer> users;
+
+	public ComputerSsoLoadAllColumnarCmd(int windowSize) {
+
+		this(windowSize, null, null);
+	}
+
+	public ComputerSsoLoadAllColumnarCmd(int windowSize, DateTime since) {
+
+		this(windowSize, null, since);
+	}
+
+	public ComputerSsoLoadAllColumnarCmd(int windowSize, Set<Integer> users, DateTime since) {
+
+		this.windowSize = windowSize;
+		this.since = since;
+		this.users = (users == null) ? null : ImmutableSet.copyOf(users);
+	}
+
+	@Override
+	public ComputerSsoTable exec(CoreSession session) throws CommandException {
+
+		return this.db.find(new ComputerSsoColumnarPopulateQuery());
+	}
+
+	/* ========================== Private helper classes ========================== */
+	private class ComputerSsoColumnarPopulateQuery extends FindQuery<ComputerSsoTable> {
+
+		@Override
+		public ComputerSsoTable query(Session session) throws DBServiceException {
+
+			try {
+
+				/* Hibernate Work implementation will populate rv as a side effect */
+				ComputerSsoTable rv = new ComputerSsoTable(ComputerSsoLoadAllColumnarCmd.this.windowSize);
+				rv.setAsOf(System.currentTimeMillis());
+				session.doWork(new ComputerSsoColumnarPopulateWork(rv));
+				return rv;
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception doing database ops", he);
+			}
+		}
+	}
+
+	private class ComputerSsoColumnarPopulateWork implements Work {
+
+		/* Make sure to exclude child computers from our processing */
+		private static final String SQL = "select computer_id, guid, user_id, active, blocked, type from t_computer where parent_computer_id is null";
+
+		private final ComputerSsoTable target;
+
+		ComputerSsoColumnarPopulateWork(ComputerSsoTable target) {
+
+			this.target = target;
+		}
+
+		private ResultSet getResultSet(Connection conn) throws SQLException {
+
+			if (ComputerSsoLoadAllColumnarCmd.this.since == null) {
+
+				Statement stmt = conn.createStatement();
+				stmt.setFetchSize(ComputerSsoLoadAllColumnarCmd.this.windowSize);
+				ResultSet rs = stmt.executeQuery(SQL);
+				rs.setFetchSize(ComputerSsoLoadAllColumnarCmd.this.windowSize);
+				return rs;
+			}
+
+			/* Changed computers as well as new ones, so a snapshot catch-up doesn't keep stale rows */
+			PreparedStatement stmt = conn.prepareStatement(String.format(
+					"%s and (creation_date > ? or modification_date > ?)", SQL));
+			java.sql.Timestamp since = new java.sql.Timestamp(ComputerSsoLoadAllColumnarCmd.this.since.getMillis());
+			stmt.setTimestamp(1, since);
+			stmt.setTimestamp(2, since);
+			stmt.setFetchSize(ComputerSsoLoadAllColumnarCmd.this.windowSize);
+			ResultSet rs = stmt.executeQuery();
+			rs.setFetchSize(ComputerSsoLoadAllColumnarCmd.this.windowSize);
+			return rs;
+		}
+
+		public void execute(Connection conn) throws SQLException {
+
+			int cnt = 0;
+			final int logInterval = 50000;
+
+			ResultSet rs = this.getResultSet(conn);
+			while (rs.next()) {
+
+				int userId = rs.getInt(3);
+				if (ComputerSsoLoadAllColumnarCmd.this.users != null
+						&& (!ComputerSsoLoadAllColumnarCmd.this.users.contains(userId))) {
+					continue;
+				}
+
+				this.target.put(rs.getLong(1), rs.getLong(2), userId, rs.getBoolean(4), rs.getBoolean(5), ComputerType
+						.valueOf(rs.getString(6)));
+
+				++cnt;
+				if ((cnt % logInterval) == 0) {
+					log.info("Finished processing {} computers", cnt);
+				}
+			}
+			rs.close();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.code42.computer;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.code42.utils.SystemProperties;
+import com.google.inject.Singleton;
+
+/**
+ * Holds the most recent ComputerSsoTable so GUID lookups can be answered while the business-object cache is still
+ * warming. Nothing is held unless a snapshot file is configured. The first lookup starts the load (see
+ * ComputerSsoFindByGuidCmd); computers deleted after that are remembered here, since the table itself isn't changed.
+ * 
+ * @see ComputerSsoSnapshotLoadCmd
+ */
+@Singleton
+public class ComputerSsoSnapshot {
+
+	static final String COMPUTER_SSO_SNAPSHOT_FILE = "c42.computerSso.snapshot.file";
+
+	private volatile ComputerSsoTable table;
+
+	private final AtomicBoolean loadStarted = new AtomicBoolean(false);
+	private final Set<Long> deletedGuids = Collections
+			.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+	public boolean isEnabled() {
+		return this.getFile() != null;
+	}
+
+	/**
+	 * @return the configured snapshot file, or null if snapshots are turned off
+	 */
+	File getFile() {
+		String path = SystemProperties.getOptional(COMPUTER_SSO_SNAPSHOT_FILE);
+		return (path == null || path.trim().length() == 0) ? null : new File(path.trim());
+	}
+
+	/**
+	 * Claims the right to load the snapshot. Only the first caller gets it, unless a load fails; see endLoad().
+	 */
+	boolean beginLoad() {
+		return this.isEnabled() && !this.loadStarted.get() && this.loadStarted.compareAndSet(false, true);
+	}
+
+	/**
+	 * @param loaded false to let the next lookup try again
+	 */
+	void endLoad(boolean loaded) {
+		if (!loaded) {
+			this.loadStarted.set(false);
+		}
+	}
+
+	/**
+	 * The computer has been deleted; never answer for it again.
+	 */
+	public void computerDeleted(long guid) {
+		if (this.table != null || this.loadStarted.get()) {
+			this.deletedGuids.add(guid);
+		}
+	}
+
+	ComputerSsoTable getTable() {
+		return this.table;
+	}
+
+	void setTable(ComputerSsoTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * @return the SSO for the GUID, or null if there is no snapshot or the GUID is not in it
+	 */
+	public ComputerSso getByGuid(long guid) {
+		ComputerSsoTable current = this.table;
+		return (current == null || this.deletedGuids.contains(guid)) ? null : current.getByGuid(guid);
+	}
+}
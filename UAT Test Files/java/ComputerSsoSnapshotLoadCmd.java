@@ -0,0 +1,152 @@
+package com.code42.computer;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.joda.time.DateTime;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.core.impl.DBCmd;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.Stopwatch;
+import com.google.inject.Inject;
+
+/**
+ * Brings the ComputerSsoSnapshot up to date; ComputerSsoFindByGuidCmd runs it once, on the first lookup. The snapshot
+ * file is mapped in first (so lookups can be answered right away), then caught up with a 'since' load of the computers
+ * created or changed after it was written, less the ones deleted since (every computer ID still in t_computer is read
+ * to find those), and finally rewritten for the next restart. With no usable file a full columnar load is done instead.
+ */
+public class ComputerSsoSnapshotLoadCmd extends DBCmd<Void> {
+
+	private static final Logger log = LoggerFactory.getLogger(ComputerSsoSnapshotLoadCmd.class);
+
+	private static final int WINDOW_SIZE = 5000;
+
+	@Inject
+	private ComputerSsoSnapshot snapshot;
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+
+		if (!this.snapshot.isEnabled()) {
+			return null;
+		}
+
+		boolean loaded = false;
+		try {
+			this.load(session);
+			loaded = true;
+		} finally {
+			this.snapshot.endLoad(loaded);
+		}
+		return null;
+	}
+
+	private void load(CoreSession session) throws CommandException {
+		File file = this.snapshot.getFile();
+		Stopwatch sw = new Stopwatch();
+
+		ComputerSsoTable table = null;
+		try {
+			table = ComputerSsoTable.readSnapshot(file);
+		} catch (IOException ioe) {
+			log.warn("ComputerSso:: unable to read snapshot {}; doing a full load", file, ioe);
+		} catch (RuntimeException re) {
+			// readSnapshot checks every length, but a bad snapshot must never keep the node from loading
+			log.warn("ComputerSso:: unable to read snapshot {}; doing a full load", file, re);
+		}
+
+		if (table != null) {
+			this.snapshot.setTable(table);
+			log.info("ComputerSso:: read {} computers from snapshot {} in {}", table.size(), file, sw);
+
+			ComputerSsoTable delta = this.runtime.run(new ComputerSsoLoadAllColumnarCmd(WINDOW_SIZE, new DateTime(table
+					.getAsOf())), session);
+			long[] computerIds = this.db.find(new ComputerIdsFindQuery());
+
+			// Tables are not safe to change while being read, so merge into a fresh one and swap it in
+			ComputerSsoTable merged = new ComputerSsoTable(table.size() + delta.size());
+			merged.putAll(table, computerIds);
+			int deleted = table.size() - merged.size();
+			merged.putAll(delta);
+			merged.setAsOf(delta.getAsOf());
+			this.snapshot.setTable(merged);
+			table = merged;
+			log.info("ComputerSso:: caught up snapshot with {} new or changed and {} deleted computers in {}", delta
+					.size(), deleted, sw);
+		} else {
+			table = this.runtime.run(new ComputerSsoLoadAllColumnarCmd(WINDOW_SIZE), session);
+			this.snapshot.setTable(table);
+			log.info("ComputerSso:: loaded {} computers in {}", table.size(), sw);
+		}
+
+		try {
+			table.writeSnapshot(file);
+		} catch (IOException ioe) {
+			log.warn("ComputerSso:: unable to write snapshot {}", file, ioe);
+		}
+	}
+
+	/* ========================== Private helper classes ========================== */
+
+	/**
+	 * Every computer ID the snapshot can hold (child computers are left out of it), sorted.
+	 */
+	private static class ComputerIdsFindQuery extends FindQuery<long[]> {
+
+		@Override
+		public long[] query(Session session) throws DBServiceException {
+			try {
+				/* Hibernate Work implementation will populate the work as a side effect */
+				ComputerIdsWork work = new ComputerIdsWork();
+				session.doWork(work);
+				return Arrays.copyOf(work.computerIds, work.size);
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception doing database ops", he);
+			}
+		}
+	}
+
+	private static class ComputerIdsWork implements Work {
+
+		private static final String SQL = "select computer_id from t_computer where parent_computer_id is null "
+				+ "order by computer_id";
+
+		private long[] computerIds = new long[1024];
+		private int size = 0;
+
+		public void execute(Connection conn) throws SQLException {
+			Statement stmt = conn.createStatement();
+			try {
+				stmt.setFetchSize(WINDOW_SIZE);
+				ResultSet rs = stmt.executeQuery(SQL);
+				try {
+					rs.setFetchSize(WINDOW_SIZE);
+					while (rs.next()) {
+						if (this.size == this.computerIds.length) {
+							this.computerIds = Arrays.copyOf(this.computerIds, this.size * 2);
+						}
+						this.computerIds[this.size++] = rs.getLong(1);
+					}
+				} finally {
+					rs.close();
+				}
+			} finally {
+				stmt.close();
+			}
+		}
+	}
+}
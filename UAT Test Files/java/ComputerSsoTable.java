@@ -0,0 +1,344 @@
+package com.code42.computer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.backup42.common.ComputerType;
+import com.code42.core.BuilderException;
+
+/**
+ * A compact, column-oriented set of computer SSOs. Each row is a handful of primitives (no boxed keys, no Option
+ * wrappers, no SSO object until one is asked for) and rows are found by GUID or computer ID through open-addressing
+ * indexes.<br>
+ * <br>
+ * A table can be written to and read back from a memory-mapped snapshot file so a restarted node can answer lookups
+ * before the business-object cache is warm.
+ */
+public class ComputerSsoTable {
+
+	private static final int SNAPSHOT_MAGIC = 0xC42C550;
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte FLAG_ACTIVE = 1;
+	private static final byte FLAG_BLOCKED = 2;
+
+	private static final int EMPTY = 0; // index slots hold row + 1
+
+	/* magic, version, asOf, size, type count */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+	/* computerId, guid, userId, flags, type */
+	private static final int ROW_SIZE = 8 + 8 + 4 + 1 + 1;
+
+	private int size = 0;
+	private long asOf = 0;
+
+	private long[] computerIds;
+	private long[] guids;
+	private int[] userIds;
+	private byte[] flags;
+	private byte[] types;
+
+	private int[] guidIndex;
+	private int[] computerIdIndex;
+
+	public ComputerSsoTable(int expectedSize) {
+		int capacity = Math.max(16, expectedSize);
+		this.computerIds = new long[capacity];
+		this.guids = new long[capacity];
+		this.userIds = new int[capacity];
+		this.flags = new byte[capacity];
+		this.types = new byte[capacity];
+		this.guidIndex = new int[indexSizeFor(capacity)];
+		this.computerIdIndex = new int[indexSizeFor(capacity)];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the time (millis) this table's data was current as of, used as the 'since' for a catch-up load
+	 */
+	public long getAsOf() {
+		return this.asOf;
+	}
+
+	public void setAsOf(long asOf) {
+		this.asOf = asOf;
+	}
+
+	/**
+	 * Adds a computer, replacing the existing row if one has the same computer ID.
+	 */
+	public void put(long computerId, long guid, int userId, boolean active, boolean blocked, ComputerType type) {
+		int row = this.findRow(this.computerIdIndex, this.computerIds, computerId);
+		if (row < 0) {
+			if (this.size == this.guids.length) {
+				this.grow();
+			}
+			row = this.size++;
+			this.computerIds[row] = computerId;
+			insert(this.computerIdIndex, this.computerIds, row);
+		} else if (this.guids[row] != guid) {
+			// The GUID of a computer should never change, but keep the index honest if it does
+			this.guids[row] = guid;
+			this.rebuildIndexes();
+		}
+
+		this.guids[row] = guid;
+		this.userIds[row] = userId;
+		this.flags[row] = (byte) ((active ? FLAG_ACTIVE : 0) | (blocked ? FLAG_BLOCKED : 0));
+		this.types[row] = (byte) type.ordinal();
+		if (this.findRow(this.guidIndex, this.guids, guid) < 0) {
+			insert(this.guidIndex, this.guids, row);
+		}
+	}
+
+	public void putAll(ComputerSsoTable other) {
+		this.putAll(other, null);
+	}
+
+	/**
+	 * Adds the rows of the other table whose computer ID is one of the given ones.
+	 * 
+	 * @param computerIds sorted ascending; null for every row
+	 */
+	public void putAll(ComputerSsoTable other, long[] computerIds) {
+		for (int row = 0; row < other.size; row++) {
+			if (computerIds != null && Arrays.binarySearch(computerIds, other.computerIds[row]) < 0) {
+				continue;
+			}
+			this.put(other.computerIds[row], other.guids[row], other.userIds[row], other.isActive(row), other
+					.isBlocked(row), ComputerType.values()[other.types[row]]);
+		}
+	}
+
+	/**
+	 * @return the SSO for the GUID, or null if it is not in this table
+	 */
+	public ComputerSso getByGuid(long guid) {
+		return this.toSso(this.findRow(this.guidIndex, this.guids, guid));
+	}
+
+	/**
+	 * @return the SSO for the computer ID, or null if it is not in this table
+	 */
+	public ComputerSso getByComputerId(long computerId) {
+		return this.toSso(this.findRow(this.computerIdIndex, this.computerIds, computerId));
+	}
+
+	private boolean isActive(int row) {
+		return (this.flags[row] & FLAG_ACTIVE) != 0;
+	}
+
+	private boolean isBlocked(int row) {
+		return (this.flags[row] & FLAG_BLOCKED) != 0;
+	}
+
+	private ComputerSso toSso(int row) {
+		if (row < 0) {
+			return null;
+		}
+		ComputerSso.Builder builder = new ComputerSso.Builder();
+		builder.computerId(this.computerIds[row]).guid(this.guids[row]).userId(this.userIds[row]);
+		builder.active(this.isActive(row)).blocked(this.isBlocked(row)).type(ComputerType.values()[this.types[row]]);
+		try {
+			return builder.build();
+		} catch (BuilderException be) {
+			// Every column is always set so this cannot happen
+			throw new IllegalStateException("Incomplete ComputerSso row " + row, be);
+		}
+	}
+
+	/* ========================== Snapshots ========================== */
+
+	/**
+	 * Writes this table to the given file through a memory-mapped buffer. The layout is a small header (including the
+	 * ComputerType names so ordinals can be remapped if the enum changes) followed by one block per column.
+	 */
+	public void writeSnapshot(File file) throws IOException {
+		byte[][] typeNames = new byte[ComputerType.values().length][];
+		int headerSize = HEADER_SIZE;
+		for (ComputerType type : ComputerType.values()) {
+			typeNames[type.ordinal()] = type.name().getBytes(UTF8);
+			headerSize += 2 + typeNames[type.ordinal()].length;
+		}
+		long length = headerSize + (long) this.size * ROW_SIZE;
+
+		File tmp = new File(file.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			raf.setLength(length);
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+			buf.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(this.asOf).putInt(this.size);
+			buf.putInt(typeNames.length);
+			for (byte[] name : typeNames) {
+				buf.putShort((short) name.length).put(name);
+			}
+			buf.asLongBuffer().put(this.computerIds, 0, this.size);
+			buf.position(buf.position() + this.size * 8);
+			buf.asLongBuffer().put(this.guids, 0, this.size);
+			buf.position(buf.position() + this.size * 8);
+			buf.asIntBuffer().put(this.userIds, 0, this.size);
+			buf.position(buf.position() + this.size * 4);
+			buf.put(this.flags, 0, this.size);
+			buf.put(this.types, 0, this.size);
+			buf.force();
+		} finally {
+			raf.close();
+		}
+
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				throw new IOException("Unable to move snapshot into place: " + file);
+			}
+		}
+	}
+
+	/**
+	 * Reads a table written by writeSnapshot. Every length in the file is checked against what is left of it, so a
+	 * truncated or corrupt file is reported as an IOException rather than a runtime exception.
+	 *
+	 * @return the table, or null if the file is missing or was written by an incompatible version
+	 * @throws IOException if the file cannot be read or is truncated or corrupt
+	 */
+	public static ComputerSsoTable readSnapshot(File file) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buf.remaining() < HEADER_SIZE || buf.getInt() != SNAPSHOT_MAGIC || buf.getInt() != SNAPSHOT_VERSION) {
+				return null;
+			}
+			long asOf = buf.getLong();
+			int size = buf.getInt();
+			int typeCount = buf.getInt();
+			if (size < 0 || typeCount < 0 || typeCount > Byte.MAX_VALUE + 1) {
+				throw new IOException("Corrupt snapshot header in " + file + ": size=" + size + ", types=" + typeCount);
+			}
+
+			// Map the ordinals in the file to the ordinals of this build
+			Map<String, ComputerType> byName = new HashMap<String, ComputerType>();
+			for (ComputerType type : ComputerType.values()) {
+				byName.put(type.name(), type);
+			}
+			byte[] typeMap = new byte[typeCount];
+			for (int i = 0; i < typeCount; i++) {
+				require(buf, 2, file);
+				int nameLength = buf.getShort();
+				if (nameLength < 0) {
+					throw new IOException("Corrupt type name length in snapshot " + file + ": " + nameLength);
+				}
+				require(buf, nameLength, file);
+				byte[] name = new byte[nameLength];
+				buf.get(name);
+				ComputerType type = byName.get(new String(name, UTF8));
+				if (type == null) {
+					return null;
+				}
+				typeMap[i] = (byte) type.ordinal();
+			}
+
+			require(buf, (long) size * ROW_SIZE, file);
+			ComputerSsoTable table = new ComputerSsoTable(size);
+			table.asOf = asOf;
+			table.size = size;
+			buf.asLongBuffer().get(table.computerIds, 0, size);
+			buf.position(buf.position() + size * 8);
+			buf.asLongBuffer().get(table.guids, 0, size);
+			buf.position(buf.position() + size * 8);
+			buf.asIntBuffer().get(table.userIds, 0, size);
+			buf.position(buf.position() + size * 4);
+			buf.get(table.flags, 0, size);
+			buf.get(table.types, 0, size);
+			for (int row = 0; row < size; row++) {
+				int ordinal = table.types[row];
+				if (ordinal < 0 || ordinal >= typeCount) {
+					throw new IOException("Corrupt type in snapshot " + file + " at row " + row + ": " + ordinal);
+				}
+				table.types[row] = typeMap[ordinal];
+			}
+			table.rebuildIndexes();
+			return table;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void require(ByteBuffer buf, long length, File file) throws IOException {
+		if (buf.remaining() < length) {
+			throw new IOException("Truncated snapshot " + file + ": need " + length + " bytes, " + buf.remaining()
+					+ " left");
+		}
+	}
+
+	/* ========================== Open-addressing index ========================== */
+
+	private void grow() {
+		int capacity = this.guids.length * 2;
+		this.computerIds = Arrays.copyOf(this.computerIds, capacity);
+		this.guids = Arrays.copyOf(this.guids, capacity);
+		this.userIds = Arrays.copyOf(this.userIds, capacity);
+		this.flags = Arrays.copyOf(this.flags, capacity);
+		this.types = Arrays.copyOf(this.types, capacity);
+		this.rebuildIndexes();
+	}
+
+	private void rebuildIndexes() {
+		this.guidIndex = new int[indexSizeFor(this.guids.length)];
+		this.computerIdIndex = new int[indexSizeFor(this.computerIds.length)];
+		for (int row = 0; row < this.size; row++) {
+			insert(this.computerIdIndex, this.computerIds, row);
+			if (this.findRow(this.guidIndex, this.guids, this.guids[row]) < 0) {
+				insert(this.guidIndex, this.guids, row);
+			}
+		}
+	}
+
+	private int findRow(int[] index, long[] keys, long key) {
+		int mask = index.length - 1;
+		for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+			int entry = index[slot];
+			if (entry == EMPTY) {
+				return -1;
+			}
+			if (keys[entry - 1] == key) {
+				return entry - 1;
+			}
+		}
+	}
+
+	private static void insert(int[] index, long[] keys, int row) {
+		int mask = index.length - 1;
+		int slot = hash(keys[row]) & mask;
+		while (index[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		index[slot] = row + 1;
+	}
+
+	/** Keeps the load factor at or below one half */
+	private static int indexSizeFor(int capacity) {
+		return Integer.highestOneBit(Math.max(capacity, 8) - 1) << 2;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
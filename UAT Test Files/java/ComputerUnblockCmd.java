@@ -4,11 +4,11 @@ import javax.persistence.Transient;
 
 import com.backup42.history.CpcHistoryLogger;
 import com.backup42.social.SocialComputerNetworkServices;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.IEnvironment;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.user.User;
 import com.code42.user.UserFindByIdQuery;
@@ -58,7 +58,7 @@ public class ComputerUnblockCmd extends DBCmd<ComputerUnblockCmd.Result> {
 		}
 
 		// If permission check fails, this will throw an exception
-		this.runtime.run(new IsComputerManageableCmd(this.computerId, C42PermissionApp.Computer.UPDATE), session);
+		this.runtime.run(IsManageableCmd.computer(this.computerId, C42PermissionApp.Computer.UPDATE), session);
 
 		if (this.computer == null) {
 			this.computer = this.runtime.run(new ComputerFindByIdCmd(this.computerId), session);
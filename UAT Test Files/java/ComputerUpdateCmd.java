@@ -6,19 +6,21 @@ package com.code42.computer;
 import com.backup42.common.command.ServiceCommand;
 import com.backup42.computer.EncryptionKeyServices;
 import com.backup42.history.CpcHistoryLogger;
+import com.code42.auth.IsManageableCmd;
 import com.code42.backup.SecureDataKey;
 import com.code42.backup.SecurityKeyType;
 import com.code42.config.ComputerConfigUpdateCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.CoreBridge;
 import com.code42.core.impl.DBCmd;
 import com.code42.hibernate.aftertx.AfterTxRunnable;
 import com.code42.hibernate.aftertx.IAfterTxRunnable.Priority;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
+import com.code42.smartsearch.SmartSearchIndexUpdateCmd;
+import com.code42.smartsearch.SmartSearchType;
 import com.code42.user.DataEncryptionKeyFindByUserQuery;
 import com.code42.utils.LangUtils;
 
@@ -50,7 +52,7 @@ public class ComputerUpdateCmd extends DBCmd<Computer> {
 	@Override
 	public Computer exec(final CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsComputerManageableCmd(this.data.computerId, C42PermissionApp.Computer.UPDATE), session);
+		this.runtime.run(IsManageableCmd.computer(this.data.computerId, C42PermissionApp.Computer.UPDATE), session);
 
 		Computer computer = null;
 		this.db.beginTransaction();
@@ -122,6 +124,8 @@ public class ComputerUpdateCmd extends DBCmd<Computer> {
 
 				// Notify social network after transaction is complete
 				this.db.afterTransaction(new ComputerPublishUpdateCmd(computer), session);
+				this.db.afterTransaction(new SmartSearchIndexUpdateCmd(SmartSearchType.COMPUTER, computer
+						.getComputerId()), session);
 			}
 
 			this.db.commit();
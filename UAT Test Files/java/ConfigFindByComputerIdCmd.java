@@ -1,10 +1,10 @@
 package com.code42.config;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.computer.Config;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 
 /**
@@ -21,7 +21,7 @@ public class ConfigFindByComputerIdCmd extends DBCmd<Config> {
 	@Override
 	public Config exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsComputerManageableCmd(this.computerId, C42PermissionApp.Computer.READ), session);
+		this.runtime.run(IsManageableCmd.computer(this.computerId, C42PermissionApp.Computer.READ), session);
 
 		// Find the computer
 		ConfigFindByComputerIdQuery query = new ConfigFindByComputerIdQuery(this.computerId);
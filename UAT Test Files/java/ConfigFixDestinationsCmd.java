@@ -1,10 +1,16 @@
 package com.code42.config;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Level;
 import org.hibernate.Session;
@@ -32,6 +38,8 @@ import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.businessobjects.IBusinessObjectsService;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.FindQuery;
+import com.code42.core.hierarchy.HierarchyNotFoundException;
+import com.code42.core.hierarchy.IHierarchyService;
 import com.code42.core.impl.CoreBridge;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
@@ -45,6 +53,8 @@ import com.code42.sql.SQLQuery;
 import com.code42.sql.SQLUtils;
 import com.code42.user.IUser;
 import com.code42.user.UserLockByIdQuery;
+import com.code42.utils.LangUtils;
+import com.code42.utils.SystemProperties;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
@@ -56,6 +66,12 @@ import com.google.inject.Inject;
  * 
  * Only one of these can be running at a time.
  * 
+ * An incremental run only looks at the orgs whose destinations have changed since the last run (see
+ * ConfigFixDestinationsTracker), their descendant orgs and the computers in them; when those are not known it does a
+ * full run instead. Either way the computers are checked
+ * in parallel computer ID partitions, with an optional pause between windows; getProgress() reports how far along the
+ * running job is.
+ * 
  * See http://jira/browse/CP-6163
  */
 public class ConfigFixDestinationsCmd extends DBCmd<Boolean> {
@@ -66,20 +82,48 @@ public class ConfigFixDestinationsCmd extends DBCmd<Boolean> {
 
 	// Note that this is static because we cannot
 	private static boolean running = false;
+	private static volatile Progress progress;
+
+	static final String CONFIG_FIX_PARALLELISM = "c42.configFix.parallelism";
+	static final String CONFIG_FIX_THROTTLE_MS = "c42.configFix.throttle.ms";
+	static final int DEFAULT_PARALLELISM = 4;
+	static final long DEFAULT_THROTTLE_MS = 0;
+
+	private static final long ID_INTERVAL = 100;
 
 	@Inject
 	private IBusinessObjectsService busObjs;
 
+	@Inject
+	private IHierarchyService hier;
+
+	@Inject
+	private ConfigFixDestinationsTracker tracker;
+
 	private boolean simulate = false;
+	private boolean incremental = false;
 	private Set<Long> allDestinationGuids = new HashSet<Long>();
+	private Map<Integer, OrgInfo> orgMap;
 
 	public ConfigFixDestinationsCmd() {
 		this(false);
 	}
 
 	public ConfigFixDestinationsCmd(boolean simulate) {
+		this(simulate, false);
+	}
+
+	public ConfigFixDestinationsCmd(boolean simulate, boolean incremental) {
 		super();
 		this.simulate = simulate;
+		this.incremental = incremental;
+	}
+
+	/**
+	 * @return the progress of the running job, or null if none is running
+	 */
+	public static Progress getProgress() {
+		return progress;
 	}
 
 	@Override
@@ -108,6 +152,9 @@ public class ConfigFixDestinationsCmd extends DBCmd<Boolean> {
 		logger1.setLevel(Level.WARN);
 		logger2.setLevel(Level.WARN);
 
+		Set<Integer> changedOrgIds = null;
+		boolean drained = false;
+		boolean completed = false;
 		try {
 
 			this.db.ensureNoTransaction();
@@ -115,7 +162,26 @@ public class ConfigFixDestinationsCmd extends DBCmd<Boolean> {
 			// Authorization
 			this.auth.isAuthorized(session, C42PermissionPro.System.MANAGE_DATABASE);
 
-			log.info("config.fix::{} Destinations START", (this.simulate ? " SIMULATION:" : ""));
+			// A full run covers whatever has changed so far too. A simulation changes nothing, so it leaves them for the
+			// next real run.
+			if (this.simulate) {
+				changedOrgIds = this.tracker.peekChangedOrgs();
+			} else {
+				changedOrgIds = this.tracker.drainChangedOrgs();
+				drained = true;
+			}
+			if (this.incremental && changedOrgIds == null) {
+				log.info("config.fix:: Changed orgs are not known (cluster restart or lost update); doing a full run");
+				this.incremental = false;
+			}
+			if (this.incremental && changedOrgIds.isEmpty()) {
+				log.info("config.fix:: No org destinations have changed; nothing to do");
+				completed = true;
+				return true;
+			}
+
+			log.info("config.fix::{} Destinations START{}", (this.simulate ? " SIMULATION:" : ""),
+					(this.incremental ? " for changed orgs " + changedOrgIds : ""));
 
 			int orgConfigCheckCount = 0;
 			int orgConfigChangeCount = 0;
@@ -133,6 +199,11 @@ public class ConfigFixDestinationsCmd extends DBCmd<Boolean> {
 
 			// Create a map of the destinations for each org so we can verify when checking the computers.
 			Map<Integer, OrgInfo> orgMap = this.db.find(new OrgInfoMapQuery(orgTypes)); // Map<orgId, orgInfo>
+			if (this.incremental) {
+				// Inheriting descendants see the change too
+				orgMap.keySet().retainAll(this.findAffectedOrgs(changedOrgIds));
+			}
+			this.orgMap = orgMap;
 
 			// This would be a LOT less database hits if we read all the orgDestination information in one query and processed
 			// it in memory. The downside is creating logic similar to what happens inside DestinationFindAvailableByOrgCmd
@@ -168,36 +239,57 @@ public class ConfigFixDestinationsCmd extends DBCmd<Boolean> {
 					orgConfigChangeCount, orgConfigCheckCount);
 
 			long maxComputerId = this.db.find(new ComputerIdMaxQuery());
-			long idInterval = 100;
+			List<Integer> orgIds = null;
+			if (this.incremental && orgMap.size() <= SystemProperties.getMaxQueryInClauseSize()) {
+				orgIds = new ArrayList<Integer>(orgMap.keySet());
+			}
 
-			// Loop through each computer (both active and deactivated), checking the destinations in each config
-			// Loop through up to 100 at a time
-			for (long i = 0; i < maxComputerId; i = i + idInterval) {
-				List<ComputerInfo> infos = this.db.find(new ComputerInfoQuery(i, i + idInterval));
-				this.db.ensureNoTransaction(); // We cannot keep the table locked
-				for (ComputerInfo cInfo : infos) {
-					computerConfigCheckCount++;
-					IUser u = null;
+			// Split the computer IDs into one partition per worker, each a whole number of ID windows
+			int parallelism = Math.max(1, SystemProperties.getOptionalInt(CONFIG_FIX_PARALLELISM, DEFAULT_PARALLELISM));
+			long windows = (maxComputerId / ID_INTERVAL) + 1;
+			long partitionSize = ((windows + parallelism - 1) / parallelism) * ID_INTERVAL;
+			Progress current = new Progress(windows * ID_INTERVAL);
+			progress = current;
+
+			List<Future<Void>> futures = new LinkedList<Future<Void>>();
+			try {
+				for (long first = 0; first <= maxComputerId; first += partitionSize) {
+					ComputerPartitionCmd cmd = new ComputerPartitionCmd(first, first + partitionSize, orgIds, current);
+					futures.add(this.runtime.runAsync(cmd, session));
+				}
+				for (Future<Void> future : futures) {
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				throw new CommandException("Interrupted while checking computer configs", e);
+			} catch (ExecutionException e) {
+				throw new CommandException("Error checking computer configs", e.getCause());
+			} finally {
+				// Stop the other workers after their current window, and wait for them so none is left running
+				current.cancelled = true;
+				for (Future<Void> future : futures) {
 					try {
-						u = this.busObjs.getUser(cInfo.userId);
-						OrgInfo oInfo = orgMap.get(u.getOrgId());
-						if (oInfo == null) {
-							log.info("Ignoring GUID {}  It's org ({}) probably has no config.", cInfo.guid, u.getOrgId());
-						} else if (this.checkComputerConfig(cInfo, oInfo, session)) {
-							computerConfigChangeCount++;
-						}
+						future.get();
 					} catch (Exception e) {
-						log.error("config.fix:: Error checking computer config for GUID: {}", cInfo.guid, e);
+						// Done either way; the first failure is what we report
 					}
 				}
 			}
+			computerConfigCheckCount = current.getChecked();
+			computerConfigChangeCount = current.getChanged();
 
 			log.info("config.fix::{} STEP: Computer configs changed/checked:{}/{}", (this.simulate ? " SIMULATION:" : ""),
 					computerConfigChangeCount, computerConfigCheckCount);
 
 			log.info("config.fix::{} Destinations COMPLETED!!!");
+			completed = true;
 
 		} finally {
+			if (!completed && drained) {
+				// Try these again next time; after a failed full run, the next one has to be full too
+				this.tracker.restore(this.incremental ? changedOrgIds : null);
+			}
+			progress = null;
 			running = false;
 			// Set the logger back to what it should be
 			logger1.setLevel(originalLevel1);
@@ -208,157 +300,229 @@ public class ConfigFixDestinationsCmd extends DBCmd<Boolean> {
 	}
 
 	/**
-	 * 
-	 * @param cInfo
-	 * @param oInfo
-	 * @param session
-	 * @throws Exception
+	 * @return the given orgs and all of their descendants
 	 */
-	private boolean checkComputerConfig(ComputerInfo cInfo, OrgInfo oInfo, CoreSession session) throws Exception {
-
-		if (cInfo.configId == null) {
-			//
-			// Create config for this computer and leave
-			//
+	private Set<Integer> findAffectedOrgs(Set<Integer> orgIds) {
+		Set<Integer> rv = new HashSet<Integer>(orgIds);
+		for (Integer orgId : orgIds) {
 			try {
-				// We need to create a dummy config... a bug kept one from being created in the first place.
-
-				if (this.simulate) {
-					log.info(
-							"config.fix:: SIMULATION: Computer config for GUID {} is missing from database and would have been reset to default values.",
-							cInfo.guid);
-				} else {
-					this.createComputerConfig(cInfo, session);
-
-					// Always log the change in the history log which doesn't roll over as quickly
-					CpcHistoryLogger.warn(cInfo.guid, session,
-							"config.fix:: Computer config was missing from database and has been reset to default values.");
-				}
-
-				return true;
-			} catch (Exception e) {
-				log.error("config.fix:: Error creating config for GUID {}.", cInfo.guid, e);
+				rv.addAll(this.hier.getAllChildOrgs(orgId));
+			} catch (HierarchyNotFoundException e) {
+				log.debug("config.fix:: Org {} is no longer in the hierarchy", orgId);
 			}
 		}
+		return rv;
+	}
+
+	/**
+	 * Checks the configs of the computers in one range of computer IDs, a window at a time.
+	 */
+	private class ComputerPartitionCmd extends DBCmd<Void> {
 
-		{
-			boolean changed = false;
-			Config config = this.run(new ConfigFindByComputerIdCmd(cInfo.computerId), session);
-			ServiceConfig serviceConfig = null;
+		private final long first;
+		private final long last;
+		private final List<Integer> orgIds;
+		private final Progress progress;
 
-			try {
-				serviceConfig = config.toServiceConfig();
-
-				// for each backup set, remove destinations that are not offered to this org.
-				for (final BackupSetConfig set : serviceConfig.serviceBackup.backup.backupSets.values()) {
-					Set<Long> destinationGuids = new HashSet(set.destinations.keySet());
-					// difference returns the autoStartGuids that are not in the destinationGuids
-					Set<Long> toRemove = new HashSet(Sets.difference(destinationGuids, oInfo.destinationGuids));
-					for (Long destinationGuid : toRemove) {
-						// Only remove server/cluster destinations
-						if (this.allDestinationGuids.contains(destinationGuid)) {
-							this.removeComputerDestination(cInfo.guid, destinationGuid, set);
-							changed = true;
-						} else {
-							// destinationGuid is either a client peer or it is old destination that's not in the DB anymore.
-							// 2013-01 : Added check to distinguish between the two.
-							// Check cache first, then the database
-							IComputer c = this.busObjs.getComputerByGuid(destinationGuid);
-							if (c == null) {
-								c = this.db.find(new ComputerFindByGuidQuery(destinationGuid));
+		ComputerPartitionCmd(long first, long last, List<Integer> orgIds, Progress progress) {
+			this.first = first;
+			this.last = last;
+			this.orgIds = orgIds;
+			this.progress = progress;
+		}
+
+		@Override
+		public Void exec(CoreSession session) throws CommandException {
+
+			long throttleMs = SystemProperties.getOptionalLong(CONFIG_FIX_THROTTLE_MS, DEFAULT_THROTTLE_MS);
+			Map<Integer, OrgInfo> orgMap = ConfigFixDestinationsCmd.this.orgMap;
+			boolean incremental = ConfigFixDestinationsCmd.this.incremental;
+
+			// Loop through each computer (both active and deactivated), checking the destinations in each config
+			// Loop through up to 100 at a time
+			for (long i = this.first; i < this.last && !this.progress.cancelled; i = i + ID_INTERVAL) {
+				List<ComputerInfo> infos = this.db.find(new ComputerInfoQuery(i, i + ID_INTERVAL, this.orgIds));
+				this.db.ensureNoTransaction(); // We cannot keep the table locked
+				for (ComputerInfo cInfo : infos) {
+					IUser u = null;
+					try {
+						u = ConfigFixDestinationsCmd.this.busObjs.getUser(cInfo.userId);
+						OrgInfo oInfo = orgMap.get(u.getOrgId());
+						if (oInfo == null) {
+							if (!incremental) {
+								log.info("Ignoring GUID {}  It's org ({}) probably has no config.", cInfo.guid, u.getOrgId());
 							}
+							continue;
+						}
+						this.progress.checked.incrementAndGet();
+						if (this.checkComputerConfig(cInfo, oInfo, session)) {
+							this.progress.changed.incrementAndGet();
+						}
+					} catch (Exception e) {
+						log.error("config.fix:: Error checking computer config for GUID: {}", cInfo.guid, e);
+					}
+				}
+				this.progress.idsDone.addAndGet(ID_INTERVAL);
+				if (throttleMs > 0) {
+					LangUtils.sleep(throttleMs);
+				}
+			}
+			return null;
+		}
 
-							if (c == null || !c.getActive()) {
-								// This destination doesn't even exist any more. Add it to the list of removables and remove it.
-								toRemove.add(destinationGuid);
+		/**
+		 * 
+		 * @param cInfo
+		 * @param oInfo
+		 * @param session
+		 * @throws Exception
+		 */
+		private boolean checkComputerConfig(ComputerInfo cInfo, OrgInfo oInfo, CoreSession session) throws Exception {
+
+			if (cInfo.configId == null) {
+				//
+				// Create config for this computer and leave
+				//
+				try {
+					// We need to create a dummy config... a bug kept one from being created in the first place.
+
+					if (ConfigFixDestinationsCmd.this.simulate) {
+						log.info(
+								"config.fix:: SIMULATION: Computer config for GUID {} is missing from database and would have been reset to default values.",
+								cInfo.guid);
+					} else {
+						this.createComputerConfig(cInfo, session);
+
+						// Always log the change in the history log which doesn't roll over as quickly
+						CpcHistoryLogger.warn(cInfo.guid, session,
+								"config.fix:: Computer config was missing from database and has been reset to default values.");
+					}
+
+					return true;
+				} catch (Exception e) {
+					log.error("config.fix:: Error creating config for GUID {}.", cInfo.guid, e);
+				}
+			}
+
+			{
+				boolean changed = false;
+				Config config = this.run(new ConfigFindByComputerIdCmd(cInfo.computerId), session);
+				ServiceConfig serviceConfig = null;
+
+				try {
+					serviceConfig = config.toServiceConfig();
+
+					// for each backup set, remove destinations that are not offered to this org.
+					for (final BackupSetConfig set : serviceConfig.serviceBackup.backup.backupSets.values()) {
+						Set<Long> destinationGuids = new HashSet(set.destinations.keySet());
+						// difference returns the autoStartGuids that are not in the destinationGuids
+						Set<Long> toRemove = new HashSet(Sets.difference(destinationGuids, oInfo.destinationGuids));
+						for (Long destinationGuid : toRemove) {
+							// Only remove server/cluster destinations
+							if (ConfigFixDestinationsCmd.this.allDestinationGuids.contains(destinationGuid)) {
 								this.removeComputerDestination(cInfo.guid, destinationGuid, set);
 								changed = true;
 							} else {
-								log.trace(
-										"config.fix:: Did not remove destination GUID {} from computer config backup set {} ({}) for computer GUID {}.",
-										destinationGuid, set.name.getValue(), set.getId(), cInfo.guid);
+								// destinationGuid is either a client peer or it is old destination that's not in the DB anymore.
+								// 2013-01 : Added check to distinguish between the two.
+								// Check cache first, then the database
+								IComputer c = ConfigFixDestinationsCmd.this.busObjs.getComputerByGuid(destinationGuid);
+								if (c == null) {
+									c = this.db.find(new ComputerFindByGuidQuery(destinationGuid));
+								}
+
+								if (c == null || !c.getActive()) {
+									// This destination doesn't even exist any more. Add it to the list of removables and remove it.
+									toRemove.add(destinationGuid);
+									this.removeComputerDestination(cInfo.guid, destinationGuid, set);
+									changed = true;
+								} else {
+									log.trace(
+											"config.fix:: Did not remove destination GUID {} from computer config backup set {} ({}) for computer GUID {}.",
+											destinationGuid, set.name.getValue(), set.getId(), cInfo.guid);
+								}
 							}
 						}
 					}
-				}
 
-				// Was the config changed? If so, save it.
-				if (changed && !this.simulate) {
-					this.db.ensureNoTransaction();
-					try {
-						this.db.beginTransaction();
-						String configXml = serviceConfig.toXmlString();
-						this.run(new ComputerUpdateCmd.Builder(cInfo.computerId).configXml(configXml).build(), session);
-						this.db.commit();
-					} finally {
-						this.db.endTransaction();
+					// Was the config changed? If so, save it.
+					if (changed && !ConfigFixDestinationsCmd.this.simulate) {
+						this.db.ensureNoTransaction();
+						try {
+							this.db.beginTransaction();
+							String configXml = serviceConfig.toXmlString();
+							this.run(new ComputerUpdateCmd.Builder(cInfo.computerId).configXml(configXml).build(), session);
+							this.db.commit();
+						} finally {
+							this.db.endTransaction();
+						}
 					}
+				} catch (Exception e) {
+					log.error("config.fix:: Skipping computer {} config check.", cInfo.guid, e);
 				}
-			} catch (Exception e) {
-				log.error("config.fix:: Skipping computer {} config check.", cInfo.guid, e);
-			}
 
-			return changed;
+				return changed;
+			}
 		}
-	}
 
-	/**
-	 * Either log a simulation message or remove and log it
-	 * 
-	 * @param sourceGuid
-	 * @param destinationGuid
-	 * @param set
-	 */
-	private void removeComputerDestination(long sourceGuid, long destinationGuid, BackupSetConfig set) {
-		if (this.simulate) {
-			log.info(
-					"config.fix:: SIMULATION: Would have removed destination GUID {} from computer config backup set {} ({}) for computer GUID {}.",
-					destinationGuid, set.name.getValue(), set.getId(), sourceGuid);
-		} else {
-			set.destinations.remove(destinationGuid);
-			CpcHistoryLogger.info(null,
-					"config.fix:: Removed destination GUID {} from computer config backup set {} ({}) for computer GUID {}.",
-					destinationGuid, set.name.getValue(), set.getId(), sourceGuid);
+		/**
+		 * Either log a simulation message or remove and log it
+		 * 
+		 * @param sourceGuid
+		 * @param destinationGuid
+		 * @param set
+		 */
+		private void removeComputerDestination(long sourceGuid, long destinationGuid, BackupSetConfig set) {
+			if (ConfigFixDestinationsCmd.this.simulate) {
+				log.info(
+						"config.fix:: SIMULATION: Would have removed destination GUID {} from computer config backup set {} ({}) for computer GUID {}.",
+						destinationGuid, set.name.getValue(), set.getId(), sourceGuid);
+			} else {
+				set.destinations.remove(destinationGuid);
+				CpcHistoryLogger.info(null,
+						"config.fix:: Removed destination GUID {} from computer config backup set {} ({}) for computer GUID {}.",
+						destinationGuid, set.name.getValue(), set.getId(), sourceGuid);
+			}
 		}
-	}
 
-	/**
-	 * 
-	 * @param cInfo
-	 * @param session
-	 * @throws Exception
-	 */
-	private void createComputerConfig(ComputerInfo cInfo, CoreSession session) throws Exception {
-		this.db.ensureNoTransaction();
+		/**
+		 * 
+		 * @param cInfo
+		 * @param session
+		 * @throws Exception
+		 */
+		private void createComputerConfig(ComputerInfo cInfo, CoreSession session) throws Exception {
+			this.db.ensureNoTransaction();
 
-		try {
-			this.db.beginTransaction();
-			CoreBridge.find(new UserLockByIdQuery(cInfo.userId));
-			CoreBridge.find(new ComputerLockByIdQuery(cInfo.computerId));
+			try {
+				this.db.beginTransaction();
+				CoreBridge.find(new UserLockByIdQuery(cInfo.userId));
+				CoreBridge.find(new ComputerLockByIdQuery(cInfo.computerId));
 
-			Config config = new Config();
-			ServiceConfig sc = new ServiceConfig();
+				Config config = new Config();
+				ServiceConfig sc = new ServiceConfig();
 
-			// Set config date to 1 so the client config wins. This is a bad config put in place temporarily until computer
-			// connects to avoid exceptions that may happen if config is null.
-			sc.configDateMs.setValue(1L);
-			config.setConfigDate(sc.configDateMs.getValue());
+				// Set config date to 1 so the client config wins. This is a bad config put in place temporarily until computer
+				// connects to avoid exceptions that may happen if config is null.
+				sc.configDateMs.setValue(1L);
+				config.setConfigDate(sc.configDateMs.getValue());
 
-			// set the xml, do *not* format xml in DB - it uses more space, is slightly slower, and is not helpful.
-			String xml = sc.toXmlString(new ConfigProperties().setFormat(false));
-			config.setConfigXml(xml);
+				// set the xml, do *not* format xml in DB - it uses more space, is slightly slower, and is not helpful.
+				String xml = sc.toXmlString(new ConfigProperties().setFormat(false));
+				config.setConfigXml(xml);
 
-			this.run(new ConfigForceUpdateCmd(config), session);
+				this.run(new ConfigForceUpdateCmd(config), session);
 
-			// Save config id in computer.
-			Computer computer = this.db.find(new ComputerFindByIdQuery(cInfo.computerId));
-			computer.setConfigId(config.getConfigId()); // set the new config id
-			this.db.forceUpdate(new ComputerForceUpdateQuery(computer));
-			this.db.commit();
-		} catch (Exception e) {
-			this.db.rollback();
-		} finally {
-			this.db.endTransaction();
+				// Save config id in computer.
+				Computer computer = this.db.find(new ComputerFindByIdQuery(cInfo.computerId));
+				computer.setConfigId(config.getConfigId()); // set the new config id
+				this.db.forceUpdate(new ComputerForceUpdateQuery(computer));
+				this.db.commit();
+			} catch (Exception e) {
+				this.db.rollback();
+			} finally {
+				this.db.endTransaction();
+			}
 		}
 	}
 
@@ -466,11 +630,13 @@ public class ConfigFixDestinationsCmd extends DBCmd<Boolean> {
 
 		private long first;
 		private long last;
+		private List<Integer> orgIds;
 
-		public ComputerInfoQuery(long first, long last) {
+		public ComputerInfoQuery(long first, long last, List<Integer> orgIds) {
 			super();
 			this.first = first;
 			this.last = last;
+			this.orgIds = orgIds;
 		}
 
 		public static final String SQL = "" //
@@ -482,12 +648,17 @@ public class ConfigFixDestinationsCmd extends DBCmd<Boolean> {
 				+ "AND c.type = 'COMPUTER' AND c.parent_computer_id IS NULL                  \n" //
 				+ "AND c.computer_id >= :first AND c.computer_id < :last                     \n";
 
+		public static final String ORG_SQL = "AND u.org_id IN ( :orgIds )";
+
 		@Override
 		public List<ComputerInfo> query(Session session) throws DBServiceException {
 			List<ComputerInfo> list = Lists.newArrayList();
-			SQLQuery query = new SQLQuery(session, SQL);
+			SQLQuery query = new SQLQuery(session, (this.orgIds == null) ? SQL : SQL + ORG_SQL);
 			query.setLong("first", this.first);
 			query.setLong("last", this.last);
+			if (this.orgIds != null) {
+				query.setParameterList("orgIds", this.orgIds);
+			}
 			List<Object[]> rows = query.list();
 			for (Object[] row : rows) {
 				ComputerInfo info = new ComputerInfo();
@@ -519,6 +690,60 @@ public class ConfigFixDestinationsCmd extends DBCmd<Boolean> {
 
 	}
 
+	/**
+	 * How far along the computer config checks of the running job are, counted in computer IDs covered.
+	 */
+	public static class Progress {
+
+		private final long startMs = System.currentTimeMillis();
+		private final long idsTotal;
+		private final AtomicLong idsDone = new AtomicLong();
+		private final AtomicInteger checked = new AtomicInteger();
+		private final AtomicInteger changed = new AtomicInteger();
+		/* Set when the job is failing, so the remaining workers stop */
+		private volatile boolean cancelled = false;
+
+		Progress(long idsTotal) {
+			this.idsTotal = idsTotal;
+		}
+
+		public int getChecked() {
+			return this.checked.get();
+		}
+
+		public int getChanged() {
+			return this.changed.get();
+		}
+
+		/**
+		 * @return 0 to 100
+		 */
+		public int getPercentDone() {
+			return (this.idsTotal == 0) ? 100 : (int) Math.min(100, this.idsDone.get() * 100 / this.idsTotal);
+		}
+
+		public long getElapsedMs() {
+			return System.currentTimeMillis() - this.startMs;
+		}
+
+		/**
+		 * @return the estimated time to finish, or -1 until there is something to estimate from
+		 */
+		public long getEtaMs() {
+			long done = this.idsDone.get();
+			if (done == 0) {
+				return -1;
+			}
+			return Math.max(0, this.getElapsedMs() * (this.idsTotal - done) / done);
+		}
+
+		@Override
+		public String toString() {
+			return "Progress[" + this.getPercentDone() + "%, checked=" + this.checked + ", changed=" + this.changed
+					+ ", elapsedMs=" + this.getElapsedMs() + ", etaMs=" + this.getEtaMs() + "]";
+		}
+	}
+
 	/**
 	 * Data object holding information that we need grouped.
 	 */
@@ -0,0 +1,140 @@
+package com.code42.config;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.code42.core.space.ISpaceService;
+import com.code42.core.space.SpaceException;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Remembers which orgs have had their available destinations (or destination inheritance) changed since
+ * ConfigFixDestinationsCmd last ran, so an incremental run only has to look at the configs of those orgs, their
+ * descendants and their computers.<br>
+ * <br>
+ * The set is kept in the space, since the changes are made on every node but the job only runs on the master. It can
+ * only be trusted from the start of a run that took it: when there is none in the space (the cluster was restarted
+ * since) or a node could not add to it, drainChangedOrgs() returns null and the caller has to do a full run.
+ */
+@Singleton
+public class ConfigFixDestinationsTracker {
+
+	private static final Logger log = LoggerFactory.getLogger(ConfigFixDestinationsTracker.class);
+
+	static final String SPACE_KEY = "/config/fixDestinations/changedOrgs";
+
+	/* ================= Dependencies ================= */
+	private ISpaceService space;
+
+	/* ================= DI injection points ================= */
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.space = space;
+	}
+
+	/* Set when this node failed to record a change; the space copy is marked incomplete as soon as it can be */
+	private volatile boolean lostChange = false;
+
+	public void orgDestinationsChanged(int orgId) {
+		try {
+			this.space.lock(SPACE_KEY);
+			try {
+				ChangedOrgs changed = this.space.getAsType(SPACE_KEY, ChangedOrgs.class);
+				if (changed == null || !changed.complete) {
+					// Already unknown; the next run is a full one anyway
+					return;
+				}
+				changed.orgIds.add(orgId);
+				changed.complete = !this.lostChange;
+				this.space.put(SPACE_KEY, changed);
+				this.lostChange = false;
+			} finally {
+				this.space.unlock(SPACE_KEY);
+			}
+		} catch (SpaceException e) {
+			this.lostChange = true;
+			log.warn("config.fix:: Unable to record destination change of org {}; the next run will be a full one", orgId,
+					e);
+		}
+	}
+
+	/**
+	 * Takes the orgs changed since the last run, leaving an empty set behind to collect the changes made from now on.
+	 *
+	 * @return the changed orgs, which the caller now owns; null if they are not known and a full run is needed
+	 */
+	Set<Integer> drainChangedOrgs() {
+		try {
+			this.space.lock(SPACE_KEY);
+			try {
+				ChangedOrgs changed = this.space.getAsType(SPACE_KEY, ChangedOrgs.class);
+				this.space.put(SPACE_KEY, new ChangedOrgs());
+				boolean known = changed != null && changed.complete && !this.lostChange;
+				this.lostChange = false;
+				return known ? changed.orgIds : null;
+			} finally {
+				this.space.unlock(SPACE_KEY);
+			}
+		} catch (SpaceException e) {
+			log.warn("config.fix:: Unable to read changed orgs; doing a full run", e);
+			return null;
+		}
+	}
+
+	/**
+	 * The orgs changed since the last run, left in place; for a simulation, which has to leave them for the real run.
+	 *
+	 * @return a copy of the changed orgs; null if they are not known and a full run is needed
+	 */
+	Set<Integer> peekChangedOrgs() {
+		try {
+			ChangedOrgs changed = this.space.getAsType(SPACE_KEY, ChangedOrgs.class);
+			boolean known = changed != null && changed.complete && !this.lostChange;
+			return known ? new HashSet<Integer>(changed.orgIds) : null;
+		} catch (SpaceException e) {
+			log.warn("config.fix:: Unable to read changed orgs; doing a full run", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Hand back orgs taken by drainChangedOrgs() that could not be processed; null if it returned null.
+	 */
+	void restore(Set<Integer> orgIds) {
+		try {
+			this.space.lock(SPACE_KEY);
+			try {
+				ChangedOrgs changed = this.space.getAsType(SPACE_KEY, ChangedOrgs.class);
+				if (changed == null) {
+					return;
+				}
+				if (orgIds == null) {
+					changed.complete = false;
+				} else {
+					changed.orgIds.addAll(orgIds);
+				}
+				this.space.put(SPACE_KEY, changed);
+			} finally {
+				this.space.unlock(SPACE_KEY);
+			}
+		} catch (SpaceException e) {
+			this.lostChange = true;
+			log.warn("config.fix:: Unable to hand back changed orgs; the next run will be a full one", e);
+		}
+	}
+
+	/**
+	 * The orgs changed since the last run, and whether that is all of them.
+	 */
+	private static class ChangedOrgs implements Serializable {
+
+		private static final long serialVersionUID = 2961523748513924173L;
+
+		private final HashSet<Integer> orgIds = new HashSet<Integer>();
+		private boolean complete = true;
+	}
+}
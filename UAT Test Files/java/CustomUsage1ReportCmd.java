@@ -1,5 +1,7 @@
 package com.code42.custom;
 
+import java.io.Writer;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -18,6 +20,7 @@ import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.FindQuery;
 import com.code42.core.impl.DBCmd;
 import com.code42.custom.CustomUsage1ReportCmd.CustomUsage1;
+import com.code42.custom.OrgUsageFacts.Facts;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
 import com.code42.org.OrgSso;
@@ -29,7 +32,11 @@ import com.google.inject.internal.Lists;
 import com.google.inject.internal.Maps;
 
 /**
- * Custom org usage report written for a big communications provider.
+ * Custom org usage report written for a big communications provider. The per-org figures come from OrgUsageFacts, so
+ * the report is one pass over the org tree, but they can be a few minutes old (see OrgUsageFacts).<br>
+ * <br>
+ * With csv() the rows are written out as CSV instead (see CustomUsage1ReportCsvCmd) and null is returned; use that
+ * when serving the report, since the list holds every org at once.
  */
 public class CustomUsage1ReportCmd extends DBCmd<List<CustomUsage1>> {
 
@@ -41,35 +48,44 @@ public class CustomUsage1ReportCmd extends DBCmd<List<CustomUsage1>> {
 	@Inject
 	private IEnvironment env;
 
+	@Inject
+	private OrgUsageFacts facts;
+
+	private Writer csv = null;
+
 	// private Integer topOrgId;
 	//
 	// public CustomUsage1ReportCmd(Integer topOrgId) {
 	// this.topOrgId = topOrgId;
 	// }
 
+	/**
+	 * Write the report to the given writer as CSV rather than return it.
+	 */
+	public CustomUsage1ReportCmd csv(Writer out) {
+		this.csv = out;
+		return this;
+	}
+
 	@Override
 	public List<CustomUsage1> exec(CoreSession session) throws CommandException {
+		if (this.csv != null) {
+			int count = this.run(new CustomUsage1ReportCsvCmd(this.csv), session);
+			log.debug("Wrote {} custom usage report rows as CSV.", count);
+			return null;
+		}
+
 		if (this.env.isCpCentral()) {
 			// This probably should not be run on the CrashPlan Central database
 			// Although it should run just fine
 			return null;
 		}
 
-		Map<Integer, Date> orgCreation = this.db.find(new OrgCreationDateQuery());
-		Map<Integer, Date> orgLastActivity = this.db.find(new OrgLastActivityQuery());
-		Map<Integer, Long> orgArchiveBytes = this.db.find(new OrgArchiveBytesRollupQuery());
-
-		long defaultMaxBytes = -1;
-		try {
-			OrgSso adminOrg = this.busObjs.getOrg(CpcConstants.Orgs.ADMIN_ID);
-			defaultMaxBytes = adminOrg.getMaxBytes();
-		} catch (BusinessObjectsException e) {
-			log.error("Unable to get admin org from IBusinessObjectService", e);
-		}
+		Facts facts = this.facts.awaitFacts();
+		long defaultMaxBytes = getDefaultMaxBytes(this.busObjs);
 
 		List<CustomUsage1> usages = Lists.newArrayList();
-		IBusinessObjectsVisitor visitor = new CustomUsage1ReportVisitor(usages, orgCreation, orgArchiveBytes,
-				orgLastActivity, defaultMaxBytes);
+		IBusinessObjectsVisitor visitor = new CustomUsage1ReportVisitor(usages, facts, defaultMaxBytes);
 
 		// Populates the usages list
 		this.busObjs.visitOrgs(visitor);
@@ -78,16 +94,47 @@ public class CustomUsage1ReportCmd extends DBCmd<List<CustomUsage1>> {
 		return usages;
 	}
 
+	/**
+	 * @return the admin org's max bytes, which orgs without their own (or an ancestor's) fall back to; -1 if unknown
+	 */
+	static long getDefaultMaxBytes(IBusinessObjectsService busObjs) {
+		try {
+			OrgSso adminOrg = busObjs.getOrg(CpcConstants.Orgs.ADMIN_ID);
+			return adminOrg.getMaxBytes();
+		} catch (BusinessObjectsException e) {
+			log.error("Unable to get admin org from IBusinessObjectService", e);
+			return -1;
+		}
+	}
+
 	public static class OrgCreationDateQuery extends FindQuery<Map<Integer, Date>> {
 
 		private static final String SQL = "-- Find the creation date for all orgs \n"
 				+ "SELECT o.org_id, o.creation_date \n" //
-				+ "FROM t_org AS o                  \n";
+				+ "FROM t_org AS o                  \n" //
+				+ "--since WHERE o.creation_date > :since \n";
+
+		private final Date since;
+
+		public OrgCreationDateQuery() {
+			this(null);
+		}
+
+		/**
+		 * @param since only orgs created after this, null for all
+		 */
+		public OrgCreationDateQuery(Date since) {
+			this.since = since;
+		}
 
 		@Override
 		public Map<Integer, Date> query(Session session) throws DBServiceException {
 
 			SQLQuery query = new SQLQuery(session, SQL);
+			if (this.since != null) {
+				query.activate("--since");
+				query.setTimestamp("since", this.since);
+			}
 			List<Object[]> list = query.list();
 
 			Map<Integer, Date> orgCreated = Maps.newHashMap();
@@ -111,12 +158,45 @@ public class CustomUsage1ReportCmd extends DBCmd<List<CustomUsage1>> {
 				+ "INNER JOIN t_computer AS c ON (c.computer_id = fcu.source_computer_id) \n" //
 				+ "INNER JOIN t_user AS u ON (u.user_id = c.user_id) \n" //
 				+ "WHERE u.org_id > 1  \n" //
+				+ "--since AND fcu.last_activity > :since \n" //
+				+ "--orgs AND u.org_id IN (:orgIds) \n" //
 				+ "GROUP BY u.org_id   \n";
 
+		private final Date since;
+		private final Collection<Integer> orgIds;
+
+		public OrgLastActivityQuery() {
+			this((Date) null);
+		}
+
+		/**
+		 * @param since only activity after this (so only the orgs that have had some), null for all
+		 */
+		public OrgLastActivityQuery(Date since) {
+			this.since = since;
+			this.orgIds = null;
+		}
+
+		/**
+		 * @param orgIds only these orgs, all of their activity
+		 */
+		public OrgLastActivityQuery(Collection<Integer> orgIds) {
+			this.since = null;
+			this.orgIds = orgIds;
+		}
+
 		@Override
 		public Map<Integer, Date> query(Session session) throws DBServiceException {
 
 			SQLQuery query = new SQLQuery(session, SQL);
+			if (this.since != null) {
+				query.activate("--since");
+				query.setTimestamp("since", this.since);
+			}
+			if (this.orgIds != null) {
+				query.activate("--orgs");
+				query.setParameterList("orgIds", this.orgIds);
+			}
 			List<Object[]> list = query.list();
 
 			Map<Integer, Date> orgLastActivity = Maps.newHashMap();
@@ -164,21 +244,16 @@ public class CustomUsage1ReportCmd extends DBCmd<List<CustomUsage1>> {
 
 		private static final Logger log = LoggerFactory.getLogger(CustomUsage1ReportCmd.CustomUsage1ReportVisitor.class);
 
-		private Map<Integer, Date> orgCreation;
-		private Map<Integer, Date> orgLastActivity;
-		private Map<Integer, Long> orgBytes;
+		private Facts facts;
 		private long defaultMaxBytes = -1;
 
 		private List<CustomUsage1> usages;
 		private Map<Integer, CustomUsage1> usageById = Maps.newHashMap();
 
-		public CustomUsage1ReportVisitor(List<CustomUsage1> usages, Map<Integer, Date> orgCreation,
-				Map<Integer, Long> orgBytes, Map<Integer, Date> orgLastActivity, long defaultMaxBytes) {
+		public CustomUsage1ReportVisitor(List<CustomUsage1> usages, Facts facts, long defaultMaxBytes) {
 			super();
 			this.usages = usages;
-			this.orgCreation = orgCreation;
-			this.orgBytes = orgBytes;
-			this.orgLastActivity = orgLastActivity;
+			this.facts = facts;
 			this.defaultMaxBytes = defaultMaxBytes;
 		}
 
@@ -219,27 +294,27 @@ public class CustomUsage1ReportCmd extends DBCmd<List<CustomUsage1>> {
 			this.usageById.put(orgId, usage);
 
 			// Set the creation date
-			Date creationDate = this.orgCreation.get(orgId);
-			if (creationDate == null) {
-				log.warn("No creation date found for orgId: {}");
+			long creationDate = this.facts.getCreationDate(orgId);
+			if (creationDate < 0) {
+				log.warn("No creation date found for orgId: {}", orgId);
 			} else {
-				usage.setCreationDate(creationDate.getTime());
+				usage.setCreationDate(creationDate);
 			}
 
 			// Set archive bytes
-			Long bytes = this.orgBytes.get(orgId);
-			if (bytes == null) {
-				log.warn("No archive bytes found for orgId: {}");
+			long bytes = this.facts.getArchiveBytes(orgId);
+			if (bytes < 0) {
+				log.warn("No archive bytes found for orgId: {}", orgId);
 			} else {
 				usage.setArchiveBytes(bytes);
 			}
 
 			// Set last activity date
-			Date lastActivityDate = this.orgLastActivity.get(orgId);
-			if (lastActivityDate == null) {
-				log.warn("No last activity found for orgId: {}");
+			long lastActivity = this.facts.getLastActivity(orgId);
+			if (lastActivity < 0) {
+				log.warn("No last activity found for orgId: {}", orgId);
 			} else {
-				usage.setLastActivity(lastActivityDate.getTime());
+				usage.setLastActivity(lastActivity);
 			}
 
 			if (usage.getOrgId() != CpcConstants.Orgs.ADMIN_ID) {
@@ -0,0 +1,227 @@
+package com.code42.custom;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+import com.backup42.CpcConstants;
+import com.code42.core.CommandException;
+import com.code42.core.IEnvironment;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.businessobjects.IBusinessObjectsService;
+import com.code42.core.businessobjects.impl.BaseBusinessObjectsVisitor;
+import com.code42.core.impl.AbstractCmd;
+import com.code42.custom.OrgUsageFacts.Facts;
+import com.code42.org.OrgSso;
+import com.code42.utils.option.Option;
+import com.google.inject.Inject;
+import com.google.inject.internal.Maps;
+
+/**
+ * Writes the CustomUsage1 report as CSV, one org per line, straight to the given writer so a report for a very large
+ * number of orgs is never built up in memory, neither as one string nor as a list of CustomUsage1. The rows are the
+ * same, in the same order, as CustomUsage1ReportCmd returns.<br>
+ * <br>
+ * An org's last activity includes its child orgs', so the org tree is visited twice: once to work out each org's level,
+ * inherited max bytes and last activity (a few numbers per org), and once to write the rows. The writer is flushed
+ * every so often but not closed. Returns the number of orgs written.
+ */
+public class CustomUsage1ReportCsvCmd extends AbstractCmd<Integer> {
+
+	static final String HEADER = "orgId,orgName,parentOrgId,level,creationDate,lastActivity,archiveBytes,maxBytes,availableBytes";
+
+	private static final int FLUSH_INTERVAL = 1000;
+
+	@Inject
+	private IBusinessObjectsService busObjs;
+
+	@Inject
+	private IEnvironment env;
+
+	@Inject
+	private OrgUsageFacts facts;
+
+	private final Writer out;
+
+	public CustomUsage1ReportCsvCmd(Writer out) {
+		this.out = out;
+	}
+
+	@Override
+	public Integer exec(CoreSession session) throws CommandException {
+		if (this.env.isCpCentral()) {
+			// See CustomUsage1ReportCmd
+			return 0;
+		}
+
+		Facts facts = this.facts.awaitFacts();
+		long defaultMaxBytes = CustomUsage1ReportCmd.getDefaultMaxBytes(this.busObjs);
+
+		OrgTreeVisitor tree = new OrgTreeVisitor(facts, defaultMaxBytes);
+		this.busObjs.visitOrgs(tree);
+		tree.rollUpLastActivity();
+
+		try {
+			this.out.write(HEADER);
+			this.out.write('\n');
+			CsvVisitor csv = new CsvVisitor(this.out, facts, tree.rows);
+			this.busObjs.visitOrgs(csv);
+			if (csv.error != null) {
+				throw csv.error;
+			}
+			this.out.flush();
+			return csv.count;
+		} catch (IOException e) {
+			throw new CommandException("Error writing custom usage report", e);
+		}
+	}
+
+	/**
+	 * Usable org from the visitor's arguments, or null for one the report skips.
+	 */
+	private static OrgSso getActiveOrg(Option<OrgSso> orgOpt) {
+		if (orgOpt == null) {
+			return null;
+		}
+		OrgSso org = orgOpt.get();
+		return (org != null && org.isActive()) ? org : null;
+	}
+
+	/**
+	 * What a row needs to know about the rest of the tree; filled in as CustomUsage1ReportVisitor would.
+	 */
+	private static class Row {
+
+		private final Integer parentOrgId;
+		private final int level;
+		private final long maxBytes;
+		private long lastActivity;
+
+		Row(Integer parentOrgId, int level, long maxBytes, long lastActivity) {
+			this.parentOrgId = parentOrgId;
+			this.level = level;
+			this.maxBytes = maxBytes;
+			this.lastActivity = lastActivity;
+		}
+	}
+
+	/**
+	 * First pass: parents are visited before their children, so levels and inherited max bytes are worked out top down.
+	 */
+	private static class OrgTreeVisitor extends BaseBusinessObjectsVisitor {
+
+		private final Facts facts;
+		private final long defaultMaxBytes;
+		private final Map<Integer, Row> rows = Maps.newHashMap();
+
+		OrgTreeVisitor(Facts facts, long defaultMaxBytes) {
+			super();
+			this.facts = facts;
+			this.defaultMaxBytes = defaultMaxBytes;
+		}
+
+		@Override
+		public void visitOrg(int orgId, Option<OrgSso> orgOpt) {
+			OrgSso org = getActiveOrg(orgOpt);
+			if (org == null) {
+				return;
+			}
+			Row parent = (org.getParentOrgId() != null) ? this.rows.get(org.getParentOrgId()) : null;
+			long maxBytes;
+			if (org.getMaxBytes() != null) {
+				maxBytes = org.getMaxBytes();
+			} else {
+				maxBytes = (parent != null) ? parent.maxBytes : this.defaultMaxBytes;
+			}
+			Integer parentOrgId = (parent != null) ? org.getParentOrgId() : null;
+			int level = (parent != null) ? parent.level + 1 : 0;
+			this.rows.put(orgId, new Row(parentOrgId, level, maxBytes, this.facts.getLastActivity(orgId)));
+		}
+
+		/**
+		 * Give every org the latest last activity of its subtree.
+		 */
+		void rollUpLastActivity() {
+			for (Row row : this.rows.values()) {
+				long activity = row.lastActivity;
+				Row ancestor = (row.parentOrgId != null) ? this.rows.get(row.parentOrgId) : null;
+				// An ancestor that is already as recent passes it on (or will) itself
+				while (ancestor != null && ancestor.lastActivity < activity) {
+					ancestor.lastActivity = activity;
+					ancestor = (ancestor.parentOrgId != null) ? this.rows.get(ancestor.parentOrgId) : null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Second pass: one line per org, as it is visited.
+	 */
+	private static class CsvVisitor extends BaseBusinessObjectsVisitor {
+
+		private final Writer out;
+		private final Facts facts;
+		private final Map<Integer, Row> rows;
+		private final StringBuilder line = new StringBuilder(256);
+		private int count = 0;
+		private IOException error = null;
+
+		CsvVisitor(Writer out, Facts facts, Map<Integer, Row> rows) {
+			super();
+			this.out = out;
+			this.facts = facts;
+			this.rows = rows;
+		}
+
+		@Override
+		public void visitOrg(int orgId, Option<OrgSso> orgOpt) {
+			Row row = this.rows.get(orgId);
+			OrgSso org = getActiveOrg(orgOpt);
+			if (this.error != null || row == null || org == null || orgId == CpcConstants.Orgs.ADMIN_ID) {
+				return;
+			}
+
+			long archiveBytes = Math.max(0, this.facts.getArchiveBytes(orgId));
+			long availableBytes = (row.maxBytes < 0) ? -1 : row.maxBytes - archiveBytes;
+
+			StringBuilder line = this.line;
+			line.setLength(0);
+			line.append(orgId).append(',');
+			appendQuoted(line, org.getOrgName());
+			line.append(',');
+			if (row.parentOrgId != null) {
+				line.append(row.parentOrgId);
+			}
+			line.append(',').append(row.level);
+			line.append(',').append(this.facts.getCreationDate(orgId));
+			line.append(',').append(row.lastActivity);
+			line.append(',').append(archiveBytes);
+			line.append(',').append(row.maxBytes);
+			line.append(',').append(availableBytes);
+			line.append('\n');
+			try {
+				this.out.append(line);
+				if (++this.count % FLUSH_INTERVAL == 0) {
+					this.out.flush();
+				}
+			} catch (IOException e) {
+				this.error = e;
+			}
+		}
+	}
+
+	private static void appendQuoted(StringBuilder sb, String value) {
+		if (value == null) {
+			return;
+		}
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				sb.append('"');
+			}
+			sb.append(c);
+		}
+		sb.append('"');
+	}
+}
@@ -5,7 +5,6 @@ import com.code42.computer.ComputerSsoFindByGuidCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.AbstractCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
@@ -37,7 +36,7 @@ public class DataKeyTokenCreateCmd extends AbstractCmd<String> {
 
 		ComputerSso c = this.run(new ComputerSsoFindByGuidCmd(this.computerGuid), session);
 
-		this.runtime.run(new IsComputerManageableCmd(c.getComputerId(), C42PermissionApp.Computer.READ), session);
+		this.runtime.run(IsManageableCmd.computer(c.getComputerId(), C42PermissionApp.Computer.READ), session);
 
 		DataKeyToken token = new DataKeyToken(c.getUserId());
 		String encryptedToken = this.tokenHandler.handleOutboundToken(token);
@@ -7,16 +7,32 @@ import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.AbstractCmd;
 
 /**
- * Export the database to our local storage location and each store point.
+ * Export the database to our local storage location and each store point. A parallel export writes the table-parallel
+ * format of DbParallelExportCmd instead of a single dump.
  */
 public class DbExportCmd extends AbstractCmd<Void> {
 
+	private final boolean parallel;
+
+	public DbExportCmd() {
+		this(false);
+	}
+
+	public DbExportCmd(boolean parallel) {
+		this.parallel = parallel;
+	}
+
 	@Override
 	public Void exec(CoreSession session) throws CommandException {
 
 		// Authorization
 		this.auth.isAuthorized(session, C42PermissionPro.System.MANAGE_DATABASE);
 
+		if (this.parallel) {
+			this.run(new DbParallelExportCmd(), session);
+			return null;
+		}
+
 		try {
 			// History logging happens inside of DbExportManager
 			DbExportManager.getInstance().doWork();
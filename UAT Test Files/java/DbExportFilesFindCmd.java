@@ -12,7 +12,7 @@ import com.code42.core.impl.DBCmd;
 import com.code42.executor.jsr166.Arrays;
 
 /**
- * Finds all the export file names
+ * Finds all the export file names, including the directories of complete table-parallel exports
  */
 public class DbExportFilesFindCmd extends DBCmd<Collection<File>> {
 
@@ -29,7 +29,7 @@ public class DbExportFilesFindCmd extends DBCmd<Collection<File>> {
 			File[] files = folder.listFiles(new FileFilter() {
 
 				public boolean accept(File file) {
-					return file.isFile() && file.getName().endsWith(".sql.gz");
+					return (file.isFile() && file.getName().endsWith(".sql.gz")) || DbExportManifest.isExport(file);
 				}
 			});
 
@@ -0,0 +1,466 @@
+package com.code42.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.code42.env.Database;
+import com.code42.utils.LangUtils;
+
+/**
+ * Describes a table-parallel database export: which tables it holds, their columns, and the compressed chunk files each
+ * table was written to along with their row counts and checksums. The database recorded is the one exported from;
+ * chunks are database neutral. An export directory only counts as complete once its manifest has been written, which
+ * is the last thing DbParallelExportCmd does.
+ * 
+ * @see DbParallelExportCmd
+ * @see DbParallelImportCmd
+ */
+public class DbExportManifest {
+
+	public static final String DIRECTORY_SUFFIX = ".parallel";
+	public static final String MANIFEST_FILE = "manifest.properties";
+
+	/* 2: chunks hold plain column values (see ChunkWriter) rather than serialized JDBC objects */
+	static final int VERSION = 2;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final long created;
+	private final Database database;
+	private final List<Table> tables = new ArrayList<Table>();
+
+	public DbExportManifest(long created, Database database) {
+		this.created = created;
+		this.database = database;
+	}
+
+	public long getCreated() {
+		return this.created;
+	}
+
+	public Database getDatabase() {
+		return this.database;
+	}
+
+	public List<Table> getTables() {
+		return Collections.unmodifiableList(this.tables);
+	}
+
+	public void addTable(Table table) {
+		this.tables.add(table);
+	}
+
+	/**
+	 * @return the kind of database the connection is to
+	 */
+	public static Database getDatabase(DatabaseMetaData meta) throws SQLException {
+		return meta.getDatabaseProductName().toLowerCase().contains("postgres") ? Database.POSTGRES : Database.H2;
+	}
+
+	/**
+	 * @return true if the directory holds a complete table-parallel export
+	 */
+	public static boolean isExport(File dir) {
+		return dir.isDirectory() && dir.getName().endsWith(DIRECTORY_SUFFIX) && new File(dir, MANIFEST_FILE).isFile();
+	}
+
+	public void write(File dir) throws IOException {
+		Properties props = new Properties();
+		props.setProperty("version", String.valueOf(VERSION));
+		props.setProperty("created", String.valueOf(this.created));
+		props.setProperty("database", this.database.name());
+
+		List<String> names = new ArrayList<String>();
+		for (Table table : this.tables) {
+			names.add(table.name);
+			String prefix = "table." + table.name + ".";
+			props.setProperty(prefix + "columns", join(table.columns));
+			props.setProperty(prefix + "chunks", String.valueOf(table.chunks.size()));
+			for (int i = 0; i < table.chunks.size(); i++) {
+				Chunk chunk = table.chunks.get(i);
+				props.setProperty(prefix + "chunk." + i + ".file", chunk.file);
+				props.setProperty(prefix + "chunk." + i + ".rows", String.valueOf(chunk.rows));
+				props.setProperty(prefix + "chunk." + i + ".sha256", chunk.sha256);
+			}
+		}
+		props.setProperty("tables", join(names));
+
+		// Write then rename so a half-written manifest is never mistaken for a complete export
+		File tmp = new File(dir, MANIFEST_FILE + ".tmp");
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+		try {
+			props.store(out, "Table-parallel database export");
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(new File(dir, MANIFEST_FILE))) {
+			throw new IOException("Unable to move manifest into place in " + dir);
+		}
+	}
+
+	public static DbExportManifest read(File dir) throws IOException {
+		Properties props = new Properties();
+		InputStream in = new BufferedInputStream(new FileInputStream(new File(dir, MANIFEST_FILE)));
+		try {
+			props.load(in);
+		} finally {
+			in.close();
+		}
+
+		if (!String.valueOf(VERSION).equals(props.getProperty("version"))) {
+			throw new IOException("Unsupported export manifest version " + props.getProperty("version") + " in " + dir);
+		}
+
+		try {
+			DbExportManifest manifest = new DbExportManifest(Long.parseLong(props.getProperty("created")), Database
+					.valueOf(props.getProperty("database")));
+			for (String name : split(props.getProperty("tables"))) {
+				String prefix = "table." + name + ".";
+				Table table = new Table(name, split(props.getProperty(prefix + "columns")));
+				int chunks = Integer.parseInt(props.getProperty(prefix + "chunks"));
+				for (int i = 0; i < chunks; i++) {
+					table.addChunk(new Chunk(props.getProperty(prefix + "chunk." + i + ".file"), Long.parseLong(props
+							.getProperty(prefix + "chunk." + i + ".rows")), props.getProperty(prefix + "chunk." + i + ".sha256")));
+				}
+				manifest.addTable(table);
+			}
+			return manifest;
+		} catch (RuntimeException e) {
+			// Missing keys and bad numbers both end up here
+			throw new IOException("Invalid export manifest in " + dir + ": " + e);
+		}
+	}
+
+	private static MessageDigest sha256() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("SHA-256 is not available: " + e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder rv = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			rv.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return rv.toString();
+	}
+
+	private static String join(List<String> values) {
+		StringBuilder rv = new StringBuilder();
+		for (String value : values) {
+			if (rv.length() > 0) {
+				rv.append(',');
+			}
+			rv.append(value);
+		}
+		return rv.toString();
+	}
+
+	private static List<String> split(String csv) {
+		if (!LangUtils.hasValue(csv)) {
+			return new ArrayList<String>();
+		}
+		return Arrays.asList(csv.split(","));
+	}
+
+	public static class Table {
+
+		private final String name;
+		private final List<String> columns;
+		private final List<Chunk> chunks = new ArrayList<Chunk>();
+
+		public Table(String name, List<String> columns) {
+			this.name = name;
+			this.columns = new ArrayList<String>(columns);
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public List<String> getColumns() {
+			return Collections.unmodifiableList(this.columns);
+		}
+
+		public List<Chunk> getChunks() {
+			return Collections.unmodifiableList(this.chunks);
+		}
+
+		public void addChunk(Chunk chunk) {
+			this.chunks.add(chunk);
+		}
+
+		public long getRows() {
+			long rv = 0;
+			for (Chunk chunk : this.chunks) {
+				rv += chunk.rows;
+			}
+			return rv;
+		}
+	}
+
+	public static class Chunk {
+
+		private final String file;
+		private final long rows;
+		private final String sha256;
+
+		public Chunk(String file, long rows, String sha256) {
+			this.file = file;
+			this.rows = rows;
+			this.sha256 = sha256;
+		}
+
+		public String getFile() {
+			return this.file;
+		}
+
+		public long getRows() {
+			return this.rows;
+		}
+
+		public String getSha256() {
+			return this.sha256;
+		}
+	}
+
+	/**
+	 * Writes one chunk file with the SHA-256 of the file computed on the way out. A chunk is a gzipped stream (written
+	 * with DataOutputStream) of rows; each row is the byte 1, the number of columns (int) and then each column as a
+	 * one-byte type tag and its value:
+	 * <ul>
+	 * <li>N null (no value)</li>
+	 * <li>Z boolean, B byte, S short, I int, J long, F float, D double</li>
+	 * <li>G decimal, as its string form in UTF-8</li>
+	 * <li>T string, as UTF-8</li>
+	 * <li>X bytes</li>
+	 * <li>A date, H time (long millis)</li>
+	 * <li>M timestamp (long millis, then int nanos)</li>
+	 * </ul>
+	 * Strings, decimals and bytes are written as their length (int) and then the bytes. The byte 0 ends the chunk. Only
+	 * plain values are written, so a chunk doesn't depend on the JDBC driver that exported it; any other column type
+	 * fails the export.
+	 */
+	public static class ChunkWriter {
+
+		private final File file;
+		private final MessageDigest digest;
+		private final DataOutputStream out;
+		private long rows = 0;
+
+		public ChunkWriter(File file) throws IOException {
+			this.file = file;
+			this.digest = sha256();
+			this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new DigestOutputStream(
+					new BufferedOutputStream(new FileOutputStream(file)), this.digest))));
+		}
+
+		public long getRows() {
+			return this.rows;
+		}
+
+		public void write(Object[] row) throws IOException {
+			this.out.writeByte(1);
+			this.out.writeInt(row.length);
+			for (Object value : row) {
+				writeValue(this.out, value);
+			}
+			this.rows++;
+		}
+
+		public Chunk close() throws IOException {
+			this.out.writeByte(0);
+			this.out.close();
+			return new Chunk(this.file.getName(), this.rows, toHex(this.digest.digest()));
+		}
+
+		private static void writeValue(DataOutputStream out, Object value) throws IOException {
+			if (value == null) {
+				out.writeByte('N');
+			} else if (value instanceof Boolean) {
+				out.writeByte('Z');
+				out.writeBoolean((Boolean) value);
+			} else if (value instanceof Byte) {
+				out.writeByte('B');
+				out.writeByte((Byte) value);
+			} else if (value instanceof Short) {
+				out.writeByte('S');
+				out.writeShort((Short) value);
+			} else if (value instanceof Integer) {
+				out.writeByte('I');
+				out.writeInt((Integer) value);
+			} else if (value instanceof Long) {
+				out.writeByte('J');
+				out.writeLong((Long) value);
+			} else if (value instanceof Float) {
+				out.writeByte('F');
+				out.writeFloat((Float) value);
+			} else if (value instanceof Double) {
+				out.writeByte('D');
+				out.writeDouble((Double) value);
+			} else if (value instanceof BigDecimal) {
+				out.writeByte('G');
+				writeBytes(out, ((BigDecimal) value).toString().getBytes(UTF8));
+			} else if (value instanceof String) {
+				out.writeByte('T');
+				writeBytes(out, ((String) value).getBytes(UTF8));
+			} else if (value instanceof byte[]) {
+				out.writeByte('X');
+				writeBytes(out, (byte[]) value);
+			} else if (value instanceof Timestamp) {
+				out.writeByte('M');
+				out.writeLong(((Timestamp) value).getTime());
+				out.writeInt(((Timestamp) value).getNanos());
+			} else if (value instanceof java.sql.Date) {
+				out.writeByte('A');
+				out.writeLong(((java.sql.Date) value).getTime());
+			} else if (value instanceof Time) {
+				out.writeByte('H');
+				out.writeLong(((Time) value).getTime());
+			} else {
+				throw new IOException("Unsupported column value type " + value.getClass().getName());
+			}
+		}
+
+		private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads the rows back from a chunk file written by ChunkWriter. The whole file is checked against the checksum in
+	 * the manifest before anything is read from it, so a damaged or altered chunk is never parsed.
+	 */
+	public static class ChunkReader {
+
+		private final Chunk chunk;
+		private final DataInputStream in;
+
+		public ChunkReader(File dir, Chunk chunk) throws IOException {
+			this.chunk = chunk;
+			File file = new File(dir, chunk.file);
+			verify(file, chunk);
+			this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new BufferedInputStream(
+					new FileInputStream(file)))));
+		}
+
+		/**
+		 * @return the next row, or null at the end of the chunk
+		 */
+		public Object[] next() throws IOException {
+			int marker = this.in.readByte();
+			if (marker == 0) {
+				return null;
+			} else if (marker != 1) {
+				throw new IOException("Corrupt chunk " + this.chunk.file + "; unexpected row marker " + marker);
+			}
+			int columns = this.in.readInt();
+			if (columns < 0) {
+				throw new IOException("Corrupt chunk " + this.chunk.file + "; negative column count");
+			}
+			Object[] row = new Object[columns];
+			for (int i = 0; i < columns; i++) {
+				row[i] = this.readValue();
+			}
+			return row;
+		}
+
+		public void close() throws IOException {
+			this.in.close();
+		}
+
+		private Object readValue() throws IOException {
+			char tag = (char) this.in.readByte();
+			switch (tag) {
+			case 'N':
+				return null;
+			case 'Z':
+				return this.in.readBoolean();
+			case 'B':
+				return this.in.readByte();
+			case 'S':
+				return this.in.readShort();
+			case 'I':
+				return this.in.readInt();
+			case 'J':
+				return this.in.readLong();
+			case 'F':
+				return this.in.readFloat();
+			case 'D':
+				return this.in.readDouble();
+			case 'G':
+				return new BigDecimal(new String(this.readBytes(), UTF8));
+			case 'T':
+				return new String(this.readBytes(), UTF8);
+			case 'X':
+				return this.readBytes();
+			case 'M':
+				Timestamp ts = new Timestamp(this.in.readLong());
+				ts.setNanos(this.in.readInt());
+				return ts;
+			case 'A':
+				return new java.sql.Date(this.in.readLong());
+			case 'H':
+				return new Time(this.in.readLong());
+			default:
+				throw new IOException("Corrupt chunk " + this.chunk.file + "; unknown type tag " + (int) tag);
+			}
+		}
+
+		private byte[] readBytes() throws IOException {
+			int length = this.in.readInt();
+			if (length < 0) {
+				throw new IOException("Corrupt chunk " + this.chunk.file + "; negative length");
+			}
+			byte[] bytes = new byte[length];
+			this.in.readFully(bytes);
+			return bytes;
+		}
+
+		private static void verify(File file, Chunk chunk) throws IOException {
+			MessageDigest digest = sha256();
+			InputStream raw = new DigestInputStream(new BufferedInputStream(new FileInputStream(file)), digest);
+			try {
+				byte[] buf = new byte[64 * 1024];
+				while (raw.read(buf) >= 0) {
+					// Nothing to do
+				}
+			} finally {
+				raw.close();
+			}
+			String actual = toHex(digest.digest());
+			if (!actual.equals(chunk.sha256)) {
+				throw new IOException("Checksum mismatch for chunk " + chunk.file + "; expected " + chunk.sha256
+						+ " but was " + actual);
+			}
+		}
+	}
+}
@@ -39,6 +39,12 @@ public class DbImportCmd extends AbstractCmd<Void> {
 			throw new CommandException("File does not exist: " + this.file.getAbsolutePath());
 		}
 
+		if (DbExportManifest.isExport(this.file)) {
+			// Logs its own history
+			this.run(new DbParallelImportCmd(this.file), session);
+			return null;
+		}
+
 		try {
 			DbImportManager.importDb(this.file);
 			CpcHistoryLogger.info(session, "Imported database: {}", this.file.getAbsolutePath());
@@ -0,0 +1,430 @@
+package com.code42.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+import com.backup42.common.perm.C42PermissionPro;
+import com.backup42.history.CpcHistoryLogger;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.core.impl.DBCmd;
+import com.code42.env.Database;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.Stopwatch;
+import com.code42.utils.SystemProperties;
+
+/**
+ * Export the database as a table-parallel export: a directory holding each table as its own series of gzipped,
+ * checksummed chunk files, plus a manifest describing them (see DbExportManifest). Every table is read as of the same
+ * snapshot, so exporting a running server still gives a consistent export: on Postgres the tables are exported
+ * concurrently, each worker importing the snapshot of the exporter's REPEATABLE READ transaction; on H2 they are
+ * exported one after another in a single transaction. DbImportCmd can import the chunks concurrently and pick up where
+ * it left off after a failure.<br>
+ * <br>
+ * The export is written to the first database export folder and then copied to the others, manifest last, so a folder
+ * never appears to hold a complete export that isn't.
+ */
+public class DbParallelExportCmd extends DBCmd<File> {
+
+	private static final Logger log = LoggerFactory.getLogger(DbParallelExportCmd.class);
+
+	static final String DB_EXPORT_PARALLELISM = "c42.dbExport.parallelism";
+	static final String DB_EXPORT_CHUNK_ROWS = "c42.dbExport.chunk.rows";
+	static final int DEFAULT_PARALLELISM = 4;
+	static final int DEFAULT_CHUNK_ROWS = 100000;
+
+	private static final int FETCH_SIZE = 1000;
+
+	@Override
+	public File exec(CoreSession session) throws CommandException {
+
+		// Authorization
+		this.auth.isAuthorized(session, C42PermissionPro.System.MANAGE_DATABASE);
+
+		// The export runs in its own transaction
+		this.db.ensureNoTransaction();
+
+		List<File> folders = new ArrayList<File>(this.run(new DbExportFoldersFindCmd(), session));
+		if (folders.isEmpty()) {
+			throw new CommandException("No database export folder is available");
+		}
+
+		Stopwatch sw = new Stopwatch();
+		String name = "dbexport_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date())
+				+ DbExportManifest.DIRECTORY_SUFFIX;
+		File dir = new File(folders.get(0), name);
+		if (!dir.mkdir()) {
+			throw new CommandException("Unable to create export directory " + dir);
+		}
+
+		DbExportManifest manifest;
+		this.db.beginTransaction();
+		try {
+			this.db.manual();
+
+			// Every table is read as of this transaction's snapshot so the export is consistent
+			String snapshot = this.db.find(new DbExportSnapshotQuery());
+			manifest = this.db.find(new DbExportDescribeQuery());
+			List<DbExportManifest.Table> tables = new ArrayList<DbExportManifest.Table>(manifest.getTables());
+			manifest = new DbExportManifest(manifest.getCreated(), manifest.getDatabase());
+
+			if (snapshot != null) {
+				this.exportParallel(tables, dir, snapshot, manifest, session);
+			} else {
+				// No exportable snapshot (H2); read the tables one after another in this transaction
+				for (DbExportManifest.Table table : tables) {
+					Stopwatch tsw = new Stopwatch();
+					this.db.find(new DbExportTableQuery(table, dir, null));
+					log.info("Exported {} rows of {} in {} chunks in {}", table.getRows(), table.getName(), table
+							.getChunks().size(), tsw);
+					manifest.addTable(table);
+				}
+			}
+			this.db.commit();
+		} catch (CommandException e) {
+			this.db.rollback();
+			throw e;
+		} finally {
+			this.db.endTransaction();
+		}
+
+		try {
+			manifest.write(dir);
+			for (File folder : folders.subList(1, folders.size())) {
+				copyExport(dir, new File(folder, name));
+			}
+		} catch (IOException e) {
+			throw new CommandException("Unable to write database export " + dir, e);
+		}
+
+		log.info("Exported {} tables to {} in {}", manifest.getTables().size(), dir, sw);
+		CpcHistoryLogger.info(session, "Exported database: {}", dir.getAbsolutePath());
+		return dir;
+	}
+
+	/**
+	 * Exports the tables concurrently, each worker importing the snapshot of our transaction, which has to stay open
+	 * until they are done.
+	 */
+	private void exportParallel(List<DbExportManifest.Table> tables, File dir, String snapshot,
+			DbExportManifest manifest, CoreSession session) throws CommandException {
+		int parallelism = Math.max(1, SystemProperties.getOptionalInt(DB_EXPORT_PARALLELISM, DEFAULT_PARALLELISM));
+		LinkedList<Future<DbExportManifest.Table>> inFlight = new LinkedList<Future<DbExportManifest.Table>>();
+		DbWorkerPool pool = new DbWorkerPool(this.runtime, "DbExport", parallelism);
+		try {
+			for (DbExportManifest.Table table : tables) {
+				inFlight.add(pool.submit(new DbExportTableCmd(table, dir, snapshot), session));
+				while (inFlight.size() >= parallelism) {
+					manifest.addTable(inFlight.removeFirst().get());
+				}
+			}
+			while (!inFlight.isEmpty()) {
+				manifest.addTable(inFlight.removeFirst().get());
+			}
+		} catch (InterruptedException e) {
+			throw new CommandException("Interrupted while exporting database", e);
+		} catch (ExecutionException e) {
+			throw new CommandException("Unable to export database", e.getCause());
+		} finally {
+			for (Future<DbExportManifest.Table> pending : inFlight) {
+				pending.cancel(true);
+			}
+			// Keep our transaction, and so the snapshot, until no cancelled worker can still be starting on it
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Copies the chunks, then the manifest.
+	 */
+	private static void copyExport(File from, File to) throws IOException {
+		if (!to.mkdir()) {
+			throw new IOException("Unable to create export directory " + to);
+		}
+		for (File file : from.listFiles()) {
+			if (!file.getName().equals(DbExportManifest.MANIFEST_FILE)) {
+				copyFile(file, new File(to, file.getName()));
+			}
+		}
+		copyFile(new File(from, DbExportManifest.MANIFEST_FILE), new File(to, DbExportManifest.MANIFEST_FILE));
+	}
+
+	private static void copyFile(File from, File to) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(from));
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(to));
+			try {
+				byte[] buf = new byte[64 * 1024];
+				int n;
+				while ((n = in.read(buf)) >= 0) {
+					out.write(buf, 0, n);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Converts values the JDBC driver hands back as handles into plain ones that a chunk can hold.
+	 */
+	static Object portable(Object value) throws SQLException {
+		if (value instanceof Clob) {
+			Clob clob = (Clob) value;
+			return clob.getSubString(1, (int) clob.length());
+		}
+		if (value instanceof Blob) {
+			Blob blob = (Blob) value;
+			return blob.getBytes(1, (int) blob.length());
+		}
+		return value;
+	}
+
+	/* ========================== Private helper classes ========================== */
+
+	/**
+	 * Exports a single table on its own connection, in a transaction that reads the exporter's snapshot.
+	 */
+	private static class DbExportTableCmd extends DBCmd<DbExportManifest.Table> {
+
+		private final DbExportManifest.Table table;
+		private final File dir;
+		private final String snapshot;
+
+		DbExportTableCmd(DbExportManifest.Table table, File dir, String snapshot) {
+			this.table = table;
+			this.dir = dir;
+			this.snapshot = snapshot;
+		}
+
+		@Override
+		public DbExportManifest.Table exec(CoreSession session) throws CommandException {
+			Stopwatch sw = new Stopwatch();
+			this.db.beginTransaction();
+			try {
+				this.db.manual();
+				this.db.find(new DbExportTableQuery(this.table, this.dir, this.snapshot));
+				this.db.commit();
+			} catch (CommandException e) {
+				this.db.rollback();
+				throw e;
+			} finally {
+				this.db.endTransaction();
+			}
+			log.info("Exported {} rows of {} in {} chunks in {}", this.table.getRows(), this.table.getName(), this.table
+					.getChunks().size(), sw);
+			return this.table;
+		}
+	}
+
+	private static class DbExportTableQuery extends FindQuery<Void> {
+
+		private final DbExportManifest.Table table;
+		private final File dir;
+		private final String snapshot;
+
+		/**
+		 * @param snapshot a Postgres snapshot to read the table as of, or null to read it in the current transaction
+		 */
+		DbExportTableQuery(DbExportManifest.Table table, File dir, String snapshot) {
+			this.table = table;
+			this.dir = dir;
+			this.snapshot = snapshot;
+		}
+
+		@Override
+		public Void query(Session session) throws DBServiceException {
+			try {
+				session.doWork(new DbExportTableWork(this.table, this.dir, this.snapshot));
+				return null;
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception exporting " + this.table.getName(), he);
+			}
+		}
+	}
+
+	private static class DbExportTableWork implements Work {
+
+		private final DbExportManifest.Table table;
+		private final File dir;
+		private final String snapshot;
+
+		DbExportTableWork(DbExportManifest.Table table, File dir, String snapshot) {
+			this.table = table;
+			this.dir = dir;
+			this.snapshot = snapshot;
+		}
+
+		public void execute(Connection conn) throws SQLException {
+			int chunkRows = Math.max(1, SystemProperties.getOptionalInt(DB_EXPORT_CHUNK_ROWS, DEFAULT_CHUNK_ROWS));
+			int columns = this.table.getColumns().size();
+
+			Statement stmt = conn.createStatement();
+			if (this.snapshot != null) {
+				// Must be the first statements of the transaction
+				stmt.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+				stmt.execute("SET TRANSACTION SNAPSHOT '" + this.snapshot + "'");
+			}
+			stmt.setFetchSize(FETCH_SIZE);
+			ResultSet rs = stmt.executeQuery(selectSql(this.table));
+			rs.setFetchSize(FETCH_SIZE);
+
+			DbExportManifest.ChunkWriter writer = null;
+			try {
+				int index = 0;
+				while (rs.next()) {
+					if (writer == null) {
+						writer = new DbExportManifest.ChunkWriter(new File(this.dir, this.table.getName() + "." + index++ + ".gz"));
+					}
+					Object[] row = new Object[columns];
+					for (int i = 0; i < columns; i++) {
+						row[i] = portable(rs.getObject(i + 1));
+					}
+					writer.write(row);
+					if (writer.getRows() >= chunkRows) {
+						this.table.addChunk(writer.close());
+						writer = null;
+					}
+				}
+				if (writer != null) {
+					this.table.addChunk(writer.close());
+				}
+			} catch (IOException e) {
+				SQLException se = new SQLException("Unable to write chunk of " + this.table.getName() + ": " + e);
+				se.initCause(e);
+				throw se;
+			} finally {
+				rs.close();
+				stmt.close();
+			}
+		}
+
+		private static String selectSql(DbExportManifest.Table table) {
+			StringBuilder sql = new StringBuilder("SELECT ");
+			for (int i = 0; i < table.getColumns().size(); i++) {
+				sql.append(i > 0 ? ", " : "").append(table.getColumns().get(i));
+			}
+			return sql.append(" FROM ").append(table.getName()).toString();
+		}
+	}
+
+	/**
+	 * Starts the export's transaction. On Postgres it is made REPEATABLE READ and its snapshot exported, and the result
+	 * is the snapshot id for the table workers to read as of; elsewhere the result is null. Must be the first query of
+	 * the transaction.
+	 */
+	private static class DbExportSnapshotQuery extends FindQuery<String> {
+
+		@Override
+		public String query(Session session) throws DBServiceException {
+			final List<String> rv = new ArrayList<String>(1);
+			try {
+				session.doWork(new Work() {
+
+					public void execute(Connection conn) throws SQLException {
+						if (DbExportManifest.getDatabase(conn.getMetaData()) != Database.POSTGRES) {
+							return;
+						}
+						Statement stmt = conn.createStatement();
+						try {
+							stmt.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+							ResultSet rs = stmt.executeQuery("SELECT pg_export_snapshot()");
+							rs.next();
+							String snapshot = rs.getString(1);
+							rs.close();
+							if (!snapshot.matches("[0-9A-Fa-f-]+")) {
+								throw new SQLException("Unexpected snapshot id " + snapshot);
+							}
+							rv.add(snapshot);
+						} finally {
+							stmt.close();
+						}
+					}
+				});
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception exporting snapshot for export", he);
+			}
+			return rv.isEmpty() ? null : rv.get(0);
+		}
+	}
+
+	/**
+	 * Lists the application tables (those named t_*) and their columns. The result is a manifest with no chunks yet.
+	 */
+	private static class DbExportDescribeQuery extends FindQuery<DbExportManifest> {
+
+		@Override
+		public DbExportManifest query(Session session) throws DBServiceException {
+			final List<DbExportManifest> rv = new ArrayList<DbExportManifest>(1);
+			try {
+				session.doWork(new Work() {
+
+					public void execute(Connection conn) throws SQLException {
+						DatabaseMetaData meta = conn.getMetaData();
+						DbExportManifest manifest = new DbExportManifest(System.currentTimeMillis(), DbExportManifest
+								.getDatabase(meta));
+
+						List<String> names = new ArrayList<String>();
+						ResultSet rs = meta.getTables(null, null, "%", new String[] { "TABLE" });
+						while (rs.next()) {
+							String name = rs.getString("TABLE_NAME");
+							String schema = rs.getString("TABLE_SCHEM");
+							if (name.toLowerCase().startsWith("t_") && !isSystemSchema(schema)) {
+								names.add(name);
+							}
+						}
+						rs.close();
+
+						for (String name : names) {
+							List<String> columns = new ArrayList<String>();
+							ResultSet cols = meta.getColumns(null, null, name, "%");
+							while (cols.next()) {
+								columns.add(cols.getString("COLUMN_NAME"));
+							}
+							cols.close();
+							manifest.addTable(new DbExportManifest.Table(name, columns));
+						}
+						rv.add(manifest);
+					}
+				});
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception describing database for export", he);
+			}
+			return rv.get(0);
+		}
+
+		private static boolean isSystemSchema(String schema) {
+			return schema != null
+					&& (schema.equalsIgnoreCase("INFORMATION_SCHEMA") || schema.toLowerCase().startsWith("pg_"));
+		}
+	}
+}
@@ -0,0 +1,884 @@
+package com.code42.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+import com.backup42.common.perm.C42PermissionPro;
+import com.backup42.history.CpcHistoryLogger;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.core.db.impl.UpdateQuery;
+import com.code42.core.impl.DBCmd;
+import com.code42.env.Database;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.Stopwatch;
+import com.code42.utils.SystemProperties;
+
+/**
+ * Import a table-parallel export written by DbParallelExportCmd into this server's database, whichever database the
+ * export came from. Chunks are imported concurrently, each in its own transaction. A chunk's checksum is checked before
+ * it is read, and the chunk is recorded as imported in a progress table in the same transaction as its rows, so running
+ * the import again after a failure skips exactly what was already committed instead of starting over.<br>
+ * <br>
+ * Foreign keys are checked throughout. Tables are imported in foreign key order, a table's chunks only once every table
+ * it references is in. A table that references itself, and the tables left in or behind a foreign key cycle, are
+ * imported as one unit in a single transaction, parents first and in batches (see DbImportUnitQuery). A fresh import
+ * (nothing in the progress table for this export) first empties every table in the manifest, in reverse foreign key
+ * order.<br>
+ * <br>
+ * The chunks and units are run on a DbWorkerPool rather than the runtime, which this command is itself running on.
+ */
+public class DbParallelImportCmd extends DBCmd<Void> {
+
+	private static final Logger log = LoggerFactory.getLogger(DbParallelImportCmd.class);
+
+	static final String DB_IMPORT_PARALLELISM = "c42.dbImport.parallelism";
+	static final int DEFAULT_PARALLELISM = 4;
+
+	/* Not a t_ table, so it is never exported itself; dropped once the import is complete */
+	static final String PROGRESS_TABLE = "db_import_progress";
+
+	private static final int BATCH_SIZE = 1000;
+
+	private final File dir;
+
+	public DbParallelImportCmd(File dir) {
+		this.dir = dir;
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+
+		this.auth.isAuthorized(session, C42PermissionPro.System.MANAGE_DATABASE);
+
+		// We cannot have an umbrella transaction when this is called.
+		this.db.ensureNoTransaction();
+
+		DbExportManifest manifest;
+		try {
+			manifest = DbExportManifest.read(this.dir);
+		} catch (IOException e) {
+			throw new CommandException("Invalid database export " + this.dir, e);
+		}
+
+		Stopwatch sw = new Stopwatch();
+		DbImportPlan plan = this.db.find(new DbImportPlanQuery(manifest));
+		Set<String> done = this.runInTransaction(new DbImportProgressQuery(manifest.getCreated()));
+		if (done.isEmpty()) {
+			log.info("Importing {} database from {} into {}", manifest.getDatabase(), this.dir, plan.database);
+			this.runInTransaction(new DbImportClearQuery(plan));
+		} else {
+			log.info("Resuming database import from {}; {} chunks already imported", this.dir, done.size());
+		}
+
+		int parallelism = Math.max(1, SystemProperties.getOptionalInt(DB_IMPORT_PARALLELISM, DEFAULT_PARALLELISM));
+		int imported = 0;
+		for (List<DbExportManifest.Table> level : plan.levels) {
+			List<DBCmd<Void>> cmds = new ArrayList<DBCmd<Void>>();
+			for (DbExportManifest.Table table : level) {
+				if (plan.selfReferencing.contains(table.getName())) {
+					this.addUnit(cmds, Collections.singletonList(table), plan, manifest.getCreated(), done);
+					continue;
+				}
+				for (DbExportManifest.Chunk chunk : table.getChunks()) {
+					if (!done.contains(chunk.getFile())) {
+						cmds.add(new DbImportChunkCmd(this.dir, table, chunk, manifest.getCreated()));
+					}
+				}
+			}
+			imported += this.runAll(cmds, parallelism, session);
+		}
+		List<DBCmd<Void>> cyclic = new ArrayList<DBCmd<Void>>();
+		this.addUnit(cyclic, plan.cyclic, plan, manifest.getCreated(), done);
+		imported += this.runAll(cyclic, parallelism, session);
+
+		if (plan.database == Database.POSTGRES) {
+			this.runInTransaction(new DbImportResetSequencesQuery(manifest));
+		}
+		this.runInTransaction(new DbImportProgressDropQuery());
+
+		log.info("Imported {} chunks and units from {} in {}", imported, this.dir, sw);
+		CpcHistoryLogger.info(session, "Imported database: {}", this.dir.getAbsolutePath());
+		return null;
+	}
+
+	private <T> T runInTransaction(UpdateQuery<T> query) throws CommandException {
+		try {
+			this.db.beginTransaction();
+			this.db.manual();
+			T rv = this.db.update(query);
+			this.db.commit();
+			return rv;
+		} catch (CommandException e) {
+			this.db.rollback();
+			throw e;
+		} finally {
+			this.db.endTransaction();
+		}
+	}
+
+	/**
+	 * Adds a command importing the tables' remaining chunks as one unit, if there are any.
+	 */
+	private void addUnit(List<DBCmd<Void>> cmds, List<DbExportManifest.Table> tables, DbImportPlan plan, long created,
+			Set<String> done) {
+		for (DbExportManifest.Table table : tables) {
+			for (DbExportManifest.Chunk chunk : table.getChunks()) {
+				if (!done.contains(chunk.getFile())) {
+					cmds.add(new DbImportUnitCmd(this.dir, tables, created, done, plan.unitKeys));
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the commands on a DbWorkerPool, no more than parallelism at a time, and waits for all of them.
+	 *
+	 * @return the number of commands run
+	 */
+	private int runAll(List<DBCmd<Void>> cmds, int parallelism, CoreSession session) throws CommandException {
+		if (cmds.isEmpty()) {
+			return 0;
+		}
+		LinkedList<Future<Void>> inFlight = new LinkedList<Future<Void>>();
+		DbWorkerPool pool = new DbWorkerPool(this.runtime, "DbImport", Math.min(parallelism, cmds.size()));
+		try {
+			for (DBCmd<Void> cmd : cmds) {
+				inFlight.add(pool.submit(cmd, session));
+				while (inFlight.size() >= parallelism) {
+					inFlight.removeFirst().get();
+				}
+			}
+			while (!inFlight.isEmpty()) {
+				inFlight.removeFirst().get();
+			}
+			return cmds.size();
+		} catch (InterruptedException e) {
+			throw new CommandException("Interrupted while importing database", e);
+		} catch (ExecutionException e) {
+			throw new CommandException("Unable to import database from " + this.dir + "; run the import again to resume", e
+					.getCause());
+		} finally {
+			for (Future<Void> pending : inFlight) {
+				pending.cancel(true);
+			}
+			pool.shutdown();
+		}
+	}
+
+	/* ========================== Private helper classes ========================== */
+
+	/**
+	 * The target database and the order to import the manifest's tables in. Table names are as in the manifest.
+	 */
+	private static class DbImportPlan {
+
+		private Database database;
+		/* Each level only references tables in earlier levels (or itself) */
+		private final List<List<DbExportManifest.Table>> levels = new ArrayList<List<DbExportManifest.Table>>();
+		private final Set<String> selfReferencing = new HashSet<String>();
+		/* Tables in or behind a foreign key cycle; imported last, together */
+		private final List<DbExportManifest.Table> cyclic = new ArrayList<DbExportManifest.Table>();
+		/* Nullable foreign key columns to clear before emptying self-referencing and cyclic tables */
+		private final Map<String, List<String>> loopColumns = new LinkedHashMap<String, List<String>>();
+		/* Foreign keys within self-referencing and cyclic tables: [parent table, foreign key column, parent column] */
+		private final Map<String, List<String[]>> unitKeys = new HashMap<String, List<String[]>>();
+
+		List<DbExportManifest.Table> getDeleteOrder() {
+			List<DbExportManifest.Table> rv = new ArrayList<DbExportManifest.Table>();
+			for (List<DbExportManifest.Table> level : this.levels) {
+				rv.addAll(level);
+			}
+			rv.addAll(this.cyclic);
+			Collections.reverse(rv);
+			return rv;
+		}
+	}
+
+	/**
+	 * Works out the DbImportPlan from the foreign keys of the database being imported into.
+	 */
+	private static class DbImportPlanQuery extends FindQuery<DbImportPlan> {
+
+		private final DbExportManifest manifest;
+
+		DbImportPlanQuery(DbExportManifest manifest) {
+			this.manifest = manifest;
+		}
+
+		@Override
+		public DbImportPlan query(Session session) throws DBServiceException {
+			final List<DbImportPlan> rv = new ArrayList<DbImportPlan>(1);
+			try {
+				session.doWork(new Work() {
+
+					public void execute(Connection conn) throws SQLException {
+						rv.add(DbImportPlanQuery.this.plan(conn.getMetaData()));
+					}
+				});
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception planning database import", he);
+			}
+			return rv.get(0);
+		}
+
+		private DbImportPlan plan(DatabaseMetaData meta) throws SQLException {
+			DbImportPlan plan = new DbImportPlan();
+			plan.database = DbExportManifest.getDatabase(meta);
+
+			// Unquoted names fold to upper case in H2 and lower case in Postgres; match them case-insensitively
+			Map<String, String> targetNames = new HashMap<String, String>();
+			ResultSet rs = meta.getTables(null, null, "%", new String[] { "TABLE" });
+			while (rs.next()) {
+				targetNames.put(rs.getString("TABLE_NAME").toLowerCase(), rs.getString("TABLE_NAME"));
+			}
+			rs.close();
+
+			Map<String, DbExportManifest.Table> tables = new LinkedHashMap<String, DbExportManifest.Table>();
+			for (DbExportManifest.Table table : this.manifest.getTables()) {
+				tables.put(table.getName().toLowerCase(), table);
+			}
+
+			// key -> [parent key, foreign key column, parent column] of each of its foreign keys to an imported table
+			Map<String, List<String[]>> foreignKeys = new HashMap<String, List<String[]>>();
+			Map<String, Set<String>> nullable = new HashMap<String, Set<String>>();
+			for (String key : tables.keySet()) {
+				String target = targetNames.get(key);
+				if (target == null) {
+					throw new SQLException("Table " + tables.get(key).getName() + " does not exist in this database");
+				}
+				List<String[]> fks = new ArrayList<String[]>();
+				ResultSet keys = meta.getImportedKeys(null, null, target);
+				while (keys.next()) {
+					String parent = keys.getString("PKTABLE_NAME").toLowerCase();
+					if (tables.containsKey(parent)) {
+						fks.add(new String[] { parent, keys.getString("FKCOLUMN_NAME"),
+								keys.getString("PKCOLUMN_NAME") });
+					}
+				}
+				keys.close();
+				foreignKeys.put(key, fks);
+
+				Set<String> columns = new HashSet<String>();
+				ResultSet cols = meta.getColumns(null, null, target, "%");
+				while (cols.next()) {
+					if ("YES".equals(cols.getString("IS_NULLABLE"))) {
+						columns.add(cols.getString("COLUMN_NAME"));
+					}
+				}
+				cols.close();
+				nullable.put(key, columns);
+			}
+
+			// Level by level: a table goes in once everything it references (other than itself) is in
+			Set<String> placed = new HashSet<String>();
+			while (true) {
+				List<String> level = new ArrayList<String>();
+				for (String key : tables.keySet()) {
+					if (placed.contains(key)) {
+						continue;
+					}
+					boolean ready = true;
+					for (String[] fk : foreignKeys.get(key)) {
+						if (fk[0].equals(key)) {
+							plan.selfReferencing.add(tables.get(key).getName());
+						} else if (!placed.contains(fk[0])) {
+							ready = false;
+						}
+					}
+					if (ready) {
+						level.add(key);
+					}
+				}
+				if (level.isEmpty()) {
+					break;
+				}
+				List<DbExportManifest.Table> levelTables = new ArrayList<DbExportManifest.Table>();
+				for (String key : level) {
+					levelTables.add(tables.get(key));
+				}
+				placed.addAll(level);
+				plan.levels.add(levelTables);
+			}
+
+			Set<String> cyclic = new HashSet<String>();
+			for (String key : tables.keySet()) {
+				if (!placed.contains(key)) {
+					cyclic.add(key);
+					plan.cyclic.add(tables.get(key));
+				}
+			}
+
+			for (String key : tables.keySet()) {
+				List<String> columns = new ArrayList<String>();
+				List<String[]> unitKeys = new ArrayList<String[]>();
+				for (String[] fk : foreignKeys.get(key)) {
+					boolean loop = fk[0].equals(key) || (cyclic.contains(key) && cyclic.contains(fk[0]));
+					if (loop && nullable.get(key).contains(fk[1])) {
+						columns.add(fk[1]);
+					}
+					if (loop) {
+						unitKeys.add(new String[] { tables.get(fk[0]).getName(), fk[1], fk[2] });
+					}
+				}
+				if (!columns.isEmpty()) {
+					plan.loopColumns.put(tables.get(key).getName(), columns);
+				}
+				if (!unitKeys.isEmpty()) {
+					plan.unitKeys.put(tables.get(key).getName(), unitKeys);
+				}
+			}
+			return plan;
+		}
+	}
+
+	/**
+	 * Creates the progress table if need be; the result is the chunks of this export already imported.
+	 */
+	private static class DbImportProgressQuery extends UpdateQuery<Set<String>> {
+
+		private final long created;
+
+		DbImportProgressQuery(long created) {
+			this.created = created;
+		}
+
+		@Override
+		public Set<String> query(Session session) throws DBServiceException {
+			final Set<String> rv = new HashSet<String>();
+			try {
+				session.doWork(new Work() {
+
+					public void execute(Connection conn) throws SQLException {
+						Statement stmt = conn.createStatement();
+						try {
+							stmt.execute("CREATE TABLE IF NOT EXISTS " + PROGRESS_TABLE
+									+ " (export_created BIGINT NOT NULL, chunk VARCHAR(255) NOT NULL,"
+									+ " PRIMARY KEY (export_created, chunk))");
+						} finally {
+							stmt.close();
+						}
+
+						PreparedStatement ps = conn.prepareStatement("SELECT chunk FROM " + PROGRESS_TABLE
+								+ " WHERE export_created = ?");
+						try {
+							ps.setLong(1, DbImportProgressQuery.this.created);
+							ResultSet rs = ps.executeQuery();
+							while (rs.next()) {
+								rv.add(rs.getString(1));
+							}
+							rs.close();
+						} finally {
+							ps.close();
+						}
+					}
+				});
+				return rv;
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception reading import progress", he);
+			}
+		}
+	}
+
+	private static class DbImportProgressDropQuery extends UpdateQuery<Void> {
+
+		@Override
+		public Void query(Session session) throws DBServiceException {
+			try {
+				session.doWork(new Work() {
+
+					public void execute(Connection conn) throws SQLException {
+						Statement stmt = conn.createStatement();
+						try {
+							stmt.execute("DROP TABLE IF EXISTS " + PROGRESS_TABLE);
+						} finally {
+							stmt.close();
+						}
+					}
+				});
+				return null;
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception removing import progress", he);
+			}
+		}
+	}
+
+	/**
+	 * Imports a single chunk in its own transaction on its own connection.
+	 */
+	private static class DbImportChunkCmd extends DBCmd<Void> {
+
+		private final File dir;
+		private final DbExportManifest.Table table;
+		private final DbExportManifest.Chunk chunk;
+		private final long created;
+
+		DbImportChunkCmd(File dir, DbExportManifest.Table table, DbExportManifest.Chunk chunk, long created) {
+			this.dir = dir;
+			this.table = table;
+			this.chunk = chunk;
+			this.created = created;
+		}
+
+		@Override
+		public Void exec(CoreSession session) throws CommandException {
+			try {
+				this.db.beginTransaction();
+				this.db.manual();
+				this.db.update(new DbImportChunkQuery(this.dir, this.table, this.chunk, this.created));
+				this.db.commit();
+			} catch (CommandException e) {
+				this.db.rollback();
+				throw e;
+			} finally {
+				this.db.endTransaction();
+			}
+			log.debug("Imported {} rows of {} from {}", this.chunk.getRows(), this.table.getName(), this.chunk.getFile());
+			return null;
+		}
+	}
+
+	/**
+	 * Inserts the chunk's rows in batches and records the chunk as imported.
+	 */
+	private static class DbImportChunkQuery extends UpdateQuery<Void> {
+
+		private final File dir;
+		private final DbExportManifest.Table table;
+		private final DbExportManifest.Chunk chunk;
+		private final long created;
+
+		DbImportChunkQuery(File dir, DbExportManifest.Table table, DbExportManifest.Chunk chunk, long created) {
+			this.dir = dir;
+			this.table = table;
+			this.chunk = chunk;
+			this.created = created;
+		}
+
+		@Override
+		public Void query(Session session) throws DBServiceException {
+			try {
+				session.doWork(new Work() {
+
+					public void execute(Connection conn) throws SQLException {
+						DbImportChunkQuery.this.importChunk(conn);
+					}
+				});
+				return null;
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception importing " + this.chunk.getFile(), he);
+			}
+		}
+
+		private void importChunk(Connection conn) throws SQLException {
+			PreparedStatement ps = conn.prepareStatement(insertSql(this.table));
+			try {
+				// Throws, before anything is read, if the file doesn't match the manifest
+				DbExportManifest.ChunkReader reader = new DbExportManifest.ChunkReader(this.dir, this.chunk);
+				try {
+					int batched = 0;
+					Object[] row;
+					while ((row = reader.next()) != null) {
+						setRow(ps, this.table, row, this.chunk);
+						ps.addBatch();
+						if (++batched % BATCH_SIZE == 0) {
+							ps.executeBatch();
+						}
+					}
+					ps.executeBatch();
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {
+				SQLException se = new SQLException("Unable to read chunk " + this.chunk.getFile() + ": " + e);
+				se.initCause(e);
+				throw se;
+			} finally {
+				ps.close();
+			}
+			recordProgress(conn, this.created, this.chunk);
+		}
+	}
+
+	/**
+	 * Imports tables whose rows may reference rows later in the export (a table that references itself, or tables in a
+	 * foreign key cycle) in one transaction on its own connection.
+	 */
+	private static class DbImportUnitCmd extends DBCmd<Void> {
+
+		private final File dir;
+		private final List<DbExportManifest.Table> tables;
+		private final long created;
+		private final Set<String> done;
+		private final Map<String, List<String[]>> unitKeys;
+
+		DbImportUnitCmd(File dir, List<DbExportManifest.Table> tables, long created, Set<String> done,
+				Map<String, List<String[]>> unitKeys) {
+			this.dir = dir;
+			this.tables = tables;
+			this.created = created;
+			this.done = done;
+			this.unitKeys = unitKeys;
+		}
+
+		@Override
+		public Void exec(CoreSession session) throws CommandException {
+			try {
+				this.db.beginTransaction();
+				this.db.manual();
+				this.db.update(new DbImportUnitQuery(this.dir, this.tables, this.created, this.done, this.unitKeys));
+				this.db.commit();
+			} catch (CommandException e) {
+				this.db.rollback();
+				throw e;
+			} finally {
+				this.db.endTransaction();
+			}
+			log.debug("Imported {} as one unit", this.tables.size() == 1 ? this.tables.get(0).getName() : this.tables);
+			return null;
+		}
+	}
+
+	/**
+	 * Inserts the rows parents first, in batches. Each pass reads the unit's chunks again and inserts the rows not in
+	 * yet whose parents in the unit are all in (a row may follow its parent within a pass, since a table's batch runs
+	 * in order). Only the ids the rows are referenced by are kept, and which rows are in, so a unit takes as many
+	 * passes as its deepest chain of parents and no more memory than its keys. If a pass gets nothing in, the parents
+	 * of the rows left are not in the export and the unit fails.
+	 */
+	private static class DbImportUnitQuery extends UpdateQuery<Void> {
+
+		private final File dir;
+		private final List<DbExportManifest.Table> tables;
+		private final long created;
+		private final Set<String> done;
+		private final Map<String, List<String[]>> unitKeys;
+
+		DbImportUnitQuery(File dir, List<DbExportManifest.Table> tables, long created, Set<String> done,
+				Map<String, List<String[]>> unitKeys) {
+			this.dir = dir;
+			this.tables = tables;
+			this.created = created;
+			this.done = done;
+			this.unitKeys = unitKeys;
+		}
+
+		@Override
+		public Void query(Session session) throws DBServiceException {
+			try {
+				session.doWork(new Work() {
+
+					public void execute(Connection conn) throws SQLException {
+						DbImportUnitQuery.this.importUnit(conn);
+					}
+				});
+				return null;
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception importing " + this.tables, he);
+			}
+		}
+
+		private void importUnit(Connection conn) throws SQLException {
+			// Values of the columns referenced within the unit, by table and column, of the rows in so far
+			Map<String, Set<Object>> keys = new HashMap<String, Set<Object>>();
+			// The rows in so far, by chunk and row number
+			Map<String, BitSet> inserted = new HashMap<String, BitSet>();
+			long remaining = 0;
+			for (DbExportManifest.Table table : this.tables) {
+				for (String[] fk : this.getKeys(table)) {
+					keys.put(keyName(fk[0], fk[2]), new HashSet<Object>());
+				}
+				for (DbExportManifest.Chunk chunk : table.getChunks()) {
+					if (!this.done.contains(chunk.getFile())) {
+						inserted.put(chunk.getFile(), new BitSet());
+						remaining += chunk.getRows();
+					}
+				}
+			}
+
+			int passes = 0;
+			try {
+				while (remaining > 0) {
+					passes++;
+					long before = remaining;
+					for (DbExportManifest.Table table : this.tables) {
+						remaining -= this.importPass(conn, table, keys, inserted);
+					}
+					if (remaining == before) {
+						throw new SQLException(remaining + " rows of " + this.tables
+								+ " reference rows that are not in the export");
+					}
+				}
+			} catch (IOException e) {
+				SQLException se = new SQLException("Unable to read chunk of " + this.tables + ": " + e);
+				se.initCause(e);
+				throw se;
+			}
+
+			for (DbExportManifest.Table table : this.tables) {
+				for (DbExportManifest.Chunk chunk : table.getChunks()) {
+					if (!this.done.contains(chunk.getFile())) {
+						recordProgress(conn, this.created, chunk);
+					}
+				}
+			}
+			log.debug("Imported {} in {} passes", this.tables, passes);
+		}
+
+		/**
+		 * Inserts the table's rows that are not in yet and whose parents are.
+		 * 
+		 * @return the number of rows inserted
+		 */
+		private long importPass(Connection conn, DbExportManifest.Table table, Map<String, Set<Object>> keys,
+				Map<String, BitSet> inserted) throws SQLException, IOException {
+			// The parents each row needs, and the keys of this table that other rows need
+			List<String[]> fks = this.getKeys(table);
+			int[] fkColumns = new int[fks.size()];
+			List<Set<Object>> parentKeys = new ArrayList<Set<Object>>(fks.size());
+			for (int i = 0; i < fks.size(); i++) {
+				fkColumns[i] = columnIndex(table, fks.get(i)[1]);
+				parentKeys.add(keys.get(keyName(fks.get(i)[0], fks.get(i)[2])));
+			}
+			List<Integer> keyColumns = new ArrayList<Integer>();
+			List<Set<Object>> ownKeys = new ArrayList<Set<Object>>();
+			for (Map.Entry<String, Set<Object>> entry : keys.entrySet()) {
+				String prefix = table.getName().toLowerCase() + ".";
+				if (entry.getKey().startsWith(prefix)) {
+					keyColumns.add(columnIndex(table, entry.getKey().substring(prefix.length())));
+					ownKeys.add(entry.getValue());
+				}
+			}
+
+			long count = 0;
+			PreparedStatement ps = conn.prepareStatement(insertSql(table));
+			try {
+				for (DbExportManifest.Chunk chunk : table.getChunks()) {
+					BitSet in = inserted.get(chunk.getFile());
+					if (in == null || in.cardinality() == chunk.getRows()) {
+						continue;
+					}
+					DbExportManifest.ChunkReader reader = new DbExportManifest.ChunkReader(this.dir, chunk);
+					try {
+						int n = -1;
+						Object[] row;
+						while ((row = reader.next()) != null) {
+							n++;
+							if (in.get(n) || !isReady(row, fkColumns, parentKeys)) {
+								continue;
+							}
+							setRow(ps, table, row, chunk);
+							ps.addBatch();
+							in.set(n);
+							for (int i = 0; i < keyColumns.size(); i++) {
+								ownKeys.get(i).add(keyValue(row[keyColumns.get(i)]));
+							}
+							if (++count % BATCH_SIZE == 0) {
+								ps.executeBatch();
+							}
+						}
+					} finally {
+						reader.close();
+					}
+				}
+				// Before the next table, whose rows may reference these
+				ps.executeBatch();
+			} finally {
+				ps.close();
+			}
+			return count;
+		}
+
+		private List<String[]> getKeys(DbExportManifest.Table table) {
+			List<String[]> fks = this.unitKeys.get(table.getName());
+			return (fks != null) ? fks : Collections.<String[]> emptyList();
+		}
+
+		private static boolean isReady(Object[] row, int[] fkColumns, List<Set<Object>> parentKeys) {
+			for (int i = 0; i < fkColumns.length; i++) {
+				Object value = row[fkColumns[i]];
+				if (value != null && !parentKeys.get(i).contains(keyValue(value))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static String keyName(String table, String column) {
+			return table.toLowerCase() + "." + column.toLowerCase();
+		}
+
+		/* The same id may be read as an Integer in one column and a Long in another */
+		private static Object keyValue(Object value) {
+			if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				return Long.valueOf(((Number) value).longValue());
+			}
+			return value;
+		}
+
+		private static int columnIndex(DbExportManifest.Table table, String column) throws SQLException {
+			for (int i = 0; i < table.getColumns().size(); i++) {
+				if (table.getColumns().get(i).equalsIgnoreCase(column)) {
+					return i;
+				}
+			}
+			throw new SQLException("Column " + column + " of " + table.getName() + " is not in the export");
+		}
+	}
+
+	/**
+	 * Empties every table in the manifest ahead of a fresh import, with foreign keys checked, and forgets the progress
+	 * of any earlier import.
+	 */
+	private static class DbImportClearQuery extends UpdateQuery<Void> {
+
+		private final DbImportPlan plan;
+
+		DbImportClearQuery(DbImportPlan plan) {
+			this.plan = plan;
+		}
+
+		@Override
+		public Void query(Session session) throws DBServiceException {
+			try {
+				session.doWork(new Work() {
+
+					public void execute(Connection conn) throws SQLException {
+						DbImportPlan plan = DbImportClearQuery.this.plan;
+						Statement stmt = conn.createStatement();
+						try {
+							// Rows of these tables reference each other; unlink them so they can go in any order
+							for (Map.Entry<String, List<String>> entry : plan.loopColumns.entrySet()) {
+								for (String column : entry.getValue()) {
+									stmt.executeUpdate("UPDATE " + entry.getKey() + " SET " + column + " = NULL");
+								}
+							}
+							for (DbExportManifest.Table table : plan.getDeleteOrder()) {
+								stmt.executeUpdate("DELETE FROM " + table.getName());
+							}
+							stmt.executeUpdate("DELETE FROM " + PROGRESS_TABLE);
+						} finally {
+							stmt.close();
+						}
+					}
+				});
+				return null;
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception emptying tables for import", he);
+			}
+		}
+	}
+
+	/**
+	 * Moves each Postgres serial sequence past the highest id imported into its column.
+	 */
+	private static class DbImportResetSequencesQuery extends UpdateQuery<Void> {
+
+		private final DbExportManifest manifest;
+
+		DbImportResetSequencesQuery(DbExportManifest manifest) {
+			this.manifest = manifest;
+		}
+
+		@Override
+		public Void query(Session session) throws DBServiceException {
+			try {
+				session.doWork(new Work() {
+
+					public void execute(Connection conn) throws SQLException {
+						PreparedStatement ps = conn.prepareStatement("SELECT pg_get_serial_sequence(?, ?)");
+						Statement stmt = conn.createStatement();
+						try {
+							for (DbExportManifest.Table table : DbImportResetSequencesQuery.this.manifest.getTables()) {
+								for (String column : table.getColumns()) {
+									// The column name is taken as quoted; an H2 export has it in upper case
+									ps.setString(1, table.getName());
+									ps.setString(2, column.toLowerCase());
+									ResultSet rs = ps.executeQuery();
+									String sequence = rs.next() ? rs.getString(1) : null;
+									rs.close();
+									if (sequence != null) {
+										stmt.execute("SELECT setval('" + sequence + "', COALESCE((SELECT MAX(" + column + ") FROM "
+												+ table.getName() + "), 0) + 1, false)");
+									}
+								}
+							}
+						} finally {
+							stmt.close();
+							ps.close();
+						}
+					}
+				});
+				return null;
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception resetting sequences after import", he);
+			}
+		}
+	}
+
+	private static String insertSql(DbExportManifest.Table table) {
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table.getName()).append(" (");
+		StringBuilder values = new StringBuilder();
+		for (int i = 0; i < table.getColumns().size(); i++) {
+			sql.append(i > 0 ? ", " : "").append(table.getColumns().get(i));
+			values.append(i > 0 ? ", ?" : "?");
+		}
+		return sql.append(") VALUES (").append(values).append(")").toString();
+	}
+
+	/**
+	 * @param chunk the chunk the row came from, to check it against the manifest; null if already checked
+	 */
+	private static void setRow(PreparedStatement ps, DbExportManifest.Table table, Object[] row,
+			DbExportManifest.Chunk chunk) throws SQLException {
+		int columns = table.getColumns().size();
+		if (chunk != null && row.length != columns) {
+			throw new SQLException("Chunk " + chunk.getFile() + " has " + row.length + " columns; expected " + columns);
+		}
+		for (int i = 0; i < columns; i++) {
+			ps.setObject(i + 1, row[i]);
+		}
+	}
+
+	/**
+	 * Records the chunk as imported, in the transaction that imported it.
+	 */
+	private static void recordProgress(Connection conn, long created, DbExportManifest.Chunk chunk)
+			throws SQLException {
+		PreparedStatement ps = conn.prepareStatement("INSERT INTO " + PROGRESS_TABLE
+				+ " (export_created, chunk) VALUES (?, ?)");
+		try {
+			ps.setLong(1, created);
+			ps.setString(2, chunk.getFile());
+			ps.executeUpdate();
+		} finally {
+			ps.close();
+		}
+	}
+}
@@ -1,7 +1,19 @@
 package com.code42.db;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.hibernate.Session;
 
@@ -23,7 +35,12 @@ import com.code42.utils.Stopwatch;
 import com.code42.utils.SystemProperties;
 
 /**
- * Truncates the tables in our database that continue to grow over time.
+ * Truncates the tables in our database that continue to grow over time.<br>
+ * <br>
+ * On Postgres, any range partitions of a table that lie wholly before the cutoff are dropped first, which is far
+ * cheaper than deleting their rows. Whatever is left (an unpartitioned table, the partition holding the cutoff, or any
+ * table on H2) is deleted in id-ordered batches. The batch size adapts to how long each delete takes and, on Postgres,
+ * backs off while the replicas are lagging. Progress is available from getStatus() while the job runs.
  */
 @ExecutorSingleton
 public class DbTruncateCmd extends DBCmd<Boolean> {
@@ -34,6 +51,7 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 
 	// Note that this is static because we cannot
 	private static volatile Stopwatch stopwatch;
+	private static volatile String status;
 
 	public static boolean stop = false;
 
@@ -43,14 +61,31 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 	static final String DB_TRUNC_KEEP_DAYS = "c42.dbTrunc.keep.days";
 	static final String DB_TRUNC_BATCH_SIZE = "c42.dbTrunc.batch.size";
 	static final String DB_TRUNC_BATCH_PAUSE_MS = "c42.dbTrunc.batch.pause.ms";
+	static final String DB_TRUNC_BATCH_MAX_SIZE = "c42.dbTrunc.batch.max.size";
+	static final String DB_TRUNC_BATCH_TARGET_MS = "c42.dbTrunc.batch.target.ms";
+	static final String DB_TRUNC_MAX_REPLICA_LAG_MS = "c42.dbTrunc.maxReplicaLag.ms";
+	static final String DB_TRUNC_PARTITIONS_ENABLED = "c42.dbTrunc.partitions.enabled";
 	static final int DEFAULT_KEEP_DAYS = 90;
 	static final int DEFAULT_BATCH_SIZE = 100;
 	static final int DEFAULT_BATCH_PAUSE_MS = 3000;
+	static final int DEFAULT_BATCH_MAX_SIZE = 20000;
+	static final long DEFAULT_BATCH_TARGET_MS = 500;
+	static final long DEFAULT_MAX_REPLICA_LAG_MS = 5000;
+	static final int MIN_BATCH_SIZE = 10;
 
 	public static void stop() {
 		stop = true;
 	}
 
+	/**
+	 * @return a one-line description of the running job's progress, or null if it isn't running. Logged when a second
+	 *         run is refused.
+	 */
+	public static String getStatus() {
+		Stopwatch sw = stopwatch;
+		return (sw == null) ? null : "running for " + sw + "; " + status;
+	}
+
 	@Override
 	public Boolean exec(CoreSession session) throws CommandException {
 		if (!this.env.isPrimary()) {
@@ -77,7 +112,7 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 				stopwatch = new Stopwatch();
 			} else {
 				// We cannot run because a version of this job already running
-				log.info("DbTruncateCmd is already running.  Job has been running for {}", stopwatch);
+				log.info("DbTruncateCmd is already running.  Job is {}", getStatus());
 				return false;
 			}
 		}
@@ -93,12 +128,14 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 		try {
 			this.db.openSession();
 
+			boolean postgres = this.isPostgres();
+
 			//
 			// Delete old archive record rows
 			//
 			if (!stop) {
 				// Create a "job" object with one method overridden.
-				TruncateJobState job = new TruncateJobState() {
+				TruncateJobState job = new TruncateJobState("ArchiveRecord", "t_archive_record", postgres) {
 
 					@Override
 					public UpdateQuery<Integer> getUpdate(int keepDaysBack, long maxId) {
@@ -110,27 +147,7 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 						return new FindMinQuery("t_archive_record", "archive_record_id", "creation_date");
 					}
 				};
-
-				log.debug("Before truncating, the oldest ArchiveRecord row is {}", job.getOldestRowDate());
-				int deleted = job.truncateBatch();
-				while (deleted > 0) {
-					log.debug("Deleted {} ArchiveRecord rows in {}ms. total:{}, elapsed:{}, pauseMs:{}", deleted, job
-							.getBatchElapsedMs(), job.getTotalDeleted(), job.getTotalElapsed(), job.getPauseMs());
-					LangUtils.sleep(job.getPauseMs()); // Let the server breathe a little before trying again
-					if (stop) {
-						break;
-					}
-					deleted = job.truncateBatch();
-					if (deleted == 0) {
-						// Try again. It is possible the IDs are so sparse that we get a false zero value
-						job.reset();
-						deleted = job.truncateBatch();
-						if (deleted == 0) {
-							break;
-						}
-					}
-				}
-				log.info("Deleted {} total ArchiveRecord rows in {}", job.getTotalDeleted(), job.getTotalElapsed());
+				this.truncate(job);
 				totalArchiveRecordsDeleted = job.getTotalDeleted();
 			}
 
@@ -139,7 +156,7 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 			//
 			if (!stop) {
 				// Create a "job" object with one method overridden.
-				TruncateJobState job = new TruncateJobState() {
+				TruncateJobState job = new TruncateJobState("UserHistory", "t_user_history", postgres) {
 
 					@Override
 					public UpdateQuery<Integer> getUpdate(int keepDaysBack, long maxId) {
@@ -151,27 +168,7 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 						return new FindMinQuery("t_user_history", "user_history_id", "login_date");
 					}
 				};
-
-				log.debug("Before truncating, the oldest UserHistory row is {}", job.getOldestRowDate());
-				int deleted = job.truncateBatch();
-				while (deleted > 0) {
-					log.debug("Deleted {} UserHistory rows in {}ms. total:{}, elapsed:{}, pauseMs:{}", deleted, job
-							.getBatchElapsedMs(), job.getTotalDeleted(), job.getTotalElapsed(), job.getPauseMs());
-					LangUtils.sleep(job.getPauseMs()); // Let the server breathe a little before trying again
-					if (stop) {
-						break;
-					}
-					deleted = job.truncateBatch();
-					if (deleted == 0) {
-						// Try again. It is possible the IDs are so sparse that we get a false zero value
-						job.reset();
-						deleted = job.truncateBatch();
-						if (deleted == 0) {
-							break;
-						}
-					}
-				}
-				log.info("Deleted {} total UserHistory rows in {}", job.getTotalDeleted(), job.getTotalElapsed());
+				this.truncate(job);
 				totalUserHistoryDeleted = job.getTotalDeleted();
 			}
 
@@ -182,6 +179,7 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 					totalArchiveRecordsDeleted, totalUserHistoryDeleted);
 			synchronized (monitor) {
 				DbTruncateCmd.stopwatch = null;
+				DbTruncateCmd.status = null;
 				DbTruncateCmd.stop = false;
 			}
 		}
@@ -189,21 +187,81 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 		return true;
 	}
 
+	private boolean isPostgres() throws CommandException {
+		String product = this.db.find(new DatabaseProductQuery());
+		return product != null && product.toLowerCase().contains("postgres");
+	}
+
+	/**
+	 * Drop the expired partitions, then delete what is left batch by batch until there is nothing old left to delete.
+	 */
+	private void truncate(TruncateJobState job) throws CommandException {
+
+		log.debug("Before truncating, the oldest {} row is {}", job.getName(), job.getOldestRowDate());
+
+		job.dropExpiredPartitions();
+
+		int deleted = job.truncateBatch();
+		while (deleted > 0) {
+			log.debug("Deleted {} {} rows in {}ms. total:{}, elapsed:{}, batchSize:{}, pauseMs:{}", deleted, job
+					.getName(), job.getBatchElapsedMs(), job.getTotalDeleted(), job.getTotalElapsed(), job.getBatchSize(), job
+					.getPauseMs());
+			LangUtils.sleep(job.getPauseMs()); // Let the server breathe a little before trying again
+			if (stop) {
+				break;
+			}
+			deleted = job.truncateBatch();
+			if (deleted == 0) {
+				// Try again. It is possible the IDs are so sparse that we get a false zero value
+				job.reset();
+				deleted = job.truncateBatch();
+				if (deleted == 0) {
+					break;
+				}
+			}
+		}
+		log.info("Deleted {} total {} rows ({} partitions dropped) in {}", job.getTotalDeleted(), job.getName(), job
+				.getPartitionsDropped(), job.getTotalElapsed());
+	}
+
 	public abstract class TruncateJobState {
 
+		final String name;
+		final String tableName;
+		final boolean postgres;
 		Pair<Long, Date> minIdPair;
 		long maxId = 0;
 		int keepDays = 0;
 		int batchSize = 0;
+		int maxBatchSize = 0;
+		long targetMs = 0;
+		long maxReplicaLagMs = 0;
 		long pauseMs = 0;
 		long totalDeleted = 0;
+		int partitionsDropped = 0;
 		Stopwatch totalSw = new Stopwatch();
 		Stopwatch batchSw = new Stopwatch();
 
-		public TruncateJobState() throws CommandException {
+		public TruncateJobState(String name, String tableName, boolean postgres) throws CommandException {
+			this.name = name;
+			this.tableName = tableName;
+			this.postgres = postgres;
+			this.batchSize = SystemProperties.getOptionalInt(DB_TRUNC_BATCH_SIZE, DEFAULT_BATCH_SIZE);
 			this.reset();
 		}
 
+		public String getName() {
+			return this.name;
+		}
+
+		public int getBatchSize() {
+			return this.batchSize;
+		}
+
+		public int getPartitionsDropped() {
+			return this.partitionsDropped;
+		}
+
 		public long getTotalDeleted() {
 			return this.totalDeleted;
 		}
@@ -211,10 +269,84 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 		private void fetchProperties() {
 			// re-fetch these values so they can be changed dynamically
 			this.keepDays = SystemProperties.getOptionalInt(DB_TRUNC_KEEP_DAYS, DEFAULT_KEEP_DAYS);
-			this.batchSize = SystemProperties.getOptionalInt(DB_TRUNC_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+			this.maxBatchSize = SystemProperties.getOptionalInt(DB_TRUNC_BATCH_MAX_SIZE, DEFAULT_BATCH_MAX_SIZE);
+			this.targetMs = SystemProperties.getOptionalLong(DB_TRUNC_BATCH_TARGET_MS, DEFAULT_BATCH_TARGET_MS);
+			this.maxReplicaLagMs = SystemProperties.getOptionalLong(DB_TRUNC_MAX_REPLICA_LAG_MS, DEFAULT_MAX_REPLICA_LAG_MS);
 			this.pauseMs = SystemProperties.getOptionalLong(DB_TRUNC_BATCH_PAUSE_MS, DEFAULT_BATCH_PAUSE_MS);
 		}
 
+		/**
+		 * Grow the batch while deletes finish well under the target time, shrink it when they run over or when the
+		 * replicas fall behind (in which case we also wait for them to catch up before the next batch).
+		 */
+		private void tuneBatchSize() {
+			long elapsed = this.batchSw.getElapsed();
+			if (elapsed > this.targetMs) {
+				this.batchSize = Math.max(MIN_BATCH_SIZE, this.batchSize / 2);
+			} else if (elapsed < this.targetMs / 2) {
+				this.batchSize = Math.min(this.maxBatchSize, this.batchSize * 2);
+			}
+
+			if (this.postgres) {
+				try {
+					long lagMs = DbTruncateCmd.this.db.find(new ReplicaLagQuery());
+					if (lagMs > this.maxReplicaLagMs) {
+						this.batchSize = Math.max(MIN_BATCH_SIZE, this.batchSize / 2);
+						this.pauseMs = Math.max(this.pauseMs, lagMs);
+						log.debug("Replica lag is {}ms; batchSize:{}, pauseMs:{}", lagMs, this.batchSize, this.pauseMs);
+					}
+				} catch (CommandException e) {
+					log.debug("Unable to determine replica lag", e);
+				}
+			}
+		}
+
+		private void updateStatus() {
+			DbTruncateCmd.status = this.name + ": deleted " + this.totalDeleted + " rows, dropped " + this.partitionsDropped
+					+ " partitions, batchSize " + this.batchSize + ", last batch " + this.batchSw.getElapsed() + "ms";
+		}
+
+		/**
+		 * On Postgres, drop every partition of this table whose range ends on or before the cutoff.
+		 */
+		public void dropExpiredPartitions() {
+			if (!this.postgres || !SystemProperties.getOptionalBoolean(DB_TRUNC_PARTITIONS_ENABLED, true)) {
+				return;
+			}
+
+			this.fetchProperties();
+			Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(this.keepDays));
+			try {
+				List<String> expired = DbTruncateCmd.this.db.find(new FindExpiredPartitionsQuery(this.tableName, cutoff));
+				for (String partition : expired) {
+					if (stop) {
+						return;
+					}
+					DbTruncateCmd.this.db.ensureNoTransaction();
+					try {
+						DbTruncateCmd.this.db.beginTransaction();
+						DbTruncateCmd.this.db.manual();
+						DbTruncateCmd.this.db.update(new DropPartitionQuery(partition));
+						DbTruncateCmd.this.db.commit();
+						this.partitionsDropped++;
+						log.info("Dropped expired {} partition {}", this.name, partition);
+					} catch (Throwable t) {
+						DbTruncateCmd.this.db.rollback();
+						log.error("Error dropping partition {}", partition, t);
+					} finally {
+						DbTruncateCmd.this.db.endTransaction();
+					}
+					this.updateStatus();
+				}
+				if (this.partitionsDropped > 0) {
+					// Rows have vanished from under our starting point
+					this.reset();
+				}
+			} catch (CommandException e) {
+				log.warn("Unable to find expired partitions of {}; deleting rows instead", this.tableName, e);
+			}
+		}
+
 		public void reset() throws CommandException {
 			this.minIdPair = DbTruncateCmd.this.db.find(this.getQuery());
 			this.maxId = this.minIdPair.getOne();
@@ -265,6 +397,10 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 				DbTruncateCmd.this.db.endTransaction();
 			}
 			this.batchSw.stop();
+			if (deleted > 0) {
+				this.tuneBatchSize();
+			}
+			this.updateStatus();
 			return deleted;
 		}
 
@@ -305,4 +441,140 @@ public class DbTruncateCmd extends DBCmd<Boolean> {
 		}
 	}
 
+	/**
+	 * Finds the database product name (i.e. "PostgreSQL" or "H2")
+	 */
+	private static class DatabaseProductQuery extends FindQuery<String> {
+
+		@Override
+		public String query(Session session) throws DBServiceException {
+			try {
+				return session.connection().getMetaData().getDatabaseProductName();
+			} catch (SQLException e) {
+				throw new DBServiceException("Exception finding database product", e);
+			}
+		}
+	}
+
+	/**
+	 * Finds the Postgres range partitions of a table whose upper bound is on or before the cutoff. Tables that aren't
+	 * partitioned simply have none.
+	 */
+	private static class FindExpiredPartitionsQuery extends FindQuery<List<String>> {
+
+		private static final String SQL = "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i "
+				+ "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ?";
+
+		/* i.e. FOR VALUES FROM ('2012-01-01 00:00:00') TO ('2012-02-01 00:00:00') */
+		private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+
+		/* A date, timestamp or timestamptz bound, i.e. 2012-02-01, 2012-02-01 00:00:00.5 or 2012-02-01 00:00:00+05 */
+		private static final Pattern BOUND_VALUE = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})"
+				+ "(?:[ T](\\d{2}:\\d{2}:\\d{2})(?:\\.\\d+)?)?(?:([+-]\\d{2})(?::?(\\d{2}))?)?");
+
+		private final String tableName;
+		private final Date cutoff;
+
+		FindExpiredPartitionsQuery(String tableName, Date cutoff) {
+			this.tableName = tableName;
+			this.cutoff = cutoff;
+		}
+
+		@Override
+		public List<String> query(Session session) throws DBServiceException {
+			List<String> rv = new ArrayList<String>();
+			try {
+				PreparedStatement ps = session.connection().prepareStatement(SQL);
+				ps.setString(1, this.tableName);
+				ResultSet rs = ps.executeQuery();
+				while (rs.next()) {
+					String bound = rs.getString(2);
+					Matcher m = (bound == null) ? null : UPPER_BOUND.matcher(bound);
+					if (m == null || !m.find()) {
+						continue; // Default partition or not a range partition
+					}
+					Date upper = parseBound(m.group(1));
+					if (upper == null) {
+						log.warn("Unexpected upper bound {} on partition {} of {}; leaving it", m.group(1), rs
+								.getString(1), this.tableName);
+						continue;
+					}
+					if (!upper.after(this.cutoff)) {
+						rv.add(rs.getString(1));
+					}
+				}
+				rs.close();
+				ps.close();
+			} catch (SQLException e) {
+				throw new DBServiceException("Exception finding partitions of " + this.tableName, e);
+			}
+			return rv;
+		}
+
+		/**
+		 * @return the bound as a date, honoring its UTC offset if it has one (timestamptz bounds always do), or null if
+		 *         it isn't a date or timestamp
+		 */
+		static Date parseBound(String bound) {
+			Matcher m = BOUND_VALUE.matcher(bound.trim());
+			if (!m.matches()) {
+				return null;
+			}
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+			if (m.group(3) != null) {
+				String minutes = (m.group(4) != null) ? m.group(4) : "00";
+				format.setTimeZone(TimeZone.getTimeZone("GMT" + m.group(3) + ":" + minutes));
+			}
+			try {
+				return format.parse(m.group(1) + " " + (m.group(2) != null ? m.group(2) : "00:00:00"));
+			} catch (ParseException e) {
+				return null;
+			}
+		}
+	}
+
+	private static class DropPartitionQuery extends UpdateQuery<Integer> {
+
+		private final String partition;
+
+		DropPartitionQuery(String partition) {
+			this.partition = partition;
+		}
+
+		@Override
+		public Integer query(Session session) throws DBServiceException {
+			try {
+				Statement stmt = session.connection().createStatement();
+				stmt.executeUpdate("DROP TABLE \"" + this.partition.replace("\"", "\"\"") + "\"");
+				stmt.close();
+				return 1;
+			} catch (SQLException e) {
+				throw new DBServiceException("Exception dropping partition " + this.partition, e);
+			}
+		}
+	}
+
+	/**
+	 * The replay lag of the slowest Postgres replica in ms, 0 if there are none
+	 */
+	private static class ReplicaLagQuery extends FindQuery<Long> {
+
+		private static final String SQL = "SELECT COALESCE(MAX(EXTRACT(EPOCH FROM replay_lag)), 0) FROM pg_stat_replication";
+
+		@Override
+		public Long query(Session session) throws DBServiceException {
+			try {
+				Connection c = session.connection();
+				Statement stmt = c.createStatement();
+				ResultSet rs = stmt.executeQuery(SQL);
+				long lagMs = rs.next() ? (long) (rs.getDouble(1) * 1000) : 0;
+				rs.close();
+				stmt.close();
+				return lagMs;
+			} catch (SQLException e) {
+				throw new DBServiceException("Exception finding replica lag", e);
+			}
+		}
+	}
+
 }
@@ -0,0 +1,69 @@
+package com.code42.db;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.code42.core.ICoreRuntime;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.DBCmd;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+
+/**
+ * A fixed set of threads of its own for the workers of a parallel export or import. The command that hands out the
+ * work waits on them from a runtime thread; were the workers run on the runtime as well, a few exports or imports at
+ * once could take every runtime thread and wait forever for workers that can't start. Call shutdown() when done.
+ */
+class DbWorkerPool {
+
+	private static final Logger log = LoggerFactory.getLogger(DbWorkerPool.class);
+
+	private static final long SHUTDOWN_WAIT_SECONDS = 60;
+
+	private final ICoreRuntime runtime;
+	private final String name;
+	private final ExecutorService executor;
+
+	DbWorkerPool(ICoreRuntime runtime, final String name, int threads) {
+		this.runtime = runtime;
+		this.name = name;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-" + this.count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	<T> Future<T> submit(final DBCmd<T> cmd, final CoreSession session) {
+		return this.executor.submit(new Callable<T>() {
+
+			public T call() throws Exception {
+				return DbWorkerPool.this.runtime.run(cmd, session);
+			}
+		});
+	}
+
+	/**
+	 * Interrupts the workers still running and waits a while for them to stop.
+	 */
+	void shutdown() {
+		this.executor.shutdownNow();
+		try {
+			if (!this.executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+				log.warn("{} workers still running after {}s", this.name, SHUTDOWN_WAIT_SECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.code42.directory;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.code42.core.directory.DirectoryEntry;
+import com.code42.core.space.ISpaceService;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.util.SpaceInvalidator;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * A small, short-lived cache of DirectoryFindUserAnyCmd answers keyed by org and username (ignoring case, as the
+ * directories do), so a burst of logins by the same users doesn't send every one of them out to the directory
+ * servers. "Not found" answers are cached too, for a shorter time. Only lookups are cached; passwords are always
+ * checked by the directory itself.<br>
+ * <br>
+ * The cache is least-recently-used and bounded in size. Any change to an LDAP server or to which servers an org uses
+ * clears it on every node (see DirectoryEntryCacheInvalidateCmd and SpaceInvalidator).
+ */
+@Singleton
+public class DirectoryEntryCache {
+
+	private static final Logger log = LoggerFactory.getLogger(DirectoryEntryCache.class);
+
+	static final String DIRECTORY_CACHE_MAX_SIZE = "c42.directory.cache.maxSize";
+	static final String DIRECTORY_CACHE_TTL_MS = "c42.directory.cache.ttl.ms";
+	static final String DIRECTORY_CACHE_NEGATIVE_TTL_MS = "c42.directory.cache.negativeTtl.ms";
+	static final String DIRECTORY_CACHE_GENERATION_CHECK_MS = "c42.directory.cache.generationCheck.ms";
+
+	static final int DEFAULT_MAX_SIZE = 10000;
+	static final long DEFAULT_TTL_MS = 5 * Time.MINUTE;
+	static final long DEFAULT_NEGATIVE_TTL_MS = Time.MINUTE;
+
+	private final SpaceInvalidator invalidator = new SpaceInvalidator("/directory/cache",
+			DIRECTORY_CACHE_GENERATION_CHECK_MS, new SpaceInvalidator.Listener() {
+
+				public void invalidate(Serializable key) {
+					DirectoryEntryCache.this.clear();
+				}
+
+				public void invalidateAll() {
+					DirectoryEntryCache.this.clear();
+				}
+			});
+
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.invalidator.setSpaceService(space);
+	}
+
+	// Guarded by itself
+	private final Map<String, CachedEntry> entries = new LinkedHashMap<String, CachedEntry>(64, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+			return this.size() > SystemProperties.getOptionalInt(DIRECTORY_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE);
+		}
+	};
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalLong(DIRECTORY_CACHE_TTL_MS, DEFAULT_TTL_MS) > 0;
+	}
+
+	/**
+	 * @return the cached lookup, or null if there is none (or it has expired). A cached "not found" is returned as a
+	 *         CachedEntry whose entry is null.
+	 */
+	public CachedEntry get(int orgId, String username) {
+		this.invalidator.check();
+		String key = key(orgId, username);
+		CachedEntry cached;
+		synchronized (this.entries) {
+			cached = this.entries.get(key);
+			if (cached != null && cached.expires < System.currentTimeMillis()) {
+				this.entries.remove(key);
+				cached = null;
+			}
+		}
+		return cached;
+	}
+
+	/**
+	 * @return the version to hand back to put() with a lookup started from now on
+	 */
+	public long getVersion() {
+		return this.invalidator.getVersion();
+	}
+
+	/**
+	 * Remember a lookup, unless the cache has been cleared since the given version was read; a null entry means the
+	 * user was not found.
+	 */
+	public void put(int orgId, String username, DirectoryEntry entry, long lookedUpAtVersion) {
+		long ttl = (entry != null) ? SystemProperties.getOptionalLong(DIRECTORY_CACHE_TTL_MS, DEFAULT_TTL_MS)
+				: SystemProperties.getOptionalLong(DIRECTORY_CACHE_NEGATIVE_TTL_MS, DEFAULT_NEGATIVE_TTL_MS);
+		if (ttl <= 0) {
+			return;
+		}
+		synchronized (this.entries) {
+			if (this.invalidator.isCurrent(lookedUpAtVersion)) {
+				this.entries.put(key(orgId, username), new CachedEntry(entry, System.currentTimeMillis() + ttl));
+			}
+		}
+	}
+
+	/**
+	 * Clear the cache on every node. Call once the LDAP server change has committed; see
+	 * DirectoryEntryCacheInvalidateCmd.
+	 */
+	public void invalidateAll() {
+		this.clear();
+		this.invalidator.publish(null);
+	}
+
+	private void clear() {
+		synchronized (this.entries) {
+			this.invalidator.changed();
+			this.entries.clear();
+		}
+		log.info("DIR:: directory entry cache cleared");
+	}
+
+	private static String key(int orgId, String username) {
+		return orgId + ":" + (username != null ? username.toLowerCase() : null);
+	}
+
+	public static class CachedEntry {
+
+		private final DirectoryEntry entry;
+		private final long expires;
+
+		CachedEntry(DirectoryEntry entry, long expires) {
+			this.entry = entry;
+			this.expires = expires;
+		}
+
+		/**
+		 * @return the entry found, or null if the user was not found
+		 */
+		public DirectoryEntry getEntry() {
+			return this.entry;
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.code42.directory;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.AbstractCmd;
+import com.google.inject.Inject;
+
+/**
+ * Clears the DirectoryEntryCache on every node. Run this with db.afterTransaction() from anything that changes an LDAP
+ * server or assigns servers to an org, so no node can cache a lookup against the old configuration after the cache is
+ * cleared.
+ */
+public class DirectoryEntryCacheInvalidateCmd extends AbstractCmd<Void> {
+
+	@Inject
+	private DirectoryEntryCache cache;
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		this.cache.invalidateAll();
+		return null;
+	}
+}
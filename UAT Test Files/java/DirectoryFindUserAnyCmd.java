@@ -29,6 +29,7 @@ import com.code42.utils.option.Some;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
 
 /**
  * Execute findUser() against a set of directories, returning the first non-null response we receive. Note that this
@@ -56,12 +57,18 @@ import com.google.common.collect.ImmutableList;
  * another way, username and org name are enough by themselves to uniquely identify a CrashPlan user. This is actually a
  * slightly looser version of the constraint in play in the current (as of this writing) code base: at the moment
  * username is regarded as globally unique by most sections of the code even though (as discussed) the database doesn't
- * enforce this constraint.
+ * enforce this constraint.<br>
+ * <br>
+ * When the caller supplies the orgId the directories belong to, answers are kept for a short while in the
+ * DirectoryEntryCache.
  */
 public class DirectoryFindUserAnyCmd extends AbstractCmd<DirectoryEntry> {
 
 	private static Logger log = LoggerFactory.getLogger(DirectoryFindUserAnyCmd.class);
 
+	@Inject
+	private DirectoryEntryCache cache;
+
 	private final Builder data;
 
 	private DirectoryFindUserAnyCmd(Builder data) {
@@ -71,6 +78,25 @@ public class DirectoryFindUserAnyCmd extends AbstractCmd<DirectoryEntry> {
 	@Override
 	public DirectoryEntry exec(CoreSession session) throws CommandException {
 
+		/* Lookups narrowed by an org name aren't cached; the key is only the org and username */
+		boolean cacheable = this.data.orgId != null && this.data.orgName instanceof None && this.cache.isEnabled();
+		if (cacheable) {
+			DirectoryEntryCache.CachedEntry cached = this.cache.get(this.data.orgId, this.data.username);
+			if (cached != null) {
+				return cached.getEntry();
+			}
+		}
+
+		long version = this.cache.getVersion();
+		DirectoryEntry rv = this.findUser();
+		if (cacheable) {
+			this.cache.put(this.data.orgId, this.data.username, rv, version);
+		}
+		return rv;
+	}
+
+	private DirectoryEntry findUser() throws CommandException {
+
 		/*
 		 * Try each directory in sequence, gathering the results into a single collection. If a particular directory times
 		 * out we'll give it another try up to some defined number of retries. If a search against a Directory throws
@@ -186,6 +212,7 @@ public class DirectoryFindUserAnyCmd extends AbstractCmd<DirectoryEntry> {
 		List<Directory> directories;
 		String username;
 		Option<String> orgName;
+		Integer orgId;
 		int retries;
 
 		/* A username must be provided but the orgName is optional */
@@ -222,6 +249,14 @@ public class DirectoryFindUserAnyCmd extends AbstractCmd<DirectoryEntry> {
 			return this;
 		}
 
+		/*
+		 * The org the directories belong to. Setting this allows the answer to be cached.
+		 */
+		public Builder orgId(int arg) {
+			this.orgId = arg;
+			return this;
+		}
+
 		public Builder retries(int arg) {
 			this.retries = arg;
 			return this;
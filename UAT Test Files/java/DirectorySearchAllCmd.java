@@ -1,9 +1,17 @@
 package com.code42.directory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.code42.core.CommandException;
 import com.code42.core.auth.impl.CoreSession;
@@ -14,6 +22,7 @@ import com.code42.core.directory.DirectoryTimeoutException;
 import com.code42.core.impl.AbstractCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
+import com.code42.utils.SystemProperties;
 import com.google.common.collect.ImmutableList;
 
 /**
@@ -33,6 +42,11 @@ import com.google.common.collect.ImmutableList;
  * directories themselves.</li>
  * <li>Aggregation of results: do we return all matches, the first one, or something in between?</li>
  * </ol>
+ * <br>
+ * Unless c42.directory.search.parallel is false (or the builder says otherwise, see Builder.parallel()) every directory
+ * is searched at once, each retrying timeouts with an increasing backoff, and the whole search is bounded by a
+ * deadline. Otherwise directories are searched one after another. Directories that miss the deadline, run out of
+ * retries or fail contribute nothing and are reported by getSlowDirectories().
  * 
  * @author bmcguire
  */
@@ -40,11 +54,19 @@ public class DirectorySearchAllCmd extends AbstractCmd<List<DirectoryEntry>> {
 
 	private static Logger log = LoggerFactory.getLogger(DirectorySearchAllCmd.class);
 
+	static final String DIRECTORY_SEARCH_PARALLEL = "c42.directory.search.parallel";
+
 	private final List<Directory> directories;
 	private final String query;
 	private final int retries;
+	private final boolean parallel;
+	private final long deadlineMs;
+	private final long backoffMs;
 
-	private DirectorySearchAllCmd(List<Directory> arg0, String arg1, int arg2) {
+	// A directory that gives up just as the deadline passes is reported once
+	private final Set<Directory> slowDirectories = Collections.synchronizedSet(new LinkedHashSet<Directory>());
+
+	private DirectorySearchAllCmd(List<Directory> arg0, String arg1, int arg2, boolean arg3, long arg4, long arg5) {
 
 		/*
 		 * In theory this list is already immutable (since it's provided by the builder) but this gives us an additional
@@ -53,6 +75,19 @@ public class DirectorySearchAllCmd extends AbstractCmd<List<DirectoryEntry>> {
 		this.directories = ImmutableList.copyOf(arg0);
 		this.query = arg1;
 		this.retries = arg2;
+		this.parallel = arg3;
+		this.deadlineMs = arg4;
+		this.backoffMs = arg5;
+	}
+
+	/**
+	 * @return the directories that did not answer in the last search: they missed the deadline, ran out of retries or
+	 *         failed
+	 */
+	public List<Directory> getSlowDirectories() {
+		synchronized (this.slowDirectories) {
+			return ImmutableList.copyOf(this.slowDirectories);
+		}
 	}
 
 	@Override
@@ -63,6 +98,11 @@ public class DirectorySearchAllCmd extends AbstractCmd<List<DirectoryEntry>> {
 		 * system... ?
 		 */
 
+		this.slowDirectories.clear();
+		if (this.parallel && this.directories.size() > 1) {
+			return this.searchParallel(session);
+		}
+
 		/*
 		 * Try each directory in sequence, gathering the results into a single collection. If a particular directory times
 		 * out we'll give it another try up to some defined number of retries. If a search against a Directory throws
@@ -104,6 +144,7 @@ public class DirectorySearchAllCmd extends AbstractCmd<List<DirectoryEntry>> {
 					} else {
 						builder.append(", retries exhausted, will not retry");
 						workingIter.remove();
+						this.slowDirectories.add(directory);
 					}
 					log.info(builder.toString(), dte);
 
@@ -115,6 +156,7 @@ public class DirectorySearchAllCmd extends AbstractCmd<List<DirectoryEntry>> {
 					 */
 					log.info("Fatal exception while querying directory: " + directory.toString(), de);
 					workingIter.remove();
+					this.slowDirectories.add(directory);
 				}
 			}
 			++iteration;
@@ -123,17 +165,124 @@ public class DirectorySearchAllCmd extends AbstractCmd<List<DirectoryEntry>> {
 		return rv;
 	}
 
+	/**
+	 * Search every directory at once and wait for them up to the deadline. Results are merged in directory order so the
+	 * output matches a sequential search; total time is that of the slowest directory that answers in time.
+	 */
+	private List<DirectoryEntry> searchParallel(CoreSession session) throws CommandException {
+
+		long deadline = System.currentTimeMillis() + this.deadlineMs;
+
+		List<Future<List<DirectoryEntry>>> futures = new ArrayList<Future<List<DirectoryEntry>>>(this.directories.size());
+		for (Directory directory : this.directories) {
+			futures.add(this.runtime.runAsync(new DirectorySearchOneCmd(directory, deadline), session));
+		}
+
+		List<DirectoryEntry> rv = new LinkedList<DirectoryEntry>();
+		for (int i = 0; i < futures.size(); i++) {
+
+			Directory directory = this.directories.get(i);
+			Future<List<DirectoryEntry>> future = futures.get(i);
+			try {
+
+				long remaining = Math.max(0, deadline - System.currentTimeMillis());
+				rv.addAll(future.get(remaining, TimeUnit.MILLISECONDS));
+			} catch (TimeoutException te) {
+
+				future.cancel(true);
+				this.slowDirectories.add(directory);
+			} catch (ExecutionException ee) {
+
+				log.info("Fatal exception while querying directory: " + directory.toString(), ee.getCause());
+				this.slowDirectories.add(directory);
+			} catch (InterruptedException ie) {
+
+				Thread.currentThread().interrupt();
+				throw new CommandException("Interrupted while querying directories", ie);
+			}
+		}
+
+		if (!this.slowDirectories.isEmpty()) {
+			log.warn("Directory search within {}ms got no answer from: {}", this.deadlineMs, this.slowDirectories);
+		}
+		return rv;
+	}
+
+	/**
+	 * Searches a single directory, retrying timeouts with a doubling backoff until the retries or the deadline run out.
+	 * Anything other than a timeout is fatal for the directory, just as it is for a sequential search. A directory
+	 * given up on is added to the slow directories.
+	 */
+	private class DirectorySearchOneCmd extends AbstractCmd<List<DirectoryEntry>> {
+
+		private final Directory directory;
+		private final long deadline;
+
+		DirectorySearchOneCmd(Directory directory, long deadline) {
+			this.directory = directory;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public List<DirectoryEntry> exec(CoreSession session) throws CommandException {
+
+			long backoff = DirectorySearchAllCmd.this.backoffMs;
+			for (int attempt = 0;; attempt++) {
+
+				try {
+
+					List<DirectoryEntry> results = this.directory.search(DirectorySearchAllCmd.this.query);
+					assert (results != null);
+					return results;
+				} catch (DirectoryTimeoutException dte) {
+
+					boolean retry = attempt < DirectorySearchAllCmd.this.retries
+							&& System.currentTimeMillis() + backoff < this.deadline;
+					log.info("Non-fatal exception (" + (attempt + 1) + " of " + (DirectorySearchAllCmd.this.retries + 1)
+							+ ") while querying directory: " + this.directory.toString()
+							+ (retry ? ", will retry" : ", will not retry"), dte);
+					if (!retry) {
+						return this.giveUp();
+					}
+				} catch (DirectoryException de) {
+
+					log.info("Fatal exception while querying directory: " + this.directory.toString(), de);
+					return this.giveUp();
+				}
+
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return this.giveUp();
+				}
+				backoff *= 2;
+			}
+		}
+
+		private List<DirectoryEntry> giveUp() {
+			DirectorySearchAllCmd.this.slowDirectories.add(this.directory);
+			return Collections.emptyList();
+		}
+	}
+
 	public static class Builder {
 
 		private List<Directory> directories;
 		private String query;
 		private int retries;
+		private boolean parallel;
+		private long deadlineMs;
+		private long backoffMs;
 
 		public Builder(String query) {
 
 			this.directories = new LinkedList<Directory>();
 			this.query = query;
 			this.retries = 3;
+			this.parallel = SystemProperties.getOptionalBoolean(DIRECTORY_SEARCH_PARALLEL, true);
+			this.deadlineMs = 15000;
+			this.backoffMs = 250;
 		}
 
 		public Builder directory(Directory arg) {
@@ -162,8 +311,33 @@ public class DirectorySearchAllCmd extends AbstractCmd<List<DirectoryEntry>> {
 			return this;
 		}
 
+		/*
+		 * Search all directories at once rather than one after another; defaults to c42.directory.search.parallel
+		 */
+		public Builder parallel(boolean arg) {
+			this.parallel = arg;
+			return this;
+		}
+
+		/*
+		 * The longest a parallel search will wait for any directory, retries included
+		 */
+		public Builder deadline(long arg, TimeUnit unit) {
+			this.deadlineMs = unit.toMillis(arg);
+			return this;
+		}
+
+		/*
+		 * The wait before the first retry of a timed out directory in a parallel search; doubled for each retry after that
+		 */
+		public Builder backoff(long arg, TimeUnit unit) {
+			this.backoffMs = unit.toMillis(arg);
+			return this;
+		}
+
 		public DirectorySearchAllCmd build() {
-			return new DirectorySearchAllCmd(this.directories, this.query, this.retries);
+			return new DirectorySearchAllCmd(this.directories, this.query, this.retries, this.parallel, this.deadlineMs,
+					this.backoffMs);
 		}
 	}
 }
@@ -2,10 +2,10 @@ package com.code42.computer;
 
 import java.util.List;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.social.FriendComputerUsage;
 
@@ -19,7 +19,7 @@ public class FriendComputerUsageFindByUserCmd extends DBCmd<List<FriendComputerU
 
 	@Override
 	public List<FriendComputerUsage> exec(CoreSession session) throws CommandException {
-		this.runtime.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.READ), session);
+		this.runtime.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.READ), session);
 		return this.db.find(new FriendComputerUsageFindBySourceUserQuery(this.userId));
 	}
 
@@ -1,10 +1,10 @@
 package com.code42.computer;
 
 import com.backup42.history.CpcHistoryLogger;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
 import com.code42.social.FriendComputerUsage;
@@ -36,7 +36,7 @@ public class FriendComputerUsageSwapDoneCmd extends DBCmd<Void> {
 		if (sso == null) {
 			return null;
 		}
-		this.run(new IsComputerManageableCmd(sso.getComputerId(), C42PermissionApp.Computer.UPDATE), session);
+		this.run(IsManageableCmd.computer(sso.getComputerId(), C42PermissionApp.Computer.UPDATE), session);
 
 		this.db.beginTransaction();
 		try {
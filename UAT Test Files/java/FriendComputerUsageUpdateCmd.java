@@ -6,10 +6,10 @@ package com.code42.computer;
 import java.util.Date;
 
 import com.backup42.history.CpcHistoryLogger;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
@@ -45,7 +45,7 @@ public class FriendComputerUsageUpdateCmd extends DBCmd<FriendComputerUsage> {
 	@Override
 	public FriendComputerUsage exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsComputerManageableCmd(this.sourceComputerId, C42PermissionApp.Computer.UPDATE), session);
+		this.runtime.run(IsManageableCmd.computer(this.sourceComputerId, C42PermissionApp.Computer.UPDATE), session);
 
 		this.db.beginTransaction();
 		try {
@@ -0,0 +1,193 @@
+package com.code42.computer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.code42.core.geo.GeoLocation;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable table of IPv4 ranges and their locations, held in sorted primitive arrays so a lookup is one binary
+ * search. Ranges must not overlap; an address covered by two of them may not be found.<br>
+ * <br>
+ * The file is CSV, one range per line: <code>startIp,endIp,countryCode,region,city,latitude,longitude</code>. The ends
+ * may be dotted quads or unsigned 32-bit numbers. Blank lines and lines starting with # are skipped. Identical
+ * locations are shared, so a few million ranges cost little more than their three arrays.
+ */
+class GeoIpRangeTable {
+
+	private static final Logger log = LoggerFactory.getLogger(GeoIpRangeTable.class);
+
+	static final GeoIpRangeTable EMPTY = new GeoIpRangeTable(new long[0], new long[0], new int[0], new GeoLocation[0],
+			null, 0);
+
+	private final long[] starts;
+	private final long[] ends;
+	private final int[] locationIndexes;
+	private final GeoLocation[] locations;
+	private final File file;
+	private final long lastModified;
+
+	private GeoIpRangeTable(long[] starts, long[] ends, int[] locationIndexes, GeoLocation[] locations, File file,
+			long lastModified) {
+		this.starts = starts;
+		this.ends = ends;
+		this.locationIndexes = locationIndexes;
+		this.locations = locations;
+		this.file = file;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * @return the location of the range holding the address, or null if there isn't one or the address is not IPv4
+	 */
+	GeoLocation find(String ipAddress) {
+		long ip = toLong(ipAddress);
+		if (ip < 0 || this.starts.length == 0) {
+			return null;
+		}
+		int i = Arrays.binarySearch(this.starts, ip);
+		if (i < 0) {
+			i = -i - 2; // the last range starting before the address
+		}
+		if (i < 0 || ip > this.ends[i]) {
+			return null;
+		}
+		return this.locations[this.locationIndexes[i]];
+	}
+
+	int size() {
+		return this.starts.length;
+	}
+
+	/**
+	 * @return true if this table was loaded from the given file and the file hasn't changed since
+	 */
+	boolean isCurrent(File f) {
+		return f.equals(this.file) && f.lastModified() == this.lastModified;
+	}
+
+	static GeoIpRangeTable load(File file) throws IOException {
+		final long lastModified = file.lastModified();
+		final List<long[]> ranges = new ArrayList<long[]>();
+		final List<GeoLocation> locations = new ArrayList<GeoLocation>();
+		final Map<String, Integer> locationIndexes = Maps.newHashMap();
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			int lineNum = 0;
+			while ((line = in.readLine()) != null) {
+				lineNum++;
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				String[] cols = line.split(",", -1);
+				long start = (cols.length < 7) ? -1 : toLong(cols[0].trim());
+				long end = (cols.length < 7) ? -1 : toLong(cols[1].trim());
+				if (start < 0 || end < start) {
+					log.warn("GEO:: skipping bad range at {}:{}", file, lineNum);
+					continue;
+				}
+
+				String key = line.substring(cols[0].length() + cols[1].length() + 2);
+				Integer index = locationIndexes.get(key);
+				if (index == null) {
+					try {
+						locations.add(toLocation(cols));
+					} catch (NumberFormatException e) {
+						log.warn("GEO:: skipping bad location at {}:{}", file, lineNum);
+						continue;
+					}
+					index = locations.size() - 1;
+					locationIndexes.put(key, index);
+				}
+				ranges.add(new long[] { start, end, index });
+			}
+		} finally {
+			in.close();
+		}
+
+		Collections.sort(ranges, new Comparator<long[]>() {
+
+			public int compare(long[] a, long[] b) {
+				return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+			}
+		});
+		final long[] starts = new long[ranges.size()];
+		final long[] ends = new long[ranges.size()];
+		final int[] indexes = new int[ranges.size()];
+		for (int i = 0; i < starts.length; i++) {
+			long[] range = ranges.get(i);
+			starts[i] = range[0];
+			ends[i] = range[1];
+			indexes[i] = (int) range[2];
+		}
+		return new GeoIpRangeTable(starts, ends, indexes, locations.toArray(new GeoLocation[locations.size()]), file,
+				lastModified);
+	}
+
+	private static GeoLocation toLocation(String[] cols) {
+		GeoLocation location = new GeoLocation();
+		location.setCountryCode(cols[2].trim());
+		location.setRegion(cols[3].trim());
+		location.setCity(cols[4].trim());
+		if (cols[5].trim().length() > 0 && cols[6].trim().length() > 0) {
+			location.setLatitude(Double.parseDouble(cols[5].trim()));
+			location.setLongitude(Double.parseDouble(cols[6].trim()));
+		}
+		return location;
+	}
+
+	/**
+	 * @return the address as an unsigned 32-bit number, or -1 if it is not an IPv4 address (or number)
+	 */
+	static long toLong(String ipAddress) {
+		if (ipAddress == null || ipAddress.length() == 0) {
+			return -1;
+		}
+		if (ipAddress.indexOf('.') < 0) {
+			try {
+				long ip = Long.parseLong(ipAddress);
+				return (ip > 0xFFFFFFFFL) ? -1 : ip;
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		long ip = 0;
+		int octets = 0;
+		int octet = -1;
+		for (int i = 0; i < ipAddress.length(); i++) {
+			char c = ipAddress.charAt(i);
+			if (c >= '0' && c <= '9') {
+				octet = ((octet < 0) ? 0 : octet * 10) + (c - '0');
+				if (octet > 255) {
+					return -1;
+				}
+			} else if (c == '.' && octet >= 0 && octets < 3) {
+				ip = (ip << 8) | octet;
+				octets++;
+				octet = -1;
+			} else {
+				return -1;
+			}
+		}
+		if (octets != 3 || octet < 0) {
+			return -1;
+		}
+		return (ip << 8) | octet;
+	}
+}
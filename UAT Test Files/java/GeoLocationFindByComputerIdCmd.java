@@ -3,21 +3,23 @@ package com.code42.computer;
 import com.code42.core.CommandException;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.geo.GeoLocation;
-import com.code42.core.geo.IGeoService;
 import com.code42.core.impl.AbstractCmd;
 import com.code42.utils.LangUtils;
 import com.google.inject.Inject;
 
 /**
- * Returns geographical location information for a computer.
+ * Returns geographical location information for a computer. An address not found locally is looked up with IGeoService
+ * for at most DEFAULT_TIMEOUT_SECS; null is returned if it doesn't answer by then.
  */
 public class GeoLocationFindByComputerIdCmd extends AbstractCmd<GeoLocation> {
 
-	private IGeoService geo;
+	private static final long DEFAULT_TIMEOUT_SECS = 30;
+
+	private GeoLocationResolver resolver;
 
 	@Inject
-	public void setGeoService(IGeoService geo) {
-		this.geo = geo;
+	public void setResolver(GeoLocationResolver resolver) {
+		this.resolver = resolver;
 	}
 
 	private long computerId;
@@ -43,6 +45,6 @@ public class GeoLocationFindByComputerIdCmd extends AbstractCmd<GeoLocation> {
 		String[] parts = remoteAddress.split(":");
 		String ipAddress = parts[0];
 
-		return this.geo.findLocation(ipAddress);
+		return this.resolver.resolve(ipAddress, DEFAULT_TIMEOUT_SECS);
 	}
 }
\ No newline at end of file
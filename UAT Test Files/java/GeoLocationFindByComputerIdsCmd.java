@@ -1,5 +1,6 @@
 package com.code42.computer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -11,29 +12,28 @@ import org.hibernate.SQLQuery;
 import org.hibernate.Session;
 import org.hibernate.type.StandardBasicTypes;
 
+import com.code42.auth.IsManageableBulkCmd;
 import com.code42.core.CommandException;
-import com.code42.core.RequestTooLargeException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.FindQuery;
 import com.code42.core.geo.GeoLocation;
-import com.code42.core.geo.IGeoService;
 import com.code42.core.impl.DBCmd;
+import com.code42.utils.SystemProperties;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 
 /**
- * Returns geographical location information for a set of computers
+ * Returns geographical location information for a set of computers, any number of them. The addresses are resolved
+ * together by GeoLocationResolver.
  */
 public class GeoLocationFindByComputerIdsCmd extends DBCmd<Map<Long, GeoLocation>> {
 
-	private static final int MAX_REQUEST_SIZE = 50;
-
 	@Inject
-	private IGeoService geo;
+	private GeoLocationResolver resolver;
 
 	private final Set<Long> computerIds;
 
@@ -47,23 +47,20 @@ public class GeoLocationFindByComputerIdsCmd extends DBCmd<Map<Long, GeoLocation
 
 	@Override
 	public Map<Long, GeoLocation> exec(CoreSession session) throws CommandException {
-		if (this.computerIds.size() > MAX_REQUEST_SIZE) {
-			throw new RequestTooLargeException("Cannot request geolocation for more than " + MAX_REQUEST_SIZE
-					+ " computers at a time");
-		}
-
 		if (this.computerIds.size() < 1) {
 			return new HashMap<Long, GeoLocation>(0);
 		}
 
-		for (long computerId : this.computerIds) {
-			this.run(new IsComputerManageableCmd(computerId, C42PermissionApp.Computer.READ), session);
-		}
+		this.run(IsManageableBulkCmd.computers(this.computerIds, C42PermissionApp.Computer.READ).requireAll(), session);
 
-		Map<Long, String> ipAddresses = this.cleanseIpAddresses(this.db.find(new RemoteAddressFindByComputerIdsQuery()));
+		Map<Long, String> remoteAddresses = new HashMap<Long, String>();
+		for (List<Long> ids : Iterables.partition(this.computerIds, SystemProperties.getMaxQueryInClauseSize())) {
+			remoteAddresses.putAll(this.db.find(new RemoteAddressFindByComputerIdsQuery(ids)));
+		}
+		Map<Long, String> ipAddresses = this.cleanseIpAddresses(remoteAddresses);
 
 		Set<String> addressSet = new HashSet<String>(Collections2.filter(ipAddresses.values(), Predicates.notNull()));
-		Map<String, GeoLocation> results = this.geo.findLocations(addressSet);
+		Map<String, GeoLocation> results = this.resolver.resolve(addressSet);
 
 		Map<Long, GeoLocation> rv = new HashMap<Long, GeoLocation>();
 		for (long computerId : this.computerIds) {
@@ -90,15 +87,21 @@ public class GeoLocationFindByComputerIdsCmd extends DBCmd<Map<Long, GeoLocation
 		return cleansedAddresses;
 	}
 
-	private class RemoteAddressFindByComputerIdsQuery extends FindQuery<Map<Long, String>> {
+	private static class RemoteAddressFindByComputerIdsQuery extends FindQuery<Map<Long, String>> {
 
 		private static final String SQL = "select computer_id, remote_address from t_computer where computer_id in (:computerIds)";
 
+		private final Collection<Long> computerIds;
+
+		private RemoteAddressFindByComputerIdsQuery(Collection<Long> computerIds) {
+			this.computerIds = new ArrayList<Long>(computerIds);
+		}
+
 		@Override
 		public Map<Long, String> query(Session session) throws DBServiceException {
 
 			SQLQuery query = session.createSQLQuery(SQL);
-			query.setParameterList("computerIds", GeoLocationFindByComputerIdsCmd.this.computerIds);
+			query.setParameterList("computerIds", this.computerIds);
 			query.addScalar("computer_id", StandardBasicTypes.LONG);
 			query.addScalar("remote_address", StandardBasicTypes.STRING);
 
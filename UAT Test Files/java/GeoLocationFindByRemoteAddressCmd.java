@@ -23,7 +23,7 @@ public class GeoLocationFindByRemoteAddressCmd extends AbstractCmd<GeoLocation>
 	private static final long DEFAULT_TIMEOUT_SECS = 30;
 
 	@Inject
-	private IGeoService geo;
+	private GeoLocationResolver resolver;
 
 	private final String ipAddress;
 	private final Long timeoutSecs;
@@ -81,12 +81,11 @@ public class GeoLocationFindByRemoteAddressCmd extends AbstractCmd<GeoLocation>
 		// remove port number, if present
 		String filteredIp = this.ipAddress.split(":")[0];
 
-		IGeoService geoService = this.geo;
 		if (this.geoLocationOverride != null) {
 			log.info("Overriding GeoLocation lookup with mock service: {}", this.geoLocationOverride.toString());
-			geoService = this.geoLocationOverride;
+			return this.geoLocationOverride.findLocation(filteredIp, this.timeoutSecs);
 		}
 
-		return geoService.findLocation(filteredIp, this.timeoutSecs);
+		return this.resolver.resolve(filteredIp, this.timeoutSecs);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,212 @@
+package com.code42.computer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.code42.core.geo.GeoLocation;
+import com.code42.core.geo.IGeoService;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.LangUtils;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Resolves IP addresses to locations, many at a time. Each address is looked for in the cache, then in the local range
+ * table (see GeoIpRangeTable, loaded from c42.geo.database.file and reloaded when the file changes), and whatever is
+ * left goes to IGeoService in a single batch. Answers from either source are cached by address. A "no location" answer
+ * from a batch that IGeoService did answer is cached for a short time; nothing is cached when IGeoService fails or
+ * times out, or when a single lookup finds nothing, since that can't be told apart from a timeout.
+ */
+@Singleton
+public class GeoLocationResolver {
+
+	private static final Logger log = LoggerFactory.getLogger(GeoLocationResolver.class);
+
+	static final String GEO_DATABASE_FILE = "c42.geo.database.file";
+	static final String GEO_CACHE_MAX_SIZE = "c42.geo.cache.maxSize";
+	static final String GEO_CACHE_TTL_MS = "c42.geo.cache.ttl.ms";
+	static final String GEO_CACHE_NEGATIVE_TTL_MS = "c42.geo.cache.negativeTtl.ms";
+
+	static final int DEFAULT_MAX_SIZE = 100000;
+	static final long DEFAULT_TTL_MS = 24 * 60 * Time.MINUTE;
+	static final long DEFAULT_NEGATIVE_TTL_MS = Time.MINUTE;
+
+	private IGeoService geo;
+
+	@Inject
+	public void setGeoService(IGeoService geo) {
+		this.geo = geo;
+	}
+
+	private volatile GeoIpRangeTable table = GeoIpRangeTable.EMPTY;
+	private final Object tableLock = new Object();
+	private long failedLastModified; // guarded by tableLock, so a bad file is only tried once
+
+	// Guarded by itself
+	private final Map<String, CachedLocation> cache = new LinkedHashMap<String, CachedLocation>(64, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedLocation> eldest) {
+			return this.size() > SystemProperties.getOptionalInt(GEO_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE);
+		}
+	};
+
+	/**
+	 * @param ipAddress an address without a port
+	 * @return the location, or null if none is known
+	 */
+	public GeoLocation resolve(String ipAddress, long timeoutSecs) {
+		if (!LangUtils.hasValue(ipAddress)) {
+			return null;
+		}
+		CachedLocation cached = this.getCached(ipAddress);
+		if (cached != null) {
+			return cached.location;
+		}
+		GeoLocation location = this.getTable().find(ipAddress);
+		if (location == null) {
+			try {
+				location = this.geo.findLocation(ipAddress, timeoutSecs);
+			} catch (RuntimeException e) {
+				log.warn("GEO:: unable to look up {}", ipAddress, e);
+			}
+		}
+		if (location != null) {
+			this.put(ipAddress, location);
+		}
+		return location;
+	}
+
+	/**
+	 * @param ipAddresses addresses without ports
+	 * @return the location of each address; addresses with no known location are left out
+	 */
+	public Map<String, GeoLocation> resolve(Collection<String> ipAddresses) {
+		final Map<String, GeoLocation> rv = Maps.newHashMap();
+		final Set<String> remote = new HashSet<String>();
+		final GeoIpRangeTable t = this.getTable();
+
+		for (String ipAddress : ipAddresses) {
+			if (!LangUtils.hasValue(ipAddress) || rv.containsKey(ipAddress)) {
+				continue;
+			}
+			CachedLocation cached = this.getCached(ipAddress);
+			if (cached != null) {
+				if (cached.location != null) {
+					rv.put(ipAddress, cached.location);
+				}
+				continue;
+			}
+			GeoLocation location = t.find(ipAddress);
+			if (location != null) {
+				rv.put(ipAddress, location);
+				this.put(ipAddress, location);
+			} else {
+				remote.add(ipAddress);
+			}
+		}
+
+		if (!remote.isEmpty()) {
+			Map<String, GeoLocation> found = null;
+			try {
+				found = this.geo.findLocations(remote);
+			} catch (RuntimeException e) {
+				log.warn("GEO:: unable to look up {} addresses", remote.size(), e);
+			}
+			if (found == null) {
+				// Failed; don't remember it as no location
+				return rv;
+			}
+			for (String ipAddress : remote) {
+				GeoLocation location = found.get(ipAddress);
+				if (location != null) {
+					rv.put(ipAddress, location);
+				}
+				this.put(ipAddress, location);
+			}
+		}
+		return rv;
+	}
+
+	public void invalidateAll() {
+		synchronized (this.cache) {
+			this.cache.clear();
+		}
+		log.info("GEO:: geolocation cache cleared");
+	}
+
+	private CachedLocation getCached(String ipAddress) {
+		synchronized (this.cache) {
+			CachedLocation cached = this.cache.get(ipAddress);
+			if (cached != null && cached.expires < System.currentTimeMillis()) {
+				this.cache.remove(ipAddress);
+				cached = null;
+			}
+			return cached;
+		}
+	}
+
+	private void put(String ipAddress, GeoLocation location) {
+		long ttl = (location != null) ? SystemProperties.getOptionalLong(GEO_CACHE_TTL_MS, DEFAULT_TTL_MS)
+				: SystemProperties.getOptionalLong(GEO_CACHE_NEGATIVE_TTL_MS, DEFAULT_NEGATIVE_TTL_MS);
+		if (ttl <= 0) {
+			return;
+		}
+		synchronized (this.cache) {
+			this.cache.put(ipAddress, new CachedLocation(location, System.currentTimeMillis() + ttl));
+		}
+	}
+
+	/**
+	 * @return the range table for the configured file, (re)loading it if the file is new or has changed
+	 */
+	private GeoIpRangeTable getTable() {
+		final String path = SystemProperties.getOptional(GEO_DATABASE_FILE, null);
+		if (!LangUtils.hasValue(path)) {
+			return GeoIpRangeTable.EMPTY;
+		}
+		final File file = new File(path);
+		GeoIpRangeTable t = this.table;
+		if (t.isCurrent(file) || !file.isFile()) {
+			return t;
+		}
+
+		synchronized (this.tableLock) {
+			t = this.table;
+			if (!t.isCurrent(file) && file.lastModified() != this.failedLastModified) {
+				try {
+					t = GeoIpRangeTable.load(file);
+					this.table = t;
+					this.invalidateAll(); // answers may have changed
+					log.info("GEO:: loaded {} ranges from {}", t.size(), file);
+				} catch (IOException e) {
+					this.failedLastModified = file.lastModified();
+					log.warn("GEO:: unable to load geolocation database {}", file, e);
+				}
+			}
+		}
+		return t;
+	}
+
+	private static class CachedLocation {
+
+		private final GeoLocation location;
+		private final long expires;
+
+		CachedLocation(GeoLocation location, long expires) {
+			this.location = location;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.code42.auth;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.code42.auth.AuthorizationCache.Type;
+import com.code42.core.CommandException;
+import com.code42.core.auth.UnauthorizedException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.auth.impl.IsComputerManageableCmd;
+import com.code42.core.auth.impl.IsOrgManageableCmd;
+import com.code42.core.auth.impl.IsUserManageableCmd;
+import com.code42.core.impl.AbstractCmd;
+import com.google.inject.Inject;
+
+/**
+ * Checks a whole collection of computers, users or orgs with the matching Is*ManageableCmd, answering from the
+ * AuthorizationCache where it can and caching the rest.<br>
+ * <br>
+ * By default returns the ids that are manageable. With requireAll() it throws UnauthorizedException on the first one
+ * that isn't, like running the single checks one after another would.
+ */
+public class IsManageableBulkCmd<T extends Number> extends AbstractCmd<Set<T>> {
+
+	private AuthorizationCache cache;
+
+	@Inject
+	public void setCache(AuthorizationCache cache) {
+		this.cache = cache;
+	}
+
+	private final Type type;
+	private final List<T> ids;
+	private final IPermission permission;
+	private boolean requireAll = false;
+
+	private IsManageableBulkCmd(Type type, Collection<T> ids, IPermission permission) {
+		this.type = type;
+		this.ids = new ArrayList<T>(ids);
+		this.permission = permission;
+	}
+
+	public static IsManageableBulkCmd<Long> computers(Collection<Long> computerIds, IPermission permission) {
+		return new IsManageableBulkCmd<Long>(Type.COMPUTER, computerIds, permission);
+	}
+
+	public static IsManageableBulkCmd<Integer> users(Collection<Integer> userIds, IPermission permission) {
+		return new IsManageableBulkCmd<Integer>(Type.USER, userIds, permission);
+	}
+
+	public static IsManageableBulkCmd<Integer> orgs(Collection<Integer> orgIds, IPermission permission) {
+		return new IsManageableBulkCmd<Integer>(Type.ORG, orgIds, permission);
+	}
+
+	public IsManageableBulkCmd<T> requireAll() {
+		this.requireAll = true;
+		return this;
+	}
+
+	@Override
+	public Set<T> exec(CoreSession session) throws CommandException {
+		final boolean useCache = this.cache.isEnabled();
+		final Set<T> rv = new LinkedHashSet<T>();
+		for (T id : this.ids) {
+			Boolean authorized = useCache ? this.cache.get(session, this.type, this.permission, id.longValue()) : null;
+			if (authorized == null) {
+				// Read before the check, so a decision made across an invalidation isn't cached
+				long version = this.cache.getVersion();
+				authorized = this.check(id, session);
+				if (useCache) {
+					this.cache.put(session, this.type, this.permission, id.longValue(), authorized, version);
+				}
+			}
+
+			if (authorized) {
+				rv.add(id);
+			} else if (this.requireAll) {
+				throw new UnauthorizedException("Not authorized; type=" + this.type + ", id=" + id + ", permission="
+						+ this.permission);
+			}
+		}
+		return rv;
+	}
+
+	private boolean check(T id, CoreSession session) throws CommandException {
+		try {
+			switch (this.type) {
+			case COMPUTER:
+				this.runtime.run(new IsComputerManageableCmd(id.longValue(), this.permission), session);
+				break;
+			case USER:
+				this.runtime.run(new IsUserManageableCmd(id.intValue(), this.permission), session);
+				break;
+			case ORG:
+				this.runtime.run(new IsOrgManageableCmd(id.intValue(), this.permission), session);
+				break;
+			}
+			return true;
+		} catch (UnauthorizedException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.code42.auth;
+
+import com.code42.auth.AuthorizationCache.Type;
+import com.code42.core.CommandException;
+import com.code42.core.auth.UnauthorizedException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.auth.impl.IsComputerManageableCmd;
+import com.code42.core.auth.impl.IsOrgManageableCmd;
+import com.code42.core.auth.impl.IsUserManageableCmd;
+import com.code42.core.impl.AbstractCmd;
+import com.google.inject.Inject;
+
+/**
+ * Checks a single computer, user or org with the matching Is*ManageableCmd, answering from the AuthorizationCache
+ * where it can and caching the answer otherwise. Throws UnauthorizedException if it isn't manageable, just as the
+ * Is*ManageableCmd does; use IsManageableBulkCmd for more than one.
+ */
+public class IsManageableCmd extends AbstractCmd<Void> {
+
+	private AuthorizationCache cache;
+
+	@Inject
+	public void setCache(AuthorizationCache cache) {
+		this.cache = cache;
+	}
+
+	private final Type type;
+	private final long id;
+	private final IPermission permission;
+
+	private IsManageableCmd(Type type, long id, IPermission permission) {
+		this.type = type;
+		this.id = id;
+		this.permission = permission;
+	}
+
+	public static IsManageableCmd computer(long computerId, IPermission permission) {
+		return new IsManageableCmd(Type.COMPUTER, computerId, permission);
+	}
+
+	public static IsManageableCmd user(int userId, IPermission permission) {
+		return new IsManageableCmd(Type.USER, userId, permission);
+	}
+
+	public static IsManageableCmd org(int orgId, IPermission permission) {
+		return new IsManageableCmd(Type.ORG, orgId, permission);
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		final boolean useCache = this.cache.isEnabled();
+		Boolean authorized = useCache ? this.cache.get(session, this.type, this.permission, this.id) : null;
+		if (authorized != null) {
+			if (!authorized) {
+				throw new UnauthorizedException("Not authorized; type=" + this.type + ", id=" + this.id + ", permission="
+						+ this.permission);
+			}
+			return null;
+		}
+
+		// Read before the check, so a decision made across an invalidation isn't cached
+		long version = this.cache.getVersion();
+		try {
+			this.check(session);
+		} catch (UnauthorizedException e) {
+			if (useCache) {
+				this.cache.put(session, this.type, this.permission, this.id, false, version);
+			}
+			throw e;
+		}
+		if (useCache) {
+			this.cache.put(session, this.type, this.permission, this.id, true, version);
+		}
+		return null;
+	}
+
+	private void check(CoreSession session) throws CommandException {
+		switch (this.type) {
+		case COMPUTER:
+			this.runtime.run(new IsComputerManageableCmd(this.id, this.permission), session);
+			break;
+		case USER:
+			this.runtime.run(new IsUserManageableCmd((int) this.id, this.permission), session);
+			break;
+		case ORG:
+			this.runtime.run(new IsOrgManageableCmd((int) this.id, this.permission), session);
+			break;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.code42.util;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram in microseconds with log-linear buckets, HDR style: every power of two is split into 16
+ * equal sub-buckets, so any recorded value is known to within about 6% while the whole range from 1us to days fits in
+ * a few hundred counters. Values below 16us are exact.<br>
+ * <br>
+ * Histograms from different nodes can be added together, which is how the cluster-wide percentiles are made.
+ */
+public class LatencyHistogram implements Serializable {
+
+	private static final long serialVersionUID = 2968147734518823617L;
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40; // 2^40us is about 12 days
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	public void record(long micros) {
+		this.counts.incrementAndGet(index(Math.max(0, micros)));
+	}
+
+	/**
+	 * Add the other histogram's counts to this one.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other.counts.get(i);
+			if (c != 0) {
+				this.counts.addAndGet(i, c);
+			}
+		}
+	}
+
+	public LatencyHistogram copy() {
+		LatencyHistogram rv = new LatencyHistogram();
+		rv.add(this);
+		return rv;
+	}
+
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += this.counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * @param percentile 0 to 100
+	 * @return the upper bound of the bucket holding the given percentile, in microseconds; 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = this.getCount();
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= target) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	static int index(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(micros));
+		long sub = (exponent == MAX_EXPONENT && micros >= (1L << (MAX_EXPONENT + 1))) ? SUB_BUCKETS - 1
+				: (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) sub;
+	}
+
+	static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = index % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (sub + 1) * width - 1;
+	}
+}
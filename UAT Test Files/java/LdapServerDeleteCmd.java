@@ -16,6 +16,7 @@ import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.DeleteQuery;
 import com.code42.core.impl.DBCmd;
+import com.code42.directory.DirectoryEntryCacheInvalidateCmd;
 import com.code42.org.OrgLdapServer;
 import com.code42.org.OrgLdapServerFindByLdapServerQuery;
 import com.code42.org.OrgSso;
@@ -66,6 +67,7 @@ public class LdapServerDeleteCmd extends DBCmd<Void> {
 		LdapServer ldapServer = this.db.find(new LdapServerFindByIdQuery(this.ldapServerId));
 		if (ldapServer != null) {
 			this.db.delete(new LdapServerDeleteQuery(ldapServer));
+			this.db.afterTransaction(new DirectoryEntryCacheInvalidateCmd(), session);
 			CpcHistoryLogger.info(session, "LDAP:: deleted server: {}", ldapServer);
 		}
 
@@ -10,6 +10,7 @@ import com.code42.core.CommandException;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.db.NotFoundException;
 import com.code42.core.impl.DBCmd;
+import com.code42.directory.DirectoryEntryCacheInvalidateCmd;
 import com.code42.encryption.EncryptionServices;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
@@ -127,6 +128,9 @@ public class LdapServerUpdateCmd extends DBCmd<LdapServer> {
 
 			ldapServer = this.db.update(new LdapServerUpdateQuery(ldapServer));
 
+			// Cached lookups may have come from this server as it was configured before
+			this.db.afterTransaction(new DirectoryEntryCacheInvalidateCmd(), session);
+
 			this.db.commit();
 
 			CpcHistoryLogger.info(session, "LDAP:: modified server: {}", ldapServer);
@@ -1,5 +1,7 @@
 package com.code42.license;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import com.backup42.history.CpcHistoryLogger;
@@ -16,26 +18,46 @@ import com.code42.user.User;
 
 /**
  * Automatically assign a computer license to a computer if there is exactly one unassigned, active computer license and
- * exactly one active computer that is not assigned to a license.
+ * exactly one active computer that is not assigned to a license. Given more than one user, the assignments are made
+ * for all of them at once with LicenseBulkAutoAssignToComputerCmd.
  */
 public class LicenseAutoAssignToComputerCmd extends DBCmd<Void> {
 
 	private final static Logger log = Logger.getLogger(LicenseAutoAssignToComputerCmd.class);
 
 	private final int userId;
+	private final List<Integer> userIds;
 
 	public LicenseAutoAssignToComputerCmd(int userId) {
 		super();
 		this.userId = userId;
+		this.userIds = null;
 	}
 
 	public LicenseAutoAssignToComputerCmd(User user) {
 		this(user.getUserId());
 	}
 
+	/**
+	 * Auto-assign for each of the given users, e.g. after a license import or an org migration. For more than one user
+	 * this is for sysadmins only, as LicenseBulkAutoAssignToComputerCmd is.
+	 */
+	public LicenseAutoAssignToComputerCmd(Collection<Integer> userIds) {
+		super();
+		this.userIds = new ArrayList<Integer>(userIds);
+		this.userId = (this.userIds.size() == 1) ? this.userIds.get(0) : 0;
+	}
+
 	@Override
 	public Void exec(CoreSession session) throws CommandException {
 
+		if (this.userIds != null && this.userIds.size() != 1) {
+			if (!this.userIds.isEmpty()) {
+				this.run(new LicenseBulkAutoAssignToComputerCmd(this.userIds), session);
+			}
+			return null;
+		}
+
 		// find unassigned, active computer licenses
 		final List<ComputerLicense> unassigned = this.runtime.run(new ComputerLicenseFindActiveUnassignedByUserIdCmd(
 				this.userId), session);
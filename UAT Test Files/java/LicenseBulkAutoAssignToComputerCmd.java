@@ -0,0 +1,304 @@
+package com.code42.license;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+
+import com.backup42.common.ComputerType;
+import com.backup42.computer.LicenseServices;
+import com.backup42.history.CpcHistoryLogger;
+import com.code42.core.CommandException;
+import com.code42.core.annotation.CoreNamedQuery;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.core.db.impl.UpdateQuery;
+import com.code42.core.impl.DBCmd;
+import com.code42.logging.Logger;
+import com.code42.user.User;
+import com.code42.user.UserFindByIdQuery;
+import com.code42.utils.LangUtils;
+import com.code42.utils.Stopwatch;
+import com.code42.utils.SystemProperties;
+import com.google.common.collect.Iterables;
+
+/**
+ * Bulk form of LicenseAutoAssignToComputerCmd for large license imports and org migrations. Applies the same rule (a
+ * user with exactly one unassigned, active computer license and exactly one active computer without a license gets
+ * that license on that computer) to many users at once. The users with exactly one unassigned license are read a page
+ * at a time, as user ids and license keys rather than ComputerLicense entities; for each page the computers are read
+ * and the assignments are written with one set-based update, in its own transaction. A single CpcHistoryLogger entry
+ * summarizes the run. LicenseAutoAssignToComputerCmd runs this when it is given more than one user.<br>
+ * <br>
+ * A license that was assigned by someone else while this runs is skipped rather than reassigned, as is a computer that
+ * has been given an active license since it was chosen. Returns the number of licenses assigned.
+ */
+public class LicenseBulkAutoAssignToComputerCmd extends DBCmd<Integer> {
+
+	private final static Logger log = Logger.getLogger(LicenseBulkAutoAssignToComputerCmd.class);
+
+	private final Set<Integer> userIds;
+
+	/**
+	 * Auto-assign for every user that has unassigned computer licenses.
+	 */
+	public LicenseBulkAutoAssignToComputerCmd() {
+		this(null);
+	}
+
+	/**
+	 * Auto-assign for the given users only.
+	 */
+	public LicenseBulkAutoAssignToComputerCmd(Collection<Integer> userIds) {
+		super();
+		this.userIds = (userIds != null) ? new HashSet<Integer>(userIds) : null;
+	}
+
+	@Override
+	public Integer exec(CoreSession session) throws CommandException {
+
+		Stopwatch sw = new Stopwatch();
+
+		// as ComputerLicenseFindAllActiveUnassignedCmd does
+		this.auth.isSysadmin(session);
+
+		final Counts counts = new Counts();
+		final int pageSize = SystemProperties.getMaxQueryInClauseSize();
+		if (this.userIds != null) {
+			List<Integer> sorted = new ArrayList<Integer>(this.userIds);
+			Collections.sort(sorted);
+			for (List<Integer> batch : Iterables.partition(sorted, pageSize)) {
+				this.assign(this.db.find(new LicenseKeysUnassignedQuery(batch, null, pageSize)), counts);
+			}
+		} else {
+			Integer after = null;
+			List<Object[]> page;
+			do {
+				page = this.db.find(new LicenseKeysUnassignedQuery(null, after, pageSize));
+				if (!page.isEmpty()) {
+					after = (Integer) page.get(page.size() - 1)[0];
+					this.assign(page, counts);
+				}
+			} while (page.size() >= pageSize);
+		}
+
+		CpcHistoryLogger.info(session,
+				"Bulk auto-assigned computer licenses. assigned: {}, skipped: {}, failed: {}, candidateUsers: {}, {}ms",
+				counts.assigned, counts.skipped, counts.failed, counts.candidates, sw.getElapsed());
+		log.info("Bulk auto-assigned computer licenses. assigned=" + counts.assigned + ", skipped=" + counts.skipped
+				+ ", failed=" + counts.failed + ", candidateUsers=" + counts.candidates + ", " + sw.getElapsed()
+				+ "ms");
+
+		return counts.assigned;
+	}
+
+	/**
+	 * Assign the licenses of one page of candidate users, given as rows of [userId, licenseKey].
+	 */
+	private void assign(List<Object[]> page, Counts counts) throws CommandException {
+		if (page.isEmpty()) {
+			return;
+		}
+		final Map<Integer, String> keyByUser = new HashMap<Integer, String>();
+		for (Object[] row : page) {
+			keyByUser.put((Integer) row[0], (String) row[1]);
+		}
+		counts.candidates += keyByUser.size();
+
+		// get the active computers that are not assigned to a computer license; again exactly one per user
+		final Map<Integer, Long> computerByUser = new HashMap<Integer, Long>();
+		final Set<Integer> ineligible = new HashSet<Integer>();
+		for (Object[] row : this.db.find(new ComputerIdsNotAssignedALicenseQuery(new ArrayList<Integer>(keyByUser
+				.keySet())))) {
+			Integer userId = (Integer) row[0];
+			if (ineligible.contains(userId)) {
+				continue;
+			}
+			if (computerByUser.put(userId, (Long) row[1]) != null
+					|| !LangUtils.in((ComputerType) row[2], ComputerType.ELIGIBLE_FOR_GREEN_LICENSES)) {
+				computerByUser.remove(userId);
+				ineligible.add(userId);
+			}
+		}
+		if (computerByUser.isEmpty()) {
+			return;
+		}
+
+		final Map<String, Long> computerByKey = new HashMap<String, Long>();
+		final Map<String, Integer> userByKey = new HashMap<String, Integer>();
+		for (Map.Entry<Integer, Long> entry : computerByUser.entrySet()) {
+			String key = keyByUser.get(entry.getKey());
+			computerByKey.put(key, entry.getValue());
+			userByKey.put(key, entry.getKey());
+		}
+
+		final Set<Integer> changedUsers;
+		this.db.beginTransaction();
+		try {
+			changedUsers = this.db.update(new LicenseBulkAssignQuery(computerByKey, userByKey));
+			this.db.commit();
+		} catch (Throwable t) {
+			this.db.rollback();
+			counts.failed += computerByKey.size();
+			log.warn("Failed to bulk auto-assign " + computerByKey.size() + " computer licenses. " + t, t);
+			return;
+		} finally {
+			this.db.endTransaction();
+		}
+		counts.assigned += changedUsers.size();
+		counts.skipped += computerByKey.size() - changedUsers.size();
+
+		// notify the users involved of a license change; the license stays with its user so there is only one
+		for (Integer userId : changedUsers) {
+			try {
+				User user = this.db.find(new UserFindByIdQuery(userId));
+				if (user != null) {
+					LicenseServices.getInstance().handleLicenseChangeForUser(user);
+				}
+			} catch (Exception e) {
+				log.warn("Failed to handle license change after bulk auto-assign. userId=" + userId + ", " + e, e);
+			}
+		}
+	}
+
+	private static class Counts {
+
+		private int candidates;
+		private int assigned;
+		private int skipped;
+		private int failed;
+	}
+
+	/**
+	 * Rows of [userId, licenseKey] for the users with exactly one active, unassigned computer license, ordered by user.
+	 * Either the given users, or at most max users after the given one (all of them from the start if null).
+	 */
+	private static class LicenseKeysUnassignedQuery extends FindQuery<List<Object[]>> {
+
+		private static final String SELECT = "select cl.userId, min(cl.key) from ComputerLicense cl "
+				+ "where cl.active = true and cl.computerId is null and cl.userId is not null ";
+		private static final String GROUP = "group by cl.userId having count(cl.key) = 1 order by cl.userId";
+
+		private final List<Integer> userIds;
+		private final Integer after;
+		private final int max;
+
+		private LicenseKeysUnassignedQuery(List<Integer> userIds, Integer after, int max) {
+			this.userIds = userIds;
+			this.after = after;
+			this.max = max;
+		}
+
+		@Override
+		public List<Object[]> query(Session session) throws DBServiceException {
+			String hql = SELECT;
+			if (this.userIds != null) {
+				hql += "and cl.userId in (:userIds) ";
+			} else if (this.after != null) {
+				hql += "and cl.userId > :after ";
+			}
+			Query q = session.createQuery(hql + GROUP);
+			if (this.userIds != null) {
+				q.setParameterList("userIds", this.userIds);
+			} else if (this.after != null) {
+				q.setInteger("after", this.after);
+			}
+			q.setMaxResults(this.max);
+			return q.list();
+		}
+	}
+
+	/**
+	 * Rows of [userId, computerId, type] for the active computers of the given users that are not assigned an active
+	 * computer license.
+	 */
+	@CoreNamedQuery(name = "findComputerIdsNotAssignedALicenseByUsers", query = "select c.userId, c.computerId, c.type from Computer c where c.userId in (:userIds) and c.active = true and not exists (select cl.computerId from ComputerLicense cl where cl.computerId = c.computerId and cl.active = true)")
+	private static class ComputerIdsNotAssignedALicenseQuery extends FindQuery<List<Object[]>> {
+
+		private final List<Integer> userIds;
+
+		private ComputerIdsNotAssignedALicenseQuery(List<Integer> userIds) {
+			this.userIds = userIds;
+		}
+
+		@Override
+		public List<Object[]> query(Session session) throws DBServiceException {
+			Query q = this.getNamedQuery(session);
+			q.setParameterList("userIds", this.userIds);
+			return q.list();
+		}
+	}
+
+	/**
+	 * Assigns each license to its computer, first clearing any inactive licenses left on those computers (as
+	 * LicenseServices.unassignLicensesForComputer() does for a single assignment). Active licenses are never cleared
+	 * here; the computers were chosen for not having one.<br>
+	 * <br>
+	 * Every user has one license and one computer here, so the pairs are joined on the user and all of them are
+	 * assigned with a single update. A license that is no longer unassigned, or whose computer has been given an active
+	 * license or deactivated since, is left alone; the licenses are read back to find which were assigned. The bulk
+	 * updates bypass the session, so it is cleared afterwards and nothing later sees the old state. The result is the
+	 * users whose license was assigned.
+	 */
+	private static class LicenseBulkAssignQuery extends UpdateQuery<Set<Integer>> {
+
+		private static final String UNASSIGN = "update ComputerLicense cl set cl.computerId = null "
+				+ "where cl.computerId in (:computerIds) and cl.active = false";
+		private static final String ASSIGN = "update ComputerLicense cl "
+				+ "set cl.computerId = (select c.computerId from Computer c "
+				+ "where c.userId = cl.userId and c.computerId in (:computerIds)) "
+				+ "where cl.key in (:keys) and cl.active = true and cl.computerId is null "
+				+ "and exists (select c.computerId from Computer c "
+				+ "where c.userId = cl.userId and c.computerId in (:computerIds) and c.active = true "
+				+ "and not exists (select o.computerId from ComputerLicense o "
+				+ "where o.computerId = c.computerId and o.active = true))";
+		private static final String ASSIGNED = "select cl.key, cl.computerId from ComputerLicense cl "
+				+ "where cl.key in (:keys)";
+
+		private final Map<String, Long> computerByKey;
+		private final Map<String, Integer> userByKey;
+
+		private LicenseBulkAssignQuery(Map<String, Long> computerByKey, Map<String, Integer> userByKey) {
+			this.computerByKey = computerByKey;
+			this.userByKey = userByKey;
+		}
+
+		@Override
+		public Set<Integer> query(Session session) throws DBServiceException {
+			List<Long> computerIds = new ArrayList<Long>(this.computerByKey.values());
+
+			session.flush();
+
+			Query unassign = session.createQuery(UNASSIGN);
+			unassign.setParameterList("computerIds", computerIds);
+			unassign.executeUpdate();
+
+			Query assign = session.createQuery(ASSIGN);
+			assign.setParameterList("computerIds", computerIds);
+			assign.setParameterList("keys", this.computerByKey.keySet());
+			assign.executeUpdate();
+
+			Set<Integer> rv = new HashSet<Integer>();
+			Query assigned = session.createQuery(ASSIGNED);
+			assigned.setParameterList("keys", this.computerByKey.keySet());
+			for (Object[] row : (List<Object[]>) assigned.list()) {
+				Long computerId = this.computerByKey.get(row[0]);
+				if (computerId != null && LangUtils.equals(row[1], computerId)) {
+					rv.add(this.userByKey.get(row[0]));
+				}
+			}
+
+			// Don't leave ComputerLicenses in the session that these updates have made stale
+			session.clear();
+			return rv;
+		}
+	}
+}
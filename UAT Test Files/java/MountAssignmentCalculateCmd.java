@@ -37,6 +37,7 @@ public class MountAssignmentCalculateCmd extends DBCmd<MountPoint> {
 	private interface Property {
 
 		String destMPAssignment = "destination.mountPointAssignment";
+		String weighted = "c42.mountAssign.weighted.enabled";
 	}
 
 	private final Computer sourceComputer;
@@ -109,6 +110,28 @@ public class MountAssignmentCalculateCmd extends DBCmd<MountPoint> {
 			return mount;
 		}
 
+		/*
+		 * WEIGHTED ASSIGNMENT
+		 * 
+		 * When enabled, choose the mount with the live load model (see MountLoadModel). Compare it with the calculator first
+		 * using MountAssignmentSimulateCmd. Any failure falls through to the calculator.
+		 */
+		if (SystemProperties.getOptionalBoolean(Property.weighted, false)) {
+			try {
+				final Integer mountId = this.run(new MountAssignmentWeightedCmd(destination.getDestinationId()), session);
+				final MountPoint mount = (mountId != null) ? this.db.find(new MountPointFindByIdQuery(mountId)) : null;
+				if (mount != null) {
+					log.info("MP ASSIGN: Weighted assignment", this.sourceComputer, this.targetComputer, mount);
+					return mount;
+				}
+				log.warn("Weighted assignment found no mount. Algorithm will continue", this.sourceComputer,
+						this.targetComputer);
+			} catch (Exception e) {
+				log.info("Failed to make a weighted mount assignment. Algorithm will continue", e, this.sourceComputer,
+						this.targetComputer);
+			}
+		}
+
 		/*
 		 * REQUEST ASSIGNMENT CALCULATION
 		 * 
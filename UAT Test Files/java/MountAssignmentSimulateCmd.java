@@ -0,0 +1,378 @@
+package com.code42.server.mount;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+
+import com.backup42.common.perm.C42PermissionPro;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.core.impl.DBCmd;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.server.MountAssignmentAlgorithmCmd;
+import com.code42.server.destination.Destination;
+import com.code42.server.destination.DestinationFindByIdQuery;
+import com.code42.sql.SQLQuery;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+
+/**
+ * Judge the weighted assignment against the current one before turning it on with c42.mountAssign.weighted.enabled.
+ * Nothing is changed.<br>
+ * <br>
+ * The current assignment is made by the destination's calculator (MountAssignmentAlgorithmCmd), which only answers for
+ * the mounts as they are now and so can't be replayed. The result therefore has two parts: the mount the calculator and
+ * the live MountLoadModel would each pick today, and a replay of the destination's archives (oldest first) through the
+ * model's scoring, compared with where they were actually put by whatever assignment was in effect at the time.<br>
+ * <br>
+ * Both replays start from today's mount sizes with the replayed archives taken out. The replay knows archive sizes only
+ * after the fact, just as the live model does, and has no session history, so it compares placement and fill rather than
+ * hotspots.
+ */
+public class MountAssignmentSimulateCmd extends DBCmd<MountAssignmentSimulateCmd.Result> {
+
+	private static final Logger log = LoggerFactory.getLogger(MountAssignmentSimulateCmd.class);
+
+	private static final long GROWTH_WINDOW_MS = 30 * 24 * 60 * Time.MINUTE;
+
+	private final int destinationId;
+
+	@Inject
+	private MountLoadModel model;
+
+	public MountAssignmentSimulateCmd(int destinationId) {
+		super();
+		this.destinationId = destinationId;
+	}
+
+	@Override
+	public Result exec(CoreSession session) throws CommandException {
+
+		this.auth.isAuthorized(session, C42PermissionPro.System.SYSTEM_SETTINGS);
+
+		final List<MountPointDto> dtos = this.run(new MountPointDtoFindByDestinationCmd(this.destinationId), session);
+		final Result result = new Result();
+		if (dtos.isEmpty()) {
+			return result;
+		}
+
+		// Today's choices; the model's without counting it as an assignment
+		final Destination destination = this.db.find(new DestinationFindByIdQuery(this.destinationId));
+		if (destination != null) {
+			try {
+				result.calculatorChoice = this.run(new MountAssignmentAlgorithmCmd(destination.getDestinationGuid()),
+						session);
+			} catch (CommandException e) {
+				log.info("MP ASSIGN: calculator unavailable for simulation of destination {}", this.destinationId, e);
+			}
+		}
+		if (this.model.isStale(this.destinationId)) {
+			this.model.refresh(this.destinationId, dtos);
+		}
+		result.modelChoice = this.model.choose(this.destinationId);
+
+		final List<Integer> mpIds = new ArrayList<Integer>();
+		for (MountPointDto dto : dtos) {
+			mpIds.add(dto.getMountPointId());
+		}
+		final List<Object[]> history = this.db.find(new AssignmentHistoryQuery(mpIds));
+
+		// Take the replayed archives back out of today's usage to get the starting point
+		final Map<Integer, Long> historyBytes = new HashMap<Integer, Long>();
+		for (Object[] row : history) {
+			Long bytes = historyBytes.get(row[0]);
+			historyBytes.put((Integer) row[0], ((bytes != null) ? bytes : 0) + (Long) row[1]);
+		}
+		final Replay actual = new Replay();
+		final Replay weighted = new Replay();
+		for (MountPointDto dto : dtos) {
+			long bps = (dto.getWriteSpeed() != null) ? dto.getWriteSpeed() : 0;
+			Long bytes = historyBytes.get(dto.getMountPointId());
+			long baseline = Math.max(0, dto.getUsedBytes() - ((bytes != null) ? bytes : 0));
+			actual.add(new MountLoadModel.Mount(dto.getMountPointId(), dto.getTotalBytes(), bps), baseline);
+			weighted.add(new MountLoadModel.Mount(dto.getMountPointId(), dto.getTotalBytes(), bps), baseline);
+		}
+
+		final long newComputerBytes = SystemProperties.getOptionalLong(MountLoadModel.MOUNT_MODEL_NEW_COMPUTER_BYTES,
+				MountLoadModel.DEFAULT_NEW_COMPUTER_BYTES);
+		final long pendingTtlMs = SystemProperties.getOptionalLong(MountLoadModel.MOUNT_MODEL_PENDING_TTL_MS,
+				MountLoadModel.DEFAULT_PENDING_TTL_MS);
+
+		for (Object[] row : history) {
+			final int mountId = (Integer) row[0];
+			final long bytes = (Long) row[1];
+			final long time = (Long) row[2];
+
+			actual.place(mountId, bytes, time);
+
+			weighted.advance(time, pendingTtlMs);
+			Integer choice = weighted.choose(newComputerBytes);
+			weighted.place((choice != null) ? choice : mountId, bytes, time);
+		}
+
+		for (MountPointDto dto : dtos) {
+			final int mountId = dto.getMountPointId();
+			result.mounts.add(new MountResult(mountId, actual.usedPercentage(mountId), actual.assigned.get(mountId),
+					weighted.usedPercentage(mountId), weighted.assigned.get(mountId)));
+		}
+		result.assignments = history.size();
+		result.actualSpreadPercentage = actual.spread();
+		result.weightedSpreadPercentage = weighted.spread();
+		result.actualOverflows = actual.overflows;
+		result.weightedOverflows = weighted.overflows;
+		return result;
+	}
+
+	/**
+	 * One strategy's view of the mounts as the history is replayed.
+	 */
+	private static class Replay {
+
+		private final Map<Integer, MountLoadModel.Mount> mounts = new LinkedHashMap<Integer, MountLoadModel.Mount>();
+		private final Map<Integer, LinkedList<long[]>> recent = new HashMap<Integer, LinkedList<long[]>>();
+		private final Map<Integer, Integer> assigned = new HashMap<Integer, Integer>();
+		private int overflows = 0;
+
+		void add(MountLoadModel.Mount mount, long baselineBytes) {
+			mount.freeBytes -= baselineBytes;
+			this.mounts.put(mount.mountPointId, mount);
+			this.recent.put(mount.mountPointId, new LinkedList<long[]>());
+			this.assigned.put(mount.mountPointId, 0);
+		}
+
+		/**
+		 * Moves the clock forward: drops expired pending assignments and recomputes each mount's growth over the window.
+		 */
+		void advance(long time, long pendingTtlMs) {
+			for (MountLoadModel.Mount mount : this.mounts.values()) {
+				for (Iterator<Long> i = mount.pending.iterator(); i.hasNext();) {
+					if (i.next() < time - pendingTtlMs) {
+						i.remove();
+					}
+				}
+				long bytes = 0;
+				LinkedList<long[]> placed = this.recent.get(mount.mountPointId);
+				while (!placed.isEmpty() && placed.getFirst()[0] < time - GROWTH_WINDOW_MS) {
+					placed.removeFirst();
+				}
+				for (long[] p : placed) {
+					bytes += p[1];
+				}
+				mount.growthBytesPerDay = bytes / 30.0;
+			}
+		}
+
+		Integer choose(long newComputerBytes) {
+			MountLoadModel.Mount best = null;
+			double bestScore = 0;
+			for (MountLoadModel.Mount mount : this.mounts.values()) {
+				double score = MountLoadModel.score(mount, newComputerBytes);
+				if (score > bestScore) {
+					best = mount;
+					bestScore = score;
+				}
+			}
+			return (best != null) ? best.mountPointId : null;
+		}
+
+		void place(int mountId, long bytes, long time) {
+			MountLoadModel.Mount mount = this.mounts.get(mountId);
+			if (mount == null) {
+				return;
+			}
+			mount.freeBytes -= bytes;
+			mount.pending.add(time);
+			this.recent.get(mountId).add(new long[] { time, bytes });
+			this.assigned.put(mountId, this.assigned.get(mountId) + 1);
+			if (mount.freeBytes < 0) {
+				this.overflows++;
+			}
+		}
+
+		double usedPercentage(int mountId) {
+			MountLoadModel.Mount mount = this.mounts.get(mountId);
+			if (mount.totalBytes <= 0) {
+				return 0;
+			}
+			return 100.0 * (mount.totalBytes - mount.freeBytes) / mount.totalBytes;
+		}
+
+		/**
+		 * @return the difference in used percentage between the fullest and the emptiest mount
+		 */
+		double spread() {
+			double min = Double.MAX_VALUE;
+			double max = 0;
+			for (Integer mountId : this.mounts.keySet()) {
+				double used = this.usedPercentage(mountId);
+				min = Math.min(min, used);
+				max = Math.max(max, used);
+			}
+			return (min == Double.MAX_VALUE) ? 0 : max - min;
+		}
+	}
+
+	/**
+	 * The archives on the mounts, oldest first, as [mountId, bytes, creation time].
+	 */
+	private static class AssignmentHistoryQuery extends FindQuery<List<Object[]>> {
+
+		private static final String SQL = ""
+				+ "select fcu.mount_point_id, fcu.archive_bytes, fcu.creation_date   \n"
+				+ "from t_friend_computer_usage fcu                                  \n"
+				+ "where fcu.mount_point_id IN (:mpIds)                              \n"
+				+ "order by fcu.creation_date, fcu.mount_point_id                    \n";
+
+		private final List<Integer> mpIds;
+
+		public AssignmentHistoryQuery(List<Integer> mpIds) {
+			super();
+			this.mpIds = mpIds;
+		}
+
+		@Override
+		public List<Object[]> query(Session session) throws DBServiceException {
+			final SQLQuery q = new SQLQuery(session, SQL);
+			q.setParameterList("mpIds", this.mpIds);
+
+			final List<Object[]> rows = q.list();
+			final List<Object[]> rv = new ArrayList<Object[]>(rows.size());
+			for (Object[] row : rows) {
+				final long bytes = (row[1] != null) ? ((BigInteger) row[1]).longValue() : 0;
+				final long created = (row[2] != null) ? ((Date) row[2]).getTime() : 0;
+				rv.add(new Object[] { row[0], bytes, created });
+			}
+			return rv;
+		}
+	}
+
+	/**
+	 * How the two strategies compare.
+	 */
+	public static class Result {
+
+		private final List<MountResult> mounts = new ArrayList<MountResult>();
+		private Integer calculatorChoice;
+		private Integer modelChoice;
+		private int assignments;
+		private double actualSpreadPercentage;
+		private double weightedSpreadPercentage;
+		private int actualOverflows;
+		private int weightedOverflows;
+
+		public List<MountResult> getMounts() {
+			return this.mounts;
+		}
+
+		/**
+		 * @return the mount the current assignment (the destination's calculator) would pick today; null if it could
+		 *         not be asked
+		 */
+		public Integer getCalculatorChoice() {
+			return this.calculatorChoice;
+		}
+
+		/**
+		 * @return the mount the weighted assignment would pick today; null if no mount is eligible
+		 */
+		public Integer getModelChoice() {
+			return this.modelChoice;
+		}
+
+		public int getAssignments() {
+			return this.assignments;
+		}
+
+		/**
+		 * @return the used percentage of the fullest mount less that of the emptiest, as assigned historically
+		 */
+		public double getActualSpreadPercentage() {
+			return this.actualSpreadPercentage;
+		}
+
+		/**
+		 * @return the used percentage of the fullest mount less that of the emptiest, as assigned by the model
+		 */
+		public double getWeightedSpreadPercentage() {
+			return this.weightedSpreadPercentage;
+		}
+
+		/**
+		 * @return how many archives were placed on a mount without room for them, historically
+		 */
+		public int getActualOverflows() {
+			return this.actualOverflows;
+		}
+
+		/**
+		 * @return how many archives were placed on a mount without room for them, by the model
+		 */
+		public int getWeightedOverflows() {
+			return this.weightedOverflows;
+		}
+
+		@Override
+		public String toString() {
+			return "Result [calculatorChoice=" + this.calculatorChoice + ", modelChoice=" + this.modelChoice
+					+ ", assignments=" + this.assignments + ", actualSpreadPercentage=" + this.actualSpreadPercentage
+					+ ", weightedSpreadPercentage=" + this.weightedSpreadPercentage + ", actualOverflows="
+					+ this.actualOverflows + ", weightedOverflows=" + this.weightedOverflows + ", mounts=" + this.mounts + "]";
+		}
+	}
+
+	public static class MountResult {
+
+		private final int mountPointId;
+		private final double actualUsedPercentage;
+		private final int actualAssigned;
+		private final double weightedUsedPercentage;
+		private final int weightedAssigned;
+
+		MountResult(int mountPointId, double actualUsedPercentage, int actualAssigned, double weightedUsedPercentage,
+				int weightedAssigned) {
+			this.mountPointId = mountPointId;
+			this.actualUsedPercentage = actualUsedPercentage;
+			this.actualAssigned = actualAssigned;
+			this.weightedUsedPercentage = weightedUsedPercentage;
+			this.weightedAssigned = weightedAssigned;
+		}
+
+		public int getMountPointId() {
+			return this.mountPointId;
+		}
+
+		public double getActualUsedPercentage() {
+			return this.actualUsedPercentage;
+		}
+
+		public int getActualAssigned() {
+			return this.actualAssigned;
+		}
+
+		public double getWeightedUsedPercentage() {
+			return this.weightedUsedPercentage;
+		}
+
+		public int getWeightedAssigned() {
+			return this.weightedAssigned;
+		}
+
+		@Override
+		public String toString() {
+			return "MountResult [mountPointId=" + this.mountPointId + ", actual=" + this.actualUsedPercentage + "%/"
+					+ this.actualAssigned + ", weighted=" + this.weightedUsedPercentage + "%/" + this.weightedAssigned + "]";
+		}
+	}
+}
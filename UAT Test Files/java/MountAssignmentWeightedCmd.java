@@ -0,0 +1,54 @@
+package com.code42.server;
+
+import java.util.List;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.DBCmd;
+import com.code42.server.mount.MountLoadModel;
+import com.code42.server.mount.MountPointDto;
+import com.code42.server.mount.MountPointDtoFindByDestinationCmd;
+import com.code42.server.mount.MountPointProber;
+import com.google.inject.Inject;
+
+/**
+ * Choose a mount in the destination with the MountLoadModel, refreshing the model first if it is out of date. The
+ * chosen mount is counted as busier until the model next hears about it. Returns null if the model has no eligible
+ * mount.
+ */
+public class MountAssignmentWeightedCmd extends DBCmd<Integer> {
+
+	private final int destinationId;
+
+	@Inject
+	private MountLoadModel model;
+
+	@Inject
+	private MountPointProber prober;
+
+	public MountAssignmentWeightedCmd(int destinationId) {
+		super();
+		this.destinationId = destinationId;
+	}
+
+	@Override
+	public Integer exec(CoreSession session) throws CommandException {
+
+		// no auth needed; this is a read-only op called by system commands
+
+		// The model scores mounts by the write speed the prober measures
+		this.prober.start();
+
+		if (this.model.isStale(this.destinationId)) {
+			final List<MountPointDto> dtos = this.run(new MountPointDtoFindByDestinationCmd(this.destinationId), this.auth
+					.getSystemSession());
+			this.model.refresh(this.destinationId, dtos);
+		}
+
+		final Integer mountId = this.model.choose(this.destinationId);
+		if (mountId != null) {
+			this.model.assigned(this.destinationId, mountId);
+		}
+		return mountId;
+	}
+}
@@ -0,0 +1,283 @@
+package com.code42.server.mount;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Singleton;
+
+/**
+ * A live model of the mounts of each destination, kept on the master for mount assignment: free bytes, measured write
+ * speed (MountPoint.getBps()), active backup sessions, how fast each mount is filling up and the computers assigned to
+ * it that have not started backing up yet.<br>
+ * <br>
+ * A mount's score is its time-to-full (free bytes, less what is already on its way, divided by its growth rate) scaled by
+ * its write speed and divided by its current load. The mount with the best score wins, so new computers go to the
+ * mounts that will fill last and are least busy, and a burst of assignments spreads out instead of piling onto one
+ * mount between refreshes.
+ *
+ * @see MountLoadModel#score(Mount, long)
+ */
+@Singleton
+public class MountLoadModel {
+
+	private static final Logger log = LoggerFactory.getLogger(MountLoadModel.class);
+
+	static final String MOUNT_MODEL_MAX_AGE_MS = "c42.mountAssign.model.maxAge.ms";
+	static final String MOUNT_MODEL_PENDING_TTL_MS = "c42.mountAssign.pending.ttl.ms";
+	static final String MOUNT_MODEL_NEW_COMPUTER_BYTES = "c42.mountAssign.newComputer.bytes";
+	static final long DEFAULT_MAX_AGE_MS = Time.MINUTE;
+	static final long DEFAULT_PENDING_TTL_MS = 30 * Time.MINUTE;
+	static final long DEFAULT_NEW_COMPUTER_BYTES = 50L * 1000 * 1000 * 1000;
+
+	/** Growth rates below this (bytes per day) are treated as this, so an idle mount does not score infinitely well */
+	static final long MIN_GROWTH_BYTES_PER_DAY = 1000L * 1000 * 1000;
+	/** Write speed assumed for a mount that has never been tested */
+	static final long DEFAULT_BPS = 50L * 1000 * 1000;
+
+	private static final long DAY_MS = 24 * 60 * Time.MINUTE;
+
+	// All guarded by this
+	private final Map<Integer, Map<Integer, Mount>> destinations = new HashMap<Integer, Map<Integer, Mount>>();
+	private final Map<Integer, Long> refreshedAt = new HashMap<Integer, Long>();
+
+	public synchronized boolean isStale(int destinationId) {
+		long maxAgeMs = SystemProperties.getOptionalLong(MOUNT_MODEL_MAX_AGE_MS, DEFAULT_MAX_AGE_MS);
+		Long at = this.refreshedAt.get(destinationId);
+		return at == null || System.currentTimeMillis() - at > maxAgeMs;
+	}
+
+	/**
+	 * Brings the destination's mounts up to date with freshly loaded dtos. Growth is measured between refreshes, so the
+	 * model gets better the longer the master is up.
+	 */
+	public synchronized void refresh(int destinationId, Collection<MountPointDto> dtos) {
+		long now = System.currentTimeMillis();
+		Map<Integer, Mount> old = this.destinations.get(destinationId);
+		Map<Integer, Mount> mounts = new HashMap<Integer, Mount>();
+		for (MountPointDto dto : dtos) {
+			Mount mount = (old != null) ? old.get(dto.getMountPointId()) : null;
+			if (mount == null) {
+				mount = new Mount(dto.getMountPointId());
+			}
+			mount.update(dto, now);
+			mounts.put(mount.mountPointId, mount);
+		}
+		this.destinations.put(destinationId, mounts);
+		this.refreshedAt.put(destinationId, now);
+	}
+
+	/**
+	 * @return the best mount for a new computer, or null if the model has no eligible mount for the destination
+	 */
+	public synchronized Integer choose(int destinationId) {
+		Map<Integer, Mount> mounts = this.destinations.get(destinationId);
+		if (mounts == null) {
+			return null;
+		}
+		long newComputerBytes = SystemProperties.getOptionalLong(MOUNT_MODEL_NEW_COMPUTER_BYTES,
+				DEFAULT_NEW_COMPUTER_BYTES);
+		long pendingTtlMs = SystemProperties.getOptionalLong(MOUNT_MODEL_PENDING_TTL_MS, DEFAULT_PENDING_TTL_MS);
+
+		Mount best = null;
+		double bestScore = 0;
+		for (Mount mount : mounts.values()) {
+			mount.expirePending(pendingTtlMs);
+			double score = score(mount, newComputerBytes);
+			if (score > bestScore) {
+				best = mount;
+				bestScore = score;
+			}
+		}
+		if (best == null) {
+			return null;
+		}
+		log.debug("MP ASSIGN: model chose {} with score {}", best, bestScore);
+		return best.mountPointId;
+	}
+
+	/**
+	 * Counts an assignment against the mount until its backup shows up in the mount's stats: a later refresh that sees
+	 * the mount's session count or todo bytes go up takes the oldest assignments off. Those that never show up are
+	 * dropped after c42.mountAssign.pending.ttl.ms.
+	 */
+	public synchronized void assigned(int destinationId, int mountPointId) {
+		Map<Integer, Mount> mounts = this.destinations.get(destinationId);
+		Mount mount = (mounts != null) ? mounts.get(mountPointId) : null;
+		if (mount != null) {
+			mount.pending.add(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * @return a copy of the model for the destination, for display
+	 */
+	public synchronized List<Mount> getMounts(int destinationId) {
+		Map<Integer, Mount> mounts = this.destinations.get(destinationId);
+		if (mounts == null) {
+			return Collections.emptyList();
+		}
+		List<Mount> rv = new ArrayList<Mount>();
+		for (Mount mount : mounts.values()) {
+			rv.add(mount.copy());
+		}
+		return rv;
+	}
+
+	/**
+	 * @return how good a home the mount is for a new computer of the given size; 0 if it cannot take one
+	 */
+	static double score(Mount mount, long newComputerBytes) {
+		if (!mount.accepting) {
+			return 0;
+		}
+		long incomingBytes = mount.todoBytes + (mount.pending.size() + 1) * newComputerBytes;
+		long headroom = mount.freeBytes - incomingBytes;
+		if (headroom <= 0) {
+			return 0;
+		}
+
+		double growthPerDay = Math.max(MIN_GROWTH_BYTES_PER_DAY, mount.growthBytesPerDay);
+		double daysToFull = headroom / growthPerDay;
+		double speed = (double) ((mount.bps > 0) ? mount.bps : DEFAULT_BPS) / DEFAULT_BPS;
+		double load = 1 + mount.activeSessions + mount.pending.size();
+		return daysToFull * speed / load;
+	}
+
+	/**
+	 * What the model knows about one mount.
+	 */
+	public static class Mount {
+
+		final int mountPointId;
+		boolean accepting = true;
+		long totalBytes;
+		long freeBytes;
+		long todoBytes;
+		long bps;
+		int activeSessions;
+		double growthBytesPerDay = 0;
+		final List<Long> pending = new ArrayList<Long>(); // assignment times
+
+		private long usedBytes = -1;
+		private long updatedAt = 0;
+
+		Mount(int mountPointId) {
+			this.mountPointId = mountPointId;
+		}
+
+		/**
+		 * For the simulation, which has no dtos.
+		 */
+		Mount(int mountPointId, long totalBytes, long bps) {
+			this(mountPointId);
+			this.totalBytes = totalBytes;
+			this.freeBytes = totalBytes;
+			this.bps = bps;
+		}
+
+		void update(MountPointDto dto, long now) {
+			long used = dto.getUsedBytes();
+			if (this.usedBytes >= 0 && now > this.updatedAt) {
+				// Exponentially weighted so one big backup or purge does not swing the model
+				double sample = (double) (used - this.usedBytes) * DAY_MS / (now - this.updatedAt);
+				this.growthBytesPerDay = 0.8 * this.growthBytesPerDay + 0.2 * Math.max(0, sample);
+			}
+			boolean seen = this.usedBytes >= 0;
+			this.usedBytes = used;
+			this.updatedAt = now;
+
+			int sessions = dto.getBackupSessionCount();
+			long todo = dto.getTodoBytes();
+			if (seen) {
+				// Backups that have started since the last refresh are now in the stats; stop counting them as pending
+				int started = Math.max(0, sessions - this.activeSessions);
+				if (started == 0 && todo > this.todoBytes) {
+					started = 1;
+				}
+				for (int i = 0; i < started && !this.pending.isEmpty(); i++) {
+					this.pending.remove(0);
+				}
+			}
+
+			this.accepting = dto.isOnline() && dto.isAcceptingInboundBackup() && dto.isAcceptingNewComputers();
+			this.totalBytes = dto.getTotalBytes();
+			this.freeBytes = dto.getFreeBytes();
+			this.todoBytes = todo;
+			this.bps = (dto.getWriteSpeed() != null) ? dto.getWriteSpeed() : 0;
+			this.activeSessions = sessions;
+		}
+
+		void expirePending(long ttlMs) {
+			long cutoff = System.currentTimeMillis() - ttlMs;
+			for (Iterator<Long> i = this.pending.iterator(); i.hasNext();) {
+				if (i.next() < cutoff) {
+					i.remove();
+				}
+			}
+		}
+
+		Mount copy() {
+			Mount rv = new Mount(this.mountPointId);
+			rv.accepting = this.accepting;
+			rv.totalBytes = this.totalBytes;
+			rv.freeBytes = this.freeBytes;
+			rv.todoBytes = this.todoBytes;
+			rv.bps = this.bps;
+			rv.activeSessions = this.activeSessions;
+			rv.growthBytesPerDay = this.growthBytesPerDay;
+			rv.pending.addAll(this.pending);
+			rv.usedBytes = this.usedBytes;
+			rv.updatedAt = this.updatedAt;
+			return rv;
+		}
+
+		public int getMountPointId() {
+			return this.mountPointId;
+		}
+
+		public boolean isAccepting() {
+			return this.accepting;
+		}
+
+		public long getTotalBytes() {
+			return this.totalBytes;
+		}
+
+		public long getFreeBytes() {
+			return this.freeBytes;
+		}
+
+		public long getBps() {
+			return this.bps;
+		}
+
+		public int getActiveSessions() {
+			return this.activeSessions;
+		}
+
+		public int getPendingAssignments() {
+			return this.pending.size();
+		}
+
+		public double getGrowthBytesPerDay() {
+			return this.growthBytesPerDay;
+		}
+
+		@Override
+		public String toString() {
+			return "Mount [mountPointId=" + this.mountPointId + ", accepting=" + this.accepting + ", freeBytes="
+					+ this.freeBytes + "/" + this.totalBytes + ", todoBytes=" + this.todoBytes + ", bps=" + this.bps
+					+ ", activeSessions=" + this.activeSessions + ", pending=" + this.pending.size() + ", growthBytesPerDay="
+					+ (long) this.growthBytesPerDay + "]";
+		}
+	}
+}
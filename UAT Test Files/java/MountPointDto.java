@@ -1,5 +1,8 @@
 package com.code42.server.mount;
 
+import java.util.Collections;
+import java.util.List;
+
 import com.code42.server.destination.Destination;
 import com.code42.server.node.Node;
 import com.code42.utils.LangUtils;
@@ -37,6 +40,8 @@ public class MountPointDto {
 
 	private boolean serverOnline = false;
 
+	private List<MountPointProbeResult> probeHistory = Collections.emptyList();
+
 	private String serverName = null;
 	private int destinationId = 0;
 	private String destinationName = null;
@@ -277,6 +282,29 @@ public class MountPointDto {
 		this.todoBytes = todoBytes;
 	}
 
+	/**
+	 * @return the recent storage probes of this mount, oldest first (see MountPointProbeCmd)
+	 */
+	public List<MountPointProbeResult> getProbeHistory() {
+		return this.probeHistory;
+	}
+
+	public void setProbeHistory(List<MountPointProbeResult> probeHistory) {
+		this.probeHistory = (probeHistory != null) ? probeHistory : Collections.<MountPointProbeResult> emptyList();
+	}
+
+	/**
+	 * @return the most recent successful probe, or null if there is none
+	 */
+	public MountPointProbeResult getLatestProbe() {
+		for (int i = this.probeHistory.size() - 1; i >= 0; i--) {
+			if (!this.probeHistory.get(i).isFailed()) {
+				return this.probeHistory.get(i);
+			}
+		}
+		return null;
+	}
+
 	protected MountPoint getMountPoint() {
 		return this.mount;
 	}
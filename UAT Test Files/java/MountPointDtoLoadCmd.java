@@ -50,6 +50,8 @@ public class MountPointDtoLoadCmd extends DBCmd<Void> {
 	private ISystemAlertService systemAlerts;
 	@Inject
 	private IUserLicenseService license;
+	@Inject
+	private MountPointProber prober;
 
 	private ISpaceService space;
 	private IRelationService relation;
@@ -89,6 +91,9 @@ public class MountPointDtoLoadCmd extends DBCmd<Void> {
 
 		// no additional auth call; we assume the finder already did that
 
+		// The probe history shown here is kept up to date by the prober
+		this.prober.start();
+
 		try {
 
 			this.mountPointsOnlineStatus = this.space.getAsType(SpaceKeyUtils.getMountPointOnlineStatusKey(), Map.class);
@@ -209,6 +214,8 @@ public class MountPointDtoLoadCmd extends DBCmd<Void> {
 				dto.setBackupSessionCount(storageStats.getNumBackupSessions());
 			}
 
+			dto.setProbeHistory(this.space.getAsType(MountPointProbeCmd.getSpaceKey(dto.getMountPointId()), List.class));
+
 		} catch (SpaceException e) {
 			throw new CommandException("Unable to get storage stats for mountPoint: " + dto.getMountPointId(), e);
 		}
@@ -0,0 +1,150 @@
+package com.code42.server.mount;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Measures the storage behind a mount directory with a probe file kept in the directory.<br>
+ * <br>
+ * The reads are done against the file left by the previous probe before it is rewritten, so with probes an hour or more
+ * apart they mostly miss the page cache. The very first probe of a mount reads a file it has just written and will look
+ * faster than the disk really is.
+ */
+class MountPointProbe {
+
+	static final String PROBE_FILE = ".c42probe";
+
+	private static final int BLOCK_SIZE = 1024 * 1024;
+	private static final int RANDOM_READ_SIZE = 4 * 1024;
+
+	private final File dir;
+	private final long fileSize;
+	private final int randomReads;
+	private final int fsyncs;
+	private final Random random = new Random();
+
+	MountPointProbe(File dir, long fileSize, int randomReads, int fsyncs) {
+		this.dir = dir;
+		this.fileSize = Math.max(BLOCK_SIZE, fileSize / BLOCK_SIZE * BLOCK_SIZE);
+		this.randomReads = randomReads;
+		this.fsyncs = fsyncs;
+	}
+
+	MountPointProbeResult probe(int mountPointId) {
+		MountPointProbeResult result = new MountPointProbeResult(mountPointId, System.currentTimeMillis());
+		File file = new File(this.dir, PROBE_FILE);
+		try {
+			if (file.length() < this.fileSize) {
+				this.writeSequential(file); // nothing to read yet
+			}
+			this.readRandom(file, result);
+			this.readSequential(file, result);
+			result.setSeqWriteBps(this.writeSequential(file));
+			this.fsync(result);
+		} catch (IOException e) {
+			result.setError(e.toString());
+		}
+		return result;
+	}
+
+	/**
+	 * @return bytes per second, including the final force to disk
+	 */
+	private long writeSequential(File file) throws IOException {
+		ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+		this.random.nextBytes(block.array()); // not compressible or dedupable
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			long start = System.nanoTime();
+			for (long pos = 0; pos < this.fileSize; pos += BLOCK_SIZE) {
+				block.clear();
+				while (block.hasRemaining()) {
+					channel.write(block, pos + block.position());
+				}
+			}
+			channel.force(false);
+			raf.setLength(this.fileSize);
+			return bytesPerSecond(this.fileSize, System.nanoTime() - start);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void readSequential(File file, MountPointProbeResult result) throws IOException {
+		ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long read = 0;
+			long start = System.nanoTime();
+			int n;
+			do {
+				block.clear();
+				n = channel.read(block, read);
+				if (n > 0) {
+					read += n;
+				}
+			} while (n > 0);
+			result.setSeqReadBps(bytesPerSecond(read, System.nanoTime() - start));
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void readRandom(File file, MountPointProbeResult result) throws IOException {
+		ByteBuffer block = ByteBuffer.allocate(RANDOM_READ_SIZE);
+		long[] micros = new long[this.randomReads];
+		long slots = file.length() / RANDOM_READ_SIZE;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long total = 0;
+			for (int i = 0; i < micros.length; i++) {
+				long pos = (long) (this.random.nextDouble() * slots) * RANDOM_READ_SIZE;
+				block.clear();
+				long start = System.nanoTime();
+				channel.read(block, pos);
+				long elapsed = System.nanoTime() - start;
+				micros[i] = elapsed / 1000;
+				total += elapsed;
+			}
+			result.setRandomReadMicros(micros);
+			result.setRandomReadIops((total <= 0) ? -1 : micros.length * 1000000000L / total);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Small appends, each forced to disk, the way archive metadata is written.
+	 */
+	private void fsync(MountPointProbeResult result) throws IOException {
+		File file = new File(this.dir, PROBE_FILE + ".sync");
+		ByteBuffer block = ByteBuffer.allocate(RANDOM_READ_SIZE);
+		long[] micros = new long[this.fsyncs];
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			for (int i = 0; i < micros.length; i++) {
+				block.clear();
+				long start = System.nanoTime();
+				channel.write(block, (long) i * RANDOM_READ_SIZE);
+				channel.force(false);
+				micros[i] = (System.nanoTime() - start) / 1000;
+			}
+			result.setFsyncMicros(micros);
+		} finally {
+			raf.close();
+			file.delete();
+		}
+	}
+
+	private static long bytesPerSecond(long bytes, long nanos) {
+		return (nanos <= 0) ? -1 : bytes * 1000000000L / nanos;
+	}
+}
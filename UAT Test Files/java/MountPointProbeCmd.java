@@ -0,0 +1,96 @@
+package com.code42.server.mount;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.backup42.common.perm.C42PermissionPro;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.DBCmd;
+import com.code42.core.space.ISpaceService;
+import com.code42.core.space.SpaceException;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.SystemProperties;
+import com.google.inject.Inject;
+
+/**
+ * Probe the storage of every enabled mount owned by this node (see MountPointProbe) and add the results to each mount's
+ * rolling history in the space, where MountPointDtoLoadCmd picks them up on any node. The sequential write speed also
+ * replaces the mount's bps, so the existing users of MountPoint.getBps() see current numbers.
+ */
+public class MountPointProbeCmd extends DBCmd<List<MountPointProbeResult>> {
+
+	private static final Logger log = LoggerFactory.getLogger(MountPointProbeCmd.class);
+
+	static final String MOUNT_PROBE_FILE_MB = "c42.mountProbe.file.mb";
+	static final String MOUNT_PROBE_RANDOM_READS = "c42.mountProbe.randomReads";
+	static final String MOUNT_PROBE_FSYNCS = "c42.mountProbe.fsyncs";
+	static final String MOUNT_PROBE_HISTORY_SIZE = "c42.mountProbe.history.size";
+	static final int DEFAULT_FILE_MB = 64;
+	static final int DEFAULT_RANDOM_READS = 200;
+	static final int DEFAULT_FSYNCS = 20;
+	static final int DEFAULT_HISTORY_SIZE = 48;
+
+	private static final String SPACE_KEY_PREFIX = "/mount/probe/";
+
+	private ISpaceService space;
+
+	@Inject
+	public void setSpace(ISpaceService space) {
+		this.space = space;
+	}
+
+	static String getSpaceKey(int mountPointId) {
+		return SPACE_KEY_PREFIX + mountPointId;
+	}
+
+	@Override
+	public List<MountPointProbeResult> exec(CoreSession session) throws CommandException {
+
+		this.auth.isAuthorized(session, C42PermissionPro.System.SYSTEM_SETTINGS);
+
+		final long fileSize = SystemProperties.getOptionalInt(MOUNT_PROBE_FILE_MB, DEFAULT_FILE_MB) * 1024L * 1024L;
+		final int randomReads = SystemProperties.getOptionalInt(MOUNT_PROBE_RANDOM_READS, DEFAULT_RANDOM_READS);
+		final int fsyncs = SystemProperties.getOptionalInt(MOUNT_PROBE_FSYNCS, DEFAULT_FSYNCS);
+		final int historySize = SystemProperties.getOptionalInt(MOUNT_PROBE_HISTORY_SIZE, DEFAULT_HISTORY_SIZE);
+
+		final List<MountPointProbeResult> results = new ArrayList<MountPointProbeResult>();
+		final List<MountPoint> mounts = this.db.find(new MountPointFindByServerQuery(this.env.getMyNodeId()));
+		for (MountPoint mount : mounts) {
+			if (!mount.isEnabled()) {
+				continue; // probably down for maintenance
+			}
+
+			final MountPointProbe probe = new MountPointProbe(new File(mount.getAbsolutePath()), fileSize, randomReads,
+					fsyncs);
+			final MountPointProbeResult result = probe.probe(mount.getMountPointId());
+			results.add(result);
+			log.info("Mount probe: {}", result);
+
+			this.addToHistory(result, historySize);
+			if (!result.isFailed() && result.getSeqWriteBps() > 0) {
+				mount.setBps(result.getSeqWriteBps());
+				this.db.update(new MountPointUpdateQuery(mount));
+			}
+		}
+		return results;
+	}
+
+	private void addToHistory(MountPointProbeResult result, int historySize) throws CommandException {
+		try {
+			final String key = getSpaceKey(result.getMountPointId());
+			final List<MountPointProbeResult> old = this.space.getAsType(key, List.class);
+			final ArrayList<MountPointProbeResult> history = new ArrayList<MountPointProbeResult>();
+			if (old != null) {
+				history.addAll(old.subList(Math.max(0, old.size() - historySize + 1), old.size()));
+			}
+			history.add(result);
+			this.space.put(key, (Serializable) history);
+		} catch (SpaceException se) {
+			throw new CommandException("Unable to save mount probe history for mountPoint: " + result.getMountPointId(), se);
+		}
+	}
+}
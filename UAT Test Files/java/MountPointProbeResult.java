@@ -0,0 +1,135 @@
+package com.code42.server.mount;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * One storage probe of a mount: sequential write and read throughput, random 4K read latency and fsync latency. Any
+ * figure that could not be measured is -1.
+ *
+ * @see MountPointProbe
+ */
+public class MountPointProbeResult implements Serializable {
+
+	private static final long serialVersionUID = -2934411657205866123L;
+
+	private final int mountPointId;
+	private final long probeTime;
+	private long seqWriteBps = -1;
+	private long seqReadBps = -1;
+	private long randomReadIops = -1;
+	private long[] randomReadMicros = { -1, -1, -1 }; // p50, p95, p99
+	private long[] fsyncMicros = { -1, -1, -1 }; // p50, p95, p99
+	private String error;
+
+	public MountPointProbeResult(int mountPointId, long probeTime) {
+		this.mountPointId = mountPointId;
+		this.probeTime = probeTime;
+	}
+
+	public int getMountPointId() {
+		return this.mountPointId;
+	}
+
+	public Date getProbeDate() {
+		return new Date(this.probeTime);
+	}
+
+	public long getProbeTime() {
+		return this.probeTime;
+	}
+
+	public long getSeqWriteBps() {
+		return this.seqWriteBps;
+	}
+
+	void setSeqWriteBps(long seqWriteBps) {
+		this.seqWriteBps = seqWriteBps;
+	}
+
+	public long getSeqReadBps() {
+		return this.seqReadBps;
+	}
+
+	void setSeqReadBps(long seqReadBps) {
+		this.seqReadBps = seqReadBps;
+	}
+
+	public long getRandomReadIops() {
+		return this.randomReadIops;
+	}
+
+	void setRandomReadIops(long randomReadIops) {
+		this.randomReadIops = randomReadIops;
+	}
+
+	public long getRandomReadP50Micros() {
+		return this.randomReadMicros[0];
+	}
+
+	public long getRandomReadP95Micros() {
+		return this.randomReadMicros[1];
+	}
+
+	public long getRandomReadP99Micros() {
+		return this.randomReadMicros[2];
+	}
+
+	void setRandomReadMicros(long[] samples) {
+		this.randomReadMicros = percentiles(samples);
+	}
+
+	public long getFsyncP50Micros() {
+		return this.fsyncMicros[0];
+	}
+
+	public long getFsyncP95Micros() {
+		return this.fsyncMicros[1];
+	}
+
+	public long getFsyncP99Micros() {
+		return this.fsyncMicros[2];
+	}
+
+	void setFsyncMicros(long[] samples) {
+		this.fsyncMicros = percentiles(samples);
+	}
+
+	public boolean isFailed() {
+		return this.error != null;
+	}
+
+	public String getError() {
+		return this.error;
+	}
+
+	void setError(String error) {
+		this.error = error;
+	}
+
+	/**
+	 * @return the 50th, 95th and 99th percentiles of the samples (nearest rank)
+	 */
+	private static long[] percentiles(long[] samples) {
+		if (samples.length == 0) {
+			return new long[] { -1, -1, -1 };
+		}
+		long[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		return new long[] { rank(sorted, 50), rank(sorted, 95), rank(sorted, 99) };
+	}
+
+	private static long rank(long[] sorted, int percentile) {
+		int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	@Override
+	public String toString() {
+		return "MountPointProbeResult [mountPointId=" + this.mountPointId + ", probeDate=" + this.getProbeDate()
+				+ ", seqWriteBps=" + this.seqWriteBps + ", seqReadBps=" + this.seqReadBps + ", randomReadIops="
+				+ this.randomReadIops + ", randomReadMicros=" + Arrays.toString(this.randomReadMicros) + ", fsyncMicros="
+				+ Arrays.toString(this.fsyncMicros) + ", error=" + this.error + "]";
+	}
+}
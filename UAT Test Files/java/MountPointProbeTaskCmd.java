@@ -0,0 +1,21 @@
+package com.code42.server.mount;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.AbstractCmd;
+import com.google.inject.Inject;
+
+/**
+ * One probe of this node's mounts, scheduled by the MountPointProber, which schedules the next one when it is done.
+ */
+public class MountPointProbeTaskCmd extends AbstractCmd<Void> {
+
+	@Inject
+	private MountPointProber prober;
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		this.prober.probe();
+		return null;
+	}
+}
@@ -0,0 +1,137 @@
+package com.code42.server.mount;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.code42.core.CommandException;
+import com.code42.core.ICoreRuntime;
+import com.code42.core.auth.IAuthorizationService;
+import com.code42.core.schedule.IScheduleService;
+import com.code42.core.schedule.SchedulerException;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.Stopwatch;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Runs MountPointProbeCmd on this node in the background, every interval or less often if that is what it takes to keep
+ * probing under the duty cycle (the share of wall-clock time spent probing). Each probe is a MountPointProbeTaskCmd
+ * scheduled with the schedule service, which schedules the next one when it is done, so no thread is held in between.
+ * The node has no startup hook for this; start() is called, and only does anything the first time, whenever mounts are
+ * loaded (MountPointDtoLoadCmd) or assigned (MountAssignmentWeightedCmd).
+ */
+@Singleton
+public class MountPointProber {
+
+	private static final Logger log = LoggerFactory.getLogger(MountPointProber.class);
+
+	static final String MOUNT_PROBE_ENABLED = "c42.mountProbe.enabled";
+	static final String MOUNT_PROBE_INTERVAL_MS = "c42.mountProbe.interval.ms";
+	static final String MOUNT_PROBE_DUTY_CYCLE_PCT = "c42.mountProbe.dutyCycle.pct";
+	static final long DEFAULT_INTERVAL_MS = 60 * Time.MINUTE;
+	static final int DEFAULT_DUTY_CYCLE_PCT = 1;
+
+	/* Give the node time to settle before the first probe */
+	private static final long FIRST_PROBE_DELAY_MS = Time.MINUTE;
+
+	private static final String PROBE_TASK_NAME = "mountPointProbe";
+	private static final String PROBE_TASK_GROUP = "core";
+
+	/* ================= Dependencies ================= */
+	private ICoreRuntime runtime;
+	private IAuthorizationService auth;
+	private IScheduleService schedule;
+
+	/* ================= DI injection points ================= */
+	@Inject
+	public void setRuntime(ICoreRuntime runtime) {
+		this.runtime = runtime;
+	}
+
+	@Inject
+	public void setAuth(IAuthorizationService auth) {
+		this.auth = auth;
+	}
+
+	@Inject
+	public void setSchedule(IScheduleService schedule) {
+		this.schedule = schedule;
+	}
+
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private volatile boolean stopped = false;
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalBoolean(MOUNT_PROBE_ENABLED, true);
+	}
+
+	/**
+	 * Schedules the first probe (once).
+	 */
+	public void start() {
+		if (!this.isEnabled() || !this.started.compareAndSet(false, true)) {
+			return;
+		}
+		if (!this.scheduleProbe(FIRST_PROBE_DELAY_MS)) {
+			// Try again next time we are asked
+			this.started.set(false);
+		}
+	}
+
+	/**
+	 * No probe is scheduled after the one running now, if any.
+	 */
+	public void stop() {
+		this.stopped = true;
+	}
+
+	/**
+	 * The body of MountPointProbeTaskCmd: probe, then schedule the next probe.
+	 */
+	void probe() {
+		long elapsed = 0;
+		if (this.isEnabled()) {
+			Stopwatch sw = new Stopwatch();
+			try {
+				this.runtime.run(new MountPointProbeCmd(), this.auth.getSystemSession());
+			} catch (CommandException ce) {
+				log.warn("Mount probe failed", ce);
+			} catch (RuntimeException re) {
+				log.warn("Mount probe failed", re);
+			}
+			elapsed = sw.getElapsed();
+		}
+
+		long interval = SystemProperties.getOptionalLong(MOUNT_PROBE_INTERVAL_MS, DEFAULT_INTERVAL_MS);
+		int dutyCyclePct = Math.max(1, SystemProperties.getOptionalInt(MOUNT_PROBE_DUTY_CYCLE_PCT,
+				DEFAULT_DUTY_CYCLE_PCT));
+		if (!this.scheduleProbe(Math.max(interval, elapsed * 100 / dutyCyclePct))) {
+			// Nothing is scheduled now; the next start() schedules the probes again
+			this.started.set(false);
+		}
+	}
+
+	/**
+	 * @return false if the probe could not be scheduled
+	 */
+	private boolean scheduleProbe(long delayMs) {
+		if (this.stopped) {
+			log.info("Mount prober stopped");
+			return true;
+		}
+		try {
+			this.schedule.scheduleWithDelay(PROBE_TASK_NAME, PROBE_TASK_GROUP, delayMs, TimeUnit.MILLISECONDS,
+					new MountPointProbeTaskCmd());
+			return true;
+		} catch (SchedulerException e) {
+			log.warn("Unable to schedule mount probe", e);
+			return false;
+		} catch (RuntimeException e) {
+			log.warn("Unable to schedule mount probe", e);
+			return false;
+		}
+	}
+}
@@ -1,12 +1,12 @@
 package com.code42.server.node;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.computer.ComputerSso;
 import com.code42.computer.ComputerSsoFindByGuidCmd;
 import com.code42.computer.FriendComputerUsageFindBySourceGuidAndTargetGuidQuery;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.social.FriendComputerUsage;
 
@@ -26,7 +26,7 @@ public class NodeFindBySourceAndDestinationCmd extends DBCmd<Node> {
 	@Override
 	public Node exec(CoreSession session) throws CommandException {
 		ComputerSso c = this.run(new ComputerSsoFindByGuidCmd(this.sourceGuid), session);
-		this.run(new IsComputerManageableCmd(c.getComputerId(), C42PermissionApp.Computer.READ), session);
+		this.run(IsManageableCmd.computer(c.getComputerId(), C42PermissionApp.Computer.READ), session);
 
 		FriendComputerUsage fcu = this.db.find(new FriendComputerUsageFindBySourceGuidAndTargetGuidQuery(this.sourceGuid,
 				this.destinationGuid));
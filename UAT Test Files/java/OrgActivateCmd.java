@@ -1,11 +1,11 @@
 package com.code42.org;
 
 import com.backup42.history.CpcHistoryLogger;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
@@ -31,7 +31,7 @@ public class OrgActivateCmd extends DBCmd<OrgActivateCmd.Result> {
 	@Override
 	public Result exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
+		this.runtime.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
 
 		// Can't activate your own org.
 		if (this.orgId == session.getUser().getOrgId()) {
@@ -4,13 +4,13 @@ import java.util.List;
 
 import com.backup42.history.CpcHistoryLogger;
 import com.backup42.social.SocialComputerNetworkServices;
+import com.code42.auth.IsManageableCmd;
 import com.code42.computer.Computer;
 import com.code42.computer.ComputerFindByOrgCmd;
 import com.code42.core.CommandException;
 import com.code42.core.IEnvironment;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
@@ -53,7 +53,7 @@ public class OrgBlockCmd extends DBCmd<OrgBlockCmd.Result> {
 	@Override
 	public Result exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
+		this.runtime.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
 
 		// Unable to block your own org.
 		if (this.orgId == session.getUser().getOrgId()) {
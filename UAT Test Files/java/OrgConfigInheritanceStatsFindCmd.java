@@ -22,7 +22,8 @@ import com.code42.utils.Pair;
 import com.google.inject.Inject;
 
 /**
- * Command to find the counts of the org's hierarchy
+ * Command to find the counts of the org's hierarchy. Answered from the OrgInheritanceIndex when it is loaded, otherwise
+ * by walking the hierarchy.
  * 
  * @author jlundberg
  */
@@ -32,6 +33,9 @@ public class OrgConfigInheritanceStatsFindCmd extends DBCmd<List<AggregateHierar
 	@Inject
 	private IHierarchyService hierarchy;
 
+	@Inject
+	private OrgInheritanceIndex index;
+
 	private static final Logger log = LoggerFactory.getLogger(OrgConfigInheritanceStatsFindCmd.class);
 
 	private int orgId;
@@ -42,6 +46,13 @@ public class OrgConfigInheritanceStatsFindCmd extends DBCmd<List<AggregateHierar
 
 	@Override
 	public List<AggregateHierarchyStats> exec(CoreSession session) throws CommandException {
+		if (this.ensureIndexLoaded()) {
+			List<AggregateHierarchyStats> indexed = this.index.findStats(this.orgId);
+			if (indexed != null) {
+				return indexed;
+			}
+		}
+
 		List<AggregateHierarchyStats> list = new ArrayList<AggregateHierarchyStats>();
 		list.add(new AggregateHierarchyStats(0, 0, 0, 0, 0)); // All Stats
 		list.add(new AggregateHierarchyStats(0, 0, 0, 0, 0)); // Inherited Stats
@@ -65,6 +76,25 @@ public class OrgConfigInheritanceStatsFindCmd extends DBCmd<List<AggregateHierar
 		}
 	}
 
+	/**
+	 * Starts loading the OrgInheritanceIndex in the background the first time it is needed, and reloading it once it is
+	 * stale; otherwise brings it up to date with the other nodes.
+	 * 
+	 * @return true if the index is loaded and can be consulted
+	 */
+	private boolean ensureIndexLoaded() throws CommandException {
+		if (!this.index.isEnabled()) {
+			return false;
+		}
+		if (this.index.isStale()) {
+			this.runtime.runAsync(new OrgInheritanceIndexLoadCmd(), this.auth.getSystemSession());
+		} else {
+			// Read back whatever other nodes changed first
+			this.runtime.run(new OrgInheritanceIndexUpdateCmd(), this.auth.getSystemSession());
+		}
+		return this.index.isLoaded();
+	}
+
 	private void findStatsForBaseOrg(int orgId, Pair<AggregateHierarchyStats, AggregateHierarchyStats> totalStats,
 			CoreSession session) throws CommandException {
 		try {
@@ -13,9 +13,13 @@ import com.code42.core.db.DBServiceException;
 import com.code42.core.db.DuplicateExistsException;
 import com.code42.core.db.impl.CreateQuery;
 import com.code42.core.impl.DBCmd;
+import com.code42.hierarchy.OrgHierarchyCacheUpdateCmd;
+import com.code42.hierarchy.OrgHierarchyCacheUpdateCmd.Change;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
 import com.code42.org.OrgCreateCmd.Error;
+import com.code42.smartsearch.SmartSearchIndexUpdateCmd;
+import com.code42.smartsearch.SmartSearchType;
 import com.code42.user.AddressCreateQuery;
 import com.code42.utils.LangUtils;
 import com.code42.utils.UniqueId;
@@ -93,6 +97,11 @@ public abstract class OrgCreateBaseCmd extends DBCmd<Org> {
 			this.runtime.run(new OrgNotifySettingsCreateCmd(createdOrg.getOrgId()), systemSession);
 
 			this.db.afterTransaction(new OrgPublishCreateCmd(createdOrg), session);
+			this.db.afterTransaction(new OrgHierarchyCacheUpdateCmd(Change.CREATE, createdOrg.getOrgId(), createdOrg
+					.getParentOrgId()), session);
+			this.db.afterTransaction(new OrgInheritanceIndexUpdateCmd(createdOrg.getOrgId()), session);
+			this.db.afterTransaction(new SmartSearchIndexUpdateCmd(SmartSearchType.ORG, createdOrg.getOrgId()),
+					session);
 
 			this.db.commit();
 		} catch (CommandException ce) {
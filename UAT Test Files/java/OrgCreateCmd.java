@@ -5,12 +5,12 @@ import java.util.List;
 
 import com.backup42.CpcConstants;
 import com.backup42.common.OrgType;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.BuilderException;
 import com.code42.core.CommandException;
 import com.code42.core.OrgDef;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.org.destination.OrgDestination;
 import com.code42.org.destination.OrgDestinationFindAvailableByOrgCmd;
 import com.code42.org.destination.OrgDestinationUpdateAvailableDestinationsCmd;
@@ -58,7 +58,7 @@ public class OrgCreateCmd extends OrgCreateBaseCmd {
 			this.ensureNotHostedOrg(this.parentOrg.getOrgId(), session);
 
 			// Authorize the user for permission to add children to this org
-			this.runtime.run(new IsOrgManageableCmd(this.parentOrg.getOrgId(), C42PermissionApp.Org.CREATE), session);
+			this.runtime.run(IsManageableCmd.org(this.parentOrg.getOrgId(), C42PermissionApp.Org.CREATE), session);
 		}
 
 		if ((!this.env.isBusinessCluster() && !this.env.isConsumerCluster())
@@ -7,12 +7,12 @@ import com.backup42.CpcConstants;
 import com.backup42.app.Backup42Formatter;
 import com.backup42.history.CpcHistoryLogger;
 import com.backup42.social.SocialComputerNetworkServices;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.IEnvironment;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.hierarchy.HierarchyNotFoundException;
 import com.code42.core.hierarchy.IHierarchyService;
 import com.code42.core.impl.CoreBridge;
@@ -64,7 +64,7 @@ public class OrgDeactivateCmd extends DBCmd<OrgDeactivateCmd.Result> {
 	@Override
 	public Result exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
+		this.runtime.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
 
 		// Can't deactivate your own org.
 		if (this.orgId == session.getUser().getOrgId()) {
@@ -17,10 +17,14 @@ import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.DeleteQuery;
 import com.code42.core.impl.CoreBridge;
 import com.code42.core.impl.DBCmd;
+import com.code42.hierarchy.OrgHierarchyCacheUpdateCmd;
+import com.code42.hierarchy.OrgHierarchyCacheUpdateCmd.Change;
 import com.code42.logging.Logger;
 import com.code42.org.destination.OrgDestination;
 import com.code42.org.destination.OrgDestinationDeleteCmd;
 import com.code42.org.destination.OrgDestinationFindByOrgQuery;
+import com.code42.smartsearch.SmartSearchIndexUpdateCmd;
+import com.code42.smartsearch.SmartSearchType;
 import com.code42.utils.LangUtils;
 
 /**
@@ -58,6 +62,9 @@ public class OrgDeleteCmd extends DBCmd<Void> {
 				this.deleteOrg(org, session);
 
 				this.db.afterTransaction(new OrgPublishDeleteCmd(org), session);
+				this.db.afterTransaction(new OrgHierarchyCacheUpdateCmd(Change.DELETE, this.orgId, null), session);
+				this.db.afterTransaction(new OrgInheritanceIndexUpdateCmd(this.orgId), session);
+				this.db.afterTransaction(new SmartSearchIndexUpdateCmd(SmartSearchType.ORG, this.orgId), session);
 			}
 
 			this.db.commit();
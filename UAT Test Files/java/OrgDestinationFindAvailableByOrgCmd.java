@@ -3,10 +3,10 @@ package com.code42.org.destination;
 import java.util.Collections;
 import java.util.List;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.impl.CoreBridge;
 import com.code42.core.impl.DBCmd;
 import com.code42.org.BackupOrg;
@@ -35,7 +35,7 @@ public class OrgDestinationFindAvailableByOrgCmd extends DBCmd<List<OrgDestinati
 	@Override
 	public List<OrgDestination> exec(CoreSession session) throws CommandException {
 		if (this.orgId != session.getUser().getOrgId()) {
-			this.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.READ), session);
+			this.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.READ), session);
 		}
 
 		final List<OrgDestination> destinations = this.getDestinations(this.orgId, !this.inheritedOnly, session);
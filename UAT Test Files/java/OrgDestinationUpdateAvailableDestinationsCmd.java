@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import com.code42.config.ConfigFixDestinationsTracker;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
@@ -12,6 +13,7 @@ import com.code42.org.BackupOrg;
 import com.code42.org.OrgFindByIdCmd;
 import com.code42.org.destination.OrgDestinationDeleteCmd.OrgDestinationDeleteListCmd;
 import com.code42.org.destination.OrgDestinationForceUpdateCmd.OrgDestinationForceUpdateListCmd;
+import com.google.inject.Inject;
 
 /**
  * Configure which destinations an org allows; create as necessary.
@@ -23,6 +25,9 @@ import com.code42.org.destination.OrgDestinationForceUpdateCmd.OrgDestinationFor
  */
 public class OrgDestinationUpdateAvailableDestinationsCmd extends DBCmd<Void> {
 
+	@Inject
+	private ConfigFixDestinationsTracker configFixTracker;
+
 	private final int orgId;
 	private final List<Integer> ensureDestinationIds;
 	private final List<Integer> removeDestinationIds;
@@ -119,6 +124,9 @@ public class OrgDestinationUpdateAvailableDestinationsCmd extends DBCmd<Void> {
 			this.db.endTransaction();
 		}
 
+		// Computer configs may now list destinations this org no longer offers
+		this.configFixTracker.orgDestinationsChanged(this.orgId);
+
 		return null;
 	}
 }
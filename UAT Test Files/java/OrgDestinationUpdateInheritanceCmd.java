@@ -5,16 +5,19 @@ import java.util.Collections;
 import java.util.List;
 
 import com.backup42.CpcConstants;
+import com.code42.config.ConfigFixDestinationsTracker;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.DBCmd;
 import com.code42.org.BackupOrg;
 import com.code42.org.OrgFindByIdQuery;
+import com.code42.org.OrgInheritanceIndexUpdateCmd;
 import com.code42.org.OrgUpdateQuery;
 import com.code42.server.destination.Destination.Type;
 import com.code42.server.destination.DestinationFindByIdCmd;
 import com.code42.server.destination.IDestination;
+import com.google.inject.Inject;
 
 /**
  * Adjust the org's inherit destination status.
@@ -25,6 +28,9 @@ import com.code42.server.destination.IDestination;
  */
 public class OrgDestinationUpdateInheritanceCmd extends DBCmd<Void> {
 
+	@Inject
+	private ConfigFixDestinationsTracker configFixTracker;
+
 	private final int orgId;
 	private final boolean inherit;
 
@@ -104,6 +110,9 @@ public class OrgDestinationUpdateInheritanceCmd extends DBCmd<Void> {
 			this.db.endTransaction();
 		}
 
+		// Computer configs may now list destinations this org no longer offers
+		this.configFixTracker.orgDestinationsChanged(this.orgId);
+
 		return null;
 	}
 
@@ -114,5 +123,6 @@ public class OrgDestinationUpdateInheritanceCmd extends DBCmd<Void> {
 		// This should be the only place in the entire system that does this.
 		org.setInheritDestinations(this.inherit);
 		this.db.update(new OrgUpdateQuery(org));
+		this.db.afterTransaction(new OrgInheritanceIndexUpdateCmd(org.getOrgId()), session);
 	}
 }
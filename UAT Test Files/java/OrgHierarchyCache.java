@@ -0,0 +1,301 @@
+package com.code42.hierarchy;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.code42.core.space.ISpaceService;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.org.OrgTree;
+import com.code42.org.OrgTreeDto;
+import com.code42.util.SpaceInvalidator;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * In-memory copy of the org tree (parent and child links only), loaded with the single OrgTreeFindAllCmd query. Walking
+ * up costs O(depth) and walking down costs O(size of the subtree), with no database round trips either way.<br>
+ * <br>
+ * Creates, moves and deletes on this node are applied as they commit (see OrgHierarchyCacheUpdateCmd) and published to
+ * the other nodes, which drop their copy on their next check (see SpaceInvalidator), so they reload rather than
+ * authorize against a stale tree. Every lookup returns null while the cache is not
+ * loaded or does not know the org, and callers fall back to the database.
+ */
+@Singleton
+public class OrgHierarchyCache {
+
+	private static final Logger log = LoggerFactory.getLogger(OrgHierarchyCache.class);
+
+	static final String ORG_HIERARCHY_CACHE_ENABLED = "c42.orgHierarchy.cache.enabled";
+	static final String ORG_HIERARCHY_CACHE_MAX_AGE_MS = "c42.orgHierarchy.cache.maxAge.ms";
+	static final String ORG_HIERARCHY_CACHE_GENERATION_CHECK_MS = "c42.orgHierarchy.cache.generationCheck.ms";
+	static final long DEFAULT_MAX_AGE_MS = 10 * Time.MINUTE;
+
+	private final SpaceInvalidator invalidator = new SpaceInvalidator("/org/hierarchyCache",
+			ORG_HIERARCHY_CACHE_GENERATION_CHECK_MS, new SpaceInvalidator.Listener() {
+
+				public void invalidate(Serializable orgId) {
+					OrgHierarchyCache.this.drop();
+				}
+
+				public void invalidateAll() {
+					OrgHierarchyCache.this.drop();
+				}
+			});
+
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.invalidator.setSpaceService(space);
+	}
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final AtomicBoolean loading = new AtomicBoolean(false);
+
+	// All guarded by lock. A root org maps to a null parent.
+	private Map<Integer, Integer> parents = new HashMap<Integer, Integer>();
+	private Map<Integer, List<Integer>> children = new HashMap<Integer, List<Integer>>();
+	private long loadedAt = 0;
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalBoolean(ORG_HIERARCHY_CACHE_ENABLED, true);
+	}
+
+	public boolean isLoaded() {
+		this.invalidator.check();
+		this.lock.readLock().lock();
+		try {
+			return this.loadedAt > 0;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public boolean isStale() {
+		long maxAgeMs = SystemProperties.getOptionalLong(ORG_HIERARCHY_CACHE_MAX_AGE_MS, DEFAULT_MAX_AGE_MS);
+		this.lock.readLock().lock();
+		try {
+			return this.loadedAt == 0 || System.currentTimeMillis() - this.loadedAt > maxAgeMs;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Claims the right to (re)load the cache; the caller must call endLoad() when done.
+	 */
+	boolean beginLoad() {
+		return this.loading.compareAndSet(false, true);
+	}
+
+	void endLoad() {
+		this.loading.set(false);
+	}
+
+	/**
+	 * @return the version to hand back to load() with a tree read from now on
+	 */
+	long getVersion() {
+		return this.invalidator.getVersion();
+	}
+
+	/**
+	 * Replaces the cached tree with the given one, unless a change has been applied (or the cache dropped) since the
+	 * given version was read; the tree would then be missing that change.
+	 * 
+	 * @return false if the tree was not installed and the load should be retried
+	 */
+	boolean load(OrgTree<OrgTreeDto> tree, long loadedAtVersion) {
+		Map<Integer, Integer> newParents = new HashMap<Integer, Integer>();
+		Map<Integer, List<Integer>> newChildren = new HashMap<Integer, List<Integer>>();
+		for (OrgTreeDto dto : tree) {
+			newParents.put(dto.getOrgId(), dto.getParentOrgId());
+			if (dto.getParentOrgId() != null) {
+				addChild(newChildren, dto.getParentOrgId(), dto.getOrgId());
+			}
+		}
+
+		this.lock.writeLock().lock();
+		try {
+			if (!this.invalidator.isCurrent(loadedAtVersion)) {
+				log.info("OrgHierarchy:: org tree changed while loading; discarding load");
+				return false;
+			}
+			this.parents = newParents;
+			this.children = newChildren;
+			this.loadedAt = System.currentTimeMillis();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		log.info("OrgHierarchy:: cache loaded; orgs:{}", newParents.size());
+		return true;
+	}
+
+	/**
+	 * @return the org IDs from the root down to and including orgId, or null if the cache cannot answer
+	 */
+	public List<Integer> findAscending(int orgId) {
+		this.lock.readLock().lock();
+		try {
+			if (this.loadedAt == 0 || !this.parents.containsKey(orgId)) {
+				return null;
+			}
+			LinkedList<Integer> rv = new LinkedList<Integer>();
+			Integer current = orgId;
+			while (current != null) {
+				if (rv.contains(current)) {
+					log.warn("OrgHierarchy:: cycle detected walking up from orgId {}: {}", orgId, rv);
+					return null;
+				}
+				rv.addFirst(current);
+				current = this.parents.get(current);
+			}
+			return Collections.unmodifiableList(rv);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return orgId followed by all of its descendants (depth first), or null if the cache cannot answer
+	 */
+	public List<Integer> findDescending(int orgId) {
+		this.lock.readLock().lock();
+		try {
+			if (this.loadedAt == 0 || !this.parents.containsKey(orgId)) {
+				return null;
+			}
+			List<Integer> rv = new ArrayList<Integer>();
+			rv.add(orgId);
+			this.addDescendants(orgId, rv);
+			return Collections.unmodifiableList(rv);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return true if ancestorOrgId is orgId or one of its ancestors, null if the cache cannot answer
+	 */
+	public Boolean isAncestor(int ancestorOrgId, int orgId) {
+		List<Integer> ascending = this.findAscending(orgId);
+		return ascending != null ? ascending.contains(ancestorOrgId) : null;
+	}
+
+	void orgCreated(int orgId, Integer parentOrgId) {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			this.parents.put(orgId, parentOrgId);
+			if (parentOrgId != null) {
+				addChild(this.children, parentOrgId, orgId);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	void orgMoved(int orgId, Integer newParentOrgId) {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			Integer oldParentOrgId = this.parents.get(orgId);
+			if (oldParentOrgId != null) {
+				removeChild(this.children, oldParentOrgId, orgId);
+			}
+			this.parents.put(orgId, newParentOrgId);
+			if (newParentOrgId != null) {
+				addChild(this.children, newParentOrgId, orgId);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the org and its whole subtree, the same way OrgDeleteCmd does.
+	 */
+	void orgDeleted(int orgId) {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			List<Integer> subtree = new ArrayList<Integer>();
+			subtree.add(orgId);
+			this.addDescendants(orgId, subtree);
+
+			Integer parentOrgId = this.parents.get(orgId);
+			if (parentOrgId != null) {
+				removeChild(this.children, parentOrgId, orgId);
+			}
+			for (Integer id : subtree) {
+				this.parents.remove(id);
+				this.children.remove(id);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Tell the other nodes that the org has changed. Call after applying a change that committed on this node.
+	 */
+	void publish(int orgId) {
+		this.invalidator.publish(orgId);
+	}
+
+	/**
+	 * The next lookup reloads the tree.
+	 */
+	private void drop() {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			this.loadedAt = 0;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/** Must be called with a lock held */
+	private void addDescendants(int orgId, List<Integer> rv) {
+		List<Integer> kids = this.children.get(orgId);
+		if (kids == null) {
+			return;
+		}
+		for (Integer child : kids) {
+			rv.add(child);
+			// Notice the recursion here
+			this.addDescendants(child, rv);
+		}
+	}
+
+	private static void addChild(Map<Integer, List<Integer>> children, int parentOrgId, int orgId) {
+		List<Integer> kids = children.get(parentOrgId);
+		if (kids == null) {
+			kids = new ArrayList<Integer>(2);
+			children.put(parentOrgId, kids);
+		}
+		if (!kids.contains(orgId)) {
+			kids.add(orgId);
+		}
+	}
+
+	private static void removeChild(Map<Integer, List<Integer>> children, int parentOrgId, int orgId) {
+		List<Integer> kids = children.get(parentOrgId);
+		if (kids != null) {
+			kids.remove(Integer.valueOf(orgId));
+			if (kids.isEmpty()) {
+				children.remove(parentOrgId);
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.code42.hierarchy;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.DBCmd;
+import com.code42.org.OrgTree;
+import com.code42.org.OrgTreeDto;
+import com.code42.org.OrgTreeFindAllCmd;
+import com.google.inject.Inject;
+
+/**
+ * (Re)loads the OrgHierarchyCache from the single OrgTreeFindAllCmd query. Only one load runs at a time; if another is
+ * already running this returns immediately. A load that raced with an incremental change is retried.
+ */
+public class OrgHierarchyCacheLoadCmd extends DBCmd<Void> {
+
+	private static final int MAX_ATTEMPTS = 3;
+
+	@Inject
+	private OrgHierarchyCache cache;
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		if (!this.cache.isEnabled() || !this.cache.beginLoad()) {
+			return null;
+		}
+
+		try {
+			for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+				long version = this.cache.getVersion();
+				// The hierarchy itself is not a security risk; see OrgHierarchyFindByOrgIdCmd
+				OrgTree<OrgTreeDto> tree = this.runtime.run(new OrgTreeFindAllCmd(), this.auth.getAdminSession());
+				if (this.cache.load(tree, version)) {
+					break;
+				}
+			}
+		} finally {
+			this.cache.endLoad();
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,49 @@
+package com.code42.hierarchy;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.AbstractCmd;
+import com.google.inject.Inject;
+
+/**
+ * Applies a single org create, move or delete to the OrgHierarchyCache and tells the other nodes to reload theirs. Run
+ * this with db.afterTransaction() so the caches only change once the database has.
+ */
+public class OrgHierarchyCacheUpdateCmd extends AbstractCmd<Void> {
+
+	public enum Change {
+		CREATE, MOVE, DELETE
+	}
+
+	@Inject
+	private OrgHierarchyCache cache;
+
+	private final Change change;
+	private final int orgId;
+	private final Integer parentOrgId;
+
+	public OrgHierarchyCacheUpdateCmd(Change change, int orgId, Integer parentOrgId) {
+		this.change = change;
+		this.orgId = orgId;
+		this.parentOrgId = parentOrgId;
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		switch (this.change) {
+		case CREATE:
+			this.cache.orgCreated(this.orgId, this.parentOrgId);
+			break;
+		case MOVE:
+			this.cache.orgMoved(this.orgId, this.parentOrgId);
+			break;
+		case DELETE:
+			this.cache.orgDeleted(this.orgId);
+			break;
+		default:
+			throw new CommandException(String.format("Unexpected change value: %s", this.change));
+		}
+		this.cache.publish(this.orgId);
+		return null;
+	}
+}
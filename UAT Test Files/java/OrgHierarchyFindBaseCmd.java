@@ -12,6 +12,7 @@ import com.code42.org.BackupOrg;
 import com.code42.org.OrgFindByParentIdQuery;
 import com.code42.org.OrgSso;
 import com.code42.org.OrgSsoFindByOrgIdCmd;
+import com.google.inject.Inject;
 
 /**
  * @deprecated Functionality now provided by IHierarchyService
@@ -23,6 +24,9 @@ public abstract class OrgHierarchyFindBaseCmd extends DBCmd<List<Integer>> {
 		ASCENDING, DESCENDING
 	}
 
+	@Inject
+	private OrgHierarchyCache cache;
+
 	@Override
 	public abstract List<Integer> exec(CoreSession session) throws CommandException;
 
@@ -46,7 +50,16 @@ public abstract class OrgHierarchyFindBaseCmd extends DBCmd<List<Integer>> {
 		 * 
 		 * UPDATE: We get some modest improvement here by using the new OrgDtoFindBy commands... at least they check the
 		 * cache in the space rather than going back to the DB every time. Still this is probably far from ideal.
+		 * 
+		 * UPDATE: The walk below is now only the fallback for when OrgHierarchyCache cannot answer.
 		 */
+		if (this.ensureCacheLoaded(session)) {
+			List<Integer> cached = this.cache.findAscending(originOrgId);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
 		LinkedList<Integer> rv = new LinkedList<Integer>();
 		Integer orgId = originOrgId;
 		do {
@@ -75,6 +88,13 @@ public abstract class OrgHierarchyFindBaseCmd extends DBCmd<List<Integer>> {
 	 */
 	public List<Integer> findDescending(int orgId) throws CommandException {
 
+		if (this.ensureCacheLoaded(this.auth.getSystemSession())) {
+			List<Integer> cached = this.cache.findDescending(orgId);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
 		List<Integer> authorizedOrgIds = new ArrayList<Integer>();
 		authorizedOrgIds.add(orgId);
 		this.findDescending(orgId, authorizedOrgIds);
@@ -97,4 +117,21 @@ public abstract class OrgHierarchyFindBaseCmd extends DBCmd<List<Integer>> {
 			this.findDescending(org.getOrgId(), descendantOrgIds);
 		}
 	}
+
+	/**
+	 * Loads the OrgHierarchyCache the first time it is needed and refreshes it in the background once it is stale.
+	 * 
+	 * @return true if the cache is loaded and can be consulted
+	 */
+	private boolean ensureCacheLoaded(CoreSession session) throws CommandException {
+		if (!this.cache.isEnabled()) {
+			return false;
+		}
+		if (!this.cache.isLoaded()) {
+			this.runtime.run(new OrgHierarchyCacheLoadCmd(), session);
+		} else if (this.cache.isStale()) {
+			this.runtime.runAsync(new OrgHierarchyCacheLoadCmd(), session);
+		}
+		return this.cache.isLoaded();
+	}
 }
@@ -3,20 +3,25 @@ package com.code42.org;
 import java.util.List;
 
 import com.backup42.CpcConstants;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.impl.CoreBridge;
 import com.code42.core.impl.DBCmd;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import com.google.inject.Inject;
 
 /**
- * Find information about the source of inherited settings for an org.
+ * Find information about the source of inherited settings for an org. Answered from the OrgInheritanceIndex when it
+ * is loaded, otherwise by walking the org's parents.
  */
 public class OrgInheritDtoFindByOrgCmd extends DBCmd<OrgInheritDto> {
 
+	@Inject
+	private OrgInheritanceIndex index;
+
 	private final int orgId;
 
 	public OrgInheritDtoFindByOrgCmd(int orgId) {
@@ -29,7 +34,7 @@ public class OrgInheritDtoFindByOrgCmd extends DBCmd<OrgInheritDto> {
 			throw new CommandException("Illegal orgId: {}", this.orgId);
 		}
 
-		this.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.READ), session);
+		this.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.READ), session);
 
 		OrgInheritDto dto = new OrgInheritDto(this.orgId);
 		if (this.orgId == CpcConstants.Orgs.ADMIN_ID) {
@@ -37,6 +42,10 @@ public class OrgInheritDtoFindByOrgCmd extends DBCmd<OrgInheritDto> {
 			return dto;
 		}
 
+		if (this.ensureIndexLoaded() && this.index.fill(dto, this.orgId)) {
+			return dto;
+		}
+
 		boolean inclusive = false; // don't care about this org; find the first parent with settings
 		List<BackupOrg> orgTree = CoreBridge.run(new OrgFindAllParentsCmd(this.orgId, inclusive));
 
@@ -64,6 +73,25 @@ public class OrgInheritDtoFindByOrgCmd extends DBCmd<OrgInheritDto> {
 		return dto;
 	}
 
+	/**
+	 * Starts loading the OrgInheritanceIndex in the background the first time it is needed, and reloading it once it is
+	 * stale; otherwise brings it up to date with the other nodes.
+	 * 
+	 * @return true if the index is loaded and can be consulted
+	 */
+	private boolean ensureIndexLoaded() throws CommandException {
+		if (!this.index.isEnabled()) {
+			return false;
+		}
+		if (this.index.isStale()) {
+			this.runtime.runAsync(new OrgInheritanceIndexLoadCmd(), this.auth.getSystemSession());
+		} else {
+			// Read back whatever other nodes changed first
+			this.runtime.run(new OrgInheritanceIndexUpdateCmd(), this.auth.getSystemSession());
+		}
+		return this.index.isLoaded();
+	}
+
 	/**
 	 * Find the org that declares the max_seats/bytes this org should be using. Return null if none found.
 	 */
@@ -0,0 +1,552 @@
+package com.code42.org;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.backup42.CpcConstants;
+import com.code42.core.hierarchy.AggregateHierarchyStats;
+import com.code42.core.space.ISpaceService;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.util.SpaceInvalidator;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * In-memory index of where every org gets its inherited settings from, loaded by OrgInheritanceIndexLoadCmd. For each
+ * org it knows the nearest org at or above it that declares org limits (max seats or bytes), its own destinations and
+ * custom device defaults, and the org and device counts of its subtree that OrgConfigInheritanceStatsFindCmd reports,
+ * so OrgInheritDtoFindByOrgCmd and OrgConfigInheritanceStatsFindCmd are answered without walking the tree.<br>
+ * <br>
+ * Org creates, updates, moves and deletes on this node are applied as they commit (see OrgInheritanceIndexUpdateCmd):
+ * the providers are recomputed for the changed org's subtree and the counts for its ancestors only. A user move
+ * recounts the devices of both orgs the same way. Each change is also published to the other nodes, which read the
+ * org back (with its device counts) and apply it the same way before their next answer (see takePending()). Devices
+ * registered or deleted without an org change are picked up when the index ages out and is reloaded. Every lookup
+ * returns null while the index is not loaded or does not know the org, and callers fall back to the database.
+ */
+@Singleton
+public class OrgInheritanceIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(OrgInheritanceIndex.class);
+
+	static final String ORG_INHERITANCE_INDEX_ENABLED = "c42.orgInheritanceIndex.enabled";
+	static final String ORG_INHERITANCE_INDEX_MAX_AGE_MS = "c42.orgInheritanceIndex.maxAge.ms";
+	static final String ORG_INHERITANCE_INDEX_GENERATION_CHECK_MS = "c42.orgInheritanceIndex.generationCheck.ms";
+	static final long DEFAULT_MAX_AGE_MS = 30 * Time.MINUTE;
+
+	private final SpaceInvalidator invalidator = new SpaceInvalidator("/org/inheritanceIndex",
+			ORG_INHERITANCE_INDEX_GENERATION_CHECK_MS, new SpaceInvalidator.Listener() {
+
+				public void invalidate(Serializable orgId) {
+					OrgInheritanceIndex.this.changedElsewhere((Integer) orgId);
+				}
+
+				public void invalidateAll() {
+					OrgInheritanceIndex.this.drop();
+				}
+			});
+
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.invalidator.setSpaceService(space);
+	}
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final AtomicBoolean loading = new AtomicBoolean(false);
+
+	// All guarded by lock
+	private final Set<Integer> pending = new LinkedHashSet<Integer>();
+	private Map<Integer, Node> nodes = new HashMap<Integer, Node>();
+	private final Totals adminTotals = new Totals();
+	private long loadedAt = 0;
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalBoolean(ORG_INHERITANCE_INDEX_ENABLED, true);
+	}
+
+	public boolean isLoaded() {
+		this.invalidator.check();
+		this.lock.readLock().lock();
+		try {
+			return this.loadedAt > 0;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public boolean isStale() {
+		long maxAgeMs = SystemProperties.getOptionalLong(ORG_INHERITANCE_INDEX_MAX_AGE_MS, DEFAULT_MAX_AGE_MS);
+		this.lock.readLock().lock();
+		try {
+			return this.loadedAt == 0 || System.currentTimeMillis() - this.loadedAt > maxAgeMs;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Claims the right to (re)load the index; the caller must call endLoad() when done.
+	 */
+	boolean beginLoad() {
+		return this.loading.compareAndSet(false, true);
+	}
+
+	void endLoad() {
+		this.loading.set(false);
+	}
+
+	/**
+	 * @return the version to hand back to load() with orgs read from now on
+	 */
+	long getVersion() {
+		return this.invalidator.getVersion();
+	}
+
+	/**
+	 * Replaces the index with one built from the given orgs, unless a change has been applied (or the index dropped)
+	 * since the given version was read; the orgs would then be missing that change.
+	 * 
+	 * @return false if the orgs were not installed and the load should be retried
+	 */
+	boolean load(Collection<OrgRow> rows, long loadedAtVersion) {
+		Map<Integer, Node> newNodes = new HashMap<Integer, Node>(rows.size() * 2);
+		for (OrgRow row : rows) {
+			Node node = new Node(row.orgId);
+			node.set(row);
+			node.computers = row.computers;
+			node.guids = row.guids;
+			newNodes.put(row.orgId, node);
+		}
+		for (OrgRow row : rows) {
+			Node node = newNodes.get(row.orgId);
+			Node parent = (row.parentOrgId != null) ? newNodes.get(row.parentOrgId) : null;
+			node.link(parent);
+		}
+
+		// Providers go top-down, counts bottom-up
+		Totals totals = new Totals();
+		for (Node node : newNodes.values()) {
+			if (node.parent == null) {
+				updateProviders(node);
+				updateCountsBelow(node);
+				if (node.orgId != CpcConstants.Orgs.ADMIN_ID) {
+					totals.add(node);
+				}
+			}
+		}
+
+		this.lock.writeLock().lock();
+		try {
+			if (!this.invalidator.isCurrent(loadedAtVersion)) {
+				log.info("OrgInheritance:: orgs changed while loading; discarding load");
+				return false;
+			}
+			this.nodes = newNodes;
+			this.adminTotals.set(totals);
+			this.loadedAt = System.currentTimeMillis();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		log.info("OrgInheritance:: index loaded; orgs:{}", newNodes.size());
+		return true;
+	}
+
+	/**
+	 * Fill in the orgs providing the given org's inherited settings.
+	 *
+	 * @return false if the index cannot answer
+	 */
+	boolean fill(OrgInheritDto dto, int orgId) {
+		this.lock.readLock().lock();
+		try {
+			Node node = (this.loadedAt > 0) ? this.nodes.get(orgId) : null;
+			if (node == null) {
+				return false;
+			}
+			// The org itself doesn't count, only what it inherits
+			Node parent = node.parent;
+			Node o = (parent != null) ? parent.orgProvider : null;
+			dto.setOrgIdProvidingOrg(o == null ? null : o.orgId);
+			dto.setOrgNameProvidingOrg(o == null ? null : o.orgName);
+			o = (parent != null) ? parent.destinationsProvider : null;
+			dto.setOrgIdProvidingDestinations(o == null ? null : o.orgId);
+			dto.setOrgNameProvidingDestinations(o == null ? null : o.orgName);
+			o = (parent != null) ? parent.deviceDefaultsProvider : null;
+			dto.setOrgIdProvidingDeviceDefaults(o == null ? null : o.orgId);
+			dto.setOrgNameProvidingDeviceDefaults(o == null ? null : o.orgName);
+			return true;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return all and inherited stats for the org's subtree (for the admin org, every top-level org's), as
+	 *         OrgConfigInheritanceStatsFindCmd reports them, or null if the index cannot answer
+	 */
+	List<AggregateHierarchyStats> findStats(int orgId) {
+		Totals totals = new Totals();
+		this.lock.readLock().lock();
+		try {
+			if (this.loadedAt == 0) {
+				return null;
+			}
+			if (orgId == CpcConstants.Orgs.ADMIN_ID) {
+				totals.set(this.adminTotals);
+			} else {
+				Node node = this.nodes.get(orgId);
+				if (node == null) {
+					return null;
+				}
+				totals.add(node);
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+
+		List<AggregateHierarchyStats> list = new ArrayList<AggregateHierarchyStats>();
+		AggregateHierarchyStats all = new AggregateHierarchyStats(0, 0, 0, 0, 0);
+		all.addOrgs(totals.allOrgs);
+		all.addDevices(totals.allDevices);
+		AggregateHierarchyStats inherited = new AggregateHierarchyStats(0, 0, 0, 0, 0);
+		inherited.addOrgs(totals.inheritedOrgs);
+		inherited.addDevices(totals.inheritedDevices);
+		list.add(all);
+		list.add(inherited);
+		return list;
+	}
+
+	/**
+	 * Applies a create, update or move of a single org. Its device counts are kept unless the row has them counted.
+	 */
+	void orgChanged(OrgRow row) {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			if (this.loadedAt == 0) {
+				return;
+			}
+			Node newParent = (row.parentOrgId != null) ? this.nodes.get(row.parentOrgId) : null;
+			if (row.parentOrgId != null && newParent == null) {
+				log.info("OrgInheritance:: parent of orgId {} not indexed; index needs a reload", row.orgId);
+				this.loadedAt = 0;
+				return;
+			}
+			Node node = this.nodes.get(row.orgId);
+			boolean created = (node == null);
+			if (created) {
+				node = new Node(row.orgId);
+				this.nodes.put(row.orgId, node);
+			}
+			// Take out the top-level orgs whose subtrees change, and add them back once they have
+			Node oldRoot = root(node);
+			Node newRoot = (newParent != null) ? root(newParent) : node;
+			if (!created) {
+				this.adminTotals.add(oldRoot, -1);
+			}
+			if (newRoot != oldRoot) {
+				this.adminTotals.add(newRoot, -1);
+			}
+
+			Node oldParent = node.parent;
+			node.set(row);
+			if (row.devicesCounted) {
+				node.computers = row.computers;
+				node.guids = row.guids;
+			}
+			node.link(newParent);
+
+			updateProviders(node);
+			node.updateCounts();
+			if (oldParent != null && oldParent != newParent) {
+				updateCountsAbove(oldParent);
+			}
+			updateCountsAbove(newParent);
+
+			this.adminTotals.add(newRoot, 1);
+			if (oldRoot != newRoot && oldRoot.parent == null) {
+				this.adminTotals.add(oldRoot, 1);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the org and its whole subtree, the same way OrgDeleteCmd does.
+	 */
+	void orgDeleted(int orgId) {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			Node node = this.nodes.get(orgId);
+			if (this.loadedAt == 0 || node == null) {
+				return;
+			}
+			Node parent = node.parent;
+			Node root = root(node);
+			this.adminTotals.add(root, -1);
+			node.link(null);
+			this.remove(node);
+			updateCountsAbove(parent);
+			if (root != node) {
+				this.adminTotals.add(root, 1);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Tell the other nodes that the org has changed. Call after applying a change that committed on this node.
+	 */
+	void publish(int orgId) {
+		this.invalidator.publish(orgId);
+	}
+
+	/**
+	 * @return the orgs changed on other nodes, to be read back from the database; each is returned only once
+	 */
+	Collection<Integer> takePending() {
+		this.invalidator.check();
+		this.lock.writeLock().lock();
+		try {
+			if (this.pending.isEmpty()) {
+				return Collections.emptyList();
+			}
+			List<Integer> rv = new ArrayList<Integer>(this.pending);
+			this.pending.clear();
+			return rv;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Forget the index, and make a load that is already running retry rather than install what it read.
+	 */
+	void drop() {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			this.pending.clear();
+			this.loadedAt = 0;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Another node changed the org; read it back before the next answer. A load that is running now retries, since it
+	 * may have read the org before the change.
+	 */
+	private void changedElsewhere(int orgId) {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			if (this.loadedAt > 0) {
+				this.pending.add(orgId);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/** Must be called with the write lock held */
+	private void remove(Node node) {
+		this.nodes.remove(node.orgId);
+		for (Node child : node.children) {
+			// Notice the recursion here
+			this.remove(child);
+		}
+	}
+
+	private static Node root(Node node) {
+		Node n = node;
+		while (n.parent != null) {
+			n = n.parent;
+		}
+		return n;
+	}
+
+	/**
+	 * Recompute the providers of the node and everything below it from its parent's.
+	 */
+	private static void updateProviders(Node node) {
+		Node p = node.parent;
+		node.orgProvider = node.declaresOrg ? node : (p != null ? p.orgProvider : null);
+		node.destinationsProvider = node.declaresDestinations ? node : (p != null ? p.destinationsProvider : null);
+		node.deviceDefaultsProvider = node.customConfig ? node : (p != null ? p.deviceDefaultsProvider : null);
+		for (Node child : node.children) {
+			// Notice the recursion here
+			updateProviders(child);
+		}
+	}
+
+	private static void updateCountsBelow(Node node) {
+		for (Node child : node.children) {
+			// Notice the recursion here
+			updateCountsBelow(child);
+		}
+		node.updateCounts();
+	}
+
+	private static void updateCountsAbove(Node node) {
+		for (Node n = node; n != null; n = n.parent) {
+			n.updateCounts();
+		}
+	}
+
+	/**
+	 * One org as loaded from the database, plus its device counts.
+	 */
+	static class OrgRow {
+
+		int orgId;
+		Integer parentOrgId;
+		String orgName;
+		boolean declaresOrg; // max seats or max bytes set
+		boolean declaresDestinations; // not inheriting destinations
+		boolean customConfig;
+		boolean hosted;
+		int computers; // devices of type COMPUTER
+		int guids; // all devices
+		boolean devicesCounted; // computers and guids are set
+	}
+
+	private static class Node {
+
+		final int orgId;
+		String orgName;
+		boolean declaresOrg;
+		boolean declaresDestinations;
+		boolean customConfig;
+		boolean hosted;
+		int computers;
+		int guids;
+
+		Node parent;
+		final List<Node> children = new ArrayList<Node>(0);
+
+		// The nearest org at or above this one declaring each kind of setting
+		Node orgProvider;
+		Node destinationsProvider;
+		Node deviceDefaultsProvider;
+
+		// Sums over the children's subtrees, as counted below a base org
+		int childAllOrgs;
+		int childAllDevices;
+		int childInheritedOrgs;
+		int childInheritedDevices;
+
+		Node(int orgId) {
+			this.orgId = orgId;
+		}
+
+		void set(OrgRow row) {
+			this.orgName = row.orgName;
+			this.declaresOrg = row.declaresOrg;
+			this.declaresDestinations = row.declaresDestinations;
+			this.customConfig = row.customConfig;
+			this.hosted = row.hosted;
+		}
+
+		void link(Node newParent) {
+			if (this.parent == newParent) {
+				return;
+			}
+			if (this.parent != null) {
+				this.parent.children.remove(this);
+			}
+			this.parent = newParent;
+			if (newParent != null) {
+				newParent.children.add(this);
+			}
+		}
+
+		void updateCounts() {
+			this.childAllOrgs = 0;
+			this.childAllDevices = 0;
+			this.childInheritedOrgs = 0;
+			this.childInheritedDevices = 0;
+			for (Node child : this.children) {
+				this.childAllOrgs += child.getAllOrgs();
+				this.childAllDevices += child.getAllDevices();
+				this.childInheritedOrgs += child.getInheritedOrgs();
+				this.childInheritedDevices += child.getInheritedDevices();
+			}
+		}
+
+		// Below a base org, a hosted org counts but nothing in or under it does, and an org with its own device
+		// defaults is left out of the inherited stats along with its subtree.
+
+		int getAllOrgs() {
+			return 1 + (this.hosted ? 0 : this.childAllOrgs);
+		}
+
+		int getAllDevices() {
+			return this.hosted ? 0 : this.computers + this.childAllDevices;
+		}
+
+		int getInheritedOrgs() {
+			return this.customConfig ? 0 : 1 + (this.hosted ? 0 : this.childInheritedOrgs);
+		}
+
+		int getInheritedDevices() {
+			return (this.customConfig || this.hosted) ? 0 : this.guids + this.childInheritedDevices;
+		}
+	}
+
+	private static class Totals {
+
+		int allOrgs;
+		int allDevices;
+		int inheritedOrgs;
+		int inheritedDevices;
+
+		/**
+		 * Add the node's stats as a base org: counted itself, and its children's subtrees below it.
+		 */
+		void add(Node base) {
+			this.add(base, 1);
+		}
+
+		/**
+		 * Add (sign 1) or take out (sign -1) a top-level org's stats as a base org. The admin org doesn't count.
+		 */
+		void add(Node base, int sign) {
+			if (base.orgId == CpcConstants.Orgs.ADMIN_ID) {
+				return;
+			}
+			if (base.hosted) {
+				this.allOrgs += sign;
+				this.inheritedOrgs += sign;
+				return;
+			}
+			this.allOrgs += sign * (1 + base.childAllOrgs);
+			this.allDevices += sign * (base.computers + base.childAllDevices);
+			this.inheritedOrgs += sign * ((base.customConfig ? 0 : 1) + base.childInheritedOrgs);
+			this.inheritedDevices += sign * ((base.customConfig ? 0 : base.computers) + base.childInheritedDevices);
+		}
+
+		void set(Totals other) {
+			this.allOrgs = other.allOrgs;
+			this.allDevices = other.allDevices;
+			this.inheritedOrgs = other.inheritedOrgs;
+			this.inheritedDevices = other.inheritedDevices;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.code42.org;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.Session;
+
+import com.backup42.common.ComputerType;
+import com.backup42.server.MasterServices;
+import com.code42.computer.ComputerSso;
+import com.code42.computer.ComputerSsoFindMultipleByGuidCmd;
+import com.code42.core.CommandException;
+import com.code42.core.ICoreRuntime;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.core.hierarchy.HierarchyException;
+import com.code42.core.hierarchy.IHierarchyService;
+import com.code42.core.impl.DBCmd;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.org.OrgInheritanceIndex.OrgRow;
+import com.code42.sql.SQLQuery;
+import com.code42.sql.SQLUtils;
+import com.code42.utils.Stopwatch;
+import com.google.common.collect.Iterables;
+import com.google.inject.Inject;
+
+/**
+ * (Re)loads the OrgInheritanceIndex: every org from a single query, and the device counts of every org that isn't
+ * hosted from the hierarchy and the computer SSO cache. Only one load runs at a time; if another is already running
+ * this returns immediately. A load that raced with an incremental change is read again, a few times at most.
+ */
+public class OrgInheritanceIndexLoadCmd extends DBCmd<Void> {
+
+	private static final Logger log = LoggerFactory.getLogger(OrgInheritanceIndexLoadCmd.class);
+
+	private static final int GUID_BATCH_SIZE = 1000;
+	private static final int MAX_LOAD_ATTEMPTS = 3;
+
+	@Inject
+	private OrgInheritanceIndex index;
+
+	@Inject
+	private IHierarchyService hierarchy;
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		if (!this.index.isEnabled() || !this.index.beginLoad()) {
+			return null;
+		}
+
+		try {
+			for (int attempt = 1; attempt <= MAX_LOAD_ATTEMPTS; attempt++) {
+				Stopwatch sw = new Stopwatch();
+				long version = this.index.getVersion();
+				List<OrgRow> rows = this.db.find(new OrgInheritanceRowQuery(null));
+				int devices = countDevices(rows, this.hierarchy, this.runtime, this.auth.getSystemSession());
+				if (this.index.load(rows, version)) {
+					log.info("OrgInheritance:: load took {}ms; devices:{}", sw.getElapsed(), devices);
+					return null;
+				}
+			}
+			log.warn("OrgInheritance:: orgs kept changing while loading; giving up until the next lookup");
+		} finally {
+			this.index.endLoad();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Fill in the device counts of the given orgs, except hosted ones, from the hierarchy and the computer SSO cache.
+	 * 
+	 * @return the number of devices counted
+	 */
+	static int countDevices(Collection<OrgRow> rows, IHierarchyService hierarchy, ICoreRuntime runtime,
+			CoreSession systemSession) throws CommandException {
+		MasterServices masterServices = MasterServices.getInstance();
+
+		// Every org's devices, counted in batches
+		Map<Long, OrgRow> guidOrgs = new HashMap<Long, OrgRow>();
+		for (OrgRow row : rows) {
+			row.hosted = masterServices.isHostedOrg(row.orgId);
+			row.computers = 0;
+			row.guids = 0;
+			row.devicesCounted = true;
+			if (!row.hosted) {
+				for (Long guid : getGuids(hierarchy, row.orgId)) {
+					guidOrgs.put(guid, row);
+					row.guids++;
+				}
+			}
+		}
+		for (List<Long> guids : Iterables.partition(guidOrgs.keySet(), GUID_BATCH_SIZE)) {
+			Map<Long, ComputerSso> computers = runtime.run(new ComputerSsoFindMultipleByGuidCmd(guids), systemSession);
+			for (ComputerSso computer : computers.values()) {
+				if (computer.getType() == ComputerType.COMPUTER) {
+					guidOrgs.get(computer.getGuid()).computers++;
+				}
+			}
+		}
+		return guidOrgs.size();
+	}
+
+	private static Set<Long> getGuids(IHierarchyService hierarchy, int orgId) {
+		try {
+			return hierarchy.getGuidsForOrg(orgId);
+		} catch (HierarchyException e) {
+			// Not in the hierarchy yet; an org that was just created has no computers anyway
+			return Collections.emptySet();
+		}
+	}
+
+	/**
+	 * The OrgInheritanceIndex columns of every org, or of a single one.
+	 */
+	static class OrgInheritanceRowQuery extends FindQuery<List<OrgRow>> {
+
+		private static final String SQL = ""
+				+ "SELECT o.org_id, o.parent_org_id, o.org_name,                                          \n"
+				+ "    (o.max_seats IS NOT NULL OR o.max_bytes IS NOT NULL),                              \n"
+				+ "    NOT COALESCE(o.inherit_destinations, true), COALESCE(o.custom_config, false)       \n"
+				+ "FROM t_org AS o                                                                        \n"
+				+ "WHERE true    -- makes it easier to add more filters                                   \n"
+				+ "--orgId    AND o.org_id = :orgId                                                       \n";
+
+		private final Integer orgId;
+
+		OrgInheritanceRowQuery(Integer orgId) {
+			this.orgId = orgId;
+		}
+
+		@Override
+		public List<OrgRow> query(Session session) throws DBServiceException {
+			SQLQuery query = new SQLQuery(session, SQL);
+			if (this.orgId != null) {
+				query.activate("--orgId");
+				query.setInteger("orgId", this.orgId);
+			}
+
+			List<Object[]> rows = query.list();
+			List<OrgRow> rv = new ArrayList<OrgRow>(rows.size());
+			for (Object[] row : rows) {
+				OrgRow r = new OrgRow();
+				int i = 0;
+				r.orgId = SQLUtils.getint(row[i++]);
+				r.parentOrgId = SQLUtils.getInteger(row[i++]);
+				r.orgName = SQLUtils.getString(row[i++]);
+				r.declaresOrg = SQLUtils.getBoolean(row[i++]);
+				r.declaresDestinations = SQLUtils.getBoolean(row[i++]);
+				r.customConfig = SQLUtils.getBoolean(row[i++]);
+				rv.add(r);
+			}
+			return rv;
+		}
+	}
+}
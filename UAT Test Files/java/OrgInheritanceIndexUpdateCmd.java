@@ -0,0 +1,87 @@
+package com.code42.org;
+
+import java.util.List;
+
+import com.backup42.server.MasterServices;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.hierarchy.IHierarchyService;
+import com.code42.core.impl.DBCmd;
+import com.code42.org.OrgInheritanceIndex.OrgRow;
+import com.code42.org.OrgInheritanceIndexLoadCmd.OrgInheritanceRowQuery;
+import com.google.inject.Inject;
+
+/**
+ * Applies a single org create, update, move or delete to the OrgInheritanceIndex by reading the org back; an org that
+ * is gone is removed with its subtree. When devices have moved in or out of the org, pass countDevices to recount them
+ * too. The other nodes are told which org changed. Run this with db.afterTransaction() so the index only changes once
+ * the database has.<br>
+ * <br>
+ * Without an org, reads back the orgs changed on other nodes (see OrgInheritanceIndex.takePending()), counting their
+ * devices since the change may have been a user move, and tells no one. Applying an org recomputes its subtree.
+ */
+public class OrgInheritanceIndexUpdateCmd extends DBCmd<Void> {
+
+	@Inject
+	private OrgInheritanceIndex index;
+
+	@Inject
+	private IHierarchyService hierarchy;
+
+	private final Integer orgId;
+	private final boolean countDevices;
+
+	/**
+	 * Read back the orgs changed on other nodes.
+	 */
+	public OrgInheritanceIndexUpdateCmd() {
+		this.orgId = null;
+		this.countDevices = true;
+	}
+
+	public OrgInheritanceIndexUpdateCmd(int orgId) {
+		this(orgId, false);
+	}
+
+	public OrgInheritanceIndexUpdateCmd(int orgId, boolean countDevices) {
+		this.orgId = orgId;
+		this.countDevices = countDevices;
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		if (this.orgId == null) {
+			for (Integer changed : this.index.takePending()) {
+				this.update(changed, this.countDevices);
+			}
+			return null;
+		}
+
+		try {
+			if (!this.index.isLoaded()) {
+				// Nothing to update, but a load that is running now may have read the org before this change
+				this.index.drop();
+				return null;
+			}
+			this.update(this.orgId, this.countDevices);
+		} finally {
+			this.index.publish(this.orgId);
+		}
+		return null;
+	}
+
+	private void update(int id, boolean withDevices) throws CommandException {
+		List<OrgRow> rows = this.db.find(new OrgInheritanceRowQuery(id));
+		if (rows.isEmpty()) {
+			this.index.orgDeleted(id);
+		} else if (withDevices) {
+			CoreSession systemSession = this.auth.getSystemSession();
+			OrgInheritanceIndexLoadCmd.countDevices(rows, this.hierarchy, this.runtime, systemSession);
+			this.index.orgChanged(rows.get(0));
+		} else {
+			OrgRow row = rows.get(0);
+			row.hosted = MasterServices.getInstance().isHostedOrg(row.orgId);
+			this.index.orgChanged(row);
+		}
+	}
+}
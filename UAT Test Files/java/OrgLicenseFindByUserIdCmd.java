@@ -1,9 +1,9 @@
 package com.code42.license;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.impl.DBCmd;
 
 /**
@@ -20,7 +20,7 @@ public class OrgLicenseFindByUserIdCmd extends DBCmd<OrgLicense> {
 
 	@Override
 	public OrgLicense exec(CoreSession session) throws CommandException {
-		this.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.READ), session);
+		this.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.READ), session);
 
 		OrgLicense ol = this.db.find(new OrgLicenseFindByUserIdQuery(this.userId));
 		return ol;
@@ -1,11 +1,17 @@
 package com.code42.org;
 
+import com.code42.auth.AuthorizationCacheInvalidateCmd;
+import com.code42.auth.IsManageableCmd;
+import com.code42.config.ConfigFixDestinationsTracker;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.hierarchy.IHierarchyService;
 import com.code42.core.impl.DBCmd;
+import com.code42.hibernate.aftertx.AfterTxRunnable;
+import com.code42.hibernate.aftertx.IAfterTxRunnable.Priority;
+import com.code42.hierarchy.OrgHierarchyCacheUpdateCmd;
+import com.code42.hierarchy.OrgHierarchyCacheUpdateCmd.Change;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
 import com.google.inject.Inject;
@@ -19,12 +25,24 @@ public class OrgMoveCmd extends DBCmd<OrgMoveCmd.Result> {
 
 	/* ================= Dependencies ================= */
 	private IHierarchyService hier;
+	private OrgSettingsInfoCache orgSettingsCache;
+	private ConfigFixDestinationsTracker configFixTracker;
 
 	@Inject
 	public void setHierarchy(IHierarchyService hier) {
 		this.hier = hier;
 	}
 
+	@Inject
+	public void setOrgSettingsCache(OrgSettingsInfoCache orgSettingsCache) {
+		this.orgSettingsCache = orgSettingsCache;
+	}
+
+	@Inject
+	public void setConfigFixTracker(ConfigFixDestinationsTracker configFixTracker) {
+		this.configFixTracker = configFixTracker;
+	}
+
 	public enum Result {
 		SUCCESS, NONEXISTENT_PARENT_ORG, NONEXISTENT_ORG, SAME_PARENT_ORG, THROWABLE, BLOCKED
 	}
@@ -75,7 +93,7 @@ public class OrgMoveCmd extends DBCmd<OrgMoveCmd.Result> {
 			}
 
 			// Authorize access to this operation on this org
-			this.runtime.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
+			this.runtime.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
 			org = this.db.find(new OrgFindByIdQuery(this.orgId));
 			if (org == null) {
 				log.info("Org move failed: Target org does not exist: " + this.orgId);
@@ -98,7 +116,8 @@ public class OrgMoveCmd extends DBCmd<OrgMoveCmd.Result> {
 				OrgSso sso = this.runtime.run(new OrgSsoFindByOrgIdCmd(this.targetParentOrgId), session);
 
 				// Make sure the parentOrg exists and can be given a new sub-org by this user.
-				this.runtime.run(new IsOrgManageableCmd(this.targetParentOrgId, C42PermissionApp.Org.UPDATE_BASIC), session);
+				this.runtime.run(IsManageableCmd.org(this.targetParentOrgId, C42PermissionApp.Org.UPDATE_BASIC),
+						session);
 				if (sso == null) {
 					log.info("Org move failed: Parent org ID not found: " + this.targetParentOrgId);
 					return Result.NONEXISTENT_PARENT_ORG;
@@ -127,6 +146,18 @@ public class OrgMoveCmd extends DBCmd<OrgMoveCmd.Result> {
 			org = this.db.update(new OrgUpdateQuery(org));
 
 			this.db.afterTransaction(new OrgPublishMoveCmd((BackupOrg) org, oldParentOrgId), session);
+			this.db.afterTransaction(new OrgHierarchyCacheUpdateCmd(Change.MOVE, this.orgId, this.targetParentOrgId),
+					session);
+			this.db.afterTransaction(new OrgInheritanceIndexUpdateCmd(this.orgId), session);
+			this.db.afterTransaction(new AuthorizationCacheInvalidateCmd(), session);
+			// The org and its descendants may now inherit different destinations and settings
+			this.db.afterTransaction(new AfterTxRunnable(Priority.NORMAL) {
+
+				public void run() {
+					OrgMoveCmd.this.configFixTracker.orgDestinationsChanged(OrgMoveCmd.this.orgId);
+					OrgMoveCmd.this.orgSettingsCache.invalidate(OrgMoveCmd.this.orgId);
+				}
+			});
 
 			this.db.commit();
 		} catch (CommandException e) {
@@ -4,13 +4,13 @@ import org.hibernate.Query;
 import org.hibernate.Session;
 
 import com.backup42.CpcConstants;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.ICmd;
 import com.code42.core.annotation.CoreNamedQuery;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.IAuthorizationService;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.FindQuery;
 import com.code42.core.hierarchy.HierarchyNotFoundException;
@@ -155,7 +155,7 @@ public interface OrgNotifySettingsFindByOrgCmd extends ICmd<OrgNotifySettings> {
 		@Override
 		public OrgNotifySettings exec(CoreSession session) throws CommandException {
 
-			this.runtime.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.READ), session);
+			this.runtime.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.READ), session);
 
 			OrgNotifySettings ons = this.db.find(new OrgNotifySettingsFindByOrgIdQuery(this.orgId));
 			if (ons == null) {
@@ -0,0 +1,57 @@
+package com.code42.org;
+
+/**
+ * The OrgSettings an org hands down to its children: its own row, then its parent's chain, and so on up to the system
+ * settings (org 1). Chains are immutable and shared, so every child of an org points at the same parent chain and each
+ * level is only ever loaded once. The rows are read outside of any session (see OrgSettingsFindDetachedByOrgIdQuery),
+ * so they are plain values here and not entities some session still manages. See OrgSettingsInfoCache.
+ */
+class OrgSettingsChain {
+
+	private final int orgId;
+	private final OrgSettings settings;
+	private final OrgSettingsChain parent;
+
+	OrgSettingsChain(int orgId, OrgSettings settings, OrgSettingsChain parent) {
+		this.orgId = orgId;
+		this.settings = settings;
+		this.parent = parent;
+	}
+
+	int getOrgId() {
+		return this.orgId;
+	}
+
+	/**
+	 * Shared between threads; read it, never change it.
+	 */
+	OrgSettings getSettings() {
+		return this.settings;
+	}
+
+	OrgSettingsChain getParent() {
+		return this.parent;
+	}
+
+	/**
+	 * @return true if the given org is this org or one of its ancestors, i.e. if a change to its settings changes this
+	 *         chain
+	 */
+	boolean contains(int id) {
+		for (OrgSettingsChain c = this; c != null; c = c.parent) {
+			if (c.orgId == id) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Fill in the nulls in the given info from every level of this chain, nearest first.
+	 */
+	void mergeInto(OrgSettingsInfo info) {
+		for (OrgSettingsChain c = this; c != null; c = c.parent) {
+			info.setNullFields(c.settings, true);
+		}
+	}
+}
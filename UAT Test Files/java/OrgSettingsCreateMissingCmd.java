@@ -0,0 +1,50 @@
+package com.code42.org;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.DBCmd;
+import com.code42.org.OrgSettingsInfoFindByOrgCmd.OrgSettingsFindByOrgIdQuery;
+import com.google.inject.Inject;
+
+/**
+ * Saves an OrgSettings row that inherits everything for an org that doesn't have one yet, and returns the org's row.
+ * OrgSettingsInfoFindByOrgCmd starts this in the background when it comes across a missing row, treating the row as
+ * empty in the meantime; anything about to change an org's settings runs it first.
+ */
+public class OrgSettingsCreateMissingCmd extends DBCmd<OrgSettings> {
+
+	private static Object[] monitor = new Object[0];
+
+	@Inject
+	private OrgSettingsInfoCache cache;
+
+	private final int orgId;
+
+	public OrgSettingsCreateMissingCmd(int orgId) {
+		this.orgId = orgId;
+	}
+
+	@Override
+	public OrgSettings exec(CoreSession session) throws CommandException {
+		try {
+			OrgSettings os = this.db.find(new OrgSettingsFindByOrgIdQuery(this.orgId));
+			if (os != null) {
+				return os;
+			}
+
+			// Synchronize this block to avoid a race condition where two threads try to create the OrgSettings object
+			// at the same time.
+			synchronized (monitor) {
+				os = this.db.find(new OrgSettingsFindByOrgIdQuery(this.orgId));
+				if (os == null) {
+					os = new OrgSettings();
+					os.setOrgId(this.orgId);
+					this.db.create(new OrgSettingsCreateQuery(os));
+				}
+			}
+			return os;
+		} finally {
+			this.cache.rowCreateDone(this.orgId);
+		}
+	}
+}
@@ -6,13 +6,13 @@ package com.code42.org;
 import java.util.List;
 
 import com.backup42.common.config.ServiceConfig;
+import com.code42.auth.IsManageableCmd;
 import com.code42.computer.Config;
 import com.code42.config.ConfigFindByOrgIdCmd;
 import com.code42.core.CommandException;
 import com.code42.core.UnsupportedRequestException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.ldap.OrgAuthenticatorMapping;
 import com.code42.ldap.OrgLdapMappingFindByOrgCmd;
@@ -35,7 +35,7 @@ public class OrgSettingsDtoFindByOrgCmd extends DBCmd<OrgSettingsDto> {
 	public OrgSettingsDto exec(CoreSession session) throws CommandException {
 
 		// Authorization
-		this.runtime.run(new IsOrgManageableCmd(this.org.getOrgId(), C42PermissionApp.Org.READ), session);
+		this.runtime.run(IsManageableCmd.org(this.org.getOrgId(), C42PermissionApp.Org.READ), session);
 
 		try {
 
@@ -0,0 +1,39 @@
+package com.code42.org;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.criterion.Restrictions;
+
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+
+/**
+ * Reads an org's OrgSettings row as last committed, through a stateless session of its own, for OrgSettingsChain to
+ * keep. The row never belongs to the caller's session, so caching it doesn't share a live entity between sessions, and
+ * nothing the caller has yet to commit (or may roll back) ends up in the cache. Null if the org has no row.
+ */
+class OrgSettingsFindDetachedByOrgIdQuery extends FindQuery<OrgSettings> {
+
+	private final int orgId;
+
+	OrgSettingsFindDetachedByOrgIdQuery(int orgId) {
+		this.orgId = orgId;
+	}
+
+	@Override
+	public OrgSettings query(Session session) throws DBServiceException {
+		StatelessSession stateless = null;
+		try {
+			stateless = session.getSessionFactory().openStatelessSession();
+			return (OrgSettings) stateless.createCriteria(OrgSettings.class).add(Restrictions.eq("orgId", this.orgId))
+					.uniqueResult();
+		} catch (HibernateException e) {
+			throw new DBServiceException("Error reading OrgSettings; orgId=" + this.orgId, e);
+		} finally {
+			if (stateless != null) {
+				stateless.close();
+			}
+		}
+	}
+}
@@ -1,10 +1,10 @@
 package com.code42.org;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.backup.SecurityKeyType;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.org.OrgSettingsFindSecurityKeyDtoByOrgCmd.SecurityKeyDto;
 
@@ -29,7 +29,7 @@ public class OrgSettingsFindSecurityKeyDtoByOrgCmd extends DBCmd<SecurityKeyDto>
 	@Override
 	public SecurityKeyDto exec(CoreSession session) throws CommandException {
 		// this command requires lower permissions than the OrgSettings finder
-		this.run(new IsComputerManageableCmd(this.computerId, C42PermissionApp.Computer.READ), session);
+		this.run(IsManageableCmd.computer(this.computerId, C42PermissionApp.Computer.READ), session);
 
 		// find the org info with elevated permissions.
 		OrgSettingsInfoFindByOrgCmd cmd = (new OrgSettingsInfoFindByOrgCmd.Builder()).orgId(this.orgId).build();
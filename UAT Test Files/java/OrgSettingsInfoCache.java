@@ -0,0 +1,176 @@
+package com.code42.org;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.code42.core.space.ISpaceService;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.util.SpaceInvalidator;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * The resolved settings inheritance of each org, as an OrgSettingsChain, so OrgSettingsInfoFindByOrgCmd doesn't walk
+ * the hierarchy to the root one query at a time. Chains are built top-down and shared, a child's chain pointing at its
+ * parent's.<br>
+ * <br>
+ * A change to an org's settings, or a move of the org, calls invalidate(orgId) once it commits, which drops the chains
+ * of that org and every cached org below it. The other nodes drop the same chains on their next check (see
+ * SpaceInvalidator). The TTL bounds how stale a chain can get if that is ever missed.
+ */
+@Singleton
+public class OrgSettingsInfoCache {
+
+	private static final Logger log = LoggerFactory.getLogger(OrgSettingsInfoCache.class);
+
+	static final String ORG_SETTINGS_CACHE_MAX_SIZE = "c42.orgSettingsCache.maxSize";
+	static final String ORG_SETTINGS_CACHE_TTL_MS = "c42.orgSettingsCache.ttl.ms";
+	static final String ORG_SETTINGS_CACHE_GENERATION_CHECK_MS = "c42.orgSettingsCache.generationCheck.ms";
+
+	static final int DEFAULT_MAX_SIZE = 20000;
+	static final long DEFAULT_TTL_MS = 10 * Time.MINUTE;
+
+	private final SpaceInvalidator invalidator = new SpaceInvalidator("/org/settingsCache",
+			ORG_SETTINGS_CACHE_GENERATION_CHECK_MS, new SpaceInvalidator.Listener() {
+
+				public void invalidate(Serializable key) {
+					OrgSettingsInfoCache.this.drop((Integer) key);
+				}
+
+				public void invalidateAll() {
+					OrgSettingsInfoCache.this.clear();
+				}
+			});
+
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.invalidator.setSpaceService(space);
+	}
+
+	/** Orgs whose missing OrgSettings row is being created; see OrgSettingsCreateMissingCmd. */
+	private final Set<Integer> pendingRows = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+	// Guarded by itself
+	private final Map<Integer, CachedChain> chains = new LinkedHashMap<Integer, CachedChain>(64, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, CachedChain> eldest) {
+			return this.size() > SystemProperties.getOptionalInt(ORG_SETTINGS_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE);
+		}
+	};
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalLong(ORG_SETTINGS_CACHE_TTL_MS, DEFAULT_TTL_MS) > 0;
+	}
+
+	/**
+	 * @return the org's cached chain, or null if there is none (or it has expired)
+	 */
+	OrgSettingsChain get(int orgId) {
+		this.invalidator.check();
+		CachedChain cached;
+		synchronized (this.chains) {
+			cached = this.chains.get(orgId);
+			if (cached != null && cached.expires < System.currentTimeMillis()) {
+				this.chains.remove(orgId);
+				cached = null;
+			}
+		}
+		return (cached != null) ? cached.chain : null;
+	}
+
+	/**
+	 * @return the version to hand back to put() with a chain loaded from now on
+	 */
+	long getVersion() {
+		return this.invalidator.getVersion();
+	}
+
+	/**
+	 * Cache the chain, unless there has been an invalidation since the given version was read.
+	 */
+	void put(OrgSettingsChain chain, long loadedAtVersion) {
+		long ttl = SystemProperties.getOptionalLong(ORG_SETTINGS_CACHE_TTL_MS, DEFAULT_TTL_MS);
+		if (ttl <= 0) {
+			return;
+		}
+		synchronized (this.chains) {
+			if (this.invalidator.isCurrent(loadedAtVersion)) {
+				this.chains.put(chain.getOrgId(), new CachedChain(chain, System.currentTimeMillis() + ttl));
+			}
+		}
+	}
+
+	/**
+	 * Forget the org and everything below it, on every node. Call with db.afterTransaction() once the org's settings
+	 * change or it is moved; the cache is only ever stale in the subtree of the org that changed.
+	 */
+	public void invalidate(int orgId) {
+		this.drop(orgId);
+		this.invalidator.publish(orgId);
+	}
+
+	/**
+	 * Forget every chain, on every node.
+	 */
+	public void invalidateAll() {
+		this.clear();
+		this.invalidator.publish(null);
+	}
+
+	/**
+	 * @return true if the caller should create the org's missing row; false if that is already under way
+	 */
+	boolean startRowCreate(int orgId) {
+		return this.pendingRows.add(orgId);
+	}
+
+	void rowCreateDone(int orgId) {
+		this.pendingRows.remove(orgId);
+	}
+
+	/**
+	 * Forget the org and everything below it, on this node.
+	 */
+	private void drop(int orgId) {
+		int removed = 0;
+		synchronized (this.chains) {
+			this.invalidator.changed();
+			for (Iterator<CachedChain> it = this.chains.values().iterator(); it.hasNext();) {
+				if (it.next().chain.contains(orgId)) {
+					it.remove();
+					removed++;
+				}
+			}
+		}
+		log.debug("OrgSettings:: invalidated orgId={}, {} chains dropped", orgId, removed);
+	}
+
+	private void clear() {
+		synchronized (this.chains) {
+			this.invalidator.changed();
+			this.chains.clear();
+		}
+	}
+
+	private static class CachedChain {
+
+		private final OrgSettingsChain chain;
+		private final long expires;
+
+		CachedChain(OrgSettingsChain chain, long expires) {
+			this.chain = chain;
+			this.expires = expires;
+		}
+	}
+}
@@ -2,25 +2,29 @@ package com.code42.org;
 
 import org.hibernate.Session;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.UnsupportedRequestException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.FindQuery;
 import com.code42.core.impl.DBCmd;
+import com.google.inject.Inject;
 
 /**
- * Merges multiple OrgSettings rows into an OrgSettingsInfo instance. Taken from SettingsServices. Lazily creates an
- * OrgSettings row if the Org exists, but the corresponding OrgSettings row does not.
+ * Merges multiple OrgSettings rows into an OrgSettingsInfo instance. Taken from SettingsServices. The org's own row is
+ * read every time, since callers change and save it; everything it inherits comes from OrgSettingsInfoCache, which
+ * resolves each ancestor once and shares the result between its children. A missing OrgSettings row is treated as
+ * inheriting everything and is created in the background by OrgSettingsCreateMissingCmd.
  * <p>
  * Note: Use the Builder inner class to configure this command.
  */
 public class OrgSettingsInfoFindByOrgCmd extends DBCmd<OrgSettingsInfo> {
 
-	private static Object[] monitor = new Object[0];
+	@Inject
+	private OrgSettingsInfoCache cache;
 
 	private Builder data;
 
@@ -40,53 +44,79 @@ public class OrgSettingsInfoFindByOrgCmd extends DBCmd<OrgSettingsInfo> {
 		OrgSettingsInfo info = new OrgSettingsInfo();
 		if (this.data.org == null) {
 			// A new OSI object that inherits from the system settings
-			OrgSettings os = this.db.find(new OrgSettingsFindByOrgIdQuery(1));
-			info.setNullFields(os, true);
+			this.findChain(1, session).mergeInto(info);
 			return info;
 		}
 
-		Org tempOrg = this.data.org;
-		boolean inherited = this.data.newOrg; // new orgs inherit from the parent
-		while (tempOrg != null) {
-			if (tempOrg.getOrgId() != null) {
-				OrgSettings os = this.db.find(new OrgSettingsFindByOrgIdQuery(tempOrg.getOrgId()));
-				if (os == null) {
-
-					// Synchronize this block to avoid a race condition where two threads try to create the OrgSettings object
-					// at the same time.
-					synchronized (monitor) {
-						os = this.db.find(new OrgSettingsFindByOrgIdQuery(tempOrg.getOrgId()));
-						if (os == null) {
-							os = new OrgSettings();
-							os.setOrgId(tempOrg.getOrgId());
-							// Save a new row for this org that inherits everything
-							this.db.create(new OrgSettingsCreateQuery(os));
-						}
-					}
-				}
-				info.setNullFields(os, inherited);
-			}
-			if (tempOrg == null || tempOrg.getParentOrgId() == null) {
-				tempOrg = null;
-			} else {
-				tempOrg = this.db.find(new OrgFindByIdQuery(tempOrg.getParentOrgId()));
-			}
-
-			inherited = true;
+		Org org = this.data.org;
+		if (this.data.newOrg) {
+			// New orgs inherit everything from the parent
+			this.findChain(org.getOrgId(), session).mergeInto(info);
+			return info;
 		}
 
-		if (this.data.org.getOrgId() != null && this.data.org.getOrgId() > 1) {
-			OrgSettings os = this.db.find(new OrgSettingsFindByOrgIdQuery(1));
-			info.setNullFields(os, true);
+		info.setNullFields(this.findSettings(org.getOrgId(), false, session), false);
+		OrgSettingsChain inherited = this.findParentChain(org.getOrgId(), org.getParentOrgId(), session);
+		if (inherited != null) {
+			inherited.mergeInto(info);
 		}
 
 		return info;
 	}
 
+	/**
+	 * @return the settings the org hands down to its children, from the cache if they are there
+	 */
+	private OrgSettingsChain findChain(int orgId, CoreSession session) throws CommandException {
+		OrgSettingsChain chain = this.cache.get(orgId);
+		if (chain != null) {
+			return chain;
+		}
+
+		long version = this.cache.getVersion();
+		Org org = this.db.find(new OrgFindByIdQuery(orgId));
+		Integer parentOrgId = (org != null) ? org.getParentOrgId() : null;
+		OrgSettingsChain parent = this.findParentChain(orgId, parentOrgId, session);
+		chain = new OrgSettingsChain(orgId, this.findSettings(orgId, true, session), parent);
+		this.cache.put(chain, version);
+		return chain;
+	}
+
+	/**
+	 * @return the parent's chain; the system settings for a top-level org; null for the system org itself
+	 */
+	private OrgSettingsChain findParentChain(int orgId, Integer parentOrgId, CoreSession session)
+			throws CommandException {
+		if (parentOrgId != null) {
+			return this.findChain(parentOrgId, session);
+		} else if (orgId > 1) {
+			return this.findChain(1, session);
+		}
+		return null;
+	}
+
+	/**
+	 * @param detached true for a copy of the committed row that is safe to cache, false for the row in this session
+	 * @return the org's row, or an unsaved one that inherits everything if it doesn't have one yet
+	 */
+	private OrgSettings findSettings(int orgId, boolean detached, CoreSession session) throws CommandException {
+		FindQuery<OrgSettings> query = detached ? new OrgSettingsFindDetachedByOrgIdQuery(orgId)
+				: new OrgSettingsFindByOrgIdQuery(orgId);
+		OrgSettings os = this.db.find(query);
+		if (os == null) {
+			os = new OrgSettings();
+			os.setOrgId(orgId);
+			if (this.cache.startRowCreate(orgId)) {
+				this.runtime.runAsync(new OrgSettingsCreateMissingCmd(orgId), session);
+			}
+		}
+		return os;
+	}
+
 	private void authorize(CoreSession session) throws UnauthorizedException, CommandException {
 
 		// Authorize access to this data
-		this.runtime.run(new IsOrgManageableCmd(this.data.orgId, C42PermissionApp.Org.READ), session);
+		this.runtime.run(IsManageableCmd.org(this.data.orgId, C42PermissionApp.Org.READ), session);
 
 		// Short-circuit a request for orgId 1
 		// if (this.data.orgId <= 1) {
@@ -195,7 +225,7 @@ public class OrgSettingsInfoFindByOrgCmd extends DBCmd<OrgSettingsInfo> {
 	/**
 	 * Locked impl.
 	 */
-	private static class OrgSettingsFindByOrgIdQuery extends FindQuery<OrgSettings> {
+	static class OrgSettingsFindByOrgIdQuery extends FindQuery<OrgSettings> {
 
 		private int orgId;
 
@@ -6,11 +6,11 @@ import java.util.List;
 
 import com.backup42.common.perm.C42PermissionPro;
 import com.code42.auth.IPermission;
+import com.code42.auth.IsManageableCmd;
 import com.code42.auth.RoleFindByNameCmd.RoleFindByNameQuery;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
@@ -51,7 +51,7 @@ public class OrgSettingsValidateCustomDefaultRolesCmd extends DBCmd<Void> {
 
 	@Override
 	public Void exec(CoreSession session) throws CommandException {
-		this.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
+		this.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
 
 		if (!LangUtils.hasValue(this.defaultRoles)) {
 			// empty is ok - they are clearing the setting (resetting to default)
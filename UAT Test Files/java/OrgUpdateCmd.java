@@ -13,6 +13,7 @@ import com.backup42.common.command.ServiceCommand;
 import com.backup42.history.CpcHistoryLogger;
 import com.backup42.role.ProOnlineAdminRole;
 import com.backup42.server.MasterServices;
+import com.code42.auth.IsManageableCmd;
 import com.code42.backup.SecurityKeyType;
 import com.code42.computer.ComputerSendServiceCommandByOrg;
 import com.code42.config.OrgComputerConfigUpdateCmd;
@@ -20,11 +21,11 @@ import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.db.NotFoundException;
 import com.code42.core.hierarchy.IHierarchyService;
 import com.code42.core.impl.CoreBridge;
 import com.code42.core.impl.DBCmd;
+import com.code42.directory.DirectoryEntryCacheInvalidateCmd;
 import com.code42.hibernate.aftertx.AfterTxRunnable;
 import com.code42.hibernate.aftertx.IAfterTxRunnable.Priority;
 import com.code42.logging.Logger;
@@ -32,6 +33,8 @@ import com.code42.logging.LoggerFactory;
 import com.code42.org.OrgUpdateCmd.Builder.OrgSettingsBuilder;
 import com.code42.org.destination.OrgDestinationUpdateAvailableDestinationsCmd;
 import com.code42.org.destination.OrgDestinationUpdateInheritanceCmd;
+import com.code42.smartsearch.SmartSearchIndexUpdateCmd;
+import com.code42.smartsearch.SmartSearchType;
 import com.code42.user.UserRoleDeleteCmd;
 import com.code42.utils.SystemProperties;
 import com.code42.utils.Weekday;
@@ -67,6 +70,9 @@ public class OrgUpdateCmd extends DBCmd<Org> {
 	@Inject
 	private IHierarchyService hier;
 
+	@Inject
+	private OrgSettingsInfoCache orgSettingsCache;
+
 	/**
 	 * Use the Builder static inner class to construct one of these.
 	 */
@@ -96,7 +102,7 @@ public class OrgUpdateCmd extends DBCmd<Org> {
 			}
 
 			// Auth check after we know the org exists.
-			this.runtime.run(new IsOrgManageableCmd(this.data.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
+			this.runtime.run(IsManageableCmd.org(this.data.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
 			if (!MasterServices.getInstance().isMasterOrg(org)) {
 				try {
 					// If the session is a system session, then override the master org restriction
@@ -109,7 +115,7 @@ public class OrgUpdateCmd extends DBCmd<Org> {
 
 			boolean canUpdateRestrictedFields = true;
 			try {
-				this.runtime.run(new IsOrgManageableCmd(this.data.orgId, C42PermissionApp.Org.UPDATE_RESTRICTED), session);
+				this.runtime.run(IsManageableCmd.org(this.data.orgId, C42PermissionApp.Org.UPDATE_RESTRICTED), session);
 			} catch (UnauthorizedException e) {
 				canUpdateRestrictedFields = false;
 			}
@@ -300,6 +306,16 @@ public class OrgUpdateCmd extends DBCmd<Org> {
 				}
 			}
 
+			this.db.afterTransaction(new OrgInheritanceIndexUpdateCmd(this.data.orgId), session);
+			this.db.afterTransaction(new SmartSearchIndexUpdateCmd(SmartSearchType.ORG, this.data.orgId), session);
+			if (this.data.settingsBuilder != null) {
+				this.db.afterTransaction(new AfterTxRunnable(Priority.NORMAL) {
+
+					public void run() {
+						OrgUpdateCmd.this.orgSettingsCache.invalidate(OrgUpdateCmd.this.data.orgId);
+					}
+				});
+			}
 			this.db.commit();
 
 		} catch (CommandException ce) {
@@ -348,6 +364,8 @@ public class OrgUpdateCmd extends DBCmd<Org> {
 	 */
 	private void updateSettings(BackupOrg org, final OrgSettingsBuilder settingsBuilder, final CoreSession session,
 			boolean canUpdateRestrictedFields) throws CommandException {
+		// The row is about to be saved, so it has to exist
+		this.run(new OrgSettingsCreateMissingCmd(this.data.orgId), session);
 		OrgSettingsInfoFindByOrgCmd.Builder orgSettingsInfoBuilder = new OrgSettingsInfoFindByOrgCmd.Builder();
 		orgSettingsInfoBuilder.orgId(this.data.orgId);
 		final OrgSettingsInfo osi = this.run(orgSettingsInfoBuilder.build(), session);
@@ -520,6 +538,7 @@ public class OrgUpdateCmd extends DBCmd<Org> {
 
 		if (!(settingsBuilder.ldapServerIds instanceof None) && canUpdateRestrictedFields) {
 			this.run(new OrgLdapServerUpdateCmd(this.data.orgId, settingsBuilder.ldapServerIds.get()), session);
+			this.db.afterTransaction(new DirectoryEntryCacheInvalidateCmd(), session);
 		}
 
 		if (!(settingsBuilder.radiusServerIds instanceof None) && canUpdateRestrictedFields) {
@@ -0,0 +1,321 @@
+package com.code42.custom;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.code42.core.CommandException;
+import com.code42.core.ICoreRuntime;
+import com.code42.core.auth.IAuthorizationService;
+import com.code42.core.space.ISpaceService;
+import com.code42.util.SpaceInvalidator;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * The per-org figures behind CustomUsage1ReportCmd (creation date, last backup activity and archive bytes), kept in
+ * memory as sorted columns so the report can read them in one pass instead of running its three aggregations again.<br>
+ * <br>
+ * OrgUsageFactsRefreshCmd keeps them up to date. After the first full load it only asks for orgs created and backup
+ * activity recorded since the last refresh, merges that into a new Facts and swaps it in; the archive bytes come from
+ * the (small, one row per org) summary rollup every time. getFacts() starts a refresh in the background whenever the
+ * facts are out of date, so readers never wait for one; awaitFacts() waits for it when there are no facts yet. Only
+ * one refresh runs at a time.<br>
+ * <br>
+ * So the report can be up to c42.usageFacts.refresh.ms (15 minutes by default) behind the database, plus however long
+ * the refresh takes. A user move (UserMoveCmd runs OrgUsageFactsChangedCmd once it commits) takes the last activity
+ * of both orgs out of step, since incremental refreshes only ever move it forward; the next refresh, started right
+ * away on this node and on the other nodes' next read (see SpaceInvalidator), reloads it for those orgs. A full load
+ * is still done every c42.usageFacts.fullRefresh.ms (a day) to catch anything else that moved.
+ */
+@Singleton
+public class OrgUsageFacts {
+
+	private static final Logger log = LoggerFactory.getLogger(OrgUsageFacts.class);
+
+	static final String USAGE_FACTS_REFRESH_MS = "c42.usageFacts.refresh.ms";
+	static final String USAGE_FACTS_FULL_REFRESH_MS = "c42.usageFacts.fullRefresh.ms";
+	static final String USAGE_FACTS_CHANGE_CHECK_MS = "c42.usageFacts.changeCheck.ms";
+	static final long DEFAULT_REFRESH_MS = 15 * Time.MINUTE;
+	static final long DEFAULT_FULL_REFRESH_MS = 24 * 60 * Time.MINUTE;
+
+	/* ================= Dependencies ================= */
+	private ICoreRuntime runtime;
+	private IAuthorizationService auth;
+
+	/* ================= DI injection points ================= */
+	@Inject
+	public void setRuntime(ICoreRuntime runtime) {
+		this.runtime = runtime;
+	}
+
+	@Inject
+	public void setAuth(IAuthorizationService auth) {
+		this.auth = auth;
+	}
+
+	private final SpaceInvalidator invalidator = new SpaceInvalidator("/custom/usageFacts", USAGE_FACTS_CHANGE_CHECK_MS,
+			new SpaceInvalidator.Listener() {
+
+				public void invalidate(Serializable key) {
+					OrgUsageFacts.this.changedOrgs.add((Integer) key);
+				}
+
+				public void invalidateAll() {
+					OrgUsageFacts.this.fullRefreshRequested = true;
+				}
+			});
+
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.invalidator.setSpaceService(space);
+	}
+
+	private volatile Facts facts = null;
+
+	// Orgs to reload in full on the next refresh
+	private final Set<Integer> changedOrgs = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+	private volatile boolean fullRefreshRequested = false;
+
+	// Guarded by this
+	private Future<Facts> refresh = null;
+
+	/**
+	 * @return the latest facts, or null if they have not been loaded yet; starts a background refresh if they are out of
+	 *         date
+	 */
+	public Facts getFacts() {
+		this.invalidator.check();
+		Facts f = this.facts;
+		long refreshMs = SystemProperties.getOptionalLong(USAGE_FACTS_REFRESH_MS, DEFAULT_REFRESH_MS);
+		if (f == null || System.currentTimeMillis() - f.refreshedAt > refreshMs || this.fullRefreshRequested
+				|| !this.changedOrgs.isEmpty()) {
+			this.refreshAsync();
+		}
+		return f;
+	}
+
+	/**
+	 * @return the latest facts, waiting for the refresh (started now, or already running) if there are none yet
+	 */
+	public Facts awaitFacts() throws CommandException {
+		Facts f = this.getFacts();
+		if (f != null) {
+			return f;
+		}
+		Future<Facts> future = this.refreshAsync();
+		if (future == null) {
+			throw new CommandException("UsageFacts:: unable to start refresh");
+		}
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CommandException("UsageFacts:: interrupted waiting for refresh", e);
+		} catch (ExecutionException e) {
+			throw new CommandException("UsageFacts:: refresh failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Have the next refresh, here and on the other nodes, reload the given orgs rather than only look for what is new;
+	 * starts it here. Use OrgUsageFactsChangedCmd after the transaction that moved users between them.
+	 */
+	public void orgsChanged(Collection<Integer> orgIds) {
+		for (Integer orgId : orgIds) {
+			this.changedOrgs.add(orgId);
+			this.invalidator.publish(orgId);
+		}
+		this.refreshAsync();
+	}
+
+	/**
+	 * @return the orgs changed since the last call, which the caller is now to reload; none if a full load is due,
+	 *         since that reloads everything
+	 */
+	Set<Integer> takeChangedOrgs(boolean fullRefresh) {
+		if (fullRefresh) {
+			this.fullRefreshRequested = false;
+		}
+		Set<Integer> rv = new HashSet<Integer>(this.changedOrgs);
+		this.changedOrgs.removeAll(rv);
+		return fullRefresh ? Collections.<Integer> emptySet() : rv;
+	}
+
+	/**
+	 * Hand back the orgs from takeChangedOrgs() after a refresh failed, so the next one reloads them.
+	 */
+	void restoreChangedOrgs(Set<Integer> orgIds, boolean fullRefresh) {
+		this.changedOrgs.addAll(orgIds);
+		if (fullRefresh) {
+			this.fullRefreshRequested = true;
+		}
+	}
+
+	/**
+	 * @return the time the facts were last loaded in full, or 0 if they never have been
+	 */
+	long getFullRefreshedAt() {
+		Facts f = this.facts;
+		return (f == null) ? 0 : f.fullRefreshedAt;
+	}
+
+	/**
+	 * @return true if the next refresh should reload everything rather than just what changed
+	 */
+	boolean isFullRefreshDue() {
+		long fullRefreshMs = SystemProperties.getOptionalLong(USAGE_FACTS_FULL_REFRESH_MS, DEFAULT_FULL_REFRESH_MS);
+		return this.facts == null || this.fullRefreshRequested
+				|| System.currentTimeMillis() - this.getFullRefreshedAt() > fullRefreshMs;
+	}
+
+	/**
+	 * @return the facts as of the last refresh, null if there are none
+	 */
+	Facts getCurrent() {
+		return this.facts;
+	}
+
+	void publish(Facts f) {
+		this.facts = f;
+		log.info("UsageFacts:: {}", f);
+	}
+
+	/**
+	 * @return the running refresh, started now if there was none; null if it could not be started
+	 */
+	private synchronized Future<Facts> refreshAsync() {
+		if (this.refresh != null && !this.refresh.isDone()) {
+			return this.refresh;
+		}
+		this.refresh = null;
+		try {
+			this.refresh = this.runtime.runAsync(new OrgUsageFactsRefreshCmd(), this.auth.getSystemSession());
+		} catch (CommandException e) {
+			log.warn("UsageFacts:: unable to start refresh", e);
+		} catch (RuntimeException e) {
+			log.warn("UsageFacts:: unable to start refresh", e);
+		}
+		return this.refresh;
+	}
+
+	/**
+	 * An immutable set of columns, one row per org, sorted by org id. Missing values are -1.
+	 */
+	public static class Facts {
+
+		private final int[] orgIds;
+		private final long[] creationDates;
+		private final long[] lastActivities;
+		private final long[] archiveBytes;
+		private final long refreshedAt;
+		private final long fullRefreshedAt;
+
+		private Facts(int[] orgIds, long[] creationDates, long[] lastActivities, long[] archiveBytes, long refreshedAt,
+				long fullRefreshedAt) {
+			this.orgIds = orgIds;
+			this.creationDates = creationDates;
+			this.lastActivities = lastActivities;
+			this.archiveBytes = archiveBytes;
+			this.refreshedAt = refreshedAt;
+			this.fullRefreshedAt = fullRefreshedAt;
+		}
+
+		/**
+		 * Builds new facts from the previous ones (null for a full load) and what has changed since. Creation dates
+		 * replace, last activities only move forward, and the archive bytes are always complete. The last activity of
+		 * the reloaded orgs is replaced by what was read for them (none if nothing was).
+		 */
+		static Facts merge(Facts previous, Map<Integer, Date> creationDates, Map<Integer, Date> lastActivities,
+				Set<Integer> reloadedOrgs, Map<Integer, Date> reloadedActivities, Map<Integer, Long> archiveBytes,
+				long refreshedAt) {
+			TreeSet<Integer> ids = new TreeSet<Integer>();
+			if (previous != null) {
+				for (int orgId : previous.orgIds) {
+					ids.add(orgId);
+				}
+			}
+			ids.addAll(creationDates.keySet());
+			ids.addAll(lastActivities.keySet());
+			ids.addAll(reloadedActivities.keySet());
+			ids.addAll(archiveBytes.keySet());
+
+			int n = ids.size();
+			int[] orgIds = new int[n];
+			long[] created = new long[n];
+			long[] activity = new long[n];
+			long[] bytes = new long[n];
+			int i = 0;
+			for (Integer orgId : ids) {
+				orgIds[i] = orgId;
+				Date c = creationDates.get(orgId);
+				created[i] = (c != null) ? c.getTime() : ((previous != null) ? previous.getCreationDate(orgId) : -1);
+				Date a = lastActivities.get(orgId);
+				long previousActivity;
+				if (reloadedOrgs.contains(orgId)) {
+					Date reloaded = reloadedActivities.get(orgId);
+					previousActivity = (reloaded != null) ? reloaded.getTime() : -1;
+				} else {
+					previousActivity = (previous != null) ? previous.getLastActivity(orgId) : -1;
+				}
+				activity[i] = (a != null) ? Math.max(a.getTime(), previousActivity) : previousActivity;
+				Long b = archiveBytes.get(orgId);
+				bytes[i] = (b != null) ? b : -1;
+				i++;
+			}
+			long fullRefreshedAt = (previous == null) ? refreshedAt : previous.fullRefreshedAt;
+			return new Facts(orgIds, created, activity, bytes, refreshedAt, fullRefreshedAt);
+		}
+
+		public int size() {
+			return this.orgIds.length;
+		}
+
+		public long getRefreshedAt() {
+			return this.refreshedAt;
+		}
+
+		/**
+		 * @return the org's creation date in millis, or -1 if unknown
+		 */
+		public long getCreationDate(int orgId) {
+			int i = Arrays.binarySearch(this.orgIds, orgId);
+			return (i < 0) ? -1 : this.creationDates[i];
+		}
+
+		/**
+		 * @return the org's own last backup activity in millis (not including child orgs), or -1 if none
+		 */
+		public long getLastActivity(int orgId) {
+			int i = Arrays.binarySearch(this.orgIds, orgId);
+			return (i < 0) ? -1 : this.lastActivities[i];
+		}
+
+		/**
+		 * @return the org's archive bytes from the summary rollup, or -1 if unknown
+		 */
+		public long getArchiveBytes(int orgId) {
+			int i = Arrays.binarySearch(this.orgIds, orgId);
+			return (i < 0) ? -1 : this.archiveBytes[i];
+		}
+
+		@Override
+		public String toString() {
+			return "Facts[orgs=" + this.orgIds.length + ", refreshedAt=" + new Date(this.refreshedAt) + ", fullRefreshedAt="
+					+ new Date(this.fullRefreshedAt) + "]";
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.code42.custom;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.AbstractCmd;
+import com.google.inject.Inject;
+
+/**
+ * Has OrgUsageFacts reload the given orgs, on every node. Run this with db.afterTransaction() from anything that moves
+ * users between orgs, so the report doesn't keep the old last activity of either org until the next full load.
+ */
+public class OrgUsageFactsChangedCmd extends AbstractCmd<Void> {
+
+	@Inject
+	private OrgUsageFacts facts;
+
+	private final List<Integer> orgIds;
+
+	public OrgUsageFactsChangedCmd(Integer... orgIds) {
+		this.orgIds = Arrays.asList(orgIds);
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		this.facts.orgsChanged(this.orgIds);
+		return null;
+	}
+}
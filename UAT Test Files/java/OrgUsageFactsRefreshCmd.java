@@ -0,0 +1,76 @@
+package com.code42.custom;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.DBCmd;
+import com.code42.custom.CustomUsage1ReportCmd.OrgArchiveBytesRollupQuery;
+import com.code42.custom.CustomUsage1ReportCmd.OrgCreationDateQuery;
+import com.code42.custom.CustomUsage1ReportCmd.OrgLastActivityQuery;
+import com.code42.custom.OrgUsageFacts.Facts;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.util.QueryTelemetry;
+import com.code42.utils.Stopwatch;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+
+/**
+ * Bring OrgUsageFacts up to date: a full load the first time (and every full refresh interval after), otherwise only
+ * the orgs created and the backup activity recorded since the last refresh, plus the whole last activity of the orgs
+ * that users moved between (see OrgUsageFacts.orgsChanged()). Only started by OrgUsageFacts, which makes
+ * sure there is never more than one running; use OrgUsageFacts.awaitFacts() to wait for it.
+ */
+class OrgUsageFactsRefreshCmd extends DBCmd<Facts> {
+
+	private static final Logger log = LoggerFactory.getLogger(OrgUsageFactsRefreshCmd.class);
+
+	/** Look back a little further than the last refresh, for transactions that were still open at the time. */
+	private static final long OVERLAP_MS = Time.MINUTE;
+
+	@Inject
+	private OrgUsageFacts facts;
+
+	@Inject
+	private QueryTelemetry telemetry;
+
+	@Override
+	public Facts exec(CoreSession session) throws CommandException {
+		final Stopwatch sw = new Stopwatch();
+		final long refreshedAt = System.currentTimeMillis();
+		final boolean full = this.facts.isFullRefreshDue();
+		final Facts previous = full ? null : this.facts.getCurrent();
+		final Date since = (previous == null) ? null : new Date(previous.getRefreshedAt() - OVERLAP_MS);
+		final Set<Integer> reloadedOrgs = this.facts.takeChangedOrgs(full);
+
+		boolean done = false;
+		try {
+			final QueryTelemetry t = this.telemetry;
+			Map<Integer, Date> creationDates = this.db.find(t.timed(new OrgCreationDateQuery(since), this));
+			Map<Integer, Date> lastActivities = this.db.find(t.timed(new OrgLastActivityQuery(since), this));
+			Map<Integer, Date> reloadedActivities = Collections.emptyMap();
+			if (!reloadedOrgs.isEmpty()) {
+				reloadedActivities = this.db.find(t.timed(new OrgLastActivityQuery(reloadedOrgs), this));
+			}
+			Map<Integer, Long> archiveBytes = this.db.find(t.timed(new OrgArchiveBytesRollupQuery(), this));
+
+			Facts f = Facts.merge(previous, creationDates, lastActivities, reloadedOrgs, reloadedActivities,
+					archiveBytes, refreshedAt);
+			this.facts.publish(f);
+			done = true;
+			Object[] args = new Object[] { full ? "full" : "incremental", sw.getElapsed(), creationDates.size(),
+					lastActivities.size(), reloadedOrgs.size() };
+			log.info("UsageFacts:: {} refresh took {}ms; {} new orgs, {} orgs with new activity, {} orgs reloaded",
+					args);
+			return f;
+		} finally {
+			if (!done) {
+				this.facts.restoreChangedOrgs(reloadedOrgs, full);
+			}
+		}
+	}
+}
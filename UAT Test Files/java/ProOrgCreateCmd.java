@@ -11,6 +11,7 @@ import com.code42.core.OrgDef;
 import com.code42.core.UnsupportedRequestException;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
+import com.code42.directory.DirectoryEntryCacheInvalidateCmd;
 import com.code42.email.signup.WelcomeOrgEmailSendBlueCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
@@ -80,6 +81,7 @@ public class ProOrgCreateCmd extends OrgCreateBaseCmd {
 				// Caller does not want this org inheriting LDAP or RADIUS authentication
 				// from the parent org. Primarily used in testing.
 				this.runtime.run(OrgLdapServerUpdateCmd.noLdap(org.getOrgId()), session);
+				this.db.afterTransaction(new DirectoryEntryCacheInvalidateCmd(), session);
 			}
 
 			// Create/Update user
@@ -1,8 +1,11 @@
 package com.code42.util;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.code42.core.CommandException;
 import com.code42.core.auth.impl.CoreSession;
@@ -10,10 +13,13 @@ import com.code42.core.db.impl.DBTimer.Stats;
 import com.code42.core.impl.DBCmd;
 import com.code42.core.space.ISpaceService;
 import com.code42.core.space.SpaceException;
+import com.code42.util.QueryTelemetry.NodeSnapshot;
+import com.code42.util.QueryTelemetry.QueryStats;
 import com.google.inject.Inject;
 
 /**
- * Report the most used Queries to the namespace
+ * Report the most used Queries to the namespace, and publish this node's QueryTelemetry. The cluster-wide top queries
+ * by each QueryTelemetryTopCmd order are put under TELEMETRY_TOP_KEY, as of the nodes' last reports.
  * 
  * @author tony
  * 
@@ -22,15 +28,23 @@ public class QueriesReportTopCmd extends DBCmd<Void> {
 
 	private int limit = 50;
 	public static final String namespace = "/db/topQueries";
+	public static final String TELEMETRY_KEY = "/db/queryTelemetry";
+	public static final String TELEMETRY_TOP_KEY = "/db/topQueries/telemetry";
 	private final TopComparator TOP_SORT = new TopComparator();
 
 	private ISpaceService space;
+	private QueryTelemetry telemetry;
 
 	@Inject
 	public void setSpaceService(ISpaceService space) {
 		this.space = space;
 	}
 
+	@Inject
+	public void setTelemetry(QueryTelemetry telemetry) {
+		this.telemetry = telemetry;
+	}
+
 	@Override
 	public Void exec(CoreSession session) throws CommandException {
 		this.auth.isSysadmin(session);
@@ -39,6 +53,11 @@ public class QueriesReportTopCmd extends DBCmd<Void> {
 
 			List<Stats> stats = this.db.getStats(this.TOP_SORT, this.limit);
 			this.space.put(namespace, (Serializable) stats);
+			if (this.telemetry.isEnabled()) {
+				this.telemetry.setDbStats(this.db.find(new QueryTelemetryDbStatsQuery()));
+				this.publishTelemetry();
+				this.publishTelemetryTop(session);
+			}
 
 			// A useless query put here to ensure that injection is working and we have a valid runtime
 			// User user = this.runtime.run(new UserFindById(1));
@@ -48,6 +67,37 @@ public class QueriesReportTopCmd extends DBCmd<Void> {
 		}
 	}
 
+	/**
+	 * Replace this node's entry in the cluster-wide telemetry map.
+	 */
+	private void publishTelemetry() throws SpaceException {
+		NodeSnapshot snapshot = new NodeSnapshot(System.currentTimeMillis(), this.telemetry.getSnapshot());
+		this.space.lock(TELEMETRY_KEY);
+		try {
+			Map<Long, NodeSnapshot> old = this.space.getAsType(TELEMETRY_KEY, Map.class);
+			HashMap<Long, NodeSnapshot> nodes = new HashMap<Long, NodeSnapshot>();
+			if (old != null) {
+				nodes.putAll(old);
+			}
+			nodes.put(Long.valueOf(this.env.getMyNodeId()), snapshot);
+			this.space.put(TELEMETRY_KEY, nodes);
+		} finally {
+			this.space.unlock(TELEMETRY_KEY);
+		}
+	}
+
+	/**
+	 * Put the cluster-wide top queries by every order in the space.
+	 */
+	private void publishTelemetryTop(CoreSession session) throws CommandException, SpaceException {
+		HashMap<String, ArrayList<QueryStats>> top = new HashMap<String, ArrayList<QueryStats>>();
+		for (QueryTelemetryTopCmd.Order order : QueryTelemetryTopCmd.Order.values()) {
+			List<QueryStats> stats = this.run(new QueryTelemetryTopCmd(order, this.limit), session);
+			top.put(order.name(), new ArrayList<QueryStats>(stats));
+		}
+		this.space.put(TELEMETRY_TOP_KEY, top);
+	}
+
 	/**
 	 * 
 	 * Compare two Stats objects, sorting the highest runcount first. Two nulls are equal, and nulls sort last.
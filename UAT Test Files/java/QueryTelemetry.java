@@ -0,0 +1,245 @@
+package com.code42.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.code42.core.annotation.CoreNamedQuery;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.utils.SystemProperties;
+import com.google.inject.Singleton;
+
+/**
+ * This node's query telemetry: for every query (by its @CoreNamedQuery name, or its class) and the command that ran it,
+ * a latency histogram, the total and max time and the number of rows returned. Queries are recorded by wrapping them
+ * with timed() before handing them to the db service.<br>
+ * <br>
+ * Every query run through the db service is covered as well, from Hibernate's statistics (see
+ * QueryTelemetryDbStatsQuery). Those are keyed by their SQL under ANY_CMD and have totals but no histogram; they are
+ * refreshed with every QueriesReportTopCmd.<br>
+ * <br>
+ * QueriesReportTopCmd publishes a copy of the stats to the space with every report, and QueryTelemetryTopCmd rolls up
+ * the copies from every node.
+ */
+@Singleton
+public class QueryTelemetry {
+
+	static final String QUERY_TELEMETRY_ENABLED = "c42.queryTelemetry.enabled";
+
+	/** The command name of the stats read from the db service, which doesn't know which command ran a query */
+	public static final String ANY_CMD = "*";
+
+	private final ConcurrentMap<String, QueryStats> stats = new ConcurrentHashMap<String, QueryStats>();
+
+	private volatile List<QueryStats> dbStats = Collections.emptyList();
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalBoolean(QUERY_TELEMETRY_ENABLED, true);
+	}
+
+	/**
+	 * @param cmd the command running the query, for attribution
+	 * @return the query wrapped so its run is recorded, or the query itself if telemetry is off
+	 */
+	public <T> FindQuery<T> timed(FindQuery<T> query, Object cmd) {
+		if (!this.isEnabled()) {
+			return query;
+		}
+		return new TimedFindQuery<T>(this, query, getQueryName(query), cmd.getClass().getName());
+	}
+
+	public void record(String queryName, String cmdName, long nanos, long rows) {
+		String key = queryName + "|" + cmdName;
+		QueryStats s = this.stats.get(key);
+		if (s == null) {
+			QueryStats created = new QueryStats(queryName, cmdName);
+			s = this.stats.putIfAbsent(key, created);
+			if (s == null) {
+				s = created;
+			}
+		}
+		s.record(nanos / 1000, rows);
+	}
+
+	/**
+	 * Replace the stats read from the db service.
+	 */
+	void setDbStats(List<QueryStats> stats) {
+		this.dbStats = stats;
+	}
+
+	/**
+	 * @return a copy of every query's stats on this node
+	 */
+	public List<QueryStats> getSnapshot() {
+		List<QueryStats> db = this.dbStats;
+		List<QueryStats> rv = new ArrayList<QueryStats>(this.stats.size() + db.size());
+		for (QueryStats s : this.stats.values()) {
+			rv.add(s.copy());
+		}
+		for (QueryStats s : db) {
+			rv.add(s.copy());
+		}
+		return rv;
+	}
+
+	public void reset() {
+		this.stats.clear();
+		this.dbStats = Collections.emptyList();
+	}
+
+	static String getQueryName(FindQuery<?> query) {
+		CoreNamedQuery named = query.getClass().getAnnotation(CoreNamedQuery.class);
+		return (named != null) ? named.name() : query.getClass().getName();
+	}
+
+	/**
+	 * @return the number of rows in a query result: its size if it is a collection or map, otherwise 1 (0 for null)
+	 */
+	static long countRows(Object result) {
+		if (result == null) {
+			return 0;
+		} else if (result instanceof Collection) {
+			return ((Collection<?>) result).size();
+		} else if (result instanceof Map) {
+			return ((Map<?, ?>) result).size();
+		}
+		return 1;
+	}
+
+	/**
+	 * One node's stats as published to the space.
+	 */
+	static class NodeSnapshot implements Serializable {
+
+		private static final long serialVersionUID = 6073617424178806127L;
+
+		final long publishedAt;
+		final List<QueryStats> stats;
+
+		NodeSnapshot(long publishedAt, List<QueryStats> stats) {
+			this.publishedAt = publishedAt;
+			this.stats = stats;
+		}
+	}
+
+	public static class QueryStats implements Serializable {
+
+		private static final long serialVersionUID = -4421977406357617925L;
+
+		private final String queryName;
+		private final String cmdName;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalMicros = new AtomicLong();
+		private final AtomicLong maxMicros = new AtomicLong();
+		private final AtomicLong rows = new AtomicLong();
+		private final LatencyHistogram histogram = new LatencyHistogram();
+
+		QueryStats(String queryName, String cmdName) {
+			this.queryName = queryName;
+			this.cmdName = cmdName;
+		}
+
+		/**
+		 * @return stats from totals kept elsewhere, with an empty histogram
+		 */
+		static QueryStats totals(String queryName, String cmdName, long count, long totalMicros, long maxMicros,
+				long rows) {
+			QueryStats rv = new QueryStats(queryName, cmdName);
+			rv.count.set(count);
+			rv.totalMicros.set(totalMicros);
+			rv.maxMicros.set(maxMicros);
+			rv.rows.set(rows);
+			return rv;
+		}
+
+		void record(long micros, long rowCount) {
+			this.count.incrementAndGet();
+			this.totalMicros.addAndGet(micros);
+			this.rows.addAndGet(rowCount);
+			this.histogram.record(micros);
+			long max;
+			while (micros > (max = this.maxMicros.get()) && !this.maxMicros.compareAndSet(max, micros)) {
+				// lost a race with another thread; try again
+			}
+		}
+
+		/**
+		 * Add another copy of the same query's stats, from another node.
+		 */
+		void add(QueryStats other) {
+			this.count.addAndGet(other.count.get());
+			this.totalMicros.addAndGet(other.totalMicros.get());
+			this.rows.addAndGet(other.rows.get());
+			this.histogram.add(other.histogram);
+			this.maxMicros.set(Math.max(this.maxMicros.get(), other.maxMicros.get()));
+		}
+
+		QueryStats copy() {
+			QueryStats rv = new QueryStats(this.queryName, this.cmdName);
+			rv.add(this);
+			return rv;
+		}
+
+		String getKey() {
+			return this.queryName + "|" + this.cmdName;
+		}
+
+		public String getQueryName() {
+			return this.queryName;
+		}
+
+		public String getCmdName() {
+			return this.cmdName;
+		}
+
+		public long getCount() {
+			return this.count.get();
+		}
+
+		public long getTotalMicros() {
+			return this.totalMicros.get();
+		}
+
+		public long getMaxMicros() {
+			return this.maxMicros.get();
+		}
+
+		public long getMeanMicros() {
+			long c = this.count.get();
+			return (c == 0) ? 0 : this.totalMicros.get() / c;
+		}
+
+		public long getPercentileMicros(double percentile) {
+			return this.histogram.getPercentile(percentile);
+		}
+
+		public long getP50Micros() {
+			return this.histogram.getPercentile(50);
+		}
+
+		public long getP99Micros() {
+			return this.histogram.getPercentile(99);
+		}
+
+		/**
+		 * @return the rows returned; the db service doesn't say how many were scanned
+		 */
+		public long getRows() {
+			return this.rows.get();
+		}
+
+		@Override
+		public String toString() {
+			return "QueryStats[query=" + this.queryName + ", cmd=" + this.cmdName + ", count=" + this.count
+					+ ", totalMs=" + (this.totalMicros.get() / 1000) + ", p50us=" + this.getP50Micros() + ", p99us="
+					+ this.getP99Micros() + ", maxUs=" + this.maxMicros + ", rows=" + this.rows + "]";
+		}
+	}
+}
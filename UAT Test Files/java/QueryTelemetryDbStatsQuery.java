@@ -0,0 +1,40 @@
+package com.code42.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.util.QueryTelemetry.QueryStats;
+
+/**
+ * Reads what Hibernate's statistics have recorded for every query run through the session factory since they were
+ * turned on, which covers every db.find() and not just the queries wrapped with QueryTelemetry.timed(). Turns the
+ * statistics on the first time and returns nothing then. Hibernate only keeps totals, so these stats have no
+ * histogram (their p99 is 0) and are not attributed to a command.
+ */
+class QueryTelemetryDbStatsQuery extends FindQuery<List<QueryStats>> {
+
+	@Override
+	public List<QueryStats> query(Session session) throws DBServiceException {
+		Statistics statistics = session.getSessionFactory().getStatistics();
+		List<QueryStats> rv = new ArrayList<QueryStats>();
+		if (!statistics.isStatisticsEnabled()) {
+			statistics.setStatisticsEnabled(true);
+			return rv;
+		}
+		for (String sql : statistics.getQueries()) {
+			QueryStatistics qs = statistics.getQueryStatistics(sql);
+			long count = qs.getExecutionCount();
+			if (count > 0) {
+				rv.add(QueryStats.totals(sql, QueryTelemetry.ANY_CMD, count, count * qs.getExecutionAvgTime() * 1000, qs
+						.getExecutionMaxTime() * 1000, qs.getExecutionRowCount()));
+			}
+		}
+		return rv;
+	}
+}
@@ -0,0 +1,115 @@
+package com.code42.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.DBCmd;
+import com.code42.core.space.ISpaceService;
+import com.code42.core.space.SpaceException;
+import com.code42.util.QueryTelemetry.NodeSnapshot;
+import com.code42.util.QueryTelemetry.QueryStats;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+
+/**
+ * Roll up the query telemetry every node has published (see QueriesReportTopCmd) and return the top queries by total
+ * time, p99 latency, rows returned or run count. Nodes that haven't published for a while are left out.
+ */
+public class QueryTelemetryTopCmd extends DBCmd<List<QueryStats>> {
+
+	static final String QUERY_TELEMETRY_MAX_AGE_MS = "c42.queryTelemetry.maxAge.ms";
+	static final long DEFAULT_MAX_AGE_MS = 2 * 60 * Time.MINUTE;
+
+	public enum Order {
+		TOTAL_TIME, P99, ROWS, COUNT
+	}
+
+	private ISpaceService space;
+
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.space = space;
+	}
+
+	private final Order order;
+	private final int limit;
+
+	public QueryTelemetryTopCmd(Order order, int limit) {
+		this.order = order;
+		this.limit = limit;
+	}
+
+	@Override
+	public List<QueryStats> exec(CoreSession session) throws CommandException {
+		this.auth.isSysadmin(session);
+
+		final Map<Long, NodeSnapshot> nodes;
+		try {
+			nodes = this.space.getAsType(QueriesReportTopCmd.TELEMETRY_KEY, Map.class);
+		} catch (SpaceException se) {
+			throw new CommandException("Exception while performing space operations", se);
+		}
+		if (nodes == null) {
+			return new ArrayList<QueryStats>();
+		}
+
+		final long cutoff = System.currentTimeMillis()
+				- SystemProperties.getOptionalLong(QUERY_TELEMETRY_MAX_AGE_MS, DEFAULT_MAX_AGE_MS);
+		final Map<String, QueryStats> merged = Maps.newHashMap();
+		for (NodeSnapshot node : nodes.values()) {
+			if (node.publishedAt < cutoff) {
+				continue;
+			}
+			for (QueryStats s : node.stats) {
+				QueryStats total = merged.get(s.getKey());
+				if (total == null) {
+					merged.put(s.getKey(), s.copy());
+				} else {
+					total.add(s);
+				}
+			}
+		}
+
+		List<QueryStats> rv = new ArrayList<QueryStats>(merged.values());
+		Collections.sort(rv, new OrderComparator(this.order));
+		return (rv.size() > this.limit) ? new ArrayList<QueryStats>(rv.subList(0, this.limit)) : rv;
+	}
+
+	/**
+	 * Highest first.
+	 */
+	private static class OrderComparator implements Comparator<QueryStats> {
+
+		private final Order order;
+
+		OrderComparator(Order order) {
+			this.order = order;
+		}
+
+		public int compare(QueryStats o1, QueryStats o2) {
+			long v1 = this.valueOf(o1);
+			long v2 = this.valueOf(o2);
+			return (v1 == v2) ? 0 : ((v1 > v2) ? -1 : 1);
+		}
+
+		private long valueOf(QueryStats s) {
+			switch (this.order) {
+			case P99:
+				return s.getP99Micros();
+			case ROWS:
+				return s.getRows();
+			case COUNT:
+				return s.getCount();
+			default:
+				return s.getTotalMicros();
+			}
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package com.code42.recent;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.common.collect.Maps;
+import com.google.inject.Singleton;
+
+/**
+ * This node's recent lists, one fixed-size ring per user. Adding an item is a single atomic append with no lock, local
+ * or distributed; reading takes a newest-first copy with duplicates removed, so readers never block writers or each
+ * other.<br>
+ * <br>
+ * A ring is the user's list as last read from or written to the space, with the items added on this node since then in
+ * front of it. RecentListStoreAllCmd merges those items into the space copy (under the space lock, so the items other
+ * nodes added are kept) and writes the result to the space and the db. RecentListRingFindCmd reads the space copy again
+ * once a ring is older than c42.recent.sync.ms, so this node also sees the items other nodes added.
+ */
+@Singleton
+public class RecentItemStore {
+
+	static final String RECENT_CAPACITY = "c42.recent.capacity";
+	static final String RECENT_SYNC_MS = "c42.recent.sync.ms";
+	static final int DEFAULT_CAPACITY = 1000;
+	static final long DEFAULT_SYNC_MS = Time.MINUTE;
+
+	private final ConcurrentMap<Integer, RecentRing> rings = new ConcurrentHashMap<Integer, RecentRing>();
+
+	/**
+	 * @return the user's ring, or null if it hasn't been loaded on this node
+	 */
+	RecentRing get(int userId) {
+		RecentRing ring = this.rings.get(userId);
+		if (ring != null) {
+			ring.lastUsed = System.currentTimeMillis();
+		}
+		return ring;
+	}
+
+	/**
+	 * Make a ring for the user from a loaded list (newest first), unless another thread got there first.
+	 *
+	 * @return the user's ring
+	 */
+	RecentRing putIfAbsent(int userId, List<RecentItem> items) {
+		RecentRing ring = new RecentRing(SystemProperties.getOptionalInt(RECENT_CAPACITY, DEFAULT_CAPACITY), items);
+		RecentRing existing = this.rings.putIfAbsent(userId, ring);
+		return (existing != null) ? existing : ring;
+	}
+
+	/**
+	 * @return every ring changed since the last call, by user; each is marked clean
+	 */
+	Map<Integer, RecentRing> drainChanged() {
+		Map<Integer, RecentRing> rv = Maps.newHashMap();
+		for (Map.Entry<Integer, RecentRing> e : this.rings.entrySet()) {
+			RecentRing ring = e.getValue();
+			if (ring.dirty) {
+				ring.dirty = false; // before the merge, so an add racing with it is stored next time
+				rv.put(e.getKey(), ring);
+			}
+		}
+		return rv;
+	}
+
+	/**
+	 * For a ring that couldn't be stored.
+	 */
+	void markChanged(int userId) {
+		RecentRing ring = this.rings.get(userId);
+		if (ring != null) {
+			ring.dirty = true;
+		}
+	}
+
+	/**
+	 * Forget the unchanged rings nobody has used for a while; they are reloaded if needed.
+	 *
+	 * @return the number removed
+	 */
+	int evictIdle(long maxIdleMs) {
+		long cutoff = System.currentTimeMillis() - maxIdleMs;
+		int evicted = 0;
+		for (Iterator<RecentRing> i = this.rings.values().iterator(); i.hasNext();) {
+			RecentRing ring = i.next();
+			if (!ring.dirty && ring.lastUsed < cutoff) {
+				i.remove();
+				evicted++;
+			}
+		}
+		return evicted;
+	}
+
+	public int size() {
+		return this.rings.size();
+	}
+
+	static class RecentRing {
+
+		private final AtomicReferenceArray<RecentItem> slots;
+		private final AtomicLong appended = new AtomicLong();
+		private final AtomicReference<Synced> synced;
+		private volatile boolean dirty;
+		private volatile long lastUsed = System.currentTimeMillis();
+		private volatile long syncedAt = System.currentTimeMillis();
+
+		private RecentRing(int capacity, List<RecentItem> items) {
+			this.slots = new AtomicReferenceArray<RecentItem>(Math.max(1, capacity));
+			List<RecentItem> base = new ArrayList<RecentItem>();
+			if (items != null) {
+				base.addAll(items.subList(0, Math.min(items.size(), this.slots.length())));
+			}
+			this.synced = new AtomicReference<Synced>(new Synced(base, 0));
+		}
+
+		/**
+		 * Add the item at the head, overwriting the oldest local add once full. Adding the item that is already at the
+		 * head (the same page viewed again) only touches the ring.
+		 */
+		void add(RecentItem item) {
+			this.lastUsed = System.currentTimeMillis();
+			if (isSame(this.getHead(), item)) {
+				return;
+			}
+			this.slots.set(this.slot(this.appended.getAndIncrement()), item);
+			this.dirty = true;
+		}
+
+		/**
+		 * @return the items, newest first, each item only once (at its most recent position)
+		 */
+		List<RecentItem> getItems() {
+			Synced s = this.synced.get();
+			return this.merge(s, s.items).items;
+		}
+
+		Synced getSynced() {
+			return this.synced.get();
+		}
+
+		/**
+		 * @return the items added on this node since the given sync, newest first, followed by the items of the space
+		 *         copy; each item only once and no more than the ring holds
+		 */
+		Synced merge(Synced from, List<RecentItem> spaceItems) {
+			long n = this.appended.get();
+			long oldest = Math.max(from.appended, n - this.slots.length());
+			long upTo = n;
+			List<RecentItem> rv = new ArrayList<RecentItem>();
+			Set<String> seen = new HashSet<String>();
+			for (long i = n - 1; i >= oldest; i--) {
+				RecentItem item = this.slots.get(this.slot(i));
+				if (item == null) {
+					// Claimed by an add that hasn't stored its item yet; leave it and what follows for next time
+					upTo = i;
+				} else if (seen.add(key(item))) {
+					rv.add(item);
+				}
+			}
+			if (spaceItems != null) {
+				for (RecentItem item : spaceItems) {
+					if (rv.size() >= this.slots.length()) {
+						break;
+					}
+					if (seen.add(key(item))) {
+						rv.add(item);
+					}
+				}
+			}
+			return new Synced(rv, upTo);
+		}
+
+		/**
+		 * Record that the merged list is now the space copy, unless the ring was synced again in the meantime.
+		 */
+		void stored(Synced from, Synced merged) {
+			if (this.synced.compareAndSet(from, merged)) {
+				this.syncedAt = System.currentTimeMillis();
+			}
+		}
+
+		/**
+		 * Take the space copy read by another path; the items added on this node since the last store stay in front of
+		 * it until they are stored.
+		 */
+		void reloaded(Synced from, List<RecentItem> spaceItems) {
+			if (this.synced.compareAndSet(from, new Synced(spaceItems, from.appended))) {
+				this.syncedAt = System.currentTimeMillis();
+			}
+		}
+
+		boolean isSyncedSince(long time) {
+			return this.syncedAt >= time;
+		}
+
+		private RecentItem getHead() {
+			long n = this.appended.get();
+			Synced s = this.synced.get();
+			if (n > s.appended) {
+				return this.slots.get(this.slot(n - 1));
+			}
+			return s.items.isEmpty() ? null : s.items.get(0);
+		}
+
+		private int slot(long i) {
+			return (int) (i % this.slots.length());
+		}
+
+		private static boolean isSame(RecentItem a, RecentItem b) {
+			return a != null && b != null && a.getClass() == b.getClass() && a.getId() == b.getId();
+		}
+
+		private static String key(RecentItem item) {
+			return item.getClass().getSimpleName() + ":" + item.getId();
+		}
+	}
+
+	/**
+	 * A user's list as last read from or written to the space (newest first), and the number of adds on this node it
+	 * already includes.
+	 */
+	static class Synced {
+
+		private final List<RecentItem> items;
+		private final long appended;
+
+		private Synced(List<RecentItem> items, long appended) {
+			this.items = items;
+			this.appended = appended;
+		}
+
+		List<RecentItem> getItems() {
+			return this.items;
+		}
+	}
+}
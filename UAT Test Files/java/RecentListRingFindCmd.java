@@ -0,0 +1,76 @@
+package com.code42.recent;
+
+import java.util.List;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.AbstractCmd;
+import com.code42.core.space.DefaultSpaceNamespace;
+import com.code42.core.space.ISpaceService;
+import com.code42.core.space.SpaceException;
+import com.code42.core.space.SpaceNamingStrategy;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.recent.RecentItemStore.RecentRing;
+import com.code42.recent.RecentItemStore.Synced;
+import com.code42.utils.SystemProperties;
+import com.google.inject.Inject;
+
+/**
+ * Finds the user's ring in the RecentItemStore, loading it from the space or the db if this node doesn't have it yet,
+ * and reading the space copy again if the ring hasn't been synced with it for c42.recent.sync.ms. No auth; callers do
+ * their own.
+ */
+class RecentListRingFindCmd extends AbstractCmd<RecentRing> {
+
+	private static Logger log = LoggerFactory.getLogger(RecentListRingFindCmd.class);
+
+	private ISpaceService space;
+	private RecentItemStore store;
+
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.space = space;
+	}
+
+	@Inject
+	public void setStore(RecentItemStore store) {
+		this.store = store;
+	}
+
+	private final int userId;
+
+	RecentListRingFindCmd(int userId) {
+		this.userId = userId;
+	}
+
+	static String getSpaceKey(int userId) {
+		return SpaceNamingStrategy.createKey(DefaultSpaceNamespace.RECENT_ITEMS.getNamespace(), userId + "");
+	}
+
+	@Override
+	public RecentRing exec(CoreSession session) throws CommandException {
+		RecentRing ring = this.store.get(this.userId);
+		long syncMs = SystemProperties.getOptionalLong(RecentItemStore.RECENT_SYNC_MS, RecentItemStore.DEFAULT_SYNC_MS);
+		if (ring != null && ring.isSyncedSince(System.currentTimeMillis() - syncMs)) {
+			return ring;
+		}
+
+		// New to this node, or it may be missing what other nodes have stored since
+		Synced from = (ring != null) ? ring.getSynced() : null;
+		List<RecentItem> items = null;
+		try {
+			items = (List<RecentItem>) this.space.get(getSpaceKey(this.userId));
+		} catch (SpaceException e) {
+			log.info("Unable to get recent list from the space; userId=" + this.userId, e);
+		}
+		if (ring != null) {
+			ring.reloaded(from, (items != null) ? items : from.getItems());
+			return ring;
+		}
+		if (items == null) {
+			items = this.runtime.run(new RecentListLoadCmd(this.userId), session);
+		}
+		return this.store.putIfAbsent(this.userId, items);
+	}
+}
@@ -1,21 +1,25 @@
 package com.code42.recent;
 
+import java.io.Serializable;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.code42.core.CommandException;
 import com.code42.core.auth.IAuthorizationService;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.AbstractCmd;
-import com.code42.core.space.DefaultSpaceNamespace;
 import com.code42.core.space.ISpaceService;
-import com.code42.core.space.SpaceException;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
+import com.code42.recent.RecentItemStore.RecentRing;
+import com.code42.recent.RecentItemStore.Synced;
+import com.code42.utils.Time;
 import com.google.inject.Inject;
 
 /**
- * A scheduled job that routinely writes the recent lists stored in the space to the db.
+ * A scheduled job that routinely merges the recent lists changed on this node into the space copies (so the items
+ * added on other nodes are kept), writes the result to the space and the db, and drops the lists that have sat unused.
  * 
  * @author mscorcio
  * 
@@ -26,6 +30,7 @@ public class RecentListStoreAllCmd extends AbstractCmd<Void> {
 
 	private ISpaceService space;
 	private IAuthorizationService auth;
+	private RecentItemStore store;
 
 	@Inject
 	public void setSpaceService(ISpaceService space) {
@@ -37,29 +42,51 @@ public class RecentListStoreAllCmd extends AbstractCmd<Void> {
 		this.auth = auth;
 	}
 
+	@Inject
+	public void setStore(RecentItemStore store) {
+		this.store = store;
+	}
+
 	@Override
 	public Void exec(CoreSession session) throws CommandException {
 		this.auth.isSysadmin(session);
 
-		try {
-			Set<String> localKeys = this.space.getLocalKeysInNamespace("default",
-					DefaultSpaceNamespace.RECENT_ITEMS.getNamespace());
-
-			// TODO: it would probably be more efficient to batch these up at some point
-			for (String key : localKeys) {
-				int userId = Integer.parseInt(key.substring(key.lastIndexOf('/') + 1));
-				List<RecentItem> recentList = (List<RecentItem>) this.space.get(key);
-				if (recentList != null && recentList.size() > 0) {
-					this.runtime.run(new RecentListStoreCmd(userId, recentList), session);
+		Map<Integer, RecentRing> changed = this.store.drainChanged();
+		int stored = 0;
+		// TODO: it would probably be more efficient to batch these up at some point
+		for (Map.Entry<Integer, RecentRing> e : changed.entrySet()) {
+			int userId = e.getKey();
+			RecentRing ring = e.getValue();
+			String key = RecentListRingFindCmd.getSpaceKey(userId);
+			try {
+				// Merge with what the other nodes have stored rather than overwrite it; the db is written under the
+				// same lock so an older merge can't land there after a newer one
+				Synced from = ring.getSynced();
+				Synced merged;
+				this.space.lock(key);
+				try {
+					List<RecentItem> spaceItems = (List<RecentItem>) this.space.get(key);
+					merged = ring.merge(from, (spaceItems != null) ? spaceItems : from.getItems());
+					this.space.put(key, (Serializable) merged.getItems(),
+							(RecentListFindByUserIdCmd.HOURS_TO_LIVE * 3600), TimeUnit.SECONDS);
+					if (merged.getItems().size() > 0) {
+						this.runtime.run(new RecentListStoreCmd(userId, merged.getItems()), session);
+					}
+				} finally {
+					this.space.unlock(key);
 				}
+				ring.stored(from, merged);
+				stored++;
+			} catch (Exception ex) {
+				this.store.markChanged(userId); // try again next time
+				log.info("Unable to store recent list; userId=" + userId, ex);
 			}
-
-			log.info("Found " + localKeys.size() + " recent lists to store in the db.");
-
-		} catch (SpaceException e) {
-			throw new CommandException("Error storing recent lists in db", e);
 		}
 
+		int evicted = this.store.evictIdle(RecentListFindByUserIdCmd.HOURS_TO_LIVE * 60L * Time.MINUTE);
+		log.info("Stored " + stored + " of " + changed.size() + " changed recent lists in the db; evicted " + evicted
+				+ " idle lists, " + this.store.size() + " remain.");
+
 		return null;
 	}
 }
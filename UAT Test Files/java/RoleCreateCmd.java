@@ -48,6 +48,7 @@ public class RoleCreateCmd extends DBCmd<RoleDto> {
 		Role role = this.data.populateRole(new Role());
 		RoleDto newRole = this.db.create(new RoleCreateQuery(role));
 		this.master.sendRoleChanged(role);
+		this.db.afterTransaction(new AuthorizationCacheInvalidateCmd(), session);
 
 		CpcHistoryLogger.info(session, "created role {} with permissions:{}", newRole.getRoleName(), LangUtils
 				.toString(this.data.permissions));
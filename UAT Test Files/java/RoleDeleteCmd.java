@@ -79,6 +79,7 @@ public class RoleDeleteCmd extends DBCmd<Void> {
 								RoleDeleteCmd.this.master.sendRoleDeleted(RoleDeleteCmd.this.role);
 							}
 						});
+						this.db.afterTransaction(new AuthorizationCacheInvalidateCmd(), session);
 
 						this.db.commit();
 
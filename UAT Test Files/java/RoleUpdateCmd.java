@@ -75,6 +75,7 @@ public class RoleUpdateCmd extends DBCmd<RoleDto> {
 
 		role = this.db.update(new RoleUpdateQuery(role));
 		this.master.sendRoleChanged(role);
+		this.db.afterTransaction(new AuthorizationCacheInvalidateCmd(), session);
 
 		List<User> users = this.db.find(new UserFindByRoleQuery(role.getRoleName()));
 		// TODO: This could generate a LOT of commands and network traffic
@@ -4,13 +4,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.computer.ComputerSso;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.businessobjects.BusinessObjectsException;
 import com.code42.core.businessobjects.IBusinessObjectsService;
 import com.code42.core.hierarchy.IHierarchyService;
@@ -59,8 +57,8 @@ public class SettingPutForGuidCmd extends DBCmd<List<CoreSetting>> {
 			throw new CommandException("Failed to identify a computer from the source guid", this.guid);
 		}
 
-		this.run(new IsComputerManageableCmd(cSso.getComputerId(), C42PermissionApp.Computer.UPDATE), session);
-		this.run(new IsUserManageableCmd(cSso.getUserId(), C42PermissionApp.User.UPDATE), session);
+		this.run(IsManageableCmd.computer(cSso.getComputerId(), C42PermissionApp.Computer.UPDATE), session);
+		this.run(IsManageableCmd.user(cSso.getUserId(), C42PermissionApp.User.UPDATE), session);
 
 		final List<CoreSetting> settings = new ArrayList();
 		try {
@@ -73,7 +71,7 @@ public class SettingPutForGuidCmd extends DBCmd<List<CoreSetting>> {
 
 				// if they try for an org setting, make sure they have permission to do that
 				if (CoreSetting.Scope.ORG.equals(setting.getScope()) && !authedForOrg) {
-					this.run(new IsOrgManageableCmd(setting.getOrgId(), C42PermissionApp.Org.UPDATE_BASIC), session);
+					this.run(IsManageableCmd.org(setting.getOrgId(), C42PermissionApp.Org.UPDATE_BASIC), session);
 					authedForOrg = true;
 				}
 
@@ -4,11 +4,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.businessobjects.BusinessObjectsException;
 import com.code42.core.businessobjects.IBusinessObjectsService;
 import com.code42.core.hierarchy.IHierarchyService;
@@ -59,7 +58,7 @@ public class SettingPutForUserCmd extends DBCmd<List<CoreSetting>> {
 			throw new CommandException("Failed to identify a user from the user ID", this.userId);
 		}
 
-		this.run(new IsUserManageableCmd(sso.getUserId(), C42PermissionApp.User.UPDATE), session);
+		this.run(IsManageableCmd.user(sso.getUserId(), C42PermissionApp.User.UPDATE), session);
 
 		final List<CoreSetting> settings = new ArrayList();
 		try {
@@ -74,7 +73,7 @@ public class SettingPutForUserCmd extends DBCmd<List<CoreSetting>> {
 				// if they try for an org setting, make sure they have permission to do that
 				if (CoreSetting.Scope.ORG.equals(setting.getScope()) && !authedForOrg) {
 
-					this.run(new IsOrgManageableCmd(setting.getOrgId(), C42PermissionApp.Org.UPDATE_BASIC), session);
+					this.run(IsManageableCmd.org(setting.getOrgId(), C42PermissionApp.Org.UPDATE_BASIC), session);
 					authedForOrg = true;
 				}
 
@@ -1,10 +1,10 @@
 package com.code42.setting;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.computer.ComputerSso;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
 import com.code42.core.businessobjects.BusinessObjectsException;
 import com.code42.core.businessobjects.IBusinessObjectsService;
 import com.code42.core.impl.DBCmd;
@@ -38,7 +38,7 @@ public class SettingsDefinitionFindByGuidCmd extends DBCmd<SettingsDefinition> {
 		} catch (BusinessObjectsException e) {
 			throw new CommandException("Failed to identify a computer from the source guid", this.guid);
 		}
-		this.run(new IsComputerManageableCmd(cSso.getComputerId(), C42PermissionApp.Computer.READ), session);
+		this.run(IsManageableCmd.computer(cSso.getComputerId(), C42PermissionApp.Computer.READ), session);
 
 		final SettingsDefinition settingsDefinition = this.run(
 				new SettingsDefinitionFindByComputerCmd(cSso.getComputerId()), session);
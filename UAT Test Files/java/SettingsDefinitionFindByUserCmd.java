@@ -3,10 +3,10 @@ package com.code42.setting;
 import java.util.List;
 import java.util.Set;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.hierarchy.IHierarchyService;
 import com.code42.core.impl.DBCmd;
 import com.code42.utils.Pair;
@@ -48,7 +48,7 @@ public class SettingsDefinitionFindByUserCmd extends DBCmd<SettingsDefinition> {
 	@Override
 	public SettingsDefinition exec(CoreSession session) throws CommandException {
 
-		this.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.READ), session);
+		this.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.READ), session);
 
 		SettingsDefinition definition = null;
 		try {
@@ -25,9 +25,18 @@ class SmartSearchCountCmd extends AbstractCmd<Map<SmartSearchType, Integer>> {
 	private static final String SMART_SEARCH_ASYNC_ENABLED = "b42.smartSearch.async.enabled";
 
 	private String term;
+	private SmartSearchIndex.Result indexed;
 
 	public SmartSearchCountCmd(String term) {
+		this(term, null);
+	}
+
+	/**
+	 * @param indexed - if not null, the user, computer and org counts are taken from it instead of the database
+	 */
+	public SmartSearchCountCmd(String term, SmartSearchIndex.Result indexed) {
 		this.setTerm(term);
+		this.indexed = indexed;
 	}
 
 	public void setTerm(String term) {
@@ -45,7 +54,14 @@ class SmartSearchCountCmd extends AbstractCmd<Map<SmartSearchType, Integer>> {
 		// So this will allow us to turn it on and off to see if it helps.
 		boolean async = SystemProperties.getOptionalBoolean(SMART_SEARCH_ASYNC_ENABLED, true);
 
-		if (async) {
+		if (this.indexed != null) {
+
+			// Only servers and mount points still need the database
+			counts.putAll(this.indexed.getCounts());
+			counts.put(SmartSearchType.SERVER, this.runtime.run(new SmartSearchServerCountCmd(this.term), session));
+			counts.put(SmartSearchType.MOUNT_POINT, this.runtime.run(new SmartSearchMountPointCountCmd(this.term), session));
+
+		} else if (async) {
 
 			Map<SmartSearchType, Future<Integer>> futures = new HashMap<SmartSearchType, Future<Integer>>();
 
@@ -79,7 +95,8 @@ class SmartSearchCountCmd extends AbstractCmd<Map<SmartSearchType, Integer>> {
 
 		log.trace(
 				"SmartSearch:: Counting of computers, orgs, users, servers, mount_points for term '{}' took {} ms in {} mode.  To change mode, change property: {}",
-				this.term, sw.getElapsed(), async ? "asynchronous" : "synchronous", SMART_SEARCH_ASYNC_ENABLED);
+				this.term, sw.getElapsed(), this.indexed != null ? "indexed" : async ? "asynchronous" : "synchronous",
+				SMART_SEARCH_ASYNC_ENABLED);
 
 		return counts;
 	}
@@ -9,6 +9,7 @@ import com.code42.core.IEnvironment;
 import com.code42.core.auth.impl.AuthorizedOrgs;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.DBCmd;
+import com.code42.smartsearch.SmartSearchIndex.Field;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
 import com.code42.smartsearch.computer.SmartSearchComputerFindExactOnGuidQuery;
@@ -33,10 +34,19 @@ class SmartSearchDBFindExactCmd extends DBCmd<SmartSearchMatch> {
 
 	private String term;
 	private Map<SmartSearchType, Integer> counts;
+	private SmartSearchIndex.Result indexed;
 
 	public SmartSearchDBFindExactCmd(String term, Map<SmartSearchType, Integer> counts) {
+		this(term, counts, null);
+	}
+
+	/**
+	 * @param indexed - if not null, users, computers and orgs are matched from it instead of the database
+	 */
+	public SmartSearchDBFindExactCmd(String term, Map<SmartSearchType, Integer> counts, SmartSearchIndex.Result indexed) {
 		this.setTerm(term);
 		this.setCounts(counts);
+		this.indexed = indexed;
 	}
 
 	public void setTerm(String term) {
@@ -83,25 +93,45 @@ class SmartSearchDBFindExactCmd extends DBCmd<SmartSearchMatch> {
 
 		if (hit == null && computerCount > 0) {
 			sw.reset();
-			hit = this.db.find(new SmartSearchComputerFindExactOnGuidQuery(authorizedOrgs, clusterOrgTypes, userId, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findExact(Field.COMPUTER_GUID);
+			} else {
+				hit = this.db.find(new SmartSearchComputerFindExactOnGuidQuery(authorizedOrgs, clusterOrgTypes, userId,
+						this.term));
+			}
 			computerGuidMs = sw.getElapsed();
 		}
 
 		if (hit == null && userCount > 0) {
 			sw.reset();
-			hit = this.db.find(new SmartSearchUserFindExactOnUsernameQuery(authorizedOrgs, clusterOrgTypes, userId, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findExact(Field.USERNAME);
+			} else {
+				hit = this.db.find(new SmartSearchUserFindExactOnUsernameQuery(authorizedOrgs, clusterOrgTypes, userId,
+						this.term));
+			}
 			usernameMs = sw.getElapsed();
 		}
 
 		if (hit == null && userCount > 0) {
 			sw.reset();
-			hit = this.db.find(new SmartSearchUserFindExactOnEmailQuery(authorizedOrgs, clusterOrgTypes, userId, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findExact(Field.EMAIL);
+			} else {
+				hit = this.db.find(new SmartSearchUserFindExactOnEmailQuery(authorizedOrgs, clusterOrgTypes, userId,
+						this.term));
+			}
 			emailMs = sw.getElapsed();
 		}
 
 		if (hit == null && userCount > 0) {
 			sw.reset();
-			hit = this.db.find(new SmartSearchUserFindExactOnNameQuery(authorizedOrgs, clusterOrgTypes, userId, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findExact(Field.USER_FIRST_LAST, Field.USER_LAST_FIRST);
+			} else {
+				hit = this.db.find(new SmartSearchUserFindExactOnNameQuery(authorizedOrgs, clusterOrgTypes, userId,
+						this.term));
+			}
 			userNameMs = sw.getElapsed();
 		}
 
@@ -119,19 +149,33 @@ class SmartSearchDBFindExactCmd extends DBCmd<SmartSearchMatch> {
 
 		if (hit == null && computerCount > 0) {
 			sw.reset();
-			hit = this.db.find(new SmartSearchComputerFindExactOnNameQuery(authorizedOrgs, clusterOrgTypes, userId, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findExact(Field.COMPUTER_NAME);
+			} else {
+				hit = this.db.find(new SmartSearchComputerFindExactOnNameQuery(authorizedOrgs, clusterOrgTypes, userId,
+						this.term));
+			}
 			computerNameMs = sw.getElapsed();
 		}
 
 		if (hit == null && orgCount > 0) {
 			sw.reset();
-			hit = this.db.find(new SmartSearchOrgFindExactOnNameQuery(authorizedOrgs, clusterOrgTypes, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findExact(Field.ORG_NAME);
+			} else {
+				hit = this.db.find(new SmartSearchOrgFindExactOnNameQuery(authorizedOrgs, clusterOrgTypes, this.term));
+			}
 			orgNameMs = sw.getElapsed();
 		}
 
 		if (hit == null && orgCount > 0 && (this.term.length() == 16 || this.term.length() == 19)) {
 			sw.reset();
-			hit = this.db.find(new SmartSearchOrgFindExactOnRegKeyQuery(authorizedOrgs, clusterOrgTypes, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findExact(Field.ORG_REG_KEY);
+			} else {
+				hit = this.db.find(new SmartSearchOrgFindExactOnRegKeyQuery(authorizedOrgs, clusterOrgTypes,
+						this.term));
+			}
 			regkeyMs = sw.getElapsed();
 		}
 
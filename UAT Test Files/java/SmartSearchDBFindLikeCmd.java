@@ -9,6 +9,7 @@ import com.code42.core.IEnvironment;
 import com.code42.core.auth.impl.AuthorizedOrgs;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.DBCmd;
+import com.code42.smartsearch.SmartSearchIndex.Field;
 import com.code42.smartsearch.computer.SmartSearchComputerFindPartialOnGuidQuery;
 import com.code42.smartsearch.computer.SmartSearchComputerFindPartialOnNameQuery;
 import com.code42.smartsearch.mountpoint.SmartSearchMountPointFindPartialOnNameQuery;
@@ -28,10 +29,19 @@ class SmartSearchDBFindLikeCmd extends DBCmd<SmartSearchMatch> {
 
 	private String term;
 	private Map<SmartSearchType, Integer> counts;
+	private SmartSearchIndex.Result indexed;
 
 	public SmartSearchDBFindLikeCmd(String term, Map<SmartSearchType, Integer> counts) {
+		this(term, counts, null);
+	}
+
+	/**
+	 * @param indexed - if not null, users, computers and orgs are matched from it instead of the database
+	 */
+	public SmartSearchDBFindLikeCmd(String term, Map<SmartSearchType, Integer> counts, SmartSearchIndex.Result indexed) {
 		this.setTerm(term);
 		this.setCounts(counts);
+		this.indexed = indexed;
 	}
 
 	public void setTerm(String term) {
@@ -63,22 +73,39 @@ class SmartSearchDBFindLikeCmd extends DBCmd<SmartSearchMatch> {
 		}
 
 		if (hit == null && computerCount > 0) {
-			hit = this.db.find(new SmartSearchComputerFindPartialOnGuidQuery(authorizedOrgs, clusterOrgTypes, userId,
-					this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findPartial(Field.COMPUTER_GUID);
+			} else {
+				hit = this.db.find(new SmartSearchComputerFindPartialOnGuidQuery(authorizedOrgs, clusterOrgTypes,
+						userId, this.term));
+			}
 		}
 
 		if (hit == null && userCount > 0) {
-			hit = this.db.find(new SmartSearchUserFindPartialOnUsernameQuery(authorizedOrgs, clusterOrgTypes, userId,
-					this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findPartial(Field.USERNAME);
+			} else {
+				hit = this.db.find(new SmartSearchUserFindPartialOnUsernameQuery(authorizedOrgs, clusterOrgTypes,
+						userId, this.term));
+			}
 		}
 
 		if (hit == null && userCount > 0) {
-			hit = this.db
-					.find(new SmartSearchUserFindPartialOnEmailQuery(authorizedOrgs, clusterOrgTypes, userId, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findPartial(Field.EMAIL);
+			} else {
+				hit = this.db.find(new SmartSearchUserFindPartialOnEmailQuery(authorizedOrgs, clusterOrgTypes, userId,
+						this.term));
+			}
 		}
 
 		if (hit == null && userCount > 0) {
-			hit = this.db.find(new SmartSearchUserFindPartialOnNameQuery(authorizedOrgs, clusterOrgTypes, userId, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findPartial(Field.USER_FIRST_LAST, Field.USER_LAST_FIRST);
+			} else {
+				hit = this.db.find(new SmartSearchUserFindPartialOnNameQuery(authorizedOrgs, clusterOrgTypes, userId,
+						this.term));
+			}
 		}
 
 		if (hit == null && serverCount > 0) {
@@ -86,8 +113,12 @@ class SmartSearchDBFindLikeCmd extends DBCmd<SmartSearchMatch> {
 		}
 
 		if (hit == null && computerCount > 0) {
-			hit = this.db.find(new SmartSearchComputerFindPartialOnNameQuery(authorizedOrgs, clusterOrgTypes, userId,
-					this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findPartial(Field.COMPUTER_NAME);
+			} else {
+				hit = this.db.find(new SmartSearchComputerFindPartialOnNameQuery(authorizedOrgs, clusterOrgTypes,
+						userId, this.term));
+			}
 		}
 
 		if (hit == null && mountPointCount > 0) {
@@ -95,11 +126,21 @@ class SmartSearchDBFindLikeCmd extends DBCmd<SmartSearchMatch> {
 		}
 
 		if (hit == null && orgCount > 0) {
-			hit = this.db.find(new SmartSearchOrgFindPartialOnNameQuery(authorizedOrgs, clusterOrgTypes, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findPartial(Field.ORG_NAME);
+			} else {
+				hit = this.db.find(new SmartSearchOrgFindPartialOnNameQuery(authorizedOrgs, clusterOrgTypes,
+						this.term));
+			}
 		}
 
 		if (hit == null && orgCount > 0) {
-			hit = this.db.find(new SmartSearchOrgFindPartialOnRegKeyQuery(authorizedOrgs, clusterOrgTypes, this.term));
+			if (this.indexed != null) {
+				hit = this.indexed.findPartial(Field.ORG_REG_KEY);
+			} else {
+				hit = this.db.find(new SmartSearchOrgFindPartialOnRegKeyQuery(authorizedOrgs, clusterOrgTypes,
+						this.term));
+			}
 		}
 
 		return hit;
@@ -19,11 +19,15 @@ import com.code42.logging.LoggerFactory;
 import com.code42.smartsearch.computer.SmartSearchComputerFindExactOnGuidQuery;
 import com.code42.smartsearch.user.SmartSearchUserFindExactOnEmailQuery;
 import com.code42.utils.Stopwatch;
+import com.google.inject.Inject;
 
 public class SmartSearchGetResultsCmd extends DBCmd<Map<String, Object>> {
 
 	private static final Logger log = LoggerFactory.getLogger(SmartSearchGetResultsCmd.class);
 
+	@Inject
+	private SmartSearchIndex index;
+
 	private String term;
 
 	public SmartSearchGetResultsCmd(String term) {
@@ -65,7 +69,19 @@ public class SmartSearchGetResultsCmd extends DBCmd<Map<String, Object>> {
 			long dbLikeMs = -1;
 			long relatedMs = -1;
 
-			counts = this.runtime.run(new SmartSearchCountCmd(this.term), session);
+			// Users, computers and orgs come from the in-memory index when it can answer; the DB is the fallback
+			SmartSearchIndex.Result indexed = null;
+			if (this.index.isEnabled()) {
+				if (this.index.isStale()) {
+					this.runtime.runAsync(new SmartSearchIndexLoadCmd(), session);
+				} else {
+					// Read back whatever other nodes changed; until then it is not in the index
+					this.runtime.run(new SmartSearchIndexUpdateCmd(), session);
+				}
+				indexed = this.index.search(this.term, new SmartSearchIndex.Filter(authorizedOrgs, clusterOrgTypes, userId));
+			}
+
+			counts = this.runtime.run(new SmartSearchCountCmd(this.term, indexed), session);
 			countMs = sw.getElapsed();
 
 			sw.reset();
@@ -74,7 +90,7 @@ public class SmartSearchGetResultsCmd extends DBCmd<Map<String, Object>> {
 
 			if (hit == null) {
 				sw.reset();
-				hit = this.runtime.run(new SmartSearchDBFindExactCmd(this.term, counts), session);
+				hit = this.runtime.run(new SmartSearchDBFindExactCmd(this.term, counts, indexed), session);
 				dbExactMs = sw.getElapsed();
 			}
 
@@ -86,7 +102,7 @@ public class SmartSearchGetResultsCmd extends DBCmd<Map<String, Object>> {
 
 			if (hit == null) {
 				sw.reset();
-				hit = this.runtime.run(new SmartSearchDBFindLikeCmd(this.term, counts), session);
+				hit = this.runtime.run(new SmartSearchDBFindLikeCmd(this.term, counts, indexed), session);
 				dbLikeMs = sw.getElapsed();
 			}
 
@@ -103,8 +119,8 @@ public class SmartSearchGetResultsCmd extends DBCmd<Map<String, Object>> {
 			}
 
 			log.trace(
-					"SmartSearch:: milliseconds:  counting:{}, recentExact:{}, dbExact:{}, recentLike:{}, dbLike:{}, related:{}",
-					countMs, recentExactMs, dbExactMs, recentLikeMs, dbLikeMs, relatedMs);
+					"SmartSearch:: milliseconds:  counting:{}, recentExact:{}, dbExact:{}, recentLike:{}, dbLike:{}, related:{}, indexed:{}",
+					countMs, recentExactMs, dbExactMs, recentLikeMs, dbLikeMs, relatedMs, indexed != null);
 		}
 
 		if (!this.auth.hasPermission(session, C42PermissionPro.System.SYSTEM_SETTINGS)) {
@@ -0,0 +1,679 @@
+package com.code42.smartsearch;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.backup42.CpcConstants;
+import com.backup42.common.OrgType;
+import com.code42.core.auth.impl.AuthorizedOrgs;
+import com.code42.core.space.ISpaceService;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.util.SpaceInvalidator;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Cluster-local trigram index over the users, computers and orgs that smart search looks through. A single search
+ * against this index answers the counts, the exact hits and the partial hits that would otherwise take one LIKE
+ * '%term%' table scan per searchable column.<br>
+ * <br>
+ * The index is seeded by SmartSearchIndexLoadCmd. Creates, updates, moves and deletes on this node are applied as they
+ * commit (see SmartSearchIndexUpdateCmd, and SmartSearchIndexEventCallback for creates made elsewhere) and published to
+ * the other nodes. There the entity is dropped from the index at once, so it cannot match under its old name or org,
+ * and read back from the database before the next search (see takePending()). Until the index is loaded, and for terms
+ * that normalize to less than a trigram, search returns null and callers fall back to the database queries.<br>
+ * <br>
+ * Servers and mount points are not indexed; those tables are tiny and their queries are already scoped to this cluster.
+ */
+@Singleton
+public class SmartSearchIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(SmartSearchIndex.class);
+
+	static final String SMART_SEARCH_INDEX_ENABLED = "b42.smartSearch.index.enabled";
+	static final String SMART_SEARCH_INDEX_MAX_AGE_MS = "b42.smartSearch.index.maxAge.ms";
+	static final String SMART_SEARCH_INDEX_CHECK_MS = "b42.smartSearch.index.check.ms";
+	static final long DEFAULT_MAX_AGE_MS = 30 * Time.MINUTE;
+
+	private static final int GRAM_LENGTH = 3;
+
+	/**
+	 * The searchable columns, one per database query in SmartSearchDBFindExactCmd and SmartSearchDBFindLikeCmd.
+	 */
+	public enum Field {
+
+		COMPUTER_GUID(SmartSearchType.COMPUTER, TermKind.RAW),
+		USERNAME(SmartSearchType.USER, TermKind.RAW),
+		EMAIL(SmartSearchType.USER, TermKind.RAW),
+		USER_FIRST_LAST(SmartSearchType.USER, TermKind.NO_PUNCTUATION),
+		USER_LAST_FIRST(SmartSearchType.USER, TermKind.NO_PUNCTUATION),
+		COMPUTER_NAME(SmartSearchType.COMPUTER, TermKind.RAW),
+		ORG_NAME(SmartSearchType.ORG, TermKind.RAW),
+		ORG_REG_KEY(SmartSearchType.ORG, TermKind.NO_DASHES);
+
+		private final SmartSearchType type;
+		private final TermKind termKind;
+
+		private Field(SmartSearchType type, TermKind termKind) {
+			this.type = type;
+			this.termKind = termKind;
+		}
+
+		public SmartSearchType getType() {
+			return this.type;
+		}
+	}
+
+	/** How the search term is normalized before it is compared with a field */
+	private enum TermKind {
+		RAW, NO_PUNCTUATION, NO_DASHES
+	}
+
+	private final SpaceInvalidator invalidator = new SpaceInvalidator("/smartSearch/index", SMART_SEARCH_INDEX_CHECK_MS,
+			new SpaceInvalidator.Listener() {
+
+				public void invalidate(Serializable key) {
+					SmartSearchIndex.this.changedElsewhere((Key) key);
+				}
+
+				public void invalidateAll() {
+					SmartSearchIndex.this.drop();
+				}
+			});
+
+	@Inject
+	public void setSpaceService(ISpaceService space) {
+		this.invalidator.setSpaceService(space);
+	}
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final AtomicBoolean loading = new AtomicBoolean(false);
+
+	// All guarded by lock
+	private Set<Key> pending = new LinkedHashSet<Key>();
+	private Map<SmartSearchType, Map<Long, Entry>> entries = newEntries();
+	private Map<String, Set<Entry>> grams = new HashMap<String, Set<Entry>>();
+	private Map<Integer, OrgType> orgTypes = new HashMap<Integer, OrgType>();
+	private Map<Integer, Integer> userOrgIds = new HashMap<Integer, Integer>();
+	private long loadedAt = 0;
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalBoolean(SMART_SEARCH_INDEX_ENABLED, true);
+	}
+
+	public boolean isLoaded() {
+		this.invalidator.check();
+		this.lock.readLock().lock();
+		try {
+			return this.loadedAt > 0;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return true if the index has never been loaded or is older than the configured max age
+	 */
+	public boolean isStale() {
+		long maxAgeMs = SystemProperties.getOptionalLong(SMART_SEARCH_INDEX_MAX_AGE_MS, DEFAULT_MAX_AGE_MS);
+		this.lock.readLock().lock();
+		try {
+			return this.loadedAt == 0 || System.currentTimeMillis() - this.loadedAt > maxAgeMs;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Claims the right to (re)load the index. Only one load runs at a time; the caller must call endLoad() when done.
+	 */
+	boolean beginLoad() {
+		return this.loading.compareAndSet(false, true);
+	}
+
+	void endLoad() {
+		this.loading.set(false);
+	}
+
+	/**
+	 * @return the version to hand back to load() with entries read from now on
+	 */
+	long getVersion() {
+		return this.invalidator.getVersion();
+	}
+
+	/**
+	 * Replaces the whole index, unless an entry has changed (or the index was dropped) since the given version was
+	 * read; the entries would then be missing that change. The new structures are built without holding the lock so
+	 * searches keep running against the old index until the swap.
+	 * 
+	 * @return false if the entries were not installed and the load should be retried
+	 */
+	boolean load(Collection<Entry> all, long loadedAtVersion) {
+		Map<SmartSearchType, Map<Long, Entry>> newEntries = newEntries();
+		Map<String, Set<Entry>> newGrams = new HashMap<String, Set<Entry>>();
+		Map<Integer, OrgType> newOrgTypes = new HashMap<Integer, OrgType>();
+		Map<Integer, Integer> newUserOrgIds = new HashMap<Integer, Integer>();
+		for (Entry e : all) {
+			newEntries.get(e.type).put(e.id, e);
+			addGrams(newGrams, e);
+			trackOwnership(newOrgTypes, newUserOrgIds, e);
+		}
+
+		this.lock.writeLock().lock();
+		try {
+			if (!this.invalidator.isCurrent(loadedAtVersion)) {
+				log.info("SmartSearch:: entries changed while loading; discarding load");
+				return false;
+			}
+			this.entries = newEntries;
+			this.grams = newGrams;
+			this.orgTypes = newOrgTypes;
+			this.userOrgIds = newUserOrgIds;
+			this.pending.clear();
+			this.loadedAt = System.currentTimeMillis();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		log.info("SmartSearch:: index loaded; entries:{}, grams:{}", all.size(), newGrams.size());
+		return true;
+	}
+
+	/**
+	 * Adds or replaces a single entry.
+	 */
+	void put(Entry e) {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			Entry old = this.entries.get(e.type).put(e.id, e);
+			if (old != null) {
+				removeGrams(this.grams, old);
+			}
+			addGrams(this.grams, e);
+			trackOwnership(this.orgTypes, this.userOrgIds, e);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a single entry. A removed user's computers and an org's users no longer pass any filter.
+	 */
+	void remove(SmartSearchType type, long id) {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			this.removeEntry(type, id);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Tell the other nodes that the entity has changed. Call after applying a change that committed on this node.
+	 */
+	void publish(SmartSearchType type, long id) {
+		this.invalidator.publish(new Key(type, id));
+	}
+
+	/**
+	 * @return the entities changed on other nodes, to be read back from the database; each is returned only once
+	 */
+	Collection<Key> takePending() {
+		this.invalidator.check();
+		this.lock.writeLock().lock();
+		try {
+			if (this.pending.isEmpty()) {
+				return Collections.emptyList();
+			}
+			List<Key> rv = new ArrayList<Key>(this.pending);
+			this.pending.clear();
+			return rv;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Another node changed the entity; stop matching it until it has been read back.
+	 */
+	private void changedElsewhere(Key key) {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			if (this.loadedAt > 0) {
+				this.removeEntry(key.type, key.id);
+				this.pending.add(key);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Forget the index, and make a load that is already running retry rather than install what it read.
+	 */
+	private void drop() {
+		this.lock.writeLock().lock();
+		try {
+			this.invalidator.changed();
+			this.pending.clear();
+			this.loadedAt = 0;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/** Must be called with the write lock held */
+	private void removeEntry(SmartSearchType type, long id) {
+		Entry old = this.entries.get(type).remove(id);
+		if (old != null) {
+			removeGrams(this.grams, old);
+		}
+		if (type == SmartSearchType.ORG) {
+			this.orgTypes.remove((int) id);
+		} else if (type == SmartSearchType.USER) {
+			this.userOrgIds.remove((int) id);
+		}
+	}
+
+	/**
+	 * Counts and finds the exact and partial matches for the given term in one pass over the index.
+	 *
+	 * @param term - already trimmed and lower-cased
+	 * @return null if the index cannot answer this search and the database must be used instead
+	 */
+	public Result search(String term, Filter filter) {
+		if (!this.isEnabled()) {
+			return null;
+		}
+
+		EnumMap<TermKind, String> terms = new EnumMap<TermKind, String>(TermKind.class);
+		terms.put(TermKind.RAW, term);
+		terms.put(TermKind.NO_PUNCTUATION, SmartSearchUtils.removePunctuation(term));
+		terms.put(TermKind.NO_DASHES, term.replaceAll("\\-", ""));
+		for (String t : terms.values()) {
+			if (t.length() < GRAM_LENGTH) {
+				// The trigrams can't find the candidates for this one
+				return null;
+			}
+		}
+
+		Result result = new Result();
+
+		this.lock.readLock().lock();
+		try {
+			if (this.loadedAt == 0) {
+				return null;
+			}
+
+			Set<Entry> candidates = new LinkedHashSet<Entry>();
+			for (String t : new HashSet<String>(terms.values())) {
+				candidates.addAll(this.intersect(t));
+			}
+
+			for (Entry e : candidates) {
+				int orgId = this.findOrgId(e);
+				if (!filter.accept(e, orgId, this.orgTypes.get(orgId))) {
+					continue;
+				}
+				boolean counted = false;
+				for (Field f : Field.values()) {
+					String value = e.values[f.ordinal()];
+					if (f.type != e.type || value == null) {
+						continue;
+					}
+					String t = terms.get(f.termKind);
+					if (value.contains(t)) {
+						SmartSearchMatch m = new SmartSearchMatch(e.id, e.displays[f.ordinal()], e.type);
+						result.partial.record(f, m);
+						if (value.equals(t)) {
+							result.exact.record(f, m);
+						}
+						if (!counted) {
+							result.increment(e.type);
+							counted = true;
+						}
+					}
+				}
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	/** Must be called with the read lock held */
+	private Set<Entry> intersect(String term) {
+		List<Set<Entry>> postings = new ArrayList<Set<Entry>>();
+		Set<Entry> smallest = null;
+		for (String gram : gramsOf(term)) {
+			Set<Entry> posting = this.grams.get(gram);
+			if (posting == null) {
+				return new HashSet<Entry>();
+			}
+			postings.add(posting);
+			if (smallest == null || posting.size() < smallest.size()) {
+				smallest = posting;
+			}
+		}
+
+		Set<Entry> rv = new HashSet<Entry>();
+		outer: for (Entry e : smallest) {
+			for (Set<Entry> posting : postings) {
+				if (posting != smallest && !posting.contains(e)) {
+					continue outer;
+				}
+			}
+			rv.add(e);
+		}
+		return rv;
+	}
+
+	/** Must be called with the read lock held */
+	private int findOrgId(Entry e) {
+		if (e.type == SmartSearchType.COMPUTER) {
+			Integer orgId = this.userOrgIds.get(e.userId);
+			return orgId != null ? orgId : -1;
+		}
+		return e.orgId;
+	}
+
+	private static Map<SmartSearchType, Map<Long, Entry>> newEntries() {
+		Map<SmartSearchType, Map<Long, Entry>> rv = new EnumMap<SmartSearchType, Map<Long, Entry>>(SmartSearchType.class);
+		for (SmartSearchType type : SmartSearchType.values()) {
+			rv.put(type, new HashMap<Long, Entry>());
+		}
+		return rv;
+	}
+
+	private static void trackOwnership(Map<Integer, OrgType> orgTypes, Map<Integer, Integer> userOrgIds, Entry e) {
+		if (e.type == SmartSearchType.ORG) {
+			orgTypes.put(e.orgId, e.orgType);
+		} else if (e.type == SmartSearchType.USER) {
+			userOrgIds.put(e.userId, e.orgId);
+		}
+	}
+
+	private static void addGrams(Map<String, Set<Entry>> grams, Entry e) {
+		for (String gram : e.grams()) {
+			Set<Entry> posting = grams.get(gram);
+			if (posting == null) {
+				posting = new HashSet<Entry>();
+				grams.put(gram, posting);
+			}
+			posting.add(e);
+		}
+	}
+
+	private static void removeGrams(Map<String, Set<Entry>> grams, Entry e) {
+		for (String gram : e.grams()) {
+			Set<Entry> posting = grams.get(gram);
+			if (posting != null) {
+				posting.remove(e);
+				if (posting.isEmpty()) {
+					grams.remove(gram);
+				}
+			}
+		}
+	}
+
+	private static Set<String> gramsOf(String s) {
+		Set<String> rv = new HashSet<String>();
+		for (int i = 0; i + GRAM_LENGTH <= s.length(); i++) {
+			rv.add(s.substring(i, i + GRAM_LENGTH));
+		}
+		return rv;
+	}
+
+	private static String lower(String s) {
+		return s != null ? s.toLowerCase() : null;
+	}
+
+	/**
+	 * Identifies an indexed user, computer or org to the other nodes.
+	 */
+	static class Key implements Serializable {
+
+		private static final long serialVersionUID = 4418395572264306810L;
+
+		private final SmartSearchType type;
+		private final long id;
+
+		Key(SmartSearchType type, long id) {
+			this.type = type;
+			this.id = id;
+		}
+
+		SmartSearchType getType() {
+			return this.type;
+		}
+
+		long getId() {
+			return this.id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return this.type == other.type && this.id == other.id;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.type.hashCode() * 31 + (int) (this.id ^ (this.id >>> 32));
+		}
+	}
+
+	/**
+	 * One indexed user, computer or org. Values are stored lower-cased, the way the search term arrives.
+	 */
+	static class Entry {
+
+		private final SmartSearchType type;
+		private final long id;
+		private final int orgId;
+		private final int userId;
+		private final OrgType orgType;
+		private final String[] values = new String[Field.values().length];
+		private final String[] displays = new String[Field.values().length];
+
+		private Entry(SmartSearchType type, long id, int orgId, int userId, OrgType orgType) {
+			this.type = type;
+			this.id = id;
+			this.orgId = orgId;
+			this.userId = userId;
+			this.orgType = orgType;
+		}
+
+		static Entry forUser(int userId, int orgId, String username, String email, String firstName, String lastName,
+				String firstLastSearch, String lastFirstSearch) {
+			Entry e = new Entry(SmartSearchType.USER, userId, orgId, userId, null);
+			String fullName = firstName + " " + lastName;
+			e.set(Field.USERNAME, username, username);
+			e.set(Field.EMAIL, email, email);
+			e.set(Field.USER_FIRST_LAST, firstLastSearch, fullName);
+			e.set(Field.USER_LAST_FIRST, lastFirstSearch, fullName);
+			return e;
+		}
+
+		static Entry forComputer(long computerId, int userId, long guid, String name) {
+			Entry e = new Entry(SmartSearchType.COMPUTER, computerId, -1, userId, null);
+			e.set(Field.COMPUTER_GUID, Long.toString(guid), Long.toString(guid));
+			e.set(Field.COMPUTER_NAME, name, name);
+			return e;
+		}
+
+		static Entry forOrg(int orgId, OrgType orgType, String orgName, String regKey) {
+			Entry e = new Entry(SmartSearchType.ORG, orgId, orgId, -1, orgType);
+			e.set(Field.ORG_NAME, orgName, orgName);
+			e.set(Field.ORG_REG_KEY, regKey, regKey);
+			return e;
+		}
+
+		private void set(Field f, String value, String display) {
+			this.values[f.ordinal()] = lower(value);
+			this.displays[f.ordinal()] = display;
+		}
+
+		private Set<String> grams() {
+			Set<String> rv = new HashSet<String>();
+			for (String value : this.values) {
+				if (value != null) {
+					rv.addAll(gramsOf(value));
+				}
+			}
+			return rv;
+		}
+
+		SmartSearchType getType() {
+			return this.type;
+		}
+
+		long getId() {
+			return this.id;
+		}
+
+		int getUserId() {
+			return this.userId;
+		}
+	}
+
+	/**
+	 * Applies the same visibility rules as the smart search database queries: the org must be one of this cluster's
+	 * types and either readable by the subject or, for users and computers, owned by the subject.
+	 */
+	public static class Filter {
+
+		private final Set<OrgType> clusterOrgTypes;
+		private final int userId;
+		private final boolean allOrgs;
+		private final Set<Integer> orgIds;
+
+		public Filter(AuthorizedOrgs authorizedOrgs, Set<OrgType> clusterOrgTypes, int userId) {
+			this.clusterOrgTypes = clusterOrgTypes;
+			this.userId = userId;
+			switch (authorizedOrgs.getOrgListType()) {
+			case ALL:
+				this.allOrgs = true;
+				this.orgIds = new HashSet<Integer>();
+				break;
+			case SOME:
+				this.allOrgs = false;
+				this.orgIds = new HashSet<Integer>(authorizedOrgs.getAuthorizedOrgIds());
+				break;
+			default:
+				this.allOrgs = false;
+				this.orgIds = new HashSet<Integer>();
+			}
+		}
+
+		boolean accept(Entry e, int orgId, OrgType orgType) {
+			if (orgType == null || orgId == CpcConstants.Orgs.ADMIN_ID || !this.clusterOrgTypes.contains(orgType)) {
+				return false;
+			}
+			if (e.type != SmartSearchType.ORG && e.userId == this.userId) {
+				return true;
+			}
+			return this.allOrgs || this.orgIds.contains(orgId);
+		}
+	}
+
+	/**
+	 * Everything smart search needs from the indexed types for one term.
+	 */
+	public static class Result {
+
+		private final Map<SmartSearchType, Integer> counts = new EnumMap<SmartSearchType, Integer>(SmartSearchType.class);
+		private final Hits exact = new Hits();
+		private final Hits partial = new Hits();
+
+		private Result() {
+			this.counts.put(SmartSearchType.USER, 0);
+			this.counts.put(SmartSearchType.COMPUTER, 0);
+			this.counts.put(SmartSearchType.ORG, 0);
+		}
+
+		private void increment(SmartSearchType type) {
+			this.counts.put(type, this.counts.get(type) + 1);
+		}
+
+		/**
+		 * @return the USER, COMPUTER and ORG counts
+		 */
+		public Map<SmartSearchType, Integer> getCounts() {
+			return this.counts;
+		}
+
+		/**
+		 * @return the one entity whose value in any of the given fields equals the term, null if none or more than one
+		 */
+		public SmartSearchMatch findExact(Field... fields) {
+			return this.exact.find(fields);
+		}
+
+		/**
+		 * @return the one entity whose value in any of the given fields contains the term, null if none or more than one
+		 */
+		public SmartSearchMatch findPartial(Field... fields) {
+			return this.partial.find(fields);
+		}
+	}
+
+	/**
+	 * Tracks a single match per field, remembering when a field matched more than one entity.
+	 */
+	private static class Hits {
+
+		private final Map<Field, SmartSearchMatch> matches = new EnumMap<Field, SmartSearchMatch>(Field.class);
+		private final Set<Field> ambiguous = new HashSet<Field>();
+
+		void record(Field f, SmartSearchMatch m) {
+			SmartSearchMatch existing = this.matches.get(f);
+			if (existing == null) {
+				this.matches.put(f, m);
+			} else if (!existing.equals(m)) {
+				this.ambiguous.add(f);
+			}
+		}
+
+		SmartSearchMatch find(Field... fields) {
+			SmartSearchMatch hit = null;
+			for (Field f : fields) {
+				if (this.ambiguous.contains(f)) {
+					return null;
+				}
+				SmartSearchMatch m = this.matches.get(f);
+				if (m == null) {
+					continue;
+				}
+				if (hit == null) {
+					hit = m;
+				} else if (!hit.equals(m)) {
+					return null;
+				}
+			}
+			return hit;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.code42.smartsearch;
+
+import com.code42.computer.Computer;
+import com.code42.computer.ComputerEventCallback;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.org.BackupOrg;
+import com.code42.org.Org;
+import com.code42.org.OrgEventCallback;
+import com.code42.user.User;
+import com.code42.user.UserEventCallback;
+import com.google.inject.Inject;
+
+/**
+ * Adds users, computers and orgs created by paths that don't run SmartSearchIndexUpdateCmd to the SmartSearchIndex,
+ * and tells the other nodes to read them back. These callbacks run inside the creating transaction; the other nodes
+ * only read the entity on their next check, by which time it has committed. Deactivating or activating doesn't change
+ * anything that is searched, and deactivated entities stay searchable just as they are in the database queries.
+ */
+public class SmartSearchIndexEventCallback implements UserEventCallback, ComputerEventCallback, OrgEventCallback {
+
+	@Inject
+	private SmartSearchIndex index;
+
+	public void userCreate(User user, CoreSession session) throws CommandException {
+		this.putUser(user);
+	}
+
+	public void userDeactivate(User user, CoreSession session) throws CommandException {
+	}
+
+	public void computerActivate(Computer computer, CoreSession session) throws CommandException {
+	}
+
+	public void computerDeactivate(Computer computer, CoreSession session) throws CommandException {
+	}
+
+	public void computerCreate(Computer computer, CoreSession session) throws CommandException {
+		this.putComputer(computer);
+	}
+
+	public void orgDeactivate(Org org, CoreSession session) throws CommandException {
+	}
+
+	public void orgMigrateToPRO(Org org, CoreSession session) throws CommandException {
+		this.putOrg(org);
+	}
+
+	public void orgCreatePRO(Org org, CoreSession session) throws CommandException {
+		this.putOrg(org);
+	}
+
+	private void putUser(User user) {
+		if (this.index.isLoaded()) {
+			this.index.put(SmartSearchIndex.Entry.forUser(user.getUserId(), user.getOrgId(), user.getUsername(), user
+					.getEmail(), user.getFirstName(), user.getLastName(), user.getFirstLastSearch(), user
+					.getLastFirstSearch()));
+		}
+		this.index.publish(SmartSearchType.USER, user.getUserId());
+	}
+
+	private void putComputer(Computer computer) {
+		if (computer.getParentComputerId() != null) {
+			return;
+		}
+		if (this.index.isLoaded()) {
+			this.index.put(SmartSearchIndex.Entry.forComputer(computer.getComputerId(), computer.getUserId(), computer
+					.getGuid(), computer.getName()));
+		}
+		this.index.publish(SmartSearchType.COMPUTER, computer.getComputerId());
+	}
+
+	private void putOrg(Org org) {
+		if (this.index.isLoaded()) {
+			String regKey = (org instanceof BackupOrg) ? ((BackupOrg) org).getRegistrationKey() : null;
+			this.index.put(SmartSearchIndex.Entry.forOrg(org.getOrgId(), org.getType(), org.getOrgName(), regKey));
+		}
+		this.index.publish(SmartSearchType.ORG, org.getOrgId());
+	}
+}
@@ -0,0 +1,140 @@
+package com.code42.smartsearch;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+import com.backup42.common.OrgType;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.core.impl.DBCmd;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.Stopwatch;
+import com.google.inject.Inject;
+
+/**
+ * (Re)loads the SmartSearchIndex from the database. Only one load runs at a time; if another is already running this
+ * returns immediately. A load that raced with an incremental change is read again, a few times at most.
+ */
+public class SmartSearchIndexLoadCmd extends DBCmd<Void> {
+
+	private static final Logger log = LoggerFactory.getLogger(SmartSearchIndexLoadCmd.class);
+
+	private static final int WINDOW_SIZE = 5000;
+	private static final int MAX_LOAD_ATTEMPTS = 3;
+
+	@Inject
+	private SmartSearchIndex index;
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		if (!this.index.isEnabled() || !this.index.beginLoad()) {
+			return null;
+		}
+
+		try {
+			for (int attempt = 1; attempt <= MAX_LOAD_ATTEMPTS; attempt++) {
+				Stopwatch sw = new Stopwatch();
+				long version = this.index.getVersion();
+				List<SmartSearchIndex.Entry> entries = this.db.find(new SmartSearchIndexLoadQuery());
+				if (this.index.load(entries, version)) {
+					log.info("SmartSearch:: loaded {} index entries in {}", entries.size(), sw);
+					return null;
+				}
+			}
+			log.warn("SmartSearch:: entries kept changing while loading; giving up until the next search");
+		} finally {
+			this.index.endLoad();
+		}
+
+		return null;
+	}
+
+	/* ========================== Private helper classes ========================== */
+	private static class SmartSearchIndexLoadQuery extends FindQuery<List<SmartSearchIndex.Entry>> {
+
+		@Override
+		public List<SmartSearchIndex.Entry> query(Session session) throws DBServiceException {
+			try {
+				/* Hibernate Work implementation will populate rv as a side effect */
+				List<SmartSearchIndex.Entry> rv = new ArrayList<SmartSearchIndex.Entry>();
+				session.doWork(new SmartSearchIndexLoadWork(rv));
+				return rv;
+			} catch (HibernateException he) {
+				throw new DBServiceException("Exception doing database ops", he);
+			}
+		}
+	}
+
+	private static class SmartSearchIndexLoadWork implements Work {
+
+		private static final String ORG_SQL = "select org_id, type, org_name, registration_key from t_org";
+
+		private static final String USER_SQL = "select user_id, org_id, username, email, first_name, last_name, "
+				+ "first_last_search, last_first_search from t_user";
+
+		/* Child computers and servers are not searched as computers */
+		private static final String COMPUTER_SQL = "select computer_id, user_id, guid, name from t_computer "
+				+ "where parent_computer_id is null and computer_id not in (select computer_id from t_server)";
+
+		private final List<SmartSearchIndex.Entry> target;
+
+		SmartSearchIndexLoadWork(List<SmartSearchIndex.Entry> target) {
+			this.target = target;
+		}
+
+		private ResultSet getResultSet(Statement stmt, String sql) throws SQLException {
+			stmt.setFetchSize(WINDOW_SIZE);
+			ResultSet rs = stmt.executeQuery(sql);
+			rs.setFetchSize(WINDOW_SIZE);
+			return rs;
+		}
+
+		public void execute(Connection conn) throws SQLException {
+			Statement stmt = conn.createStatement();
+			try {
+				ResultSet rs = this.getResultSet(stmt, ORG_SQL);
+				try {
+					while (rs.next()) {
+						this.target.add(SmartSearchIndex.Entry.forOrg(rs.getInt(1), OrgType.valueOf(rs.getString(2)), rs
+								.getString(3), rs.getString(4)));
+					}
+				} finally {
+					rs.close();
+				}
+
+				rs = this.getResultSet(stmt, USER_SQL);
+				try {
+					while (rs.next()) {
+						this.target.add(SmartSearchIndex.Entry.forUser(rs.getInt(1), rs.getInt(2), rs.getString(3), rs
+								.getString(4), rs.getString(5), rs.getString(6), rs.getString(7), rs.getString(8)));
+					}
+				} finally {
+					rs.close();
+				}
+
+				rs = this.getResultSet(stmt, COMPUTER_SQL);
+				try {
+					while (rs.next()) {
+						this.target.add(SmartSearchIndex.Entry.forComputer(rs.getLong(1), rs.getInt(2), rs.getLong(3),
+								rs.getString(4)));
+					}
+				} finally {
+					rs.close();
+				}
+			} finally {
+				stmt.close();
+			}
+		}
+	}
+}
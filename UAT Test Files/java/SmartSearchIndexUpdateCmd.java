@@ -0,0 +1,141 @@
+package com.code42.smartsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.Session;
+
+import com.backup42.common.OrgType;
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+import com.code42.core.impl.DBCmd;
+import com.code42.sql.SQLQuery;
+import com.code42.sql.SQLUtils;
+import com.google.inject.Inject;
+
+/**
+ * Reads a single user, computer or org back from the database into the SmartSearchIndex, removing it if it is gone or
+ * no longer searched, and tells the other nodes. Run this with db.afterTransaction() from anything that creates,
+ * renames, moves or deletes one, so the index only changes once the database has.<br>
+ * <br>
+ * Without an entity, reads back the ones changed on other nodes (see SmartSearchIndex.takePending()) and tells no one.
+ */
+public class SmartSearchIndexUpdateCmd extends DBCmd<Void> {
+
+	@Inject
+	private SmartSearchIndex index;
+
+	private final SmartSearchType type;
+	private final long id;
+
+	/**
+	 * Read back the entities changed on other nodes.
+	 */
+	public SmartSearchIndexUpdateCmd() {
+		this(null, 0);
+	}
+
+	public SmartSearchIndexUpdateCmd(SmartSearchType type, long id) {
+		this.type = type;
+		this.id = id;
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		if (!this.index.isEnabled()) {
+			return null;
+		}
+
+		if (this.type == null) {
+			for (SmartSearchIndex.Key key : this.index.takePending()) {
+				this.update(key.getType(), key.getId());
+			}
+			return null;
+		}
+
+		try {
+			if (this.index.isLoaded()) {
+				this.update(this.type, this.id);
+			}
+		} finally {
+			this.index.publish(this.type, this.id);
+		}
+		return null;
+	}
+
+	private void update(SmartSearchType t, long entityId) throws CommandException {
+		List<SmartSearchIndex.Entry> entries = this.db.find(new SmartSearchIndexEntryQuery(t, entityId));
+		if (entries.isEmpty()) {
+			this.index.remove(t, entityId);
+		} else {
+			this.index.put(entries.get(0));
+		}
+	}
+
+	/* ========================== Private helper classes ========================== */
+	private static class SmartSearchIndexEntryQuery extends FindQuery<List<SmartSearchIndex.Entry>> {
+
+		private static final String ORG_SQL = "select org_id, type, org_name, registration_key from t_org "
+				+ "where org_id = :id";
+
+		private static final String USER_SQL = "select user_id, org_id, username, email, first_name, last_name, "
+				+ "first_last_search, last_first_search from t_user where user_id = :id";
+
+		/* Child computers and servers are not searched as computers */
+		private static final String COMPUTER_SQL = "select computer_id, user_id, guid, name from t_computer "
+				+ "where computer_id = :id and parent_computer_id is null "
+				+ "and computer_id not in (select computer_id from t_server)";
+
+		private final SmartSearchType type;
+		private final long id;
+
+		SmartSearchIndexEntryQuery(SmartSearchType type, long id) {
+			this.type = type;
+			this.id = id;
+		}
+
+		@Override
+		public List<SmartSearchIndex.Entry> query(Session session) throws DBServiceException {
+			String sql;
+			switch (this.type) {
+			case ORG:
+				sql = ORG_SQL;
+				break;
+			case USER:
+				sql = USER_SQL;
+				break;
+			case COMPUTER:
+				sql = COMPUTER_SQL;
+				break;
+			default:
+				return Collections.emptyList();
+			}
+
+			SQLQuery query = new SQLQuery(session, sql);
+			query.setLong("id", this.id);
+			List<Object[]> rows = query.list();
+
+			List<SmartSearchIndex.Entry> rv = new ArrayList<SmartSearchIndex.Entry>(rows.size());
+			for (Object[] row : rows) {
+				switch (this.type) {
+				case ORG:
+					rv.add(SmartSearchIndex.Entry.forOrg(SQLUtils.getint(row[0]), OrgType.valueOf(SQLUtils
+							.getString(row[1])), SQLUtils.getString(row[2]), SQLUtils.getString(row[3])));
+					break;
+				case USER:
+					rv.add(SmartSearchIndex.Entry.forUser(SQLUtils.getint(row[0]), SQLUtils.getint(row[1]), SQLUtils
+							.getString(row[2]), SQLUtils.getString(row[3]), SQLUtils.getString(row[4]), SQLUtils
+							.getString(row[5]), SQLUtils.getString(row[6]), SQLUtils.getString(row[7])));
+					break;
+				default:
+					rv.add(SmartSearchIndex.Entry.forComputer(SQLUtils.getlong(row[0]), SQLUtils.getint(row[1]),
+							SQLUtils.getlong(row[2]), SQLUtils.getString(row[3])));
+				}
+			}
+			return rv;
+		}
+	}
+}
@@ -1,15 +1,13 @@
 package com.code42.smartsearch;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import com.code42.auth.IsManageableBulkCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
-import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsComputerManageableCmd;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.impl.AbstractCmd;
 import com.code42.recent.RecentComputer;
 import com.code42.recent.RecentItem;
@@ -35,18 +33,19 @@ abstract class SmartSearchRecentAbstractCmd extends AbstractCmd<SmartSearchMatch
 		this.counts = counts;
 	}
 
+	/**
+	 * @param recent a copy of the recent list (see RecentListFindByUserIdCmd), so no locking is needed to scan it
+	 */
 	protected SmartSearchMatch search(ISmartSearchRecentMatcher matcher, List<RecentItem> recent, CoreSession session) {
 		SmartSearchMatch hit = null;
-		synchronized (recent) {
-			for (RecentItem r : recent) {
-				SmartSearchMatch h = matcher.match(r);
-				if (h != null && this.isValid(r, session)) {
-					if (hit == null) {
-						hit = h;
-					} else if (hit.getId() != r.getId()) {
-						hit = null;
-						break;
-					}
+		for (RecentItem r : recent) {
+			SmartSearchMatch h = matcher.match(r);
+			if (h != null && this.isValid(r, session)) {
+				if (hit == null) {
+					hit = h;
+				} else if (hit.getId() != r.getId()) {
+					hit = null;
+					break;
 				}
 			}
 		}
@@ -54,42 +53,25 @@ abstract class SmartSearchRecentAbstractCmd extends AbstractCmd<SmartSearchMatch
 	}
 
 	/**
-	 * Returns false if the match does not exist or is not manageable
+	 * Returns false if the match does not exist or is not manageable. The answers are cached, see AuthorizationCache.
 	 */
 	protected boolean isValid(RecentItem match, CoreSession session) {
+		IsManageableBulkCmd<?> cmd;
 		if (match instanceof RecentUser) {
-			int userId = (int) match.getId();
-			try {
-				this.runtime.run(new IsUserManageableCmd(userId, C42PermissionApp.User.READ), session);
-			} catch (UnauthorizedException e) {
-				return false;
-			} catch (CommandException e) {
-				return false;
-			}
-			return true;
+			cmd = IsManageableBulkCmd.users(Collections.singleton((int) match.getId()), C42PermissionApp.User.READ);
 		} else if (match instanceof RecentComputer || match instanceof RecentServer) {
-			long computerId = match.getId();
-			try {
-				this.runtime.run(new IsComputerManageableCmd(computerId, C42PermissionApp.Computer.READ), session);
-			} catch (UnauthorizedException e) {
-				return false;
-			} catch (CommandException e) {
-				return false;
-			}
-			return true;
+			cmd = IsManageableBulkCmd.computers(Collections.singleton(match.getId()), C42PermissionApp.Computer.READ);
 		} else if (match instanceof RecentOrg) {
-			int orgId = (int) match.getId();
-			try {
-				this.runtime.run(new IsOrgManageableCmd(orgId, C42PermissionApp.Org.READ), session);
-			} catch (UnauthorizedException e) {
-				return false;
-			} catch (CommandException e) {
-				return false;
-			}
-			return true;
+			cmd = IsManageableBulkCmd.orgs(Collections.singleton((int) match.getId()), C42PermissionApp.Org.READ);
 		} else {
 			// TODO: implement this check for other types
 			throw new RuntimeException("isValid check not implemented for this type; match=" + match);
 		}
+
+		try {
+			return !this.runtime.run(cmd, session).isEmpty();
+		} catch (CommandException e) {
+			return false;
+		}
 	}
 }
@@ -29,42 +29,40 @@ class SmartSearchRecentFindExactCmd extends SmartSearchRecentAbstractCmd {
 		int serverCount = this.counts.get(SmartSearchType.SERVER);
 
 		List<RecentItem> recent = this.runtime.run(new RecentListFindByUserIdCmd(userId), session);
-		synchronized (recent) {
-			if (serverCount > 0 && SmartSearchUtils.isNumber(this.term)) {
-				hit = this.search(new ServerGuidExactMatcher(), recent, session);
-			}
+		if (serverCount > 0 && SmartSearchUtils.isNumber(this.term)) {
+			hit = this.search(new ServerGuidExactMatcher(), recent, session);
+		}
 
-			if (hit == null && computerCount > 0 && SmartSearchUtils.isNumber(this.term)) {
-				hit = this.search(new ComputerGuidExactMatcher(), recent, session);
-			}
+		if (hit == null && computerCount > 0 && SmartSearchUtils.isNumber(this.term)) {
+			hit = this.search(new ComputerGuidExactMatcher(), recent, session);
+		}
 
-			if (hit == null && userCount > 0) {
-				hit = this.search(new UserUsernameExactMatcher(), recent, session);
-			}
+		if (hit == null && userCount > 0) {
+			hit = this.search(new UserUsernameExactMatcher(), recent, session);
+		}
 
-			if (hit == null && userCount > 0) {
-				hit = this.search(new UserEmailExactMatcher(), recent, session);
-			}
+		if (hit == null && userCount > 0) {
+			hit = this.search(new UserEmailExactMatcher(), recent, session);
+		}
 
-			if (hit == null && userCount > 0) {
-				hit = this.search(new UserFullNameExactMatcher(), recent, session);
-			}
+		if (hit == null && userCount > 0) {
+			hit = this.search(new UserFullNameExactMatcher(), recent, session);
+		}
 
-			if (hit == null && serverCount > 0) {
-				hit = this.search(new ServerNameExactMatcher(), recent, session);
-			}
+		if (hit == null && serverCount > 0) {
+			hit = this.search(new ServerNameExactMatcher(), recent, session);
+		}
 
-			if (hit == null && computerCount > 0) {
-				hit = this.search(new ComputerNameExactMatcher(), recent, session);
-			}
+		if (hit == null && computerCount > 0) {
+			hit = this.search(new ComputerNameExactMatcher(), recent, session);
+		}
 
-			if (hit == null && orgCount > 0) {
-				hit = this.search(new OrgNameExactMatcher(), recent, session);
-			}
+		if (hit == null && orgCount > 0) {
+			hit = this.search(new OrgNameExactMatcher(), recent, session);
+		}
 
-			if (hit == null && orgCount > 0 && (this.term.length() == 16 || this.term.length() == 19)) {
-				hit = this.search(new OrgRegKeyExactMatcher(), recent, session);
-			}
+		if (hit == null && orgCount > 0 && (this.term.length() == 16 || this.term.length() == 19)) {
+			hit = this.search(new OrgRegKeyExactMatcher(), recent, session);
 		}
 		return hit;
 	}
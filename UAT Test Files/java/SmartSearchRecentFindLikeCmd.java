@@ -29,42 +29,40 @@ class SmartSearchRecentFindLikeCmd extends SmartSearchRecentAbstractCmd {
 		int serverCount = this.counts.get(SmartSearchType.SERVER);
 
 		List<RecentItem> recent = this.runtime.run(new RecentListFindByUserIdCmd(userId), session);
-		synchronized (recent) {
-			if (serverCount > 0 && SmartSearchUtils.isNumber(this.term)) {
-				hit = this.search(new ServerGuidPartialMatcher(), recent, session);
-			}
+		if (serverCount > 0 && SmartSearchUtils.isNumber(this.term)) {
+			hit = this.search(new ServerGuidPartialMatcher(), recent, session);
+		}
 
-			if (hit == null && computerCount > 0 && SmartSearchUtils.isNumber(this.term)) {
-				hit = this.search(new ComputerGuidPartialMatcher(), recent, session);
-			}
+		if (hit == null && computerCount > 0 && SmartSearchUtils.isNumber(this.term)) {
+			hit = this.search(new ComputerGuidPartialMatcher(), recent, session);
+		}
 
-			if (hit == null && userCount > 0) {
-				hit = this.search(new UserUsernamePartialMatcher(), recent, session);
-			}
+		if (hit == null && userCount > 0) {
+			hit = this.search(new UserUsernamePartialMatcher(), recent, session);
+		}
 
-			if (hit == null && userCount > 0) {
-				hit = this.search(new UserEmailPartialMatcher(), recent, session);
-			}
+		if (hit == null && userCount > 0) {
+			hit = this.search(new UserEmailPartialMatcher(), recent, session);
+		}
 
-			if (hit == null && userCount > 0) {
-				hit = this.search(new UserFullNamePartialMatcher(), recent, session);
-			}
+		if (hit == null && userCount > 0) {
+			hit = this.search(new UserFullNamePartialMatcher(), recent, session);
+		}
 
-			if (hit == null && serverCount > 0) {
-				hit = this.search(new ServerNamePartialMatcher(), recent, session);
-			}
+		if (hit == null && serverCount > 0) {
+			hit = this.search(new ServerNamePartialMatcher(), recent, session);
+		}
 
-			if (hit == null && computerCount > 0) {
-				hit = this.search(new ComputerNamePartialMatcher(), recent, session);
-			}
+		if (hit == null && computerCount > 0) {
+			hit = this.search(new ComputerNamePartialMatcher(), recent, session);
+		}
 
-			if (hit == null && orgCount > 0) {
-				hit = this.search(new OrgNamePartialMatcher(), recent, session);
-			}
+		if (hit == null && orgCount > 0) {
+			hit = this.search(new OrgNamePartialMatcher(), recent, session);
+		}
 
-			if (hit == null && orgCount > 0) {
-				hit = this.search(new OrgRegKeyPartialMatcher(), recent, session);
-			}
+		if (hit == null && orgCount > 0) {
+			hit = this.search(new OrgRegKeyPartialMatcher(), recent, session);
 		}
 
 		return hit;
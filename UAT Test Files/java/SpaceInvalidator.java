@@ -0,0 +1,185 @@
+package com.code42.util;
+
+import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.code42.core.space.ISpaceService;
+import com.code42.core.space.SpaceException;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.SystemProperties;
+import com.code42.utils.Time;
+
+/**
+ * Keeps a node-local cache in step with the other nodes through the space. The owner applies a change made on this
+ * node itself and then publishes the key that changed; check() hands it the keys changed on other nodes since it last
+ * looked, throttled to one space read every few seconds.<br>
+ * <br>
+ * Every change is put in the space under its own sequence number, with a TTL, and a counter holds the last number
+ * used. A node reads only the changes it hasn't seen. One that has missed some (it fell too far behind, they expired,
+ * or the space could not be read) is told to forget everything instead.<br>
+ * <br>
+ * The version lets the owner discard a load that raced with a change: read getVersion() before loading, call changed()
+ * under the owner's lock whenever it applies a change, and only install the load if isCurrent() still holds.
+ */
+public class SpaceInvalidator {
+
+	private static final Logger log = LoggerFactory.getLogger(SpaceInvalidator.class);
+
+	static final long DEFAULT_CHECK_MS = 5000L;
+	static final long CHANGE_TTL_MS = 10 * Time.MINUTE;
+	static final int MAX_CHANGES_PER_CHECK = 100;
+
+	/**
+	 * What the owner does with changes made on other nodes.
+	 */
+	public interface Listener {
+
+		/** The given key changed on another node */
+		void invalidate(Serializable key);
+
+		/** Changes were missed; forget everything */
+		void invalidateAll();
+	}
+
+	private final String spaceKey;
+	private final String checkMsProperty;
+	private final Listener listener;
+	private final String origin = UUID.randomUUID().toString();
+
+	private ISpaceService space;
+
+	private final AtomicLong version = new AtomicLong();
+
+	// Guarded by this
+	private long seen = -1;
+	private volatile long checked;
+
+	/**
+	 * @param spaceKey where the changes are kept in the space, e.g. "/org/hierarchyCache"
+	 * @param checkMsProperty the system property naming how often to check for changes
+	 */
+	public SpaceInvalidator(String spaceKey, String checkMsProperty, Listener listener) {
+		this.spaceKey = spaceKey;
+		this.checkMsProperty = checkMsProperty;
+		this.listener = listener;
+	}
+
+	public void setSpaceService(ISpaceService space) {
+		this.space = space;
+	}
+
+	/**
+	 * @return the version to hand back to isCurrent() with a load started from now on
+	 */
+	public long getVersion() {
+		return this.version.get();
+	}
+
+	public boolean isCurrent(long loadedAtVersion) {
+		return this.version.get() == loadedAtVersion;
+	}
+
+	/**
+	 * Note a change applied to the cache, so a load that is running now is not installed.
+	 */
+	public void changed() {
+		this.version.incrementAndGet();
+	}
+
+	/**
+	 * Tell the other nodes that the key has changed; null for everything. Call once the change has committed and has
+	 * been applied here.
+	 */
+	public void publish(Serializable key) {
+		String counterKey = this.spaceKey + "/seq";
+		try {
+			this.space.lock(counterKey);
+			try {
+				Long seq = this.space.getAsType(counterKey, Long.class);
+				long next = (seq != null) ? seq + 1 : 1;
+				Change change = new Change(this.origin, key);
+				this.space.put(this.changeKey(next), change, CHANGE_TTL_MS, TimeUnit.MILLISECONDS);
+				this.space.put(counterKey, next);
+			} finally {
+				this.space.unlock(counterKey);
+			}
+		} catch (SpaceException e) {
+			log.warn("Space:: unable to publish change to {}; other nodes won't see it until their copies expire",
+					this.spaceKey, e);
+		}
+	}
+
+	/**
+	 * Apply the changes made on other nodes since the last check, if it is time to look again.
+	 */
+	public void check() {
+		long now = System.currentTimeMillis();
+		if (now - this.checked < SystemProperties.getOptionalLong(this.checkMsProperty, DEFAULT_CHECK_MS)) {
+			return;
+		}
+		synchronized (this) {
+			if (now - this.checked < SystemProperties.getOptionalLong(this.checkMsProperty, DEFAULT_CHECK_MS)) {
+				return;
+			}
+			this.checked = now;
+			try {
+				Long published = this.space.getAsType(this.spaceKey + "/seq", Long.class);
+				long seq = (published != null) ? published : 0;
+				if (this.seen < 0) {
+					// Nothing can have been cached from before the first check
+					this.seen = seq;
+					return;
+				}
+				if (seq == this.seen) {
+					return;
+				}
+				if (seq < this.seen || seq - this.seen > MAX_CHANGES_PER_CHECK) {
+					// Restarted or too far behind
+					this.listener.invalidateAll();
+					this.seen = seq;
+					return;
+				}
+				for (long s = this.seen + 1; s <= seq; s++) {
+					Change change = this.space.getAsType(this.changeKey(s), Change.class);
+					if (change == null) {
+						// Expired before we got to it
+						this.listener.invalidateAll();
+						break;
+					}
+					if (this.origin.equals(change.origin)) {
+						continue;
+					}
+					if (change.key == null) {
+						this.listener.invalidateAll();
+					} else {
+						this.listener.invalidate(change.key);
+					}
+				}
+				this.seen = seq;
+			} catch (SpaceException e) {
+				log.warn("Space:: unable to check for changes to {}; forgetting everything", this.spaceKey, e);
+				this.listener.invalidateAll();
+			}
+		}
+	}
+
+	private String changeKey(long seq) {
+		return this.spaceKey + "/change/" + seq;
+	}
+
+	private static class Change implements Serializable {
+
+		private static final long serialVersionUID = -2214436860593017254L;
+
+		private final String origin;
+		private final Serializable key;
+
+		Change(String origin, Serializable key) {
+			this.origin = origin;
+			this.key = key;
+		}
+	}
+}
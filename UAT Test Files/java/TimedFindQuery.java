@@ -0,0 +1,38 @@
+package com.code42.util;
+
+import org.hibernate.Session;
+
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.FindQuery;
+
+/**
+ * Runs another query and records how long it took and how many rows it returned in QueryTelemetry, failures included.
+ * Made by QueryTelemetry.timed().
+ */
+class TimedFindQuery<T> extends FindQuery<T> {
+
+	private final QueryTelemetry telemetry;
+	private final FindQuery<T> query;
+	private final String queryName;
+	private final String cmdName;
+
+	TimedFindQuery(QueryTelemetry telemetry, FindQuery<T> query, String queryName, String cmdName) {
+		this.telemetry = telemetry;
+		this.query = query;
+		this.queryName = queryName;
+		this.cmdName = cmdName;
+	}
+
+	@Override
+	public T query(Session session) throws DBServiceException {
+		long rows = 0;
+		long start = System.nanoTime();
+		try {
+			T result = this.query.query(session);
+			rows = QueryTelemetry.countRows(result);
+			return result;
+		} finally {
+			this.telemetry.record(this.queryName, this.cmdName, System.nanoTime() - start, rows);
+		}
+	}
+}
@@ -1,11 +1,11 @@
 package com.code42.user;
 
 import com.backup42.history.CpcHistoryLogger;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
@@ -38,7 +38,7 @@ public class UserActivateCmd extends DBCmd<UserActivateCmd.Result> {
 
 	@Override
 	public Result exec(CoreSession session) throws CommandException {
-		this.runtime.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.UPDATE), session);
+		this.runtime.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.UPDATE), session);
 
 		// This is a brute-force check that prevents a user from activating their own account.
 		if (this.userId == session.getUser().getUserId()) {
@@ -2,11 +2,11 @@ package com.code42.user;
 
 import com.backup42.history.CpcHistoryLogger;
 import com.backup42.social.SocialComputerNetworkServices;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.impl.DBCmd;
 
 public class UserBlockCmd extends DBCmd<UserBlockCmd.Result> {
@@ -34,7 +34,7 @@ public class UserBlockCmd extends DBCmd<UserBlockCmd.Result> {
 	public Result exec(CoreSession session) throws CommandException {
 
 		// If userId does not exist, or permission check fails, this check will throw an exception
-		this.runtime.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.UPDATE), session);
+		this.runtime.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.UPDATE), session);
 
 		// This is a brute-force check that prevents a user from blocking their own account.
 		if (this.userId == session.getUser().getUserId()) {
@@ -32,6 +32,8 @@ import com.code42.org.OrgFindByIdCmd;
 import com.code42.org.OrgSettingsInfo;
 import com.code42.org.OrgSettingsInfoFindByOrgCmd;
 import com.code42.recent.RecentListCreateQuery;
+import com.code42.smartsearch.SmartSearchIndexUpdateCmd;
+import com.code42.smartsearch.SmartSearchType;
 import com.code42.user.UserRegistrationBaseCmd.Error;
 import com.code42.utils.LangUtils;
 import com.code42.utils.option.None;
@@ -91,6 +93,7 @@ public class UserCreateCmd extends DBCmd<User> {
 			this.db.create(new RecentListCreateQuery(user.getUserId(), new byte[0], myClusterId));
 
 			this.db.afterTransaction(new UserPublishCreateCmd(user), session);
+			this.db.afterTransaction(new SmartSearchIndexUpdateCmd(SmartSearchType.USER, user.getUserId()), session);
 
 			this.db.commit();
 		} catch (Exception e) {
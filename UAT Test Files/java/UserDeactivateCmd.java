@@ -4,11 +4,11 @@ import java.util.Set;
 
 import com.backup42.history.CpcHistoryLogger;
 import com.backup42.social.SocialComputerNetworkServices;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.google.inject.Inject;
 
@@ -41,7 +41,7 @@ public class UserDeactivateCmd extends DBCmd<UserDeactivateCmd.Result> {
 	public Result exec(CoreSession session) throws CommandException {
 
 		// If userId does not exist, or permission check fails, this check will throw an exception
-		this.runtime.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.UPDATE), session);
+		this.runtime.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.UPDATE), session);
 
 		// This is a brute-force check that prevents a user from deactivating their own account.
 		if (this.userId == session.getUser().getUserId()) {
@@ -17,6 +17,8 @@ import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.DeleteQuery;
 import com.code42.core.impl.DBCmd;
+import com.code42.smartsearch.SmartSearchIndexUpdateCmd;
+import com.code42.smartsearch.SmartSearchType;
 import com.code42.user.destination.UserDestinationDeleteByUserCmd;
 
 /**
@@ -57,6 +59,7 @@ public class UserDeleteCmd extends DBCmd<Void> {
 			}
 
 			this.db.afterTransaction(new UserPublishDeleteCmd(user), session);
+			this.db.afterTransaction(new SmartSearchIndexUpdateCmd(SmartSearchType.USER, this.userId), session);
 
 			this.db.commit();
 			return null;
@@ -5,17 +5,22 @@ import java.util.Date;
 import com.code42.core.CommandException;
 import com.code42.core.auth.impl.CoreSession;
 import com.code42.core.impl.DBCmd;
+import com.code42.writebehind.WriteBehindOfferCmd;
 
 /**
  * Encapsulation of the business logic around updating a notion of "user history" when a user logs in to the web app. We
  * can specify to login as a user other than ourselves if need be, but the default behavior is to login as the subject
- * executing this command.
+ * executing this command.<br>
+ * <br>
+ * Callers that don't need the new userHistoryId can ask for the record to be written behind once their transaction
+ * commits (see WriteBehindOfferCmd); null is returned in that case.
  */
 public class UserHistoryLoginCmd extends DBCmd<Integer> {
 
 	/* By default we're logging into the manage app.. */
 	private String appCode = "CPC";
 	private Integer userId = null;
+	private boolean writeBehind = false;
 
 	public UserHistoryLoginCmd() {
 	}
@@ -33,6 +38,12 @@ public class UserHistoryLoginCmd extends DBCmd<Integer> {
 		this.userId = userId;
 	}
 
+	public UserHistoryLoginCmd(String appCode, Integer userId, boolean writeBehind) {
+		this.appCode = appCode;
+		this.userId = userId;
+		this.writeBehind = writeBehind;
+	}
+
 	@Override
 	public Integer exec(CoreSession session) throws CommandException {
 
@@ -48,6 +59,17 @@ public class UserHistoryLoginCmd extends DBCmd<Integer> {
 			throw new CommandException("Unsupported app code: " + this.appCode);
 		}
 
+		if (this.writeBehind) {
+			this.db.beginTransaction();
+			try {
+				this.db.afterTransaction(new WriteBehindOfferCmd(history), session);
+				this.db.commit();
+			} finally {
+				this.db.endTransaction();
+			}
+			return null;
+		}
+
 		this.db.create(new UserHistoryCreateQuery(history));
 
 		return history.getUserHistoryId();
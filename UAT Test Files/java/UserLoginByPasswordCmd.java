@@ -253,7 +253,7 @@ public class UserLoginByPasswordCmd extends DBCmd<CoreSession> {
 			 * authenticators for the user's org
 			 */
 			DirectoryEntry candidateEntry = this.runtime.run(new DirectoryFindUserAnyCmd.Builder(this.username).directories(
-					directories).retries(2).build(), sysadmin);
+					directories).orgId(org.getOrgId()).retries(2).build(), sysadmin);
 			if (candidateEntry == null) {
 
 				/*
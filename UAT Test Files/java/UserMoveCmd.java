@@ -15,6 +15,8 @@ import com.code42.archiverecord.ArchiveSummary;
 import com.code42.archiverecord.ArchiveSummaryRollup;
 import com.code42.archiverecord.ArchiveSummaryUpdateQuery;
 import com.code42.archivesummary.ArchiveSummaryFindByUserCmd;
+import com.code42.auth.AuthorizationCacheInvalidateCmd;
+import com.code42.auth.IsManageableCmd;
 import com.code42.backup.SecureDataKey;
 import com.code42.backup.SecurityKeyType;
 import com.code42.backup.archiverecord.ArchiveSummaryRollupFindByUserQuery;
@@ -27,11 +29,11 @@ import com.code42.computer.DataEncryptionKey;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.directory.Directory;
 import com.code42.core.directory.DirectoryEntry;
 import com.code42.core.impl.DBCmd;
+import com.code42.custom.OrgUsageFactsChangedCmd;
 import com.code42.directory.DirectoryFindAllByOrgCmd;
 import com.code42.directory.DirectoryFindUserAnyCmd;
 import com.code42.directory.DirectoryFindUserAnyCmd.Builder;
@@ -43,12 +45,15 @@ import com.code42.org.BackupOrg;
 import com.code42.org.OrgDto;
 import com.code42.org.OrgDtoFindByCriteriaCmd;
 import com.code42.org.OrgFindByNameQuery;
+import com.code42.org.OrgInheritanceIndexUpdateCmd;
 import com.code42.org.OrgSso;
 import com.code42.org.OrgSsoFindByOrgIdCmd;
 import com.code42.org.destination.OrgDestination;
 import com.code42.org.destination.OrgDestinationFindAvailableByOrgCmd;
 import com.code42.server.destination.Destination;
 import com.code42.server.destination.DestinationFindByIdQuery;
+import com.code42.smartsearch.SmartSearchIndexUpdateCmd;
+import com.code42.smartsearch.SmartSearchType;
 import com.code42.utils.Pair;
 import com.google.inject.Inject;
 
@@ -186,7 +191,7 @@ public class UserMoveCmd extends DBCmd<Pair<UserMoveCmd.Result, Integer>> {
 		// Make certain the calling user has authority to change both the user account and the org
 		// into which it is being moved.
 		this.runtime.run(new IsUserManageableCmd(this.user, C42PermissionApp.User.UPDATE), session);
-		this.runtime.run(new IsOrgManageableCmd(this.targetOrg.getOrgId(), C42PermissionApp.Org.UPDATE_BASIC), session);
+		this.runtime.run(IsManageableCmd.org(this.targetOrg.getOrgId(), C42PermissionApp.Org.UPDATE_BASIC), session);
 
 		// safety check
 		if (MasterServices.getInstance().isHostedOrg(this.targetOrg.getOrgId())) {
@@ -198,7 +203,7 @@ public class UserMoveCmd extends DBCmd<Pair<UserMoveCmd.Result, Integer>> {
 		if (!AccountServices.getInstance().isDirLocal(directories)) {
 			DirectoryEntry entry = null;
 			Builder builder = new DirectoryFindUserAnyCmd.Builder(this.user.getUsername());
-			builder.directories(directories);
+			builder.directories(directories).orgId(this.targetOrgId);
 			entry = this.run(builder.build(), session);
 			if (entry == null) {
 				return new Pair(Result.NOT_IN_LDAP, this.targetOrgId);
@@ -269,6 +274,11 @@ public class UserMoveCmd extends DBCmd<Pair<UserMoveCmd.Result, Integer>> {
 			}
 
 			this.db.afterTransaction(new UserPublishMoveCmd(this.user, oldOrgId), session);
+			this.db.afterTransaction(new AuthorizationCacheInvalidateCmd(), session);
+			this.db.afterTransaction(new OrgInheritanceIndexUpdateCmd(oldOrgId, true), session);
+			this.db.afterTransaction(new OrgInheritanceIndexUpdateCmd(this.targetOrgId, true), session);
+			this.db.afterTransaction(new OrgUsageFactsChangedCmd(oldOrgId, this.targetOrgId), session);
+			this.db.afterTransaction(new SmartSearchIndexUpdateCmd(SmartSearchType.USER, this.userId), session);
 
 			this.db.afterTransaction(new AfterTxRunnable(Priority.NORMAL) {
 
@@ -6,6 +6,7 @@ import com.backup42.common.util.CPValidation;
 import com.backup42.computer.EncryptionKeyServices;
 import com.backup42.history.CpcHistoryLogger;
 import com.code42.account.AuthorizeRulesFindByOrgIdCmd;
+import com.code42.auth.IsManageableCmd;
 import com.code42.backup.DataKey;
 import com.code42.backup.SecureDataKey;
 import com.code42.computer.DataEncryptionKey;
@@ -14,7 +15,6 @@ import com.code42.core.CommandException;
 import com.code42.core.alert.ISystemAlertService;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.core.security.ICryptoService;
 import com.code42.crypto.StringHasher;
@@ -57,7 +57,7 @@ public class UserPasswordUpdateCmd extends DBCmd<User> {
 	@Override
 	public User exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsUserManageableCmd(this.data.userId, C42PermissionApp.User.UPDATE), session);
+		this.runtime.run(IsManageableCmd.user(this.data.userId, C42PermissionApp.User.UPDATE), session);
 
 		this.db.beginTransaction();
 
@@ -3,12 +3,12 @@ package com.code42.user;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.CommandException;
 import com.code42.core.UnsupportedRequestException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsOrgManageableCmd;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
 import com.code42.logging.LoggerFactory;
@@ -58,7 +58,7 @@ public class UserProAdminInviteCreateCmd extends DBCmd<Pair<List<User>, List<Pai
 		if (session == null || session.getUser() == null) {
 			throw new UnauthorizedException("No Authenticated User");
 		}
-		this.run(new IsOrgManageableCmd(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
+		this.run(IsManageableCmd.org(this.orgId, C42PermissionApp.Org.UPDATE_BASIC), session);
 
 		// Find the UserNameIsAnEmail setting for this org
 		Builder osBuilder = new OrgSettingsInfoFindByOrgCmd.Builder();
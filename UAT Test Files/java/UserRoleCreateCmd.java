@@ -1,6 +1,7 @@
 package com.code42.user;
 
 import com.backup42.history.CpcHistoryLogger;
+import com.code42.auth.AuthorizationCacheInvalidateCmd;
 import com.code42.auth.RoleFindByNameCmd.RoleFindByNameQuery;
 import com.code42.core.BuilderException;
 import com.code42.core.CommandException;
@@ -62,6 +63,7 @@ public class UserRoleCreateCmd extends DBCmd<UserRole> {
 			createdUserRole = this.db.create(new UserRoleCreateQuery(userRole));
 
 			this.db.afterTransaction(new UserPublishUpdateCmd(this.data.user), session);
+			this.db.afterTransaction(new AuthorizationCacheInvalidateCmd(), session);
 
 			this.db.commit();
 
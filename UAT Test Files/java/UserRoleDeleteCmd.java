@@ -7,13 +7,14 @@ import org.hibernate.HibernateException;
 import org.hibernate.Session;
 
 import com.backup42.history.CpcHistoryLogger;
+import com.code42.auth.AuthorizationCacheInvalidateCmd;
+import com.code42.auth.IsManageableCmd;
 import com.code42.auth.RoleFindByNameCmd.RoleFindByNameQuery;
 import com.code42.core.CommandException;
 import com.code42.core.UnsupportedRequestException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.UnauthorizedException;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.DeleteQuery;
 import com.code42.core.impl.DBCmd;
@@ -43,7 +44,7 @@ public class UserRoleDeleteCmd extends DBCmd<Void> {
 
 		this.validate();
 
-		this.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.UPDATE), session);
+		this.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.UPDATE), session);
 
 		// This is a brute-force check that prevents a user from removing a role from their own
 		// account. This could be refined, if more exact definitions of allowable actions could
@@ -74,6 +75,7 @@ public class UserRoleDeleteCmd extends DBCmd<Void> {
 			this.db.update(new UserUpdateQuery(userRole.getUser()));
 
 			this.db.afterTransaction(new UserPublishUpdateCmd(userRole.getUser()), session);
+			this.db.afterTransaction(new AuthorizationCacheInvalidateCmd(), session);
 
 			this.db.commit();
 
@@ -10,11 +10,12 @@ import org.hibernate.HibernateException;
 import org.hibernate.Session;
 
 import com.backup42.history.CpcHistoryLogger;
+import com.code42.auth.AuthorizationCacheInvalidateCmd;
+import com.code42.auth.IsManageableCmd;
 import com.code42.auth.RoleFindByNameCmd.RoleFindByNameQuery;
 import com.code42.core.CommandException;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.db.DBServiceException;
 import com.code42.core.db.impl.DeleteQuery;
 import com.code42.core.impl.DBCmd;
@@ -53,7 +54,7 @@ public class UserRoleSyncCmd extends DBCmd<Result> {
 	public Result exec(CoreSession session) throws CommandException {
 
 		/* Subject must at least be able to update this user */
-		this.run(new IsUserManageableCmd(this.userId, C42PermissionApp.User.UPDATE), session);
+		this.run(IsManageableCmd.user(this.userId, C42PermissionApp.User.UPDATE), session);
 
 		User user = this.db.find(new UserFindByIdQuery(this.userId));
 		if (user == null) {
@@ -108,6 +109,10 @@ public class UserRoleSyncCmd extends DBCmd<Result> {
 				result.addedRoleNames.add(roleName);
 			}
 
+			if (result.hasChange() && !this.simulate) {
+				this.db.afterTransaction(new AuthorizationCacheInvalidateCmd(), session);
+			}
+
 			this.db.commit();
 
 			// Only log if we actually changed something.
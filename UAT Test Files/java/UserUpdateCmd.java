@@ -10,12 +10,12 @@ import com.backup42.CpcConstants;
 import com.backup42.common.perm.C42PermissionPro;
 import com.backup42.history.CpcHistoryLogger;
 import com.code42.auth.IPermission;
+import com.code42.auth.IsManageableCmd;
 import com.code42.core.BuilderException;
 import com.code42.core.CommandException;
 import com.code42.core.alert.ISystemAlertService;
 import com.code42.core.auth.C42PermissionApp;
 import com.code42.core.auth.impl.CoreSession;
-import com.code42.core.auth.impl.IsUserManageableCmd;
 import com.code42.core.db.NotFoundException;
 import com.code42.core.impl.DBCmd;
 import com.code42.logging.Logger;
@@ -23,6 +23,8 @@ import com.code42.logging.LoggerFactory;
 import com.code42.org.OrgSettingsInfo;
 import com.code42.org.OrgSettingsInfoFindByOrgCmd;
 import com.code42.perm.PermissionUtils;
+import com.code42.smartsearch.SmartSearchIndexUpdateCmd;
+import com.code42.smartsearch.SmartSearchType;
 import com.code42.utils.LangUtils;
 import com.code42.utils.option.None;
 import com.code42.utils.option.Option;
@@ -61,7 +63,7 @@ public class UserUpdateCmd extends DBCmd<User> {
 	@Override
 	public User exec(CoreSession session) throws CommandException {
 
-		this.runtime.run(new IsUserManageableCmd(this.data.userId, C42PermissionApp.User.UPDATE), session);
+		this.runtime.run(IsManageableCmd.user(this.data.userId, C42PermissionApp.User.UPDATE), session);
 
 		this.db.beginTransaction();
 
@@ -173,7 +175,7 @@ public class UserUpdateCmd extends DBCmd<User> {
 			// Make sure a user login history exists, should already happen but just to make sure or the 'admin' user can
 			// get locked out.
 			// http://bugz.c42/bugzilla/show_bug.cgi?id=7068
-			this.runtime.run(new UserHistoryLoginCmd(), session);
+			this.runtime.run(new UserHistoryLoginCmd("CPC", null, true), session);
 
 			// If user is a system admin and they have an email address, remove the admin email alert
 			{
@@ -187,6 +189,7 @@ public class UserUpdateCmd extends DBCmd<User> {
 			}
 
 			this.db.afterTransaction(new UserPublishUpdateCmd(this.user), session);
+			this.db.afterTransaction(new SmartSearchIndexUpdateCmd(SmartSearchType.USER, this.data.userId), session);
 
 			this.db.commit();
 
@@ -0,0 +1,22 @@
+package com.code42.webnotify;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.AbstractCmd;
+import com.google.inject.Inject;
+
+/**
+ * One dispatch of the WebNotifyDispatcher, scheduled by the dispatcher when messages are waiting. Sends what is pending
+ * and returns; the dispatcher schedules the next one if more messages arrive.
+ */
+public class WebNotifyDispatchTaskCmd extends AbstractCmd<Void> {
+
+	@Inject
+	private WebNotifyDispatcher dispatcher;
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		this.dispatcher.runDispatch();
+		return null;
+	}
+}
@@ -0,0 +1,295 @@
+package com.code42.webnotify;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.code42.core.schedule.IScheduleService;
+import com.code42.core.schedule.SchedulerException;
+import com.code42.core.space.SpaceException;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.messaging.MessagingTransport;
+import com.code42.protos.v1.space.WebNotifyHazelcast;
+import com.code42.protos.v1.sps.authority.WebNotifyMessages;
+import com.code42.utils.SystemProperties;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Coalescing fan-out for web notifications. Messages are held per user for a short window, so the same message sent to
+ * a user more than once in the window goes out once, and then every user's messages are sent grouped by the node the
+ * user's sessions are on. Subscriptions come from the WebNotifySubscriptionIndex rather than the space. A user with
+ * more than maxPerUser distinct messages in a window gets the newest ones; the oldest are dropped, counted and logged
+ * with the window they were dropped from.<br>
+ * <br>
+ * The first message of a window schedules a dispatch (WebNotifyDispatchTaskCmd) with the schedule service for the end
+ * of the window; the dispatch sends what is pending and gives its thread back, scheduling another only if more
+ * messages have arrived meanwhile. No thread is held while there is nothing to send. When the dispatcher is disabled,
+ * enqueue() returns false and the caller is expected to send the message itself.
+ */
+@Singleton
+public class WebNotifyDispatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(WebNotifyDispatcher.class);
+
+	static final String WEB_NOTIFY_DISPATCH_ENABLED = "c42.webNotify.dispatch.enabled";
+	static final String WEB_NOTIFY_DISPATCH_WINDOW_MS = "c42.webNotify.dispatch.window.ms";
+	static final String WEB_NOTIFY_DISPATCH_MAX_PER_USER = "c42.webNotify.dispatch.maxPerUser";
+
+	static final long DEFAULT_WINDOW_MS = 250;
+	static final int DEFAULT_MAX_PER_USER = 100;
+
+	private static final String DISPATCH_TASK_NAME = "webNotifyDispatch";
+	private static final String DISPATCH_TASK_GROUP = "core";
+
+	/* ================= Dependencies ================= */
+	private MessagingTransport messaging;
+	private WebNotifySubscriptionIndex subscriptions;
+	private IScheduleService schedule;
+
+	/* ================= DI injection points ================= */
+	@Inject
+	public void setSchedule(IScheduleService schedule) {
+		this.schedule = schedule;
+	}
+
+	@Inject
+	public void setMessaging(MessagingTransport messaging) {
+		this.messaging = messaging;
+	}
+
+	@Inject
+	public void setSubscriptions(WebNotifySubscriptionIndex subscriptions) {
+		this.subscriptions = subscriptions;
+	}
+
+	/* Guarded by pending; userUid -> distinct messages in the order they were last sent */
+	private final Map<String, Set<String>> pending = new LinkedHashMap<String, Set<String>>();
+	/* Guarded by pending; userUid -> messages dropped from the pending window */
+	private final Map<String, Integer> droppedByUser = new HashMap<String, Integer>();
+	/* True while a dispatch is scheduled or running; only one is at a time */
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	/* Metrics */
+	private final AtomicLong enqueued = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong sendErrors = new AtomicLong();
+	private final AtomicLong windows = new AtomicLong();
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalBoolean(WEB_NOTIFY_DISPATCH_ENABLED, true);
+	}
+
+	/**
+	 * Queue a message for all of the user's web sessions.
+	 *
+	 * @return false if the dispatcher is disabled; the caller must then send the message itself
+	 */
+	public boolean enqueue(String userUid, String msg) {
+		if (!this.isEnabled()) {
+			return false;
+		}
+
+		this.enqueued.incrementAndGet();
+		int maxPerUser = SystemProperties.getOptionalInt(WEB_NOTIFY_DISPATCH_MAX_PER_USER, DEFAULT_MAX_PER_USER);
+		synchronized (this.pending) {
+			Set<String> msgs = this.pending.get(userUid);
+			if (msgs == null) {
+				msgs = new LinkedHashSet<String>();
+				this.pending.put(userUid, msgs);
+			}
+			if (msgs.remove(msg)) {
+				// Sent again; it goes out once, as the newest
+				this.coalesced.incrementAndGet();
+			} else if (msgs.size() >= Math.max(1, maxPerUser)) {
+				// A user this busy only gets the latest; the oldest message is the one most likely superseded
+				Iterator<String> oldest = msgs.iterator();
+				oldest.next();
+				oldest.remove();
+				this.dropped.incrementAndGet();
+				Integer count = this.droppedByUser.get(userUid);
+				this.droppedByUser.put(userUid, (count == null) ? 1 : count + 1);
+			}
+			msgs.add(msg);
+		}
+		this.scheduleDispatch();
+		return true;
+	}
+
+	/**
+	 * Schedules a dispatch for the end of the window unless one is already scheduled or running. If it can't be
+	 * scheduled, what is pending is sent right away on the caller's thread rather than left waiting for the next
+	 * message.
+	 */
+	private void scheduleDispatch() {
+		if (!this.scheduled.compareAndSet(false, true)) {
+			return;
+		}
+		long window = SystemProperties.getOptionalLong(WEB_NOTIFY_DISPATCH_WINDOW_MS, DEFAULT_WINDOW_MS);
+		try {
+			this.schedule.scheduleWithDelay(DISPATCH_TASK_NAME, DISPATCH_TASK_GROUP, window, TimeUnit.MILLISECONDS,
+					new WebNotifyDispatchTaskCmd());
+			return;
+		} catch (SchedulerException e) {
+			log.warn("WebNotify:: unable to schedule dispatch; sending now", e);
+		} catch (RuntimeException e) {
+			log.warn("WebNotify:: unable to schedule dispatch; sending now", e);
+		}
+		this.runDispatch();
+	}
+
+	/**
+	 * The body of WebNotifyDispatchTaskCmd. Sends what is pending and then schedules the next dispatch if more has
+	 * arrived meanwhile.
+	 */
+	void runDispatch() {
+		try {
+			this.logDropped();
+			this.dispatch(this.takePending());
+		} catch (RuntimeException re) {
+			// The messages of this window are lost but later ones still go out
+			log.warn("WebNotify:: unable to dispatch notifications", re);
+		} finally {
+			this.scheduled.set(false);
+			if (this.getPendingUsers() > 0) {
+				this.scheduleDispatch();
+			}
+		}
+	}
+
+	private void logDropped() {
+		Map<String, Integer> byUser;
+		synchronized (this.pending) {
+			if (this.droppedByUser.isEmpty()) {
+				return;
+			}
+			byUser = new HashMap<String, Integer>(this.droppedByUser);
+			this.droppedByUser.clear();
+		}
+		int total = 0;
+		for (Integer count : byUser.values()) {
+			total += count;
+		}
+		log.warn("WebNotify:: dropped {} notifications of {} users over the limit of {} per user in a window", total,
+				byUser.size(), SystemProperties.getOptionalInt(WEB_NOTIFY_DISPATCH_MAX_PER_USER, DEFAULT_MAX_PER_USER));
+		log.debug("WebNotify:: dropped notifications by user: {}", byUser);
+	}
+
+	private Map<String, Set<String>> takePending() {
+		synchronized (this.pending) {
+			if (this.pending.isEmpty()) {
+				return new LinkedHashMap<String, Set<String>>();
+			}
+			Map<String, Set<String>> rv = new LinkedHashMap<String, Set<String>>(this.pending);
+			this.pending.clear();
+			return rv;
+		}
+	}
+
+	/**
+	 * Resolve each user's sessions to their nodes and send every node its messages together.
+	 */
+	private void dispatch(Map<String, Set<String>> byUser) {
+		if (byUser.isEmpty()) {
+			return;
+		}
+		this.windows.incrementAndGet();
+
+		Map<Long, List<WebNotifyMessages.WebNotify>> byNode = new HashMap<Long, List<WebNotifyMessages.WebNotify>>();
+		WebNotifyMessages.WebNotify.Builder builder = WebNotifyMessages.WebNotify.newBuilder();
+		for (Map.Entry<String, Set<String>> entry : byUser.entrySet()) {
+			String userUid = entry.getKey();
+			WebNotifyHazelcast.WebNotifySubscription sub;
+			try {
+				sub = this.subscriptions.get(userUid);
+			} catch (SpaceException se) {
+				this.sendErrors.addAndGet(entry.getValue().size());
+				log.warn("WebNotify:: unable to find subscription for user {}", userUid, se);
+				continue;
+			}
+
+			/* If there's no subscription (or it's empty) then there is no one to send to */
+			if (sub == null || sub.getRecordsList().isEmpty()) {
+				continue;
+			}
+
+			for (WebNotifyHazelcast.WebNotifyRecord record : sub.getRecordsList()) {
+				List<WebNotifyMessages.WebNotify> msgs = byNode.get(record.getNode());
+				if (msgs == null) {
+					msgs = new ArrayList<WebNotifyMessages.WebNotify>();
+					byNode.put(record.getNode(), msgs);
+				}
+				for (String msg : entry.getValue()) {
+					builder.clear();
+					msgs.add(builder.setNotification(msg).setUserUid(userUid).build());
+				}
+			}
+		}
+
+		for (Map.Entry<Long, List<WebNotifyMessages.WebNotify>> entry : byNode.entrySet()) {
+			this.sendToNode(entry.getKey(), entry.getValue());
+		}
+		this.subscriptions.evictIdle();
+	}
+
+	private void sendToNode(long node, List<WebNotifyMessages.WebNotify> msgs) {
+		int i = 0;
+		try {
+			for (; i < msgs.size(); i++) {
+				this.messaging.sendToPeer(node, msgs.get(i));
+			}
+			this.sent.addAndGet(msgs.size());
+		} catch (RuntimeException re) {
+			// The node is most likely gone; don't keep trying the rest of its messages
+			this.sent.addAndGet(i);
+			this.sendErrors.addAndGet(msgs.size() - i);
+			log.warn("WebNotify:: unable to send {} notifications to node {}", msgs.size() - i, node, re);
+		}
+	}
+
+	/* ========================== Metrics ========================== */
+
+	public int getPendingUsers() {
+		synchronized (this.pending) {
+			return this.pending.size();
+		}
+	}
+
+	public long getEnqueuedCount() {
+		return this.enqueued.get();
+	}
+
+	public long getCoalescedCount() {
+		return this.coalesced.get();
+	}
+
+	public long getDroppedCount() {
+		return this.dropped.get();
+	}
+
+	public long getSentCount() {
+		return this.sent.get();
+	}
+
+	public long getSendErrorCount() {
+		return this.sendErrors.get();
+	}
+
+	@Override
+	public String toString() {
+		return "WebNotifyDispatcher[pendingUsers=" + this.getPendingUsers() + ", enqueued=" + this.enqueued
+				+ ", coalesced=" + this.coalesced + ", dropped=" + this.dropped + ", sent=" + this.sent
+				+ ", sendErrors=" + this.sendErrors + ", windows=" + this.windows + "]";
+	}
+}
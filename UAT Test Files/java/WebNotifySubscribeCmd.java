@@ -22,6 +22,7 @@ public class WebNotifySubscribeCmd extends AbstractCmd<Boolean> {
 
 	/* ================= Dependencies ================= */
 	private ISpaceService space;
+	private WebNotifySubscriptionIndex subscriptions;
 
 	/* ================= DI injection points ================= */
 	@Inject
@@ -30,6 +31,12 @@ public class WebNotifySubscribeCmd extends AbstractCmd<Boolean> {
 		this.space = space;
 	}
 
+	@Inject
+	private void setSubscriptions(WebNotifySubscriptionIndex subscriptions) {
+
+		this.subscriptions = subscriptions;
+	}
+
 	private static final Logger log = LoggerFactory.getLogger(WebNotifySubscribeCmd.class);
 
 	private static final int DEFAULT_RETRIES = 3;
@@ -123,6 +130,8 @@ public class WebNotifySubscribeCmd extends AbstractCmd<Boolean> {
 				}
 			} while (!this.optimisticUpdate(oldsub, newsub));
 
+			/* Sends from every node should reach the new session, not just once their copies are read again */
+			this.subscriptions.updated(this.userUid, newsub);
 			return true;
 		} catch (SpaceException se) {
 
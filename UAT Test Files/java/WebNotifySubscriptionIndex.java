@@ -0,0 +1,201 @@
+package com.code42.webnotify;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+
+import com.code42.core.space.CoreSpace;
+import com.code42.core.space.ISpaceService;
+import com.code42.core.space.SpaceException;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.protos.v1.space.WebNotifyHazelcast;
+import com.code42.util.SpaceInvalidator;
+import com.code42.utils.SystemProperties;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Node-local copy of the WebNotifySubscriptions of the users notified from this node, so a send doesn't have to read
+ * the space. A copy is kept until the subscription changes: subscribes and unsubscribes update it as soon as they are
+ * in the space and publish the user through a SpaceInvalidator, so the other nodes drop theirs and read it again on
+ * the next send. A copy holding a record that has expired is read again too, which prunes the record from the space as
+ * WebNotifySendCmd used to on every send. Copies not used for a while are forgotten.
+ */
+@Singleton
+public class WebNotifySubscriptionIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(WebNotifySubscriptionIndex.class);
+
+	static final String WEB_NOTIFY_SUBSCRIPTIONS_IDLE_MS = "c42.webNotify.subscriptions.idle.ms";
+	static final String WEB_NOTIFY_SUBSCRIPTIONS_CHANGE_CHECK_MS = "c42.webNotify.subscriptions.changeCheck.ms";
+
+	static final long DEFAULT_IDLE_MS = 10 * 60 * 1000L;
+
+	/* A fixed value for now... should probably be made configurable */
+	private static final int DEFAULT_RETRIES = 3;
+
+	/* ================= Dependencies ================= */
+	private ISpaceService space;
+
+	/* ================= DI injection points ================= */
+	@Inject
+	public void setSpace(ISpaceService space) {
+		this.space = space;
+		this.invalidator.setSpaceService(space);
+	}
+
+	/*
+	 * Representing these two values under the assumption that we'll want them to be configurable at some point... and the
+	 * standard way for doing that is a long/TimeUnit pair.
+	 */
+	private final long expiredInterval = 5;
+	private final TimeUnit expiredUnits = TimeUnit.MINUTES;
+
+	private final ConcurrentMap<String, Cached> subscriptions = new ConcurrentHashMap<String, Cached>();
+
+	private final SpaceInvalidator invalidator = new SpaceInvalidator("/webNotify/subscriptions",
+			WEB_NOTIFY_SUBSCRIPTIONS_CHANGE_CHECK_MS, new SpaceInvalidator.Listener() {
+
+				public void invalidate(Serializable key) {
+					WebNotifySubscriptionIndex.this.subscriptions.remove(key);
+					WebNotifySubscriptionIndex.this.invalidator.changed();
+				}
+
+				public void invalidateAll() {
+					WebNotifySubscriptionIndex.this.subscriptions.clear();
+					WebNotifySubscriptionIndex.this.invalidator.changed();
+				}
+			});
+
+	/**
+	 * @return the user's subscription, from this node unless it has changed or a record of it has expired; null if
+	 *         there is none
+	 */
+	public WebNotifyHazelcast.WebNotifySubscription get(String userUid) throws SpaceException {
+		this.invalidator.check();
+		Cached cached = this.subscriptions.get(userUid);
+		long now = System.currentTimeMillis();
+		if (cached != null && cached.oldestRecord > now - this.expiredUnits.toMillis(this.expiredInterval)) {
+			cached.used = now;
+			return cached.sub;
+		}
+		return this.load(userUid);
+	}
+
+	/**
+	 * Read the user's subscription from the space, pruning expired records, and remember it.
+	 */
+	public WebNotifyHazelcast.WebNotifySubscription load(String userUid) throws SpaceException {
+		// Read before the space, so a copy read across a change made elsewhere isn't kept
+		long version = this.invalidator.getVersion();
+		WebNotifyHazelcast.WebNotifySubscription sub = this.getSubscription(userUid);
+		if (this.invalidator.isCurrent(version)) {
+			this.subscriptions.put(userUid, new Cached(sub, System.currentTimeMillis()));
+		}
+		return sub;
+	}
+
+	/**
+	 * Remember the user's subscription as it now is in the space, null if there is none, and tell the other nodes it
+	 * has changed. Call once the subscribe or unsubscribe is in the space.
+	 */
+	public void updated(String userUid, WebNotifyHazelcast.WebNotifySubscription sub) {
+		this.invalidator.changed();
+		this.subscriptions.put(userUid, new Cached(sub, System.currentTimeMillis()));
+		this.invalidator.publish(userUid);
+	}
+
+	/**
+	 * Forget the subscriptions that have not been used for a while.
+	 */
+	public void evictIdle() {
+		long idle = System.currentTimeMillis()
+				- SystemProperties.getOptionalLong(WEB_NOTIFY_SUBSCRIPTIONS_IDLE_MS, DEFAULT_IDLE_MS);
+		for (Iterator<Cached> it = this.subscriptions.values().iterator(); it.hasNext();) {
+			if (it.next().used <= idle) {
+				it.remove();
+			}
+		}
+	}
+
+	public int size() {
+		return this.subscriptions.size();
+	}
+
+	/*
+	 * Get the appropriate WebNotifySubscription for the specified userUid. We're enforcing expired subscription records
+	 * primarily at read time so note that this method will also update the space if an expired record is detected.
+	 */
+	private WebNotifyHazelcast.WebNotifySubscription getSubscription(String userUid) throws SpaceException {
+
+		final DateTime expired = new DateTime().minusMillis((int) this.expiredUnits.toMillis(this.expiredInterval));
+		Predicate<WebNotifyHazelcast.WebNotifyRecord> expiredPredicate = new Predicate<WebNotifyHazelcast.WebNotifyRecord>() {
+
+			public boolean apply(WebNotifyHazelcast.WebNotifyRecord arg) {
+
+				return new DateTime(arg.getLastModified()).isAfter(expired);
+			}
+		};
+
+		WebNotifyHazelcast.WebNotifySubscription oldsub;
+		WebNotifyHazelcast.WebNotifySubscription newsub;
+		WebNotifyHazelcast.WebNotifySubscription.Builder builder = WebNotifyHazelcast.WebNotifySubscription.newBuilder();
+
+		int attempts = 1;
+		do {
+
+			/* Too many attempts, so bail out early */
+			if (attempts > DEFAULT_RETRIES) {
+
+				log.info("Too many retries, returning null");
+				return null;
+			}
+			++attempts;
+
+			oldsub = this.space.getAsType(CoreSpace.WEB_NOTIFY, userUid, WebNotifyHazelcast.WebNotifySubscription.class);
+			if (oldsub == null) {
+				return null;
+			}
+
+			/* A subscription exists for this user so filter it and see what's left */
+			builder.clear();
+			newsub = builder.addAllRecords(Iterables.filter(oldsub.getRecordsList(), expiredPredicate)).build();
+
+			/* If we wind up with the same thing we're safe to just return... no need to update anything. */
+			if (oldsub.equals(newsub)) {
+				return oldsub;
+			}
+
+		} while (!this.space.replace(CoreSpace.WEB_NOTIFY, userUid, oldsub, newsub));
+
+		/* Optimistic update completed, time to return something... */
+		return newsub;
+	}
+
+	private static class Cached {
+
+		private final WebNotifyHazelcast.WebNotifySubscription sub;
+		/* When the oldest record was last modified; Long.MAX_VALUE if there are none */
+		private final long oldestRecord;
+		private volatile long used;
+
+		Cached(WebNotifyHazelcast.WebNotifySubscription sub, long now) {
+			this.sub = sub;
+			long oldest = Long.MAX_VALUE;
+			if (sub != null) {
+				for (WebNotifyHazelcast.WebNotifyRecord record : sub.getRecordsList()) {
+					oldest = Math.min(oldest, record.getLastModified());
+				}
+			}
+			this.oldestRecord = oldest;
+			this.used = now;
+		}
+	}
+}
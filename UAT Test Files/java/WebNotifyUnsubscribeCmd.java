@@ -23,6 +23,7 @@ public class WebNotifyUnsubscribeCmd extends AbstractCmd<Boolean> {
 
 	/* ================= Dependencies ================= */
 	private ISpaceService space;
+	private WebNotifySubscriptionIndex subscriptions;
 
 	/* ================= DI injection points ================= */
 	@Inject
@@ -31,6 +32,12 @@ public class WebNotifyUnsubscribeCmd extends AbstractCmd<Boolean> {
 		this.space = space;
 	}
 
+	@Inject
+	private void setSubscriptions(WebNotifySubscriptionIndex subscriptions) {
+
+		this.subscriptions = subscriptions;
+	}
+
 	private static final Logger log = LoggerFactory.getLogger(WebNotifyUnsubscribeCmd.class);
 
 	private static final int DEFAULT_RETRIES = 3;
@@ -144,10 +151,13 @@ public class WebNotifyUnsubscribeCmd extends AbstractCmd<Boolean> {
 				 * don't bother with the replace() if the end result is the same)
 				 */
 				if (newsub.equals(oldsub)) {
+					this.subscriptions.updated(this.userUid, oldsub);
 					return true;
 				}
 			} while (!this.space.replace(CoreSpace.WEB_NOTIFY, this.userUid, oldsub, newsub));
 
+			/* Sends from every node should stop reaching the session, not go on until their copies are read again */
+			this.subscriptions.updated(this.userUid, newsub);
 			return true;
 		} catch (SpaceException se) {
 
@@ -0,0 +1,70 @@
+package com.code42.writebehind;
+
+import java.util.List;
+
+import org.hibernate.Session;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.db.DBServiceException;
+import com.code42.core.db.impl.CreateQuery;
+import com.code42.core.impl.DBCmd;
+
+/**
+ * Saves a batch of queued entities in a single transaction. The entities are mapped types of several kinds, so they are
+ * saved through Hibernate rather than with hand-written JDBC; the session is flushed and cleared every FLUSH_SIZE
+ * entities so it doesn't hold the whole batch in its first-level cache.
+ * 
+ * @see WriteBehindQueue
+ */
+public class WriteBehindFlushCmd extends DBCmd<Void> {
+
+	private static final int FLUSH_SIZE = 50;
+
+	private final List<Object> entities;
+
+	public WriteBehindFlushCmd(List<Object> entities) {
+		this.entities = entities;
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+
+		this.db.beginTransaction();
+		try {
+			this.db.create(new WriteBehindBatchCreateQuery(this.entities));
+			this.db.commit();
+		} catch (CommandException ce) {
+			this.db.rollback();
+			throw ce;
+		} catch (Throwable t) {
+			this.db.rollback();
+			throw new CommandException("Unexpected exception while flushing write-behind batch", t);
+		} finally {
+			this.db.endTransaction();
+		}
+		return null;
+	}
+
+	private static class WriteBehindBatchCreateQuery extends CreateQuery<Void> {
+
+		private final List<Object> entities;
+
+		private WriteBehindBatchCreateQuery(List<Object> entities) {
+			this.entities = entities;
+		}
+
+		@Override
+		public Void query(Session session) throws DBServiceException {
+			int count = 0;
+			for (Object entity : this.entities) {
+				session.save(entity);
+				if (++count % FLUSH_SIZE == 0) {
+					session.flush();
+					session.clear();
+				}
+			}
+			return null;
+		}
+	}
+}
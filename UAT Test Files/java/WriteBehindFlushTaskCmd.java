@@ -0,0 +1,22 @@
+package com.code42.writebehind;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.AbstractCmd;
+import com.google.inject.Inject;
+
+/**
+ * One flush of the WriteBehindQueue, scheduled by the queue when entities are waiting. Saves what is queued and
+ * returns; the queue schedules the next one if more entities arrive.
+ */
+public class WriteBehindFlushTaskCmd extends AbstractCmd<Void> {
+
+	@Inject
+	private WriteBehindQueue queue;
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		this.queue.runFlush();
+		return null;
+	}
+}
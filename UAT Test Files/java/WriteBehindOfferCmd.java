@@ -0,0 +1,32 @@
+package com.code42.writebehind;
+
+import java.util.Collections;
+
+import com.code42.core.CommandException;
+import com.code42.core.auth.impl.CoreSession;
+import com.code42.core.impl.DBCmd;
+import com.google.inject.Inject;
+
+/**
+ * Hands an entity to the WriteBehindQueue, or saves it right here in its own transaction if the queue can't take it.
+ * Run this with db.afterTransaction() so nothing is queued for a transaction that rolls back.
+ */
+public class WriteBehindOfferCmd extends DBCmd<Void> {
+
+	@Inject
+	private WriteBehindQueue queue;
+
+	private final Object entity;
+
+	public WriteBehindOfferCmd(Object entity) {
+		this.entity = entity;
+	}
+
+	@Override
+	public Void exec(CoreSession session) throws CommandException {
+		if (!this.queue.offer(this.entity)) {
+			this.run(new WriteBehindFlushCmd(Collections.<Object> singletonList(this.entity)), session);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,380 @@
+package com.code42.writebehind;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.code42.core.CommandException;
+import com.code42.core.ICoreRuntime;
+import com.code42.core.auth.IAuthorizationService;
+import com.code42.core.schedule.IScheduleService;
+import com.code42.core.schedule.SchedulerException;
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+import com.code42.utils.Stopwatch;
+import com.code42.utils.SystemProperties;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Write-behind queue for append-only entities (user history, archive records) whose callers don't need to wait for the
+ * insert. Callers hand entities over with WriteBehindOfferCmd once their transaction has committed. The first entity
+ * queued schedules a flush (WriteBehindFlushTaskCmd) with the schedule service; the flush saves the queue in batches
+ * (see WriteBehindFlushCmd) and gives its thread back, scheduling another only if more entities have arrived.<br>
+ * <br>
+ * When the queue is full, offer() waits briefly and then returns false; the caller is expected to save the entity
+ * itself. A batch that keeps failing is retried a few times and then saved row by row; rows that still fail are written
+ * to a dead-letter file rather than held in the queue, so one bad entity can't block the rest.<br>
+ * <br>
+ * shutdown() stops accepting entities and flushes what is left. Whatever cannot be flushed then is spilled to a file
+ * (see WriteBehindSpillFormat), which the first flush after the next start re-queues.
+ */
+@Singleton
+public class WriteBehindQueue {
+
+	private static final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+	static final String WRITE_BEHIND_ENABLED = "c42.writeBehind.enabled";
+	static final String WRITE_BEHIND_CAPACITY = "c42.writeBehind.capacity";
+	static final String WRITE_BEHIND_BATCH_SIZE = "c42.writeBehind.batchSize";
+	static final String WRITE_BEHIND_FLUSH_INTERVAL_MS = "c42.writeBehind.flushInterval.ms";
+	static final String WRITE_BEHIND_OFFER_TIMEOUT_MS = "c42.writeBehind.offerTimeout.ms";
+	static final String WRITE_BEHIND_MAX_BATCH_ATTEMPTS = "c42.writeBehind.maxBatchAttempts";
+	static final String WRITE_BEHIND_SPILL_FILE = "c42.writeBehind.spill.file";
+	static final String WRITE_BEHIND_DEAD_LETTER_FILE = "c42.writeBehind.deadLetter.file";
+
+	static final int DEFAULT_CAPACITY = 20000;
+	static final int DEFAULT_BATCH_SIZE = 500;
+	static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+	static final long DEFAULT_OFFER_TIMEOUT_MS = 100;
+	static final int DEFAULT_MAX_BATCH_ATTEMPTS = 3;
+	static final String DEFAULT_SPILL_FILE = "writebehind.spill";
+	static final String DEFAULT_DEAD_LETTER_FILE = "writebehind.deadletter";
+
+	private static final String FLUSH_TASK_NAME = "writeBehindFlush";
+	private static final String FLUSH_TASK_GROUP = "core";
+
+	/* ================= Dependencies ================= */
+	private ICoreRuntime runtime;
+	private IAuthorizationService auth;
+	private IScheduleService schedule;
+
+	/* ================= DI injection points ================= */
+	@Inject
+	public void setRuntime(ICoreRuntime runtime) {
+		this.runtime = runtime;
+	}
+
+	@Inject
+	public void setAuth(IAuthorizationService auth) {
+		this.auth = auth;
+	}
+
+	@Inject
+	public void setSchedule(IScheduleService schedule) {
+		this.schedule = schedule;
+	}
+
+	private final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>(SystemProperties.getOptionalInt(
+			WRITE_BEHIND_CAPACITY, DEFAULT_CAPACITY));
+	/* True while a flush is scheduled or running; only one is at a time */
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final AtomicBoolean spillRead = new AtomicBoolean(false);
+	private volatile boolean stopping = false;
+
+	/* Metrics */
+	private final AtomicLong queued = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong flushed = new AtomicLong();
+	private final AtomicLong flushes = new AtomicLong();
+	private final AtomicLong flushErrors = new AtomicLong();
+	private final AtomicLong deadLettered = new AtomicLong();
+	private final AtomicLong totalFlushMs = new AtomicLong();
+	private volatile long lastFlushMs = 0;
+
+	public boolean isEnabled() {
+		return SystemProperties.getOptionalBoolean(WRITE_BEHIND_ENABLED, true);
+	}
+
+	/**
+	 * Queue an entity to be saved later. Call this only once the transaction that produced the entity has committed;
+	 * WriteBehindOfferCmd does so from db.afterTransaction().
+	 * 
+	 * @return false if the queue is disabled, stopping or still full after a short wait; the caller must then save the
+	 *         entity itself
+	 */
+	public boolean offer(Object entity) {
+		if (!this.isEnabled() || this.stopping) {
+			return false;
+		}
+
+		try {
+			long timeout = SystemProperties.getOptionalLong(WRITE_BEHIND_OFFER_TIMEOUT_MS, DEFAULT_OFFER_TIMEOUT_MS);
+			if (this.queue.offer(entity, timeout, TimeUnit.MILLISECONDS)) {
+				this.queued.incrementAndGet();
+				this.scheduleFlush();
+				return true;
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		this.rejected.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Stops accepting entities and flushes whatever is queued on the calling thread, spilling it if it can't be saved.
+	 */
+	public void shutdown() {
+		if (this.stopping) {
+			return;
+		}
+		this.stopping = true;
+		List<Object> remaining = new ArrayList<Object>();
+		this.queue.drainTo(remaining);
+		if (!remaining.isEmpty() && !this.flush(remaining)) {
+			this.writeEntities(this.getSpillFile(), remaining, "spilled");
+		}
+		log.info("WriteBehind:: shut down; {}", this);
+	}
+
+	/**
+	 * Schedules a flush unless one is already scheduled or running. Right away if a full batch is waiting, otherwise
+	 * after the flush interval so the batch has time to fill.
+	 */
+	private void scheduleFlush() {
+		if (!this.scheduled.compareAndSet(false, true)) {
+			return;
+		}
+		int batchSize = SystemProperties.getOptionalInt(WRITE_BEHIND_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+		long delay = (this.queue.size() >= batchSize) ? 0 : SystemProperties.getOptionalLong(
+				WRITE_BEHIND_FLUSH_INTERVAL_MS, DEFAULT_FLUSH_INTERVAL_MS);
+		try {
+			this.schedule.scheduleWithDelay(FLUSH_TASK_NAME, FLUSH_TASK_GROUP, delay, TimeUnit.MILLISECONDS,
+					new WriteBehindFlushTaskCmd());
+		} catch (SchedulerException e) {
+			// The next offer tries again
+			this.scheduled.set(false);
+			log.warn("WriteBehind:: unable to schedule flush; {} entities waiting", this.queue.size(), e);
+		} catch (RuntimeException e) {
+			this.scheduled.set(false);
+			log.warn("WriteBehind:: unable to schedule flush; {} entities waiting", this.queue.size(), e);
+		}
+	}
+
+	/**
+	 * The body of WriteBehindFlushTaskCmd. Re-queues the spill file left by the last shutdown the first time through,
+	 * saves what is queued in batches and then schedules the next flush if more has arrived meanwhile.
+	 */
+	void runFlush() {
+		try {
+			if (this.spillRead.compareAndSet(false, true)) {
+				this.readSpill();
+			}
+
+			int batchSize = SystemProperties.getOptionalInt(WRITE_BEHIND_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+			List<Object> batch = new ArrayList<Object>(batchSize);
+			while (!this.stopping && this.queue.drainTo(batch, batchSize) > 0) {
+				if (!this.save(batch)) {
+					// Interrupted while waiting to retry, so the scheduler is stopping; spill for the next start
+					this.queue.drainTo(batch);
+					this.writeEntities(this.getSpillFile(), batch, "spilled");
+					return;
+				}
+				batch.clear();
+			}
+		} finally {
+			this.scheduled.set(false);
+			if (!this.stopping && !this.queue.isEmpty()) {
+				this.scheduleFlush();
+			}
+		}
+	}
+
+	/**
+	 * Saves the batch, retrying it a few times, and then row by row so the rows that can be saved are. Rows that still
+	 * fail go to the dead-letter file.
+	 * 
+	 * @return false if we were interrupted and the batch is left unsaved
+	 */
+	private boolean save(List<Object> batch) {
+		int maxAttempts = SystemProperties.getOptionalInt(WRITE_BEHIND_MAX_BATCH_ATTEMPTS, DEFAULT_MAX_BATCH_ATTEMPTS);
+		long interval = SystemProperties.getOptionalLong(WRITE_BEHIND_FLUSH_INTERVAL_MS, DEFAULT_FLUSH_INTERVAL_MS);
+		for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+			if (this.flush(batch)) {
+				return true;
+			}
+			if (!this.sleepQuietly(interval * attempt)) {
+				return false;
+			}
+		}
+
+		// The batch keeps failing; save what we can one row at a time and set the rest aside
+		log.warn("WriteBehind:: batch of {} failed {} times; saving it row by row", batch.size(), maxAttempts);
+		List<Object> failed = new ArrayList<Object>();
+		for (Object entity : batch) {
+			if (!this.flush(Collections.singletonList(entity))) {
+				failed.add(entity);
+			}
+		}
+		if (!failed.isEmpty()) {
+			this.deadLettered.addAndGet(failed.size());
+			File file = new File(SystemProperties.getOptional(WRITE_BEHIND_DEAD_LETTER_FILE, DEFAULT_DEAD_LETTER_FILE)
+					+ "." + System.currentTimeMillis());
+			this.writeEntities(file, failed, "dead-lettered");
+		}
+		return true;
+	}
+
+	private boolean flush(List<Object> batch) {
+		Stopwatch sw = new Stopwatch();
+		try {
+			this.runtime.run(new WriteBehindFlushCmd(batch), this.auth.getSystemSession());
+			this.lastFlushMs = sw.getElapsed();
+			this.totalFlushMs.addAndGet(this.lastFlushMs);
+			this.flushes.incrementAndGet();
+			this.flushed.addAndGet(batch.size());
+			log.debug("WriteBehind:: flushed {} entities in {}ms", batch.size(), this.lastFlushMs);
+			return true;
+		} catch (CommandException ce) {
+			this.flushErrors.incrementAndGet();
+			log.warn("WriteBehind:: unable to flush {} entities", batch.size(), ce);
+			return false;
+		} catch (RuntimeException re) {
+			this.flushErrors.incrementAndGet();
+			log.warn("WriteBehind:: unable to flush {} entities", batch.size(), re);
+			return false;
+		}
+	}
+
+	/**
+	 * @return false if we were interrupted, meaning we should stop
+	 */
+	private boolean sleepQuietly(long ms) {
+		try {
+			Thread.sleep(ms);
+			return true;
+		} catch (InterruptedException ie) {
+			this.stopping = true;
+			return false;
+		}
+	}
+
+	/* ========================== Spill and dead-letter files ========================== */
+
+	private File getSpillFile() {
+		return new File(SystemProperties.getOptional(WRITE_BEHIND_SPILL_FILE, DEFAULT_SPILL_FILE));
+	}
+
+	private void writeEntities(File file, List<Object> entities, String what) {
+		int written = 0;
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				WriteBehindSpillFormat.writeHeader(out);
+				for (Object entity : entities) {
+					WriteBehindSpillFormat.write(out, entity);
+					written++;
+				}
+			} finally {
+				out.close();
+			}
+			log.warn("WriteBehind:: {} {} unsaved entities to {}", what, written, file);
+		} catch (IOException ioe) {
+			log.error("WriteBehind:: unable to write {} unsaved entities to {}; {} written", entities.size(), file,
+					written, ioe);
+		}
+	}
+
+	private void readSpill() {
+		File file = this.getSpillFile();
+		if (!file.isFile()) {
+			return;
+		}
+
+		int read = 0;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				WriteBehindSpillFormat.readHeader(in);
+				while (true) {
+					Object entity;
+					try {
+						entity = WriteBehindSpillFormat.read(in);
+					} catch (EOFException eof) {
+						break;
+					}
+					if (entity != null && this.queue.offer(entity)) {
+						read++;
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException ioe) {
+			log.error("WriteBehind:: unable to read spill file {}", file, ioe);
+		}
+
+		if (!file.delete()) {
+			log.warn("WriteBehind:: unable to delete spill file {}", file);
+		}
+		log.info("WriteBehind:: re-queued {} spilled entities from {}", read, file);
+	}
+
+	/* ========================== Metrics ========================== */
+
+	public int getQueueDepth() {
+		return this.queue.size();
+	}
+
+	public long getQueuedCount() {
+		return this.queued.get();
+	}
+
+	public long getRejectedCount() {
+		return this.rejected.get();
+	}
+
+	public long getFlushedCount() {
+		return this.flushed.get();
+	}
+
+	public long getFlushErrorCount() {
+		return this.flushErrors.get();
+	}
+
+	public long getDeadLetteredCount() {
+		return this.deadLettered.get();
+	}
+
+	public long getLastFlushMs() {
+		return this.lastFlushMs;
+	}
+
+	public long getAverageFlushMs() {
+		long n = this.flushes.get();
+		return (n == 0) ? 0 : this.totalFlushMs.get() / n;
+	}
+
+	@Override
+	public String toString() {
+		return "WriteBehindQueue[depth=" + this.getQueueDepth() + ", queued=" + this.queued + ", rejected="
+				+ this.rejected + ", flushed=" + this.flushed + ", flushErrors=" + this.flushErrors + ", deadLettered="
+				+ this.deadLettered + ", lastFlushMs=" + this.lastFlushMs + ", avgFlushMs=" + this.getAverageFlushMs()
+				+ "]";
+	}
+}
@@ -0,0 +1,252 @@
+package com.code42.writebehind;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.code42.logging.Logger;
+import com.code42.logging.LoggerFactory;
+
+/**
+ * Reads and writes write-behind entities as plain property values, so a spill or dead-letter file written by one build
+ * can be read by the next even if the entity classes have changed. Nothing is Java-serialized.<br>
+ * <br>
+ * The file is the magic "C42WB", a format version (int) and then one record per entity:
+ * <ul>
+ * <li>the entity class name (UTF)</li>
+ * <li>the number of properties (int)</li>
+ * <li>for each property: its name (UTF), a one-byte type tag and the value, where the tags are I int, J long, S short,
+ * B byte, Z boolean, D double, F float, T string (UTF), M date or timestamp (long millis) and E enum (constant name as
+ * UTF)</li>
+ * </ul>
+ * Only readable and writable bean properties with non-null values of those types are written; the ID is null until the
+ * entity is saved, so it is never written. On read, a property the class no longer has is skipped, and a record whose
+ * class no longer exists is skipped whole.
+ */
+final class WriteBehindSpillFormat {
+
+	private static final Logger log = LoggerFactory.getLogger(WriteBehindSpillFormat.class);
+
+	private static final String MAGIC = "C42WB";
+	private static final int VERSION = 1;
+
+	private WriteBehindSpillFormat() {
+	}
+
+	static void writeHeader(DataOutputStream out) throws IOException {
+		out.writeUTF(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	/**
+	 * @throws IOException if the file is not in this format
+	 */
+	static void readHeader(DataInputStream in) throws IOException {
+		if (!MAGIC.equals(in.readUTF())) {
+			throw new IOException("Not a write-behind spill file");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported write-behind spill version: " + version);
+		}
+	}
+
+	static void write(DataOutputStream out, Object entity) throws IOException {
+		List<PropertyDescriptor> props = new ArrayList<PropertyDescriptor>();
+		List<Object> values = new ArrayList<Object>();
+		for (PropertyDescriptor prop : properties(entity.getClass())) {
+			if (prop.getReadMethod() == null || prop.getWriteMethod() == null) {
+				continue;
+			}
+			Object value;
+			try {
+				value = prop.getReadMethod().invoke(entity);
+			} catch (Exception e) {
+				throw new IOException("Unable to read " + prop.getName() + " of " + entity, e);
+			}
+			if (value == null) {
+				continue;
+			}
+			if (tag(value) == 0) {
+				log.warn("WriteBehind:: cannot spill property {} of type {}; skipping it", prop.getName(), value
+						.getClass().getName());
+				continue;
+			}
+			props.add(prop);
+			values.add(value);
+		}
+
+		out.writeUTF(entity.getClass().getName());
+		out.writeInt(props.size());
+		for (int i = 0; i < props.size(); i++) {
+			out.writeUTF(props.get(i).getName());
+			writeValue(out, values.get(i));
+		}
+	}
+
+	/**
+	 * @return the next entity, or null if its class no longer exists
+	 * @throws java.io.EOFException at the end of the file
+	 */
+	static Object read(DataInputStream in) throws IOException {
+		String className = in.readUTF();
+		int count = in.readInt();
+		if (count < 0) {
+			throw new IOException("Corrupt write-behind spill record for " + className);
+		}
+
+		Object entity = null;
+		PropertyDescriptor[] props = null;
+		try {
+			Class<?> clazz = Class.forName(className);
+			entity = clazz.newInstance();
+			props = properties(clazz);
+		} catch (Exception e) {
+			log.warn("WriteBehind:: cannot restore spilled {}; skipping it", className, e);
+		}
+
+		for (int i = 0; i < count; i++) {
+			String name = in.readUTF();
+			char tag = (char) in.readByte();
+			Object value = readValue(in, tag);
+			if (entity != null) {
+				set(entity, props, name, value);
+			}
+		}
+		return entity;
+	}
+
+	private static PropertyDescriptor[] properties(Class<?> clazz) throws IOException {
+		try {
+			BeanInfo info = Introspector.getBeanInfo(clazz, Object.class);
+			return info.getPropertyDescriptors();
+		} catch (IntrospectionException ie) {
+			throw new IOException("Unable to introspect " + clazz.getName(), ie);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void set(Object entity, PropertyDescriptor[] props, String name, Object value) {
+		for (PropertyDescriptor prop : props) {
+			Method setter = prop.getWriteMethod();
+			if (!prop.getName().equals(name) || setter == null) {
+				continue;
+			}
+			Class<?> type = prop.getPropertyType();
+			try {
+				if (value instanceof Long && Date.class.isAssignableFrom(type)) {
+					long millis = (Long) value;
+					value = Timestamp.class.isAssignableFrom(type) ? new Timestamp(millis) : new Date(millis);
+				} else if (value instanceof String && type.isEnum()) {
+					value = Enum.valueOf((Class<Enum>) type, (String) value);
+				}
+				setter.invoke(entity, value);
+			} catch (Exception e) {
+				log.warn("WriteBehind:: cannot restore property {} of {}; skipping it", name,
+						entity.getClass().getName(), e);
+			}
+			return;
+		}
+	}
+
+	private static char tag(Object value) {
+		if (value instanceof Integer) {
+			return 'I';
+		} else if (value instanceof Long) {
+			return 'J';
+		} else if (value instanceof Short) {
+			return 'S';
+		} else if (value instanceof Byte) {
+			return 'B';
+		} else if (value instanceof Boolean) {
+			return 'Z';
+		} else if (value instanceof Double) {
+			return 'D';
+		} else if (value instanceof Float) {
+			return 'F';
+		} else if (value instanceof String) {
+			return 'T';
+		} else if (value instanceof Date) {
+			return 'M';
+		} else if (value instanceof Enum<?>) {
+			return 'E';
+		}
+		return 0;
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		char tag = tag(value);
+		out.writeByte(tag);
+		switch (tag) {
+		case 'I':
+			out.writeInt((Integer) value);
+			break;
+		case 'J':
+			out.writeLong((Long) value);
+			break;
+		case 'S':
+			out.writeShort((Short) value);
+			break;
+		case 'B':
+			out.writeByte((Byte) value);
+			break;
+		case 'Z':
+			out.writeBoolean((Boolean) value);
+			break;
+		case 'D':
+			out.writeDouble((Double) value);
+			break;
+		case 'F':
+			out.writeFloat((Float) value);
+			break;
+		case 'T':
+			out.writeUTF((String) value);
+			break;
+		case 'M':
+			out.writeLong(((Date) value).getTime());
+			break;
+		case 'E':
+			out.writeUTF(((Enum<?>) value).name());
+			break;
+		default:
+			throw new IOException("Unsupported value type: " + value.getClass().getName());
+		}
+	}
+
+	/**
+	 * Dates come back as Long and enums as String; set() converts them to the property's type.
+	 */
+	private static Object readValue(DataInputStream in, char tag) throws IOException {
+		switch (tag) {
+		case 'I':
+			return in.readInt();
+		case 'J':
+		case 'M':
+			return in.readLong();
+		case 'S':
+			return in.readShort();
+		case 'B':
+			return in.readByte();
+		case 'Z':
+			return in.readBoolean();
+		case 'D':
+			return in.readDouble();
+		case 'F':
+			return in.readFloat();
+		case 'T':
+		case 'E':
+			return in.readUTF();
+		default:
+			throw new IOException("Corrupt write-behind spill file; unknown type tag " + (int) tag);
+		}
+	}
+}